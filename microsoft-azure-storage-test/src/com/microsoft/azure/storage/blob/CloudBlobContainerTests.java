@@ -16,15 +16,23 @@ package com.microsoft.azure.storage.blob;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.TimeZone;
 import java.util.UUID;
 
@@ -36,6 +44,7 @@ import org.junit.experimental.categories.Category;
 
 import com.microsoft.azure.storage.Constants;
 import com.microsoft.azure.storage.OperationContext;
+import com.microsoft.azure.storage.ResultConsumer;
 import com.microsoft.azure.storage.ResultContinuation;
 import com.microsoft.azure.storage.ResultSegment;
 import com.microsoft.azure.storage.SendingRequestEvent;
@@ -379,6 +388,130 @@ public class CloudBlobContainerTests {
         assertTrue(blobNames.size() == 0);
     }
 
+    /**
+     * List the blobs in a container, retrieving segments ahead of the one being iterated
+     * 
+     * @throws URISyntaxException
+     * @throws StorageException
+     * @throws IOException
+     */
+    @Test
+    public void testCloudBlobContainerListBlobsPrefetch() throws StorageException, IOException, URISyntaxException {
+        BlobRequestOptions options = new BlobRequestOptions();
+        options.setSegmentPrefetchDepth(2);
+
+        // The error retrieving a segment is thrown by the iterator.
+        try {
+            container.listBlobs(null, true, EnumSet.noneOf(BlobListingDetails.class), options, null).iterator()
+                    .next();
+            fail();
+        }
+        catch (NoSuchElementException e) {
+            assertEquals(HttpURLConnection.HTTP_NOT_FOUND, ((StorageException) e.getCause()).getHttpStatusCode());
+        }
+
+        container.create();
+        List<String> blobNames = BlobTestHelper.uploadNewBlobs(container, BlobType.BLOCK_BLOB, 50, 128, null);
+
+        for (ListBlobItem blob : container.listBlobs(null, true, EnumSet.noneOf(BlobListingDetails.class), options,
+                null)) {
+            assertTrue(blobNames.remove(((CloudBlockBlob) blob).getName()));
+        }
+
+        assertTrue(blobNames.isEmpty());
+    }
+
+    /**
+     * List lightweight records of the blobs in a container
+     * 
+     * @throws URISyntaxException
+     * @throws StorageException
+     * @throws IOException
+     */
+    @Test
+    public void testCloudBlobContainerListBlobRecords() throws StorageException, IOException, URISyntaxException {
+        container.create();
+        CloudBlob pageBlob = BlobTestHelper.uploadNewBlob(container, BlobType.PAGE_BLOB, "dir/page", 1024, null);
+        pageBlob.getMetadata().put("key", "value");
+        pageBlob.uploadMetadata();
+        CloudBlob blockBlob = BlobTestHelper.uploadNewBlob(container, BlobType.BLOCK_BLOB, "root", 100, null);
+
+        int count = 0;
+        for (BlobListingRecord record : container.listBlobRecords(null, true, EnumSet.of(BlobListingDetails.METADATA),
+                null, null)) {
+            CloudBlob blob = record.getName().equals(pageBlob.getName()) ? pageBlob : blockBlob;
+            assertEquals(blob.getName(), record.getName());
+            assertFalse(record.isDirectory());
+            assertEquals(blob.getProperties().getBlobType(), record.getBlobType());
+            assertEquals(blob.getProperties().getLength(), record.getLength());
+            assertEquals(blob.getProperties().getEtag(), record.getEtag());
+            assertEquals(blob.getMetadata(), record.getMetadata());
+
+            CloudBlob reference = record.getBlob();
+            assertEquals(blob.getClass(), reference.getClass());
+            assertEquals(blob.getUri(), reference.getUri());
+            count++;
+        }
+        assertEquals(2, count);
+
+        ResultSegment<BlobListingRecord> segment = container.listBlobRecordsSegmented(null, false,
+                EnumSet.noneOf(BlobListingDetails.class), 1, null, null, null);
+        assertEquals(1, segment.getResults().size());
+        assertTrue(segment.getResults().get(0).isDirectory());
+        assertEquals("dir/", segment.getResults().get(0).getName());
+        assertNull(segment.getResults().get(0).getMetadata());
+        assertNotNull(segment.getContinuationToken());
+    }
+
+    /**
+     * Stream the blobs in a container to a consumer
+     * 
+     * @throws URISyntaxException
+     * @throws StorageException
+     * @throws IOException
+     */
+    @Test
+    public void testCloudBlobContainerStreamBlobs() throws StorageException, IOException, URISyntaxException {
+        container.create();
+        final HashSet<String> blobNames = new HashSet<String>(BlobTestHelper.uploadNewBlobs(container,
+                BlobType.BLOCK_BLOB, 5, 128, null));
+
+        final ArrayList<String> streamedNames = new ArrayList<String>();
+        container.streamBlobs(null, true, null, new ResultConsumer<ListBlobItem>() {
+            @Override
+            public void accept(ListBlobItem item) throws URISyntaxException {
+                streamedNames.add(((CloudBlob) item).getName());
+            }
+        }, null, null);
+
+        assertEquals(blobNames.size(), streamedNames.size());
+        assertEquals(blobNames, new HashSet<String>(streamedNames));
+
+        streamedNames.clear();
+        ResultContinuation token = container.streamBlobsSegmented(null, true, null, 2, null,
+                new ResultConsumer<ListBlobItem>() {
+                    @Override
+                    public void accept(ListBlobItem item) throws URISyntaxException {
+                        streamedNames.add(((CloudBlob) item).getName());
+                    }
+                }, null, null);
+        assertEquals(2, streamedNames.size());
+        assertNotNull(token);
+
+        try {
+            container.streamBlobs(null, true, null, new ResultConsumer<ListBlobItem>() {
+                @Override
+                public void accept(ListBlobItem item) throws IOException {
+                    throw new IOException("consumer failure");
+                }
+            }, null, null);
+            fail();
+        }
+        catch (StorageException ex) {
+            assertTrue(ex.getCause() instanceof IOException);
+        }
+    }
+
     /**
      * List the blobs in a container
      * 
@@ -444,6 +577,221 @@ public class CloudBlobContainerTests {
         assertEquals(5, count);
     }
 
+    /**
+     * Delete the blobs under a prefix, listing and deleting them in parallel
+     * 
+     * @throws URISyntaxException
+     * @throws StorageException
+     * @throws IOException
+     */
+    @Test
+    public void testCloudBlobContainerDeleteBlobs() throws StorageException, IOException, URISyntaxException {
+        container.create();
+        final int length = 128;
+
+        for (int i = 0; i < 20; i++) {
+            BlobTestHelper.uploadNewBlob(container, BlobType.BLOCK_BLOB, "bulk", length, null);
+        }
+
+        BlobTestHelper.uploadNewBlob(container, BlobType.BLOCK_BLOB, "keep", length, null);
+        BlobTestHelper.uploadNewBlob(container, BlobType.BLOCK_BLOB, "bulk", length, null).createSnapshot();
+
+        // A leased blob cannot be deleted without its lease, which is reported rather than stopping the delete.
+        CloudBlob leasedBlob = BlobTestHelper.uploadNewBlob(container, BlobType.BLOCK_BLOB, "bulk", length, null);
+        leasedBlob.acquireLease(null, null);
+
+        BlobRequestOptions options = new BlobRequestOptions();
+        options.setConcurrentRequestCount(4);
+        BlobBulkDeleteResult result = container.deleteBlobs("bulk", DeleteSnapshotsOption.INCLUDE_SNAPSHOTS,
+                options, null);
+
+        assertEquals(21, result.getDeletedCount());
+        assertEquals(1, result.getFailures().size());
+        assertTrue(result.getFailures().containsKey(leasedBlob.getName()));
+
+        int count = 0;
+        for (ListBlobItem item : container.listBlobs(null, true, EnumSet.of(BlobListingDetails.SNAPSHOTS), null,
+                null)) {
+            assertFalse(((CloudBlob) item).isSnapshot());
+            count++;
+        }
+        assertEquals(2, count);
+
+        leasedBlob.breakLease(0);
+    }
+
+    /**
+     * Copy several blobs into a container and wait for the copies to complete
+     * 
+     * @throws URISyntaxException
+     * @throws StorageException
+     * @throws IOException
+     */
+    @Test
+    public void testBlobCopyOrchestrator() throws StorageException, IOException, URISyntaxException {
+        container.create();
+        final int length = 512;
+
+        BlobCopyOrchestrator orchestrator = new BlobCopyOrchestrator(container);
+        orchestrator.setConcurrentStartCount(2);
+        orchestrator.setMinimumPollingIntervalInMs(100);
+        for (int i = 0; i < 5; i++) {
+            CloudBlob source = BlobTestHelper.uploadNewBlob(container, BlobType.BLOCK_BLOB, "source", length, null);
+            orchestrator.addCopy(source, "copies/copy" + i);
+        }
+
+        BlobCopyResult result = orchestrator.run();
+        assertEquals(5, result.getSucceededCount());
+        assertEquals(0, result.getTimedOutCount());
+        assertTrue(result.getFailures().isEmpty());
+
+        for (int i = 0; i < 5; i++) {
+            CopyState copyState = result.getCopyStates().get("copies/copy" + i);
+            assertEquals(CopyStatus.SUCCESS, copyState.getStatus());
+
+            CloudBlockBlob copy = container.getBlockBlobReference("copies/copy" + i);
+            copy.downloadAttributes();
+            assertEquals(length, copy.getProperties().getLength());
+        }
+    }
+
+    /**
+     * Download the attributes of many blobs, listing them where worthwhile
+     * 
+     * @throws URISyntaxException
+     * @throws StorageException
+     * @throws IOException
+     */
+    @Test
+    public void testCloudBlobContainerDownloadBlobAttributes() throws StorageException, IOException,
+            URISyntaxException {
+        container.create();
+        final int length = 64;
+
+        // Enough blobs in a directory to be listed, and a few at the root of the container to be requested one by one.
+        ArrayList<CloudBlob> blobs = new ArrayList<CloudBlob>();
+        for (int i = 0; i < BlobAttributesFetcher.MIN_LISTED_BLOB_COUNT + 4; i++) {
+            CloudBlob blob = BlobTestHelper.uploadNewBlob(container, BlobType.BLOCK_BLOB, "dir/attributes", length
+                    + i, null);
+            blobs.add(container.getBlockBlobReference(blob.getName()));
+        }
+
+        for (int i = 0; i < 3; i++) {
+            CloudBlob blob = BlobTestHelper.uploadNewBlob(container, BlobType.PAGE_BLOB, "root", 512, null);
+            blob.getMetadata().put("key", "value" + i);
+            blob.uploadMetadata();
+            blobs.add(container.getPageBlobReference(blob.getName()));
+        }
+
+        CloudBlob missingListed = container.getBlockBlobReference("dir/missing");
+        CloudBlob missingRequested = container.getBlockBlobReference("missing");
+        blobs.add(missingListed);
+        blobs.add(missingRequested);
+
+        ArrayList<CloudBlob> missingBlobs = container.downloadBlobAttributes(blobs);
+        assertEquals(2, missingBlobs.size());
+        assertTrue(missingBlobs.contains(missingListed));
+        assertTrue(missingBlobs.contains(missingRequested));
+
+        for (int i = 0; i < BlobAttributesFetcher.MIN_LISTED_BLOB_COUNT + 4; i++) {
+            assertEquals(length + i, blobs.get(i).getProperties().getLength());
+            assertNotNull(blobs.get(i).getProperties().getEtag());
+        }
+
+        for (int i = 0; i < 3; i++) {
+            CloudBlob blob = blobs.get(BlobAttributesFetcher.MIN_LISTED_BLOB_COUNT + 4 + i);
+            assertEquals(512, blob.getProperties().getLength());
+            assertEquals("value" + i, blob.getMetadata().get("key"));
+        }
+    }
+
+    /**
+     * List the blobs of a container by partitions of their virtual directories
+     * 
+     * @throws URISyntaxException
+     * @throws StorageException
+     * @throws IOException
+     */
+    @Test
+    public void testBlobPartitionedLister() throws StorageException, IOException, URISyntaxException {
+        container.create();
+
+        final HashSet<String> blobNames = new HashSet<String>();
+        for (String prefix : new String[] { "a/", "a/b/", "c/d/", "e/f/g/", "" }) {
+            for (int i = 0; i < 3; i++) {
+                blobNames.add(BlobTestHelper.uploadNewBlob(container, BlobType.BLOCK_BLOB, prefix + "blob", 16, null)
+                        .getName());
+            }
+        }
+
+        final Set<String> listedNames = Collections.synchronizedSet(new HashSet<String>());
+        BlobListingHandler handler = new BlobListingHandler() {
+            @Override
+            public void handleSegment(String partitionPrefix, List<ListBlobItem> items) throws URISyntaxException {
+                for (ListBlobItem item : items) {
+                    String name = ((CloudBlob) item).getName();
+                    assertTrue(name.startsWith(partitionPrefix));
+                    assertTrue(listedNames.add(name));
+                }
+            }
+        };
+
+        BlobPartitionedLister lister = new BlobPartitionedLister(container, null);
+        lister.setConcurrentPartitionCount(3);
+        assertEquals(blobNames.size(), lister.list(handler));
+        assertEquals(blobNames, listedNames);
+
+        listedNames.clear();
+        lister = new BlobPartitionedLister(container.getDirectoryReference("a"));
+        lister.setPartitionPrefixes(Arrays.asList("a/b/", "a/blob"));
+        lister.setListingDetails(EnumSet.of(BlobListingDetails.SNAPSHOTS));
+        assertEquals(6, lister.list(handler));
+        for (String name : listedNames) {
+            assertTrue(name.startsWith("a/"));
+        }
+    }
+
+    /**
+     * Build, refresh, save and load an inventory of the blobs in a container
+     * 
+     * @throws URISyntaxException
+     * @throws StorageException
+     * @throws IOException
+     */
+    @Test
+    public void testBlobInventory() throws StorageException, IOException, URISyntaxException {
+        container.create();
+        BlobTestHelper.uploadNewBlob(container, BlobType.BLOCK_BLOB, "a/", 16, null);
+        CloudBlob changedBlob = BlobTestHelper.uploadNewBlob(container, BlobType.BLOCK_BLOB, "b/", 16, null);
+        CloudBlob rootBlob = BlobTestHelper.uploadNewBlob(container, BlobType.PAGE_BLOB, "root", 512, null);
+
+        BlobInventory inventory = new BlobInventory(container, null);
+        assertEquals(3, inventory.refresh().size());
+        assertEquals(3, inventory.size());
+        assertEquals(0, inventory.refresh().size());
+
+        File file = File.createTempFile("inventory", ".bin");
+        try {
+            inventory.save(file);
+            inventory = BlobInventory.load(file, container);
+        }
+        finally {
+            file.delete();
+        }
+
+        assertEquals(3, inventory.size());
+        assertEquals(1, inventory.list("a/").size());
+        assertEquals(512, inventory.get(rootBlob.getName()).getLength());
+        assertEquals(BlobType.PAGE_BLOB, inventory.get(rootBlob.getName()).getBlobType());
+        assertEquals(2, inventory.list("a/", "c").size());
+
+        changedBlob.upload(new ByteArrayInputStream(new byte[32]), 32);
+        List<String> changedDirectories = inventory.refresh();
+        assertEquals(1, changedDirectories.size());
+        assertEquals("b/", changedDirectories.get(0));
+        assertEquals(32, inventory.get(changedBlob.getName()).getLength());
+    }
+
     /**
      * @throws StorageException
      * @throws InterruptedException
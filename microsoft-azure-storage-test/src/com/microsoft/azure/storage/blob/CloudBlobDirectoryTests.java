@@ -2,6 +2,9 @@ package com.microsoft.azure.storage.blob;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -817,6 +820,97 @@ public class CloudBlobDirectoryTests {
         assertEquals(parent.getUri(), directory.getUri());
     }
 
+    @Test
+    public void testDirectorySynchronizer() throws URISyntaxException, StorageException, IOException {
+        CloudBlobContainer container = null;
+        File sourceDirectory = createTempDirectory();
+        File targetDirectory = createTempDirectory();
+        try {
+            container = createContainer("/");
+            CloudBlobDirectory directory = container.getDirectoryReference("SyncDir");
+
+            byte[] first = BlobTestHelper.getRandomBuffer(1024);
+            byte[] second = BlobTestHelper.getRandomBuffer(2048);
+            writeFile(new File(sourceDirectory, "first"), first);
+            new File(sourceDirectory, "sub").mkdir();
+            writeFile(new File(sourceDirectory, "sub" + File.separator + "second"), second);
+
+            BlobDirectorySynchronizer uploader = new BlobDirectorySynchronizer(directory, sourceDirectory);
+            uploader.setConcurrentTransferCount(2);
+            BlobDirectorySyncResult result = uploader.upload();
+            assertTrue(result.getFailures().isEmpty());
+            assertEquals(2, result.getTransferredCount());
+            assertEquals(1024 + 2048, result.getBytesTransferred());
+            assertTrue(directory.getBlockBlobReference("sub/second").exists());
+
+            // Nothing changed, so nothing is uploaded again.
+            uploader.setCompareContentMD5(true);
+            result = uploader.upload();
+            assertEquals(0, result.getTransferredCount());
+            assertEquals(2, result.getUnchangedCount());
+
+            BlobDirectorySynchronizer downloader = new BlobDirectorySynchronizer(directory, targetDirectory);
+            result = downloader.download();
+            assertTrue(result.getFailures().isEmpty());
+            assertEquals(2, result.getTransferredCount());
+            assertArrayEquals(second, readFile(new File(targetDirectory, "sub" + File.separator + "second")));
+
+            result = downloader.download();
+            assertEquals(0, result.getTransferredCount());
+            assertEquals(2, result.getUnchangedCount());
+
+            // Files removed locally are deleted from the blob directory.
+            new File(sourceDirectory, "first").delete();
+            uploader.setDeleteExtraneous(true);
+            result = uploader.upload();
+            assertEquals(1, result.getDeletedCount());
+            assertFalse(directory.getBlockBlobReference("first").exists());
+        }
+        finally {
+            if (container != null) {
+                container.deleteIfExists();
+            }
+
+            deleteRecursively(sourceDirectory);
+            deleteRecursively(targetDirectory);
+        }
+    }
+
+    private static File createTempDirectory() throws IOException {
+        File directory = File.createTempFile("syncDir", "");
+        directory.delete();
+        directory.mkdir();
+        return directory;
+    }
+
+    private static void writeFile(File file, byte[] content) throws IOException {
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.write(content);
+        fos.close();
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] content = new byte[(int) file.length()];
+        FileInputStream fis = new FileInputStream(file);
+        int read = 0;
+        while (read < content.length) {
+            read += fis.read(content, read, content.length - read);
+        }
+        fis.close();
+        return content;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+
+        file.delete();
+    }
+
     private static CloudBlobContainer createAndPopulateContainer(String delimiter) throws URISyntaxException,
             StorageException {
         CloudBlobContainer container = createContainer(delimiter);
@@ -21,11 +21,14 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.EnumSet;
@@ -34,6 +37,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import junit.framework.Assert;
 
@@ -48,12 +56,15 @@ import com.microsoft.azure.storage.OperationContext;
 import com.microsoft.azure.storage.RetryNoRetry;
 import com.microsoft.azure.storage.SendingRequestEvent;
 import com.microsoft.azure.storage.StorageCredentialsSharedAccessSignature;
+import com.microsoft.azure.storage.StorageErrorCodeStrings;
 import com.microsoft.azure.storage.StorageEvent;
 import com.microsoft.azure.storage.StorageException;
 import com.microsoft.azure.storage.TestRunners.CloudTests;
 import com.microsoft.azure.storage.TestRunners.DevFabricTests;
 import com.microsoft.azure.storage.TestRunners.DevStoreTests;
 import com.microsoft.azure.storage.TestRunners.SlowTests;
+import com.microsoft.azure.storage.core.Base64;
+import com.microsoft.azure.storage.core.SR;
 import com.microsoft.azure.storage.core.Utility;
 
 /**
@@ -354,6 +365,288 @@ public class CloudBlockBlobTests {
         assertEquals(length, blockBlobRef.getProperties().getLength());
     }
 
+    @Test
+    @Category({ DevFabricTests.class, DevStoreTests.class })
+    public void testBlobDownloadRangeWithRangeCache() throws URISyntaxException, StorageException, IOException {
+        final int length = 1024;
+        final CloudBlockBlob blob = container.getBlockBlobReference(BlobTestHelper
+                .generateRandomBlobNameWithPrefix("testBlockBlob"));
+        byte[] buffer = BlobTestHelper.getRandomBuffer(length);
+        blob.upload(new ByteArrayInputStream(buffer), length);
+
+        final File cacheDirectory = File.createTempFile("rangecache", null);
+        cacheDirectory.delete();
+        final BlobRangeCache rangeCache = new BlobRangeCache(cacheDirectory, 64 * Constants.KB);
+        blob.getServiceClient().setRangeCache(rangeCache);
+
+        try {
+            // The first read populates the cache, the second is revalidated and served from disk.
+            for (int i = 0; i < 2; i++) {
+                ByteArrayOutputStream downloadStream = new ByteArrayOutputStream();
+                blob.downloadRange(100, (long) 200, downloadStream);
+                assertArrayEquals(Arrays.copyOfRange(buffer, 100, 300), downloadStream.toByteArray());
+            }
+
+            assertEquals(1, rangeCache.getMissCount());
+            assertEquals(1, rangeCache.getHitCount());
+            assertEquals(200, rangeCache.getBytesSaved());
+
+            // A modified blob invalidates the cached range.
+            buffer = BlobTestHelper.getRandomBuffer(length);
+            blob.upload(new ByteArrayInputStream(buffer), length);
+
+            ByteArrayOutputStream downloadStream = new ByteArrayOutputStream();
+            blob.downloadRange(100, (long) 200, downloadStream);
+            assertArrayEquals(Arrays.copyOfRange(buffer, 100, 300), downloadStream.toByteArray());
+            assertEquals(2, rangeCache.getMissCount());
+            assertEquals(1, rangeCache.getHitCount());
+
+            // Ranges read by a blob input stream are served from the cache by later streams.
+            for (int i = 0; i < 2; i++) {
+                BlobInputStream inputStream = blob.openInputStream();
+                byte[] readBuffer = new byte[length];
+                assertEquals(length, inputStream.read(readBuffer));
+                inputStream.close();
+                assertArrayEquals(buffer, readBuffer);
+            }
+
+            assertEquals(3, rangeCache.getMissCount());
+            assertEquals(2, rangeCache.getHitCount());
+        }
+        finally {
+            blob.getServiceClient().setRangeCache(null);
+            rangeCache.clear();
+            cacheDirectory.delete();
+        }
+    }
+
+    @Test
+    @Category({ DevFabricTests.class, DevStoreTests.class })
+    public void testBlobReadCoalescing() throws URISyntaxException, StorageException, IOException,
+            InterruptedException, ExecutionException {
+        final int length = 1024;
+        final CloudBlockBlob blob = container.getBlockBlobReference(BlobTestHelper
+                .generateRandomBlobNameWithPrefix("testBlockBlob"));
+        final byte[] buffer = BlobTestHelper.getRandomBuffer(length);
+        blob.upload(new ByteArrayInputStream(buffer), length);
+
+        final CloudBlobClient client = blob.getServiceClient();
+        client.setReadCoalescingEnabled(true);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final BlobReadCoalescer readCoalescer = client.getReadCoalescer();
+            final List<Future<byte[]>> reads = new ArrayList<Future<byte[]>>();
+            for (int i = 0; i < 8; i++) {
+                reads.add(executor.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws Exception {
+                        final CloudBlockBlob reader = container.getBlockBlobReference(blob.getName());
+                        final byte[] readBuffer = new byte[length];
+                        assertEquals(length, reader.downloadToByteArray(readBuffer, 0));
+                        assertEquals(length, reader.getProperties().getLength());
+                        return readBuffer;
+                    }
+                }));
+            }
+
+            for (final Future<byte[]> read : reads) {
+                assertArrayEquals(buffer, read.get());
+            }
+
+            assertEquals(8, readCoalescer.getRequestCount() + readCoalescer.getCoalescedCount());
+
+            // Reads of different ranges are not coalesced.
+            final byte[] rangeBuffer = new byte[100];
+            assertEquals(100, blob.downloadRangeToByteArray(100, (long) 100, rangeBuffer, 0));
+            assertArrayEquals(Arrays.copyOfRange(buffer, 100, 200), rangeBuffer);
+
+            // A buffer too small for the content fails as an uncoalesced download would.
+            try {
+                blob.downloadToByteArray(new byte[length / 2], 0);
+                fail();
+            }
+            catch (StorageException ex) {
+                assertEquals(SR.CONTENT_LENGTH_MISMATCH, ex.getMessage());
+            }
+
+            blob.downloadAttributes();
+            assertEquals(length, blob.getProperties().getLength());
+        }
+        finally {
+            executor.shutdown();
+            client.setReadCoalescingEnabled(false);
+        }
+
+        assertNull(client.getReadCoalescer());
+    }
+
+    @Test
+    @Category({ DevFabricTests.class, DevStoreTests.class })
+    public void testBlobContentCache() throws URISyntaxException, StorageException, IOException {
+        final CloudBlockBlob blob = container.getBlockBlobReference(BlobTestHelper
+                .generateRandomBlobNameWithPrefix("testBlockBlob"));
+        blob.uploadText("manifest-v1");
+
+        final CloudBlobClient client = blob.getServiceClient();
+        final BlobContentCache contentCache = new BlobContentCache(1024 * 1024, 60 * 1000);
+        client.setContentCache(contentCache);
+        try {
+            final CloudBlockBlob reader = container.getBlockBlobReference(blob.getName());
+            assertEquals("manifest-v1", reader.downloadText());
+            assertEquals(1, contentCache.getMissCount());
+
+            // A fresh cached copy is served without a request.
+            OperationContext opContext = new OperationContext();
+            assertEquals("manifest-v1", reader.downloadText(null, null, null, opContext));
+            assertEquals(1, contentCache.getHitCount());
+            assertEquals(0, opContext.getRequestResults().size());
+            assertEquals(blob.getProperties().getEtag(), reader.getProperties().getEtag());
+
+            // A write made through the same client invalidates the cached copy.
+            blob.uploadText("manifest-v2");
+            assertEquals(0, contentCache.getCurrentSizeInBytes());
+            assertEquals("manifest-v2", reader.downloadText());
+            assertEquals(2, contentCache.getMissCount());
+
+            final byte[] buffer = new byte[100];
+            assertEquals(11, reader.downloadToByteArray(buffer, 0));
+            assertEquals("manifest-v2", new String(buffer, 0, 11));
+            assertEquals(2, contentCache.getHitCount());
+        }
+        finally {
+            client.setContentCache(null);
+        }
+
+        // Once the time to live elapses, the cached copy is revalidated.
+        final BlobContentCache revalidatingCache = new BlobContentCache(1024 * 1024, 0);
+        client.setContentCache(revalidatingCache);
+        try {
+            final CloudBlockBlob reader = container.getBlockBlobReference(blob.getName());
+            assertEquals("manifest-v2", reader.downloadText());
+            assertEquals("manifest-v2", reader.downloadText());
+            assertEquals(1, revalidatingCache.getMissCount());
+            assertEquals(1, revalidatingCache.getRevalidationCount());
+            assertEquals(0, revalidatingCache.getHitCount());
+            assertEquals(11, reader.getProperties().getLength());
+        }
+        finally {
+            client.setContentCache(null);
+        }
+    }
+
+    @Test
+    @Category({ DevFabricTests.class, DevStoreTests.class })
+    public void testBlobUploadDownloadByteBuffer() throws URISyntaxException, StorageException, IOException {
+        final int length = 3 * Constants.MB;
+        final byte[] buffer = BlobTestHelper.getRandomBuffer(length);
+        final ByteBuffer source = ByteBuffer.allocateDirect(length + 16);
+        source.position(16);
+        source.put(buffer);
+        source.position(16);
+
+        final CloudBlockBlob blob = container.getBlockBlobReference(BlobTestHelper
+                .generateRandomBlobNameWithPrefix("testBlockBlob"));
+        final BlobRequestOptions options = new BlobRequestOptions();
+        options.setStoreBlobContentMD5(true);
+        options.setUseTransactionalContentMD5(true);
+
+        // Upload as blocks, since the buffer is larger than the single put threshold.
+        options.setSingleBlobPutThresholdInBytes(Constants.MB);
+        blob.setStreamWriteSizeInBytes(Constants.MB);
+        blob.upload(source, null, options, null);
+        assertEquals(16, source.position());
+        assertEquals(3, blob.downloadBlockList().size());
+
+        final ByteBuffer target = ByteBuffer.allocateDirect(length);
+        assertEquals(length, blob.downloadRange(0, target));
+        assertEquals(length, target.position());
+        target.flip();
+        assertEquals(ByteBuffer.wrap(buffer), target);
+
+        blob.downloadAttributes();
+        assertEquals(Utility.calculateMD5(ByteBuffer.wrap(buffer)), blob.getProperties().getContentMD5());
+
+        // A range past the end of the blob reads up to the end.
+        final ByteBuffer tail = ByteBuffer.allocateDirect(1024);
+        assertEquals(100, blob.downloadRange(length - 100, tail));
+        tail.flip();
+        assertEquals(ByteBuffer.wrap(buffer, length - 100, 100), tail);
+
+        // A full buffer reads nothing.
+        assertEquals(0, blob.downloadRange(0, target));
+
+        // Upload in a single put.
+        final ByteBuffer small = ByteBuffer.wrap(buffer, 0, 1024).slice();
+        blob.upload(small, null, options, null);
+        assertEquals(0, blob.downloadBlockList().size());
+        final ByteBuffer smallTarget = ByteBuffer.allocate(1024);
+        assertEquals(1024, blob.downloadRange(0, smallTarget, null, options, null));
+        smallTarget.flip();
+        assertEquals(small, smallTarget);
+
+        // Upload a single block.
+        final String blockId = Base64.encode(Utility.getBytesFromLong(1));
+        blob.uploadBlock(blockId, small, null, options, null);
+        final ArrayList<BlockEntry> blocks = blob.downloadBlockList(BlockListingFilter.UNCOMMITTED, null, null,
+                null);
+        assertEquals(1, blocks.size());
+        assertEquals(1024, blocks.get(0).getSize());
+    }
+
+    @Test
+    @Category({ DevFabricTests.class, DevStoreTests.class })
+    public void testBlobAttributeCache() throws URISyntaxException, StorageException, IOException {
+        final CloudBlockBlob blob = container.getBlockBlobReference(BlobTestHelper
+                .generateRandomBlobNameWithPrefix("testBlockBlob"));
+        final CloudBlobClient client = blob.getServiceClient();
+        final BlobAttributeCache attributeCache = new BlobAttributeCache(100, 60 * 1000, 60 * 1000);
+        client.setAttributeCache(attributeCache);
+        try {
+            // Blobs which do not exist are cached as well.
+            assertFalse(blob.exists());
+            OperationContext opContext = new OperationContext();
+            assertFalse(container.getBlockBlobReference(blob.getName()).exists(null, null, opContext));
+            assertEquals(0, opContext.getRequestResults().size());
+            try {
+                container.getBlockBlobReference(blob.getName()).downloadAttributes();
+                fail();
+            }
+            catch (StorageException ex) {
+                assertEquals(HttpURLConnection.HTTP_NOT_FOUND, ex.getHttpStatusCode());
+                assertEquals(StorageErrorCodeStrings.BLOB_NOT_FOUND, ex.getErrorCode());
+            }
+
+            // A write made through the same client invalidates the cached attributes.
+            blob.getMetadata().put("version", "1");
+            blob.uploadText("content");
+            assertTrue(blob.exists());
+
+            final CloudBlockBlob reader = container.getBlockBlobReference(blob.getName());
+            opContext = new OperationContext();
+            reader.downloadAttributes(null, null, opContext);
+            assertEquals(0, opContext.getRequestResults().size());
+            assertEquals("1", reader.getMetadata().get("version"));
+            assertEquals(blob.getProperties().getEtag(), reader.getProperties().getEtag());
+
+            blob.getMetadata().put("version", "2");
+            blob.uploadMetadata();
+            reader.downloadAttributes();
+            assertEquals("2", reader.getMetadata().get("version"));
+
+            // Reads with access conditions are not cached.
+            final long missCount = attributeCache.getMissCount();
+            assertTrue(reader.exists(AccessCondition.generateIfMatchCondition(blob.getProperties().getEtag()), null,
+                    null));
+            assertEquals(missCount, attributeCache.getMissCount());
+
+            blob.delete();
+            assertFalse(reader.exists());
+        }
+        finally {
+            client.setAttributeCache(null);
+        }
+    }
+
     @Test
     @Category({ DevFabricTests.class, DevStoreTests.class })
     public void testDownloadBlockList() throws URISyntaxException, StorageException, IOException {
@@ -483,6 +776,34 @@ public class CloudBlockBlobTests {
         assertTrue(context.getRequestResults().size() <= 2);
     }
 
+    @Test
+    @Category({ DevFabricTests.class, DevStoreTests.class })
+    public void testBlobUploadFromUnknownLengthStream() throws URISyntaxException, StorageException, IOException {
+        final CloudBlockBlob blockBlobRef = container.getBlockBlobReference(BlobTestHelper
+                .generateRandomBlobNameWithPrefix("testBlockBlob"));
+        blockBlobRef.setStreamWriteSizeInBytes(64 * Constants.KB);
+
+        // A stream which ends within the first block is sent with a single put.
+        byte[] buffer = BlobTestHelper.getRandomBuffer(16 * Constants.KB);
+        OperationContext context = new OperationContext();
+        blockBlobRef.upload(new NonMarkableInputStream(buffer), -1, null, null, context);
+        assertEquals(1, context.getRequestResults().size());
+
+        byte[] result = new byte[buffer.length];
+        blockBlobRef.downloadToByteArray(result, 0);
+        assertArrayEquals(buffer, result);
+        assertEquals(0, blockBlobRef.downloadBlockList().size());
+
+        // A longer stream continues as a block upload from the first block already read.
+        buffer = BlobTestHelper.getRandomBuffer(200 * Constants.KB);
+        blockBlobRef.upload(new NonMarkableInputStream(buffer), -1);
+
+        result = new byte[buffer.length];
+        blockBlobRef.downloadToByteArray(result, 0);
+        assertArrayEquals(buffer, result);
+        assertEquals(4, blockBlobRef.downloadBlockList().size());
+    }
+
     @Test
     @Category({ DevFabricTests.class, DevStoreTests.class })
     public void testUploadDownloadBlobProperties() throws URISyntaxException, StorageException, IOException {
@@ -864,6 +1185,220 @@ public class CloudBlockBlobTests {
         }
     }
 
+    @Test
+    @Category({ DevFabricTests.class, DevStoreTests.class })
+    public void testBlobOutputStreamContentMD5() throws URISyntaxException, StorageException, IOException {
+        final int length = 200 * Constants.KB;
+        byte[] buffer = BlobTestHelper.getRandomBuffer(length);
+
+        CloudBlockBlob blockBlob = container.getBlockBlobReference(BlobTestHelper
+                .generateRandomBlobNameWithPrefix("testblob"));
+        blockBlob.setStreamWriteSizeInBytes(16 * Constants.KB);
+
+        BlobRequestOptions options = new BlobRequestOptions();
+        options.setStoreBlobContentMD5(true);
+        options.setUseTransactionalContentMD5(true);
+        options.setConcurrentRequestCount(4);
+
+        // Write in chunks which do not line up with the blocks, the blob MD5 must still cover them in order.
+        BlobOutputStream blobOutputStream = blockBlob.openOutputStream(null, options, null);
+        for (int offset = 0; offset < length; offset += 7000) {
+            blobOutputStream.write(buffer, offset, Math.min(7000, length - offset));
+        }
+        blobOutputStream.close();
+
+        CloudBlockBlob blockBlob2 = container.getBlockBlobReference(blockBlob.getName());
+        blockBlob2.downloadAttributes();
+        assertEquals(Utility.calculateMD5(ByteBuffer.wrap(buffer)), blockBlob2.getProperties().getContentMD5());
+
+        byte[] result = new byte[length];
+        blockBlob2.downloadToByteArray(result, 0);
+        assertArrayEquals(buffer, result);
+    }
+
+    @Test
+    @Category({ DevFabricTests.class, DevStoreTests.class })
+    public void testBlobOutputStreamWithBufferPool() throws URISyntaxException, StorageException, IOException {
+        final int blockSize = 16 * Constants.KB;
+        final int length = 10 * blockSize + 100;
+        byte[] buffer = BlobTestHelper.getRandomBuffer(length);
+
+        CloudBlockBlob blockBlob = container.getBlockBlobReference(BlobTestHelper
+                .generateRandomBlobNameWithPrefix("testblob"));
+        blockBlob.setStreamWriteSizeInBytes(blockSize);
+
+        // Only two blocks may be buffered at a time, writes wait for uploads to return their buffers.
+        final BlobBufferPool bufferPool = new BlobBufferPool(2 * blockSize);
+        blockBlob.getServiceClient().setBufferPool(bufferPool);
+
+        try {
+            BlobRequestOptions options = new BlobRequestOptions();
+            options.setConcurrentRequestCount(4);
+
+            BlobOutputStream blobOutputStream = blockBlob.openOutputStream(null, options, null);
+            blobOutputStream.write(buffer);
+            blobOutputStream.close();
+
+            assertEquals(0, bufferPool.getInUseSizeInBytes());
+            assertTrue(bufferPool.getIdleSizeInBytes() <= bufferPool.getMaximumSizeInBytes());
+
+            byte[] result = new byte[length];
+            blockBlob.downloadToByteArray(result, 0);
+            assertArrayEquals(buffer, result);
+            assertEquals(11, blockBlob.downloadBlockList().size());
+        }
+        finally {
+            blockBlob.getServiceClient().setBufferPool(null);
+        }
+    }
+
+    @Test
+    @Category({ DevFabricTests.class, DevStoreTests.class })
+    public void testBlobOutputStreamFailureReturnsPooledBuffers() throws URISyntaxException, StorageException {
+        final int blockSize = 16 * Constants.KB;
+        byte[] buffer = BlobTestHelper.getRandomBuffer(10 * blockSize);
+
+        // The container is never created, so every block upload fails while later blocks are still queued.
+        final CloudBlobContainer missingContainer = BlobTestHelper.getRandomContainerReference();
+        CloudBlockBlob blockBlob = missingContainer.getBlockBlobReference(BlobTestHelper
+                .generateRandomBlobNameWithPrefix("testblob"));
+        blockBlob.setStreamWriteSizeInBytes(blockSize);
+
+        final BlobBufferPool bufferPool = new BlobBufferPool(4 * blockSize);
+        blockBlob.getServiceClient().setBufferPool(bufferPool);
+
+        try {
+            BlobRequestOptions options = new BlobRequestOptions();
+            options.setConcurrentRequestCount(1);
+            options.setRetryPolicyFactory(RetryNoRetry.getInstance());
+
+            BlobOutputStream blobOutputStream = blockBlob.openOutputStream(null, options, null);
+            try {
+                blobOutputStream.write(buffer);
+                blobOutputStream.close();
+                fail();
+            }
+            catch (IOException e) {
+                try {
+                    blobOutputStream.close();
+                }
+                catch (IOException closeException) {
+                    // The stream is already faulted or closed.
+                }
+            }
+
+            assertEquals(0, bufferPool.getInUseSizeInBytes());
+        }
+        finally {
+            blockBlob.getServiceClient().setBufferPool(null);
+        }
+    }
+
+    @Test
+    @Category({ DevFabricTests.class, DevStoreTests.class })
+    public void testBlobTransferManager() throws URISyntaxException, StorageException, IOException {
+        final int blockSize = 16 * Constants.KB;
+        final int length = 10 * blockSize;
+        byte[] buffer = BlobTestHelper.getRandomBuffer(length);
+
+        CloudBlockBlob blockBlob = container.getBlockBlobReference(BlobTestHelper
+                .generateRandomBlobNameWithPrefix("testblob"));
+        blockBlob.setStreamWriteSizeInBytes(blockSize);
+
+        // At most two requests are in flight for the client, whatever the concurrent request count of the stream.
+        final BlobTransferManager transferManager = new BlobTransferManager(2, 0);
+        blockBlob.getServiceClient().setTransferManager(transferManager);
+
+        try {
+            BlobRequestOptions options = new BlobRequestOptions();
+            options.setConcurrentRequestCount(4);
+            OperationContext uploadContext = new OperationContext();
+
+            BlobOutputStream blobOutputStream = blockBlob.openOutputStream(null, options, uploadContext);
+            blobOutputStream.write(buffer);
+            blobOutputStream.close();
+
+            BlobTransferStatistics statistics = transferManager.getTransferStatistics(uploadContext);
+            assertEquals(TransferPriority.INTERACTIVE, statistics.getPriority());
+            assertEquals(10, statistics.getCompletedRequestCount());
+            assertEquals(length, statistics.getBytesTransferred());
+            assertEquals(0, statistics.getInFlightRequestCount());
+            assertEquals(0, transferManager.getInFlightRequestCount());
+            assertEquals(0, transferManager.getActiveTransfers().size());
+
+            options = new BlobRequestOptions();
+            options.setTransferPriority(TransferPriority.BULK);
+            OperationContext downloadContext = new OperationContext();
+
+            ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+            blockBlob.downloadRange(0, (long) length, outStream, null, options, downloadContext);
+            assertArrayEquals(buffer, outStream.toByteArray());
+
+            statistics = transferManager.getTransferStatistics(downloadContext);
+            assertEquals(TransferPriority.BULK, statistics.getPriority());
+            assertEquals(1, statistics.getCompletedRequestCount());
+            assertEquals(length, statistics.getBytesTransferred());
+
+            // Single put uploads and whole blob downloads are scheduled as well.
+            OperationContext putContext = new OperationContext();
+            blockBlob.upload(new ByteArrayInputStream(buffer), length, null, null, putContext);
+            statistics = transferManager.getTransferStatistics(putContext);
+            assertEquals(1, statistics.getCompletedRequestCount());
+            assertEquals(length, statistics.getBytesTransferred());
+
+            OperationContext streamContext = new OperationContext();
+            outStream = new ByteArrayOutputStream();
+            blockBlob.download(outStream, null, null, streamContext);
+            assertArrayEquals(buffer, outStream.toByteArray());
+            statistics = transferManager.getTransferStatistics(streamContext);
+            assertEquals(1, statistics.getCompletedRequestCount());
+            assertEquals(length, statistics.getBytesTransferred());
+
+            OperationContext arrayContext = new OperationContext();
+            byte[] downloadBuffer = new byte[length];
+            assertEquals(length, blockBlob.downloadToByteArray(downloadBuffer, 0, null, null, arrayContext));
+            assertArrayEquals(buffer, downloadBuffer);
+            statistics = transferManager.getTransferStatistics(arrayContext);
+            assertEquals(1, statistics.getCompletedRequestCount());
+            assertEquals(length, statistics.getBytesTransferred());
+            assertEquals(0, transferManager.getActiveTransfers().size());
+        }
+        finally {
+            blockBlob.getServiceClient().setTransferManager(null);
+        }
+    }
+
+    @Test
+    @Category({ DevFabricTests.class, DevStoreTests.class })
+    public void testBlobUploadWithAdaptiveBlockSize() throws URISyntaxException, StorageException, IOException {
+        final int minimumBlockSize = 16 * Constants.KB;
+        final int length = 3 * Constants.MB;
+        byte[] buffer = BlobTestHelper.getRandomBuffer(length);
+
+        CloudBlockBlob blockBlob = container.getBlockBlobReference(BlobTestHelper
+                .generateRandomBlobNameWithPrefix("testblob"));
+        blockBlob.setStreamWriteSizeInBytes(minimumBlockSize);
+
+        BlobRequestOptions options = new BlobRequestOptions();
+        options.setSingleBlobPutThresholdInBytes(Constants.MB);
+        options.setUseAdaptiveBlockSize(true);
+        blockBlob.upload(new ByteArrayInputStream(buffer), length, null, options, null);
+
+        byte[] result = new byte[length];
+        blockBlob.downloadToByteArray(result, 0);
+        assertArrayEquals(buffer, result);
+
+        ArrayList<BlockEntry> blockList = blockBlob.downloadBlockList();
+        assertTrue(blockList.size() <= length / minimumBlockSize);
+
+        long totalSize = 0;
+        for (BlockEntry block : blockList) {
+            assertTrue(block.getSize() <= 4 * Constants.MB);
+            totalSize += block.getSize();
+        }
+        assertEquals(length, totalSize);
+    }
+
     @Test
     @Category({ DevFabricTests.class, DevStoreTests.class })
     public void testUploadFromByteArray() throws Exception {
@@ -944,6 +1479,209 @@ public class CloudBlockBlobTests {
         }
     }
 
+    @Test
+    @Category({ DevFabricTests.class, DevStoreTests.class })
+    public void testUploadFromFileResumable() throws IOException, StorageException, URISyntaxException {
+        final int blockSize = 16 * Constants.KB;
+        final int fileSize = 5 * blockSize + 100;
+        final CloudBlockBlob blob = container.getBlockBlobReference(BlobTestHelper
+                .generateRandomBlobNameWithPrefix("testblob"));
+        blob.setStreamWriteSizeInBytes(blockSize);
+
+        File sourceFile = File.createTempFile("sourceFile", ".tmp");
+        File journalFile = new File(sourceFile.getAbsolutePath() + ".uploadjournal");
+
+        try {
+            byte[] buffer = BlobTestHelper.getRandomBuffer(fileSize);
+            FileOutputStream fos = new FileOutputStream(sourceFile);
+            fos.write(buffer);
+            fos.close();
+
+            BlobRequestOptions options = new BlobRequestOptions();
+            options.setRetryPolicyFactory(new RetryNoRetry());
+
+            // Interrupt the first attempt when it commits the block list, after every block was uploaded.
+            final ArrayList<String> putBlockRequests = new ArrayList<String>();
+            OperationContext failingContext = new OperationContext();
+            failingContext.getSendingRequestEventHandler().addListener(new StorageEvent<SendingRequestEvent>() {
+                @Override
+                public void eventOccurred(SendingRequestEvent eventArg) {
+                    HttpURLConnection connection = (HttpURLConnection) eventArg.getConnectionObject();
+                    if (connection.getURL().getQuery().contains("blockid=")) {
+                        putBlockRequests.add(connection.getURL().getQuery());
+                    }
+                    else if ("PUT".equals(connection.getRequestMethod())
+                            && connection.getURL().getQuery().contains("comp=blocklist")) {
+                        throw new RuntimeException("Interrupted commit");
+                    }
+                }
+            });
+
+            try {
+                blob.uploadFromFileResumable(sourceFile.getAbsolutePath(), null, options, failingContext);
+                fail();
+            }
+            catch (StorageException ex) {
+                assertTrue(journalFile.exists());
+            }
+            assertEquals(6, putBlockRequests.size());
+
+            // The resumed upload finds every block among the uncommitted blocks and only commits.
+            putBlockRequests.clear();
+            OperationContext resumeContext = new OperationContext();
+            resumeContext.getSendingRequestEventHandler().addListener(new StorageEvent<SendingRequestEvent>() {
+                @Override
+                public void eventOccurred(SendingRequestEvent eventArg) {
+                    HttpURLConnection connection = (HttpURLConnection) eventArg.getConnectionObject();
+                    if (connection.getURL().getQuery().contains("blockid=")) {
+                        putBlockRequests.add(connection.getURL().getQuery());
+                    }
+                }
+            });
+
+            blob.uploadFromFileResumable(sourceFile.getAbsolutePath(), null, options, resumeContext);
+            assertEquals(0, putBlockRequests.size());
+            assertFalse(journalFile.exists());
+
+            byte[] result = new byte[fileSize];
+            blob.downloadToByteArray(result, 0);
+            assertArrayEquals(buffer, result);
+            assertEquals(6, blob.downloadBlockList().size());
+        }
+        finally {
+            sourceFile.delete();
+            journalFile.delete();
+        }
+    }
+
+    @Test
+    @Category({ DevFabricTests.class, DevStoreTests.class })
+    public void testUploadFromFileDelta() throws IOException, StorageException, URISyntaxException {
+        final int fileSize = 6 * Constants.MB;
+        final CloudBlockBlob blob = container.getBlockBlobReference(BlobTestHelper
+                .generateRandomBlobNameWithPrefix("testblob"));
+
+        File sourceFile = File.createTempFile("sourceFile", ".tmp");
+
+        try {
+            byte[] buffer = BlobTestHelper.getRandomBuffer(fileSize);
+            FileOutputStream fos = new FileOutputStream(sourceFile);
+            fos.write(buffer);
+            fos.close();
+
+            assertEquals(fileSize, blob.uploadFromFileDelta(sourceFile.getAbsolutePath()));
+
+            // An unchanged file reuses every committed block.
+            assertEquals(0, blob.uploadFromFileDelta(sourceFile.getAbsolutePath()));
+
+            // An edit in the middle of the file only uploads the chunks around it.
+            byte[] edited = new byte[fileSize + 10];
+            System.arraycopy(buffer, 0, edited, 0, 3 * Constants.MB);
+            System.arraycopy(buffer, 3 * Constants.MB, edited, 3 * Constants.MB + 10, fileSize - 3 * Constants.MB);
+            fos = new FileOutputStream(sourceFile);
+            fos.write(edited);
+            fos.close();
+
+            long uploaded = blob.uploadFromFileDelta(sourceFile.getAbsolutePath());
+            assertTrue(uploaded > 0);
+            assertTrue(uploaded < fileSize);
+
+            byte[] result = new byte[edited.length];
+            blob.downloadToByteArray(result, 0);
+            assertArrayEquals(edited, result);
+        }
+        finally {
+            sourceFile.delete();
+        }
+    }
+
+    @Test
+    @Category({ DevFabricTests.class, DevStoreTests.class })
+    public void testDownloadToFileResumable() throws IOException, StorageException, URISyntaxException {
+        final int fileSize = 2 * 4 * Constants.MB + 100;
+        final CloudBlockBlob blob = container.getBlockBlobReference(BlobTestHelper
+                .generateRandomBlobNameWithPrefix("testblob"));
+        byte[] buffer = BlobTestHelper.getRandomBuffer(fileSize);
+        blob.uploadFromByteArray(buffer, 0, fileSize);
+
+        File destinationFile = File.createTempFile("destinationFile", ".tmp");
+        File checkpointFile = new File(destinationFile.getAbsolutePath() + ".downloadcheckpoint");
+
+        try {
+            BlobRequestOptions options = new BlobRequestOptions();
+            options.setRetryPolicyFactory(new RetryNoRetry());
+            options.setConcurrentRequestCount(1);
+
+            // Interrupt the download after the first range.
+            this.downloadToFileInterrupted(blob, destinationFile, options, 1);
+            assertTrue(checkpointFile.exists());
+
+            // The resumed download only fetches the two remaining ranges.
+            assertEquals(2, this.downloadToFileCountingRanges(blob, destinationFile, options));
+            assertFalse(checkpointFile.exists());
+
+            FileInputStream fis = new FileInputStream(destinationFile);
+            byte[] readBuffer = new byte[fileSize];
+            assertEquals(fileSize, fis.read(readBuffer));
+            fis.close();
+            assertArrayEquals(buffer, readBuffer);
+
+            // A blob changed since the interruption is downloaded from the start.
+            this.downloadToFileInterrupted(blob, destinationFile, options, 1);
+            blob.getMetadata().put("key", "value");
+            blob.uploadMetadata();
+            assertEquals(3, this.downloadToFileCountingRanges(blob, destinationFile, options));
+            assertFalse(checkpointFile.exists());
+        }
+        finally {
+            destinationFile.delete();
+            checkpointFile.delete();
+        }
+    }
+
+    private void downloadToFileInterrupted(CloudBlob blob, File destinationFile, BlobRequestOptions options,
+            final int completedRanges) throws IOException {
+        final ArrayList<Boolean> rangeRequests = new ArrayList<Boolean>();
+        OperationContext failingContext = new OperationContext();
+        failingContext.getSendingRequestEventHandler().addListener(new StorageEvent<SendingRequestEvent>() {
+            @Override
+            public void eventOccurred(SendingRequestEvent eventArg) {
+                HttpURLConnection connection = (HttpURLConnection) eventArg.getConnectionObject();
+                if ("GET".equals(connection.getRequestMethod())) {
+                    rangeRequests.add(true);
+                    if (rangeRequests.size() > completedRanges) {
+                        throw new RuntimeException("Interrupted download");
+                    }
+                }
+            }
+        });
+
+        try {
+            blob.downloadToFileResumable(destinationFile.getAbsolutePath(), null, options, failingContext);
+            fail();
+        }
+        catch (StorageException ex) {
+            assertEquals(completedRanges + 1, rangeRequests.size());
+        }
+    }
+
+    private int downloadToFileCountingRanges(CloudBlob blob, File destinationFile, BlobRequestOptions options)
+            throws IOException, StorageException {
+        final ArrayList<Boolean> rangeRequests = new ArrayList<Boolean>();
+        OperationContext countingContext = new OperationContext();
+        countingContext.getSendingRequestEventHandler().addListener(new StorageEvent<SendingRequestEvent>() {
+            @Override
+            public void eventOccurred(SendingRequestEvent eventArg) {
+                if ("GET".equals(((HttpURLConnection) eventArg.getConnectionObject()).getRequestMethod())) {
+                    rangeRequests.add(true);
+                }
+            }
+        });
+
+        blob.downloadToFileResumable(destinationFile.getAbsolutePath(), null, options, countingContext);
+        return rangeRequests.size();
+    }
+
     @Test
     @Category({ DevFabricTests.class, DevStoreTests.class })
     public void testUploadDownloadFromText() throws URISyntaxException, StorageException, IOException {
@@ -1275,4 +2013,15 @@ public class CloudBlockBlobTests {
         destination.delete();
         source.delete();
     }
+
+    private static final class NonMarkableInputStream extends FilterInputStream {
+        private NonMarkableInputStream(final byte[] buffer) {
+            super(new ByteArrayInputStream(buffer));
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
 }
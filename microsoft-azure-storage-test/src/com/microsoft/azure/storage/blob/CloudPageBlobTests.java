@@ -24,6 +24,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
@@ -748,6 +749,44 @@ public class CloudPageBlobTests {
         }
     }
 
+    @Test
+    public void testUploadPagesFromByteBuffer() throws URISyntaxException, StorageException, IOException {
+        int blobLengthToUse = 8 * 512;
+        byte[] buffer = BlobTestHelper.getRandomBuffer(4 * 512);
+
+        String blobName = BlobTestHelper.generateRandomBlobNameWithPrefix("testblob");
+        final CloudPageBlob blobRef = container.getPageBlobReference(blobName);
+        blobRef.create(blobLengthToUse);
+
+        final ByteBuffer data = ByteBuffer.allocateDirect(buffer.length);
+        data.put(buffer);
+        data.flip();
+
+        BlobRequestOptions options = new BlobRequestOptions();
+        options.setUseTransactionalContentMD5(true);
+        blobRef.uploadPages(data, 2 * 512, null, options, null);
+        assertEquals(0, data.position());
+
+        byte[] result = new byte[blobLengthToUse];
+        blobRef.downloadToByteArray(result, 0);
+        for (int i = 0; i < 2 * 512; i++) {
+            assertEquals(0, result[i]);
+        }
+
+        for (int i = 0; i < 4 * 512; i++) {
+            assertEquals(buffer[i], result[i + 2 * 512]);
+        }
+
+        data.limit(256);
+        try {
+            blobRef.uploadPages(data, 0);
+            fail("Did not throw expected exception on non-512-byte-aligned length");
+        }
+        catch (IllegalArgumentException ex) {
+            assertEquals(SR.INVALID_PAGE_BLOB_LENGTH, ex.getMessage());
+        }
+    }
+
     @Test
     public void testClearPages() throws URISyntaxException, StorageException, IOException {
         int blobLengthToUse = 8 * 512;
@@ -855,6 +894,129 @@ public class CloudPageBlobTests {
         }
     }
 
+    @Test
+    public void testUploadSparse() throws StorageException, URISyntaxException, IOException {
+        int blobLengthToUse = 16 * 512;
+        byte[] buffer = new byte[blobLengthToUse];
+
+        // Only pages 0 and 3-5 hold data.
+        byte[] data = BlobTestHelper.getRandomBuffer(4 * 512);
+        System.arraycopy(data, 0, buffer, 0, 512);
+        System.arraycopy(data, 512, buffer, 3 * 512, 3 * 512);
+
+        String blobName = BlobTestHelper.generateRandomBlobNameWithPrefix("testblob");
+        final CloudPageBlob blobRef = container.getPageBlobReference(blobName);
+        blobRef.setStreamWriteSizeInBytes(2 * 512);
+
+        long skipped = blobRef.uploadSparse(new ByteArrayInputStream(buffer), blobLengthToUse);
+        assertEquals(12 * 512, skipped);
+
+        ArrayList<PageRange> actualPageRanges = blobRef.downloadPageRanges();
+        assertEquals(2, actualPageRanges.size());
+        assertEquals(0, actualPageRanges.get(0).getStartOffset());
+        assertEquals(512 - 1, actualPageRanges.get(0).getEndOffset());
+        assertEquals(3 * 512, actualPageRanges.get(1).getStartOffset());
+        assertEquals(6 * 512 - 1, actualPageRanges.get(1).getEndOffset());
+
+        byte[] result = new byte[blobLengthToUse];
+        blobRef.downloadToByteArray(result, 0);
+        assertArrayEquals(buffer, result);
+    }
+
+    @Test
+    public void testDownloadToFileSparse() throws StorageException, URISyntaxException, IOException {
+        int blobLengthToUse = 16 * 512;
+        byte[] buffer = BlobTestHelper.getRandomBuffer(4 * 512);
+
+        String blobName = BlobTestHelper.generateRandomBlobNameWithPrefix("testblob");
+        final CloudPageBlob blobRef = container.getPageBlobReference(blobName);
+        blobRef.create(blobLengthToUse);
+        blobRef.uploadPages(new ByteArrayInputStream(buffer), 0, 512);
+        blobRef.uploadPages(new ByteArrayInputStream(buffer, 512, 3 * 512), 3 * 512, 3 * 512);
+
+        byte[] expected = new byte[blobLengthToUse];
+        System.arraycopy(buffer, 0, expected, 0, 512);
+        System.arraycopy(buffer, 512, expected, 3 * 512, 3 * 512);
+
+        File destinationFile = File.createTempFile("destinationFile", ".tmp");
+        try {
+            // Previous content of the file must not survive in the holes.
+            FileOutputStream fos = new FileOutputStream(destinationFile);
+            fos.write(BlobTestHelper.getRandomBuffer(blobLengthToUse));
+            fos.close();
+
+            assertEquals(4 * 512, blobRef.downloadToFileSparse(destinationFile.getAbsolutePath()));
+            assertEquals(blobLengthToUse, destinationFile.length());
+
+            byte[] result = new byte[blobLengthToUse];
+            FileInputStream fis = new FileInputStream(destinationFile);
+            int read = 0;
+            while (read < result.length) {
+                read += fis.read(result, read, result.length - read);
+            }
+            fis.close();
+
+            assertArrayEquals(expected, result);
+        }
+        finally {
+            destinationFile.delete();
+        }
+    }
+
+    @Test
+    public void testDownloadDiffToFile() throws StorageException, URISyntaxException, IOException {
+        int blobLengthToUse = 16 * 512;
+        byte[] buffer = BlobTestHelper.getRandomBuffer(6 * 512);
+
+        String blobName = BlobTestHelper.generateRandomBlobNameWithPrefix("testblob");
+        final CloudPageBlob blobRef = container.getPageBlobReference(blobName);
+        blobRef.create(blobLengthToUse);
+
+        // The snapshot holds data in pages 0-3 and 12.
+        blobRef.uploadPages(new ByteArrayInputStream(buffer, 0, 4 * 512), 0, 4 * 512);
+        blobRef.uploadPages(new ByteArrayInputStream(buffer, 4 * 512, 512), 12 * 512, 512);
+        CloudPageBlob snapshot = (CloudPageBlob) blobRef.createSnapshot();
+
+        // Clear page 0, change page 2 and write page 8; page 12 is left as it was.
+        blobRef.clearPages(0, 512);
+        blobRef.uploadPages(new ByteArrayInputStream(buffer, 5 * 512, 512), 2 * 512, 512);
+        blobRef.uploadPages(new ByteArrayInputStream(buffer, 5 * 512, 512), 8 * 512, 512);
+
+        ArrayList<PageRange> diff = blobRef.downloadPageRangesDiff(snapshot.getSnapshotID());
+        assertEquals(3, diff.size());
+        assertEquals(0, diff.get(0).getStartOffset());
+        assertEquals(4 * 512 - 1, diff.get(0).getEndOffset());
+        assertEquals(8 * 512, diff.get(1).getStartOffset());
+        assertEquals(9 * 512 - 1, diff.get(1).getEndOffset());
+        assertEquals(12 * 512, diff.get(2).getStartOffset());
+        assertEquals(13 * 512 - 1, diff.get(2).getEndOffset());
+
+        File destinationFile = File.createTempFile("destinationFile", ".tmp");
+        try {
+            snapshot.downloadToFileSparse(destinationFile.getAbsolutePath());
+
+            // Pages 1-3, page 8 and the cleared page 0 are written, the unchanged page 12 is not.
+            assertEquals(5 * 512,
+                    blobRef.downloadDiffToFile(destinationFile.getAbsolutePath(), snapshot.getSnapshotID(), true));
+
+            byte[] expected = new byte[blobLengthToUse];
+            blobRef.downloadToByteArray(expected, 0);
+
+            byte[] result = new byte[blobLengthToUse];
+            FileInputStream fis = new FileInputStream(destinationFile);
+            int read = 0;
+            while (read < result.length) {
+                read += fis.read(result, read, result.length - read);
+            }
+            fis.close();
+
+            assertArrayEquals(expected, result);
+        }
+        finally {
+            destinationFile.delete();
+        }
+    }
+
     @Test
     public void testUploadDownloadBlobProperties() throws URISyntaxException, StorageException, IOException {
         final int length = 512;
@@ -249,7 +249,7 @@ public final class AccessCondition {
      * @return The ETag when the <i>If-Match</i> condition is set; otherwise, null.
      */
     public String getIfMatch() {
-        return this.ifMatchHeaderType.equals(Constants.HeaderConstants.IF_MATCH) ? this.etag : null;
+        return Constants.HeaderConstants.IF_MATCH.equals(this.ifMatchHeaderType) ? this.etag : null;
     }
 
     /**
@@ -267,7 +267,7 @@ public final class AccessCondition {
      * @return The ETag when the If-None-Match condition is set; otherwise, null.
      */
     public String getIfNoneMatch() {
-        return this.ifMatchHeaderType.equals(Constants.HeaderConstants.IF_NONE_MATCH) ? this.etag : null;
+        return Constants.HeaderConstants.IF_NONE_MATCH.equals(this.ifMatchHeaderType) ? this.etag : null;
     }
 
     /**
@@ -51,6 +51,11 @@ public abstract class RequestOptions {
      */
     private Long operationExpiryTime;
 
+    /**
+     * The number of segments of a listing fetched ahead of the segment being iterated.
+     */
+    private Integer segmentPrefetchDepth;
+
     /**
      * Creates an instance of the <code>RequestOptions</code> class.
      */
@@ -72,6 +77,7 @@ public abstract class RequestOptions {
             this.setLocationMode(other.getLocationMode());
             this.setMaximumExecutionTimeInMs(other.getMaximumExecutionTimeInMs());
             this.setOperationExpiryTimeInMs(other.getOperationExpiryTimeInMs());
+            this.setSegmentPrefetchDepth(other.getSegmentPrefetchDepth());
         }
     }
 
@@ -91,6 +97,10 @@ public abstract class RequestOptions {
             modifiedOptions.setLocationMode(LocationMode.PRIMARY_ONLY);
         }
 
+        if (modifiedOptions.getSegmentPrefetchDepth() == null) {
+            modifiedOptions.setSegmentPrefetchDepth(0);
+        }
+
         return modifiedOptions;
     }
 
@@ -115,6 +125,10 @@ public abstract class RequestOptions {
             modifiedOptions.setMaximumExecutionTimeInMs(clientOptions.getMaximumExecutionTimeInMs());
         }
 
+        if (modifiedOptions.getSegmentPrefetchDepth() == null) {
+            modifiedOptions.setSegmentPrefetchDepth(clientOptions.getSegmentPrefetchDepth());
+        }
+
         if (modifiedOptions.getMaximumExecutionTimeInMs() != null
                 && modifiedOptions.getOperationExpiryTimeInMs() == null && setStartTime) {
             modifiedOptions.setOperationExpiryTimeInMs(new Date().getTime()
@@ -182,6 +196,16 @@ public abstract class RequestOptions {
         return this.operationExpiryTime;
     }
 
+    /**
+     * Gets the number of segments fetched ahead when iterating a listing. For more information about segment
+     * prefetching, see {@link #setSegmentPrefetchDepth(Integer)}.
+     * 
+     * @return The number of segments fetched ahead of the segment being iterated.
+     */
+    public Integer getSegmentPrefetchDepth() {
+        return this.segmentPrefetchDepth;
+    }
+
     /**
      * Sets the RetryPolicyFactory object to use for this request.
      * <p>
@@ -256,6 +280,30 @@ public abstract class RequestOptions {
         this.maximumExecutionTimeInMs = maximumExecutionTimeInMs;
     }
 
+    /**
+     * Sets the number of segments fetched ahead when iterating a listing.
+     * <p>
+     * The iterables returned by listing operations, such as listing blobs, containers or queues or executing a table
+     * query, fetch one segment of results at a time. When the prefetch depth is greater than 0, the following segments
+     * are fetched on a background thread, up to that number ahead, while the caller processes the current one. An error
+     * fetching a segment is thrown by the iterator once the segments fetched before it have been consumed.
+     * <p>
+     * The default prefetch depth is set in the client and is by default 0, which fetches each segment only once the
+     * previous one has been consumed. You can change the prefetch depth on this request by setting this property. You
+     * can also change the value on the {@link ServiceClient#getDefaultRequestOptions()} object so that all subsequent
+     * requests made via the service client will use the prefetch depth.
+     * 
+     * @param segmentPrefetchDepth
+     *            The number of segments to fetch ahead of the segment being iterated.
+     */
+    public void setSegmentPrefetchDepth(final Integer segmentPrefetchDepth) {
+        if (segmentPrefetchDepth != null) {
+            Utility.assertGreaterThanOrEqual("segmentPrefetchDepth", segmentPrefetchDepth, 0);
+        }
+
+        this.segmentPrefetchDepth = segmentPrefetchDepth;
+    }
+
     /**
      * RESERVED FOR INTERNAL USE.
      * 
@@ -0,0 +1,34 @@
+/**
+ * Copyright Microsoft Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage;
+
+/**
+ * Receives the results of a streaming listing operation, one at a time, as they are read from the response.
+ * 
+ * @param <T>
+ *            The type of the results received.
+ */
+public interface ResultConsumer<T> {
+    /**
+     * Receives a result.
+     * 
+     * @param result
+     *            The result read from the response.
+     * 
+     * @throws Exception
+     *             If the result could not be handled, which stops the listing operation.
+     */
+    void accept(T result) throws Exception;
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright Microsoft Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage.blob;
+
+import com.microsoft.azure.storage.Constants;
+
+/**
+ * RESERVED FOR INTERNAL USE. Picks the size of each block written by a {@link BlobOutputStream} when adaptive block
+ * sizing is enabled.
+ * <p>
+ * Blocks are never smaller than the stream write size of the blob nor larger than the maximum block size. Within these
+ * bounds the size grows so that the blob fits within the maximum number of blocks, given the expected length when it is
+ * known or progressively when it is not, and so that a block takes about {@link #TARGET_BLOCK_UPLOAD_TIME_IN_MS} to
+ * upload at the throughput measured for the blocks uploaded so far.
+ */
+final class AdaptiveBlockSizePolicy {
+    /**
+     * The maximum number of blocks a block blob may be committed with.
+     */
+    static final int MAX_BLOCK_COUNT = 50000;
+
+    /**
+     * The number of blocks after which the block size is doubled when the length of the blob is not known.
+     */
+    static final int BLOCK_COUNT_PER_SIZE_STEP = 5000;
+
+    /**
+     * The time a single block should take to upload at the measured throughput.
+     */
+    static final long TARGET_BLOCK_UPLOAD_TIME_IN_MS = 1000;
+
+    /**
+     * The granularity block sizes are rounded up to, which limits the number of distinct buffer sizes.
+     */
+    static final int BLOCK_SIZE_GRANULARITY = 64 * Constants.KB;
+
+    /**
+     * Holds the smallest block size to use, the stream write size of the blob.
+     */
+    private final int minimumBlockSize;
+
+    /**
+     * Holds the expected length of the blob, or -1 if unknown.
+     */
+    private long expectedLength = -1;
+
+    /**
+     * Holds the number of blocks dispatched so far.
+     */
+    private int blockCount;
+
+    /**
+     * Holds the number of bytes dispatched so far.
+     */
+    private long dispatchedBytes;
+
+    /**
+     * Holds the moving average of the per-block upload throughput, in bytes per millisecond, or -1 if not yet measured.
+     */
+    private double bytesPerMs = -1;
+
+    /**
+     * Creates an instance of the <code>AdaptiveBlockSizePolicy</code> class.
+     *
+     * @param minimumBlockSize
+     *            An <code>int</code> which represents the smallest block size to use.
+     */
+    AdaptiveBlockSizePolicy(final int minimumBlockSize) {
+        this.minimumBlockSize = minimumBlockSize;
+    }
+
+    /**
+     * Sets the expected length of the blob.
+     *
+     * @param expectedLength
+     *            A <code>long</code> which represents the expected length of the blob in bytes, or -1 if unknown.
+     */
+    synchronized void setExpectedLength(final long expectedLength) {
+        this.expectedLength = expectedLength;
+    }
+
+    /**
+     * Records a dispatched block.
+     *
+     * @param length
+     *            An <code>int</code> which represents the length of the block in bytes.
+     */
+    synchronized void recordDispatch(final int length) {
+        this.blockCount++;
+        this.dispatchedBytes += length;
+    }
+
+    /**
+     * Records the time a block took to upload.
+     *
+     * @param length
+     *            An <code>int</code> which represents the length of the block in bytes.
+     * @param elapsedMs
+     *            A <code>long</code> which represents the time the upload took, in milliseconds.
+     */
+    synchronized void recordUpload(final int length, final long elapsedMs) {
+        final double sample = (double) length / Math.max(elapsedMs, 1);
+        this.bytesPerMs = this.bytesPerMs < 0 ? sample : 0.7 * this.bytesPerMs + 0.3 * sample;
+    }
+
+    /**
+     * Gets the size of the next block.
+     *
+     * @return An <code>int</code> which represents the size of the next block in bytes.
+     */
+    synchronized int getNextBlockSize() {
+        long size = this.minimumBlockSize;
+
+        // Keep the blob within the maximum block count.
+        if (this.expectedLength >= 0) {
+            final long remainingBlocks = Math.max(MAX_BLOCK_COUNT - this.blockCount, 1);
+            final long remainingBytes = Math.max(this.expectedLength - this.dispatchedBytes, 0);
+            size = Math.max(size, (remainingBytes + remainingBlocks - 1) / remainingBlocks);
+        }
+        else {
+            final int steps = Math.min(this.blockCount / BLOCK_COUNT_PER_SIZE_STEP, 30);
+            size = Math.max(size, (long) this.minimumBlockSize << steps);
+        }
+
+        // Amortize the per-request overhead on fast links.
+        if (this.bytesPerMs > 0) {
+            size = Math.max(size, (long) (this.bytesPerMs * TARGET_BLOCK_UPLOAD_TIME_IN_MS));
+        }
+
+        if (size > this.minimumBlockSize) {
+            size = (size + BLOCK_SIZE_GRANULARITY - 1) / BLOCK_SIZE_GRANULARITY * BLOCK_SIZE_GRANULARITY;
+        }
+
+        return (int) Math.min(size, BlobConstants.MAX_COMMIT_SIZE_4_MB);
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright Microsoft Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage.blob;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.microsoft.azure.storage.core.Utility;
+
+/**
+ * RESERVED FOR INTERNAL USE. Limits the combined rate of the transfers sharing it.
+ * <p>
+ * Each transfer reserves a time slot proportional to the number of bytes it moves, starting when the previous
+ * reservation ends, and sleeps until its slot begins. Transfers are throttled through the streams returned by
+ * {@link #wrap(InputStream)} and {@link #wrap(OutputStream)}.
+ */
+final class BandwidthThrottle {
+    /**
+     * Holds the maximum number of bytes per second, or 0 if the rate is not limited.
+     */
+    private final long maximumBytesPerSecond;
+
+    /**
+     * Holds the time, in nanoseconds, at which the last reservation ends.
+     */
+    private long nextAvailableNanos = System.nanoTime();
+
+    /**
+     * Creates an instance of the <code>BandwidthThrottle</code> class.
+     *
+     * @param maximumBytesPerSecond
+     *            A <code>long</code> which represents the maximum number of bytes per second, or 0 if the rate is not
+     *            limited.
+     */
+    BandwidthThrottle(final long maximumBytesPerSecond) {
+        this.maximumBytesPerSecond = maximumBytesPerSecond;
+    }
+
+    /**
+     * Waits until the specified number of bytes may be transferred.
+     *
+     * @param byteCount
+     *            A <code>long</code> which represents the number of bytes to transfer.
+     *
+     * @throws IOException
+     *             If the thread was interrupted while waiting.
+     */
+    void acquire(final long byteCount) throws IOException {
+        if (this.maximumBytesPerSecond <= 0 || byteCount <= 0) {
+            return;
+        }
+
+        final long waitNanos;
+        synchronized (this) {
+            final long now = System.nanoTime();
+            final long start = Math.max(now, this.nextAvailableNanos);
+            this.nextAvailableNanos = start + byteCount * 1000000000L / this.maximumBytesPerSecond;
+            waitNanos = start - now;
+        }
+
+        if (waitNanos > 0) {
+            try {
+                Thread.sleep(waitNanos / 1000000L, (int) (waitNanos % 1000000L));
+            }
+            catch (final InterruptedException e) {
+                throw Utility.initIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Wraps a stream so that reads from it are throttled.
+     *
+     * @param stream
+     *            An <code>InputStream</code> object which represents the stream to throttle.
+     *
+     * @return An <code>InputStream</code> object which reads from the stream at the throttled rate.
+     */
+    InputStream wrap(final InputStream stream) {
+        if (this.maximumBytesPerSecond <= 0) {
+            return stream;
+        }
+
+        return new FilterInputStream(stream) {
+            @Override
+            public int read() throws IOException {
+                final int value = super.read();
+                if (value >= 0) {
+                    BandwidthThrottle.this.acquire(1);
+                }
+
+                return value;
+            }
+
+            @Override
+            public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+                final int count = super.read(buffer, offset, length);
+                BandwidthThrottle.this.acquire(count);
+                return count;
+            }
+        };
+    }
+
+    /**
+     * Wraps a stream so that writes to it are throttled.
+     *
+     * @param stream
+     *            An <code>OutputStream</code> object which represents the stream to throttle.
+     *
+     * @return An <code>OutputStream</code> object which writes to the stream at the throttled rate.
+     */
+    OutputStream wrap(final OutputStream stream) {
+        if (this.maximumBytesPerSecond <= 0) {
+            return stream;
+        }
+
+        return new FilterOutputStream(stream) {
+            @Override
+            public void write(final int value) throws IOException {
+                BandwidthThrottle.this.acquire(1);
+                this.out.write(value);
+            }
+
+            @Override
+            public void write(final byte[] buffer, final int offset, final int length) throws IOException {
+                BandwidthThrottle.this.acquire(length);
+                this.out.write(buffer, offset, length);
+            }
+        };
+    }
+}
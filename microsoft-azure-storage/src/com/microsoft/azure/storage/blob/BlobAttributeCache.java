@@ -0,0 +1,330 @@
+/**
+ * Copyright Microsoft Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage.blob;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.microsoft.azure.storage.AccessCondition;
+import com.microsoft.azure.storage.core.Utility;
+
+/**
+ * Represents an in-memory cache of blob properties and metadata, shared by the blobs of a {@link CloudBlobClient}.
+ * <p>
+ * Once set on a {@link CloudBlobClient} via {@link CloudBlobClient#setAttributeCache(BlobAttributeCache)}, the
+ * attributes retrieved by {@link CloudBlob#downloadAttributes} and {@link CloudBlob#exists} without access conditions
+ * are kept in memory, keyed by the blob URI and snapshot ID, and are served to any blob reference of the client for
+ * the time to live of the cache. Blobs found not to exist are cached as well, for a separate time to live, so that
+ * <code>exists</code> returns <code>false</code> and <code>downloadAttributes</code> fails with a
+ * <i>BlobNotFound</i> error without contacting the service. When the cache holds more than its maximum number of
+ * blobs the least recently used ones are evicted.
+ * <p>
+ * Writes made through the same client remove the blob from the cache, as does a download returning a different ETag
+ * than the cached one. Writes made through other clients are only observed once the cached attributes expire. The
+ * attributes of a blob whose copy is pending are never cached, since the copy state changes without any write.
+ */
+public final class BlobAttributeCache {
+    /**
+     * Holds the maximum number of blobs the cache may hold.
+     */
+    private final int maximumEntryCount;
+
+    /**
+     * Holds the time, in milliseconds, the attributes of an existing blob are cached.
+     */
+    private final long timeToLiveInMs;
+
+    /**
+     * Holds the time, in milliseconds, a blob found not to exist is cached.
+     */
+    private final long notFoundTimeToLiveInMs;
+
+    /**
+     * Holds the cache entries, keyed by attributes key, in least recently used order.
+     */
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+
+    /**
+     * Holds the number of invalidations, so that a request which started before a write is not cached after it.
+     */
+    private long invalidationCount;
+
+    /**
+     * Holds the number of reads served from the cache.
+     */
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /**
+     * Holds the number of reads which had to be served from the service.
+     */
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Creates an instance of the <code>BlobAttributeCache</code> class using the specified maximum number of blobs
+     * and times to live.
+     *
+     * @param maximumEntryCount
+     *            An <code>int</code> which represents the maximum number of blobs the cache may hold.
+     * @param timeToLiveInMs
+     *            A <code>long</code> which represents the time, in milliseconds, the attributes of an existing blob
+     *            are cached.
+     * @param notFoundTimeToLiveInMs
+     *            A <code>long</code> which represents the time, in milliseconds, a blob found not to exist is cached.
+     *            If 0, blobs which do not exist are not cached.
+     */
+    public BlobAttributeCache(final int maximumEntryCount, final long timeToLiveInMs,
+            final long notFoundTimeToLiveInMs) {
+        Utility.assertGreaterThanOrEqual("maximumEntryCount", maximumEntryCount, 1);
+        Utility.assertGreaterThanOrEqual("timeToLiveInMs", timeToLiveInMs, 0);
+        Utility.assertGreaterThanOrEqual("notFoundTimeToLiveInMs", notFoundTimeToLiveInMs, 0);
+
+        this.maximumEntryCount = maximumEntryCount;
+        this.timeToLiveInMs = timeToLiveInMs;
+        this.notFoundTimeToLiveInMs = notFoundTimeToLiveInMs;
+    }
+
+    /**
+     * Gets the maximum number of blobs the cache may hold.
+     *
+     * @return An <code>int</code> which represents the maximum number of cached blobs.
+     */
+    public int getMaximumEntryCount() {
+        return this.maximumEntryCount;
+    }
+
+    /**
+     * Gets the time the attributes of an existing blob are cached.
+     *
+     * @return A <code>long</code> which represents the time to live, in milliseconds.
+     */
+    public long getTimeToLiveInMs() {
+        return this.timeToLiveInMs;
+    }
+
+    /**
+     * Gets the time a blob found not to exist is cached.
+     *
+     * @return A <code>long</code> which represents the time to live of blobs which do not exist, in milliseconds.
+     */
+    public long getNotFoundTimeToLiveInMs() {
+        return this.notFoundTimeToLiveInMs;
+    }
+
+    /**
+     * Gets the number of blobs currently held by the cache, including expired ones which were not yet evicted.
+     *
+     * @return An <code>int</code> which represents the number of cached blobs.
+     */
+    public synchronized int getEntryCount() {
+        return this.entries.size();
+    }
+
+    /**
+     * Gets the number of reads that were served from the cache.
+     *
+     * @return A <code>long</code> which represents the number of cache hits.
+     */
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    /**
+     * Gets the number of reads that had to be served from the service.
+     *
+     * @return A <code>long</code> which represents the number of cache misses.
+     */
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    /**
+     * Removes all blobs from the cache.
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+        this.invalidationCount++;
+    }
+
+    /**
+     * Gets the invalidation count, which must be read before a request whose result is passed to
+     * {@link #put(String, long, BlobProperties, HashMap)} or {@link #putNotFound(String, long)}.
+     *
+     * @return A <code>long</code> which represents the number of invalidations so far.
+     */
+    synchronized long getInvalidationCount() {
+        return this.invalidationCount;
+    }
+
+    /**
+     * Gets the unexpired cached attributes of a blob and marks them as the most recently used.
+     *
+     * @param attributesKey
+     *            A <code>String</code> which represents the key of the blob.
+     *
+     * @return A {@link CacheEntry} object which represents the cached attributes, or <code>null</code> if the blob is
+     *         not cached or its attributes have expired.
+     */
+    synchronized CacheEntry get(final String attributesKey) {
+        final CacheEntry entry = this.entries.get(attributesKey);
+        if (entry != null && System.currentTimeMillis() >= entry.expiresAt) {
+            this.entries.remove(attributesKey);
+            return null;
+        }
+
+        return entry;
+    }
+
+    /**
+     * Stores the attributes of an existing blob, unless it was invalidated while they were retrieved or a copy to the
+     * blob is pending.
+     *
+     * @param attributesKey
+     *            A <code>String</code> which represents the key of the blob.
+     * @param invalidationCount
+     *            A <code>long</code> which represents the invalidation count read before the request started.
+     * @param properties
+     *            A {@link BlobProperties} object which represents the properties of the blob.
+     * @param metadata
+     *            A <code>java.util.HashMap</code> object which represents the metadata of the blob.
+     */
+    synchronized void put(final String attributesKey, final long invalidationCount,
+            final BlobProperties properties, final HashMap<String, String> metadata) {
+        final CopyState copyState = properties.getCopyState();
+        if (copyState != null && copyState.getStatus() == CopyStatus.PENDING) {
+            return;
+        }
+
+        if (invalidationCount == this.invalidationCount && this.timeToLiveInMs > 0) {
+            this.add(attributesKey, new CacheEntry(properties, metadata, this.timeToLiveInMs));
+        }
+    }
+
+    /**
+     * Records a blob found not to exist, unless it was invalidated while the request was made.
+     *
+     * @param attributesKey
+     *            A <code>String</code> which represents the key of the blob.
+     * @param invalidationCount
+     *            A <code>long</code> which represents the invalidation count read before the request started.
+     */
+    synchronized void putNotFound(final String attributesKey, final long invalidationCount) {
+        if (invalidationCount == this.invalidationCount && this.notFoundTimeToLiveInMs > 0) {
+            this.add(attributesKey, new CacheEntry(null, null, this.notFoundTimeToLiveInMs));
+        }
+    }
+
+    /**
+     * Removes a blob from the cache, and prevents requests in progress from caching stale attributes.
+     *
+     * @param attributesKey
+     *            A <code>String</code> which represents the key of the blob.
+     */
+    synchronized void invalidate(final String attributesKey) {
+        this.entries.remove(attributesKey);
+        this.invalidationCount++;
+    }
+
+    /**
+     * Removes a blob from the cache if a response reported a different ETag than the cached one.
+     *
+     * @param attributesKey
+     *            A <code>String</code> which represents the key of the blob.
+     * @param etag
+     *            A <code>String</code> which represents the ETag returned by the service.
+     */
+    synchronized void invalidateIfChanged(final String attributesKey, final String etag) {
+        final CacheEntry entry = this.entries.get(attributesKey);
+        if (entry != null
+                && (entry.properties == null || (!Utility.isNullOrEmpty(etag) && !etag.equals(entry.properties
+                        .getEtag())))) {
+            this.invalidate(attributesKey);
+        }
+    }
+
+    /**
+     * Records a read which was served from the cache.
+     */
+    void recordHit() {
+        this.hitCount.incrementAndGet();
+    }
+
+    /**
+     * Records a read which had to be served from the service.
+     */
+    void recordMiss() {
+        this.missCount.incrementAndGet();
+    }
+
+    /**
+     * Adds an entry and evicts the least recently used blobs if the cache is full.
+     */
+    private void add(final String attributesKey, final CacheEntry entry) {
+        this.entries.put(attributesKey, entry);
+
+        final Iterator<CacheEntry> iterator = this.entries.values().iterator();
+        while (this.entries.size() > this.maximumEntryCount && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Gets the cache key of a blob.
+     *
+     * @param blob
+     *            A {@link CloudBlob} object that represents the blob.
+     *
+     * @return A <code>String</code> which represents the key of the blob.
+     */
+    static String getAttributesKey(final CloudBlob blob) {
+        return blob.getStorageUri().getPrimaryUri().toString() + "\n"
+                + (blob.getSnapshotID() == null ? "" : blob.getSnapshotID());
+    }
+
+    /**
+     * Determines whether a request with the specified access condition may be served from the cache. Only requests
+     * without any condition, including a lease ID, are cacheable.
+     *
+     * @param accessCondition
+     *            An {@link AccessCondition} object that represents the access conditions of the request.
+     *
+     * @return <code>true</code> if the request may use the cache; otherwise, <code>false</code>.
+     */
+    static boolean isCacheableCondition(final AccessCondition accessCondition) {
+        return BlobRangeCache.isCacheableCondition(accessCondition)
+                && (accessCondition == null || accessCondition.getLeaseID() == null);
+    }
+
+    /**
+     * RESERVED FOR INTERNAL USE. Represents the cached attributes of a blob, or a blob found not to exist if its
+     * properties are <code>null</code>.
+     */
+    static final class CacheEntry {
+        final BlobProperties properties;
+
+        final HashMap<String, String> metadata;
+
+        private final long expiresAt;
+
+        private CacheEntry(final BlobProperties properties, final HashMap<String, String> metadata,
+                final long timeToLiveInMs) {
+            this.properties = properties == null ? null : new BlobProperties(properties);
+            this.metadata = metadata == null ? null : new HashMap<String, String>(metadata);
+            this.expiresAt = System.currentTimeMillis() + timeToLiveInMs;
+        }
+    }
+}
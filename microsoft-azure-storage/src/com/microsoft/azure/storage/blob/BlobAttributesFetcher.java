@@ -0,0 +1,315 @@
+/**
+ * Copyright Microsoft Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage.blob;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.microsoft.azure.storage.Constants;
+import com.microsoft.azure.storage.DoesServiceRequest;
+import com.microsoft.azure.storage.OperationContext;
+import com.microsoft.azure.storage.ResultContinuation;
+import com.microsoft.azure.storage.ResultSegment;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.core.SR;
+import com.microsoft.azure.storage.core.Utility;
+
+/**
+ * RESERVED FOR INTERNAL USE. Downloads the attributes of many blobs of a container, listing them rather than
+ * requesting the properties of each blob.
+ * <p>
+ * The blobs are grouped by the first directory of their names, and each group is listed under the longest prefix
+ * common to its names, from the start of that prefix to the last name of the group. A group with only a few blobs, or
+ * whose listing turns out to hold few of them, is fetched with a request per blob instead, several at a time.
+ */
+final class BlobAttributesFetcher {
+    /**
+     * The smallest number of blobs of a group, or matched in a listing segment, for which listing is worthwhile.
+     */
+    static final int MIN_LISTED_BLOB_COUNT = 16;
+
+    private BlobAttributesFetcher() {
+        // No instances.
+    }
+
+    /**
+     * Downloads the properties and metadata of the specified blobs of a container.
+     *
+     * @param container
+     *            A {@link CloudBlobContainer} object which represents the container of the blobs.
+     * @param blobs
+     *            An <code>Iterable</code> of the {@link CloudBlob} objects whose attributes are downloaded.
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies the options for the requests, with the defaults
+     *            applied.
+     * @param opContext
+     *            An {@link OperationContext} object that represents the context for the current operation.
+     *
+     * @return An <code>ArrayList</code> of the {@link CloudBlob} objects which do not exist.
+     *
+     * @throws StorageException
+     *             If a storage service error occurred.
+     * @throws URISyntaxException
+     *             If a blob URI is invalid.
+     */
+    @DoesServiceRequest
+    static ArrayList<CloudBlob> downloadAttributes(final CloudBlobContainer container,
+            final Iterable<? extends CloudBlob> blobs, final BlobRequestOptions options,
+            final OperationContext opContext) throws StorageException, URISyntaxException {
+        return downloadAttributes(container, blobs, EnumSet.of(BlobListingDetails.METADATA), options, opContext);
+    }
+
+    /**
+     * Downloads the properties and metadata of the specified blobs of a container, including the specified details
+     * when listing them.
+     *
+     * @param container
+     *            A {@link CloudBlobContainer} object which represents the container of the blobs.
+     * @param blobs
+     *            An <code>Iterable</code> of the {@link CloudBlob} objects whose attributes are downloaded.
+     * @param listingDetails
+     *            A <code>java.util.EnumSet</code> object that contains {@link BlobListingDetails} values that indicate
+     *            the details included when listing the blobs. Snapshots are included as needed.
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies the options for the requests, with the defaults
+     *            applied.
+     * @param opContext
+     *            An {@link OperationContext} object that represents the context for the current operation.
+     *
+     * @return An <code>ArrayList</code> of the {@link CloudBlob} objects which do not exist.
+     *
+     * @throws StorageException
+     *             If a storage service error occurred.
+     * @throws URISyntaxException
+     *             If a blob URI is invalid.
+     */
+    @DoesServiceRequest
+    static ArrayList<CloudBlob> downloadAttributes(final CloudBlobContainer container,
+            final Iterable<? extends CloudBlob> blobs, final EnumSet<BlobListingDetails> listingDetails,
+            final BlobRequestOptions options, final OperationContext opContext) throws StorageException,
+            URISyntaxException {
+        // Several references, for instance to a blob and to its snapshots, may share a name.
+        final TreeMap<String, ArrayList<CloudBlob>> pendingBlobs = new TreeMap<String, ArrayList<CloudBlob>>();
+        boolean includeSnapshots = false;
+        for (final CloudBlob blob : blobs) {
+            Utility.assertNotNull("blob", blob);
+            if (!container.getName().equals(blob.getContainer().getName())) {
+                throw new IllegalArgumentException(String.format(SR.BLOB_NOT_IN_CONTAINER, blob.getName(),
+                        container.getName()));
+            }
+
+            ArrayList<CloudBlob> references = pendingBlobs.get(blob.getName());
+            if (references == null) {
+                references = new ArrayList<CloudBlob>();
+                pendingBlobs.put(blob.getName(), references);
+            }
+
+            references.add(blob);
+            includeSnapshots |= blob.isSnapshot();
+        }
+
+        final EnumSet<BlobListingDetails> groupListingDetails = EnumSet.copyOf(listingDetails);
+        if (includeSnapshots) {
+            groupListingDetails.add(BlobListingDetails.SNAPSHOTS);
+        }
+
+        final String delimiter = container.getServiceClient().getDirectoryDelimiter();
+        final ArrayList<CloudBlob> missingBlobs = new ArrayList<CloudBlob>();
+        final ArrayList<CloudBlob> remainingBlobs = new ArrayList<CloudBlob>();
+
+        while (!pendingBlobs.isEmpty()) {
+            final String firstName = pendingBlobs.firstKey();
+            final int delimiterIndex = firstName.indexOf(delimiter);
+            final SortedMap<String, ArrayList<CloudBlob>> group;
+            if (delimiterIndex >= 0) {
+                // The blobs of the same top level directory.
+                group = pendingBlobs.subMap(firstName, firstName.substring(0, delimiterIndex + delimiter.length())
+                        + Character.MAX_VALUE);
+            }
+            else {
+                // The blobs at the root of the container, up to the next one in a directory.
+                String nextDirectoryName = null;
+                for (final String name : pendingBlobs.keySet()) {
+                    if (name.contains(delimiter)) {
+                        nextDirectoryName = name;
+                        break;
+                    }
+                }
+
+                group = nextDirectoryName == null ? pendingBlobs : pendingBlobs.headMap(nextDirectoryName);
+            }
+
+            if (group.size() < MIN_LISTED_BLOB_COUNT
+                    || !listGroup(container, group, groupListingDetails, missingBlobs, options, opContext)) {
+                for (final ArrayList<CloudBlob> references : group.values()) {
+                    remainingBlobs.addAll(references);
+                }
+            }
+
+            group.clear();
+        }
+
+        existsAll(remainingBlobs, missingBlobs, options, opContext);
+        return missingBlobs;
+    }
+
+    /**
+     * Lists the blobs of a group, populating the references to the blobs listed.
+     *
+     * @return <code>true</code> if every blob of the group was listed or found not to exist, or <code>false</code> if
+     *         the listing was given up because it held too few blobs of the group.
+     */
+    @DoesServiceRequest
+    private static boolean listGroup(final CloudBlobContainer container,
+            final SortedMap<String, ArrayList<CloudBlob>> group, final EnumSet<BlobListingDetails> listingDetails,
+            final ArrayList<CloudBlob> missingBlobs, final BlobRequestOptions options,
+            final OperationContext opContext) throws StorageException, URISyntaxException {
+        final String firstName = group.firstKey();
+        final String lastName = group.lastKey();
+        int length = 0;
+        while (length < firstName.length() && length < lastName.length()
+                && firstName.charAt(length) == lastName.charAt(length)) {
+            length++;
+        }
+
+        final IdentityHashMap<CloudBlob, Boolean> foundBlobs = new IdentityHashMap<CloudBlob, Boolean>();
+        ResultContinuation continuationToken = null;
+        do {
+            final ResultSegment<ListBlobItem> segment = container.listBlobsSegmented(firstName.substring(0, length),
+                    true /* useFlatBlobListing */, listingDetails, Constants.MAXIMUM_SEGMENTED_RESULTS,
+                    continuationToken, options, opContext);
+
+            int matchedCount = 0;
+            String lastListedName = null;
+            for (final ListBlobItem item : segment.getResults()) {
+                final CloudBlob listedBlob = (CloudBlob) item;
+                lastListedName = listedBlob.getName();
+                final ArrayList<CloudBlob> references = group.get(lastListedName);
+                if (references == null) {
+                    continue;
+                }
+
+                for (final CloudBlob blob : references) {
+                    if (Utility.isNullOrEmpty(blob.snapshotID) ? Utility.isNullOrEmpty(listedBlob.snapshotID)
+                            : blob.snapshotID.equals(listedBlob.snapshotID)) {
+                        blob.properties = listedBlob.properties;
+                        blob.metadata = listedBlob.metadata;
+                        foundBlobs.put(blob, Boolean.TRUE);
+                        matchedCount++;
+                    }
+                }
+            }
+
+            continuationToken = segment.getContinuationToken();
+
+            // Blobs are listed in name order, so the listing can stop past the last name of the group.
+            if (lastListedName != null && lastListedName.compareTo(lastName) > 0) {
+                break;
+            }
+
+            if (continuationToken != null && matchedCount < MIN_LISTED_BLOB_COUNT) {
+                // The blobs of the group are too sparse among those listed, so fetch the rest one by one.
+                final Iterator<Entry<String, ArrayList<CloudBlob>>> iterator = group.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    final ArrayList<CloudBlob> references = iterator.next().getValue();
+                    references.removeAll(foundBlobs.keySet());
+                    if (references.isEmpty()) {
+                        iterator.remove();
+                    }
+                }
+
+                return false;
+            }
+        } while (continuationToken != null);
+
+        for (final ArrayList<CloudBlob> references : group.values()) {
+            for (final CloudBlob blob : references) {
+                if (!foundBlobs.containsKey(blob)) {
+                    missingBlobs.add(blob);
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Requests the attributes of each blob, several at a time, adding those which do not exist to the missing blobs.
+     */
+    @DoesServiceRequest
+    private static void existsAll(final List<CloudBlob> blobs, final ArrayList<CloudBlob> missingBlobs,
+            final BlobRequestOptions options, final OperationContext opContext) throws StorageException {
+        if (blobs.isEmpty()) {
+            return;
+        }
+
+        final int concurrentRequestCount = Math.min(options.getConcurrentRequestCount(), blobs.size());
+        final ExecutorService threadExecutor = Executors.newFixedThreadPool(concurrentRequestCount);
+        final ExecutorCompletionService<Void> completionService = new ExecutorCompletionService<Void>(threadExecutor);
+        final List<CloudBlob> missing = Collections.synchronizedList(missingBlobs);
+        int outstandingRequests = 0;
+
+        try {
+            for (final CloudBlob blob : blobs) {
+                if (outstandingRequests >= concurrentRequestCount * 2) {
+                    CloudBlob.waitForTask(completionService);
+                    outstandingRequests--;
+                }
+
+                completionService.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        // Blobs still queued when another request failed are not requested.
+                        if (threadExecutor.isShutdown()) {
+                            return null;
+                        }
+
+                        if (!blob.exists(null /* accessCondition */, options, opContext)) {
+                            missing.add(blob);
+                        }
+
+                        return null;
+                    }
+                });
+                outstandingRequests++;
+            }
+
+            while (outstandingRequests > 0) {
+                CloudBlob.waitForTask(completionService);
+                outstandingRequests--;
+            }
+        }
+        catch (final IOException e) {
+            throw Utility.generateNewUnexpectedStorageException(e);
+        }
+        finally {
+            // No blob may be updated once the caller has seen the outcome.
+            CloudBlob.shutdownAndAwait(threadExecutor);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright Microsoft Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage.blob;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.microsoft.azure.storage.core.Utility;
+
+/**
+ * Represents a memory-bounded pool of the buffers used by {@link BlobOutputStream} to hold blocks and pages until they
+ * are uploaded.
+ * <p>
+ * Buffers are handed to the upload workers without being copied and are returned to the pool once the upload
+ * completes, so that later writes reuse them instead of allocating new ones. When the buffers in use reach the maximum
+ * size of the pool, writes to a stream which has uploads in progress block until one of those uploads returns its
+ * buffer. A stream with no uploads in progress is always allowed to take a buffer so that it can make progress.
+ * <p>
+ * A pool may be shared between all streams of a client via {@link CloudBlobClient#setBufferPool(BlobBufferPool)} to
+ * bound the memory used by all uploads made through that client. Streams of a client without a pool use a private
+ * pool each.
+ */
+public final class BlobBufferPool {
+
+    /**
+     * Holds the maximum number of bytes the pool may hand out at a time.
+     */
+    private final long maximumSizeInBytes;
+
+    /**
+     * Holds the number of bytes currently handed out.
+     */
+    private long inUseSizeInBytes;
+
+    /**
+     * Holds the number of bytes held by idle buffers.
+     */
+    private long idleSizeInBytes;
+
+    /**
+     * Holds the idle buffers, keyed by buffer size.
+     */
+    private final HashMap<Integer, LinkedList<byte[]>> idleBuffers = new HashMap<Integer, LinkedList<byte[]>>();
+
+    /**
+     * Creates an instance of the <code>BlobBufferPool</code> class using the specified maximum size.
+     *
+     * @param maximumSizeInBytes
+     *            A <code>long</code> which represents the maximum number of bytes the pool may hand out at a time.
+     */
+    public BlobBufferPool(final long maximumSizeInBytes) {
+        Utility.assertGreaterThanOrEqual("maximumSizeInBytes", maximumSizeInBytes, 1);
+        this.maximumSizeInBytes = maximumSizeInBytes;
+    }
+
+    /**
+     * Gets the maximum number of bytes the pool may hand out at a time.
+     *
+     * @return A <code>long</code> which represents the maximum size of the pool, in bytes.
+     */
+    public long getMaximumSizeInBytes() {
+        return this.maximumSizeInBytes;
+    }
+
+    /**
+     * Gets the number of bytes currently handed out by the pool.
+     *
+     * @return A <code>long</code> which represents the number of bytes in use.
+     */
+    public synchronized long getInUseSizeInBytes() {
+        return this.inUseSizeInBytes;
+    }
+
+    /**
+     * Gets the number of bytes held by idle buffers waiting to be reused.
+     *
+     * @return A <code>long</code> which represents the number of idle bytes.
+     */
+    public synchronized long getIdleSizeInBytes() {
+        return this.idleSizeInBytes;
+    }
+
+    /**
+     * Takes a buffer from the pool, waiting for buffers to be returned if the pool is exhausted and the caller has
+     * buffers of its own pending.
+     *
+     * @param size
+     *            An <code>int</code> which represents the size of the buffer.
+     * @param pendingReleases
+     *            An <code>AtomicInteger</code> which holds the number of buffers the caller has handed out and which
+     *            are yet to be returned. The caller must decrement it before returning each buffer.
+     *
+     * @return A <code>byte</code> array of the requested size.
+     *
+     * @throws InterruptedException
+     *             If the thread was interrupted while waiting for a buffer.
+     */
+    synchronized byte[] acquire(final int size, final AtomicInteger pendingReleases) throws InterruptedException {
+        while (this.inUseSizeInBytes + size > this.maximumSizeInBytes && pendingReleases.get() > 0) {
+            this.wait();
+        }
+
+        this.inUseSizeInBytes += size;
+
+        final LinkedList<byte[]> buffers = this.idleBuffers.get(size);
+        if (buffers != null && !buffers.isEmpty()) {
+            this.idleSizeInBytes -= size;
+            return buffers.removeFirst();
+        }
+
+        this.trimIdleBuffers(this.maximumSizeInBytes - this.inUseSizeInBytes);
+        return new byte[size];
+    }
+
+    /**
+     * Returns a buffer to the pool.
+     *
+     * @param buffer
+     *            A <code>byte</code> array which represents the buffer taken from {@link #acquire}.
+     */
+    synchronized void release(final byte[] buffer) {
+        this.inUseSizeInBytes -= buffer.length;
+
+        if (this.inUseSizeInBytes + this.idleSizeInBytes + buffer.length <= this.maximumSizeInBytes) {
+            LinkedList<byte[]> buffers = this.idleBuffers.get(buffer.length);
+            if (buffers == null) {
+                buffers = new LinkedList<byte[]>();
+                this.idleBuffers.put(buffer.length, buffers);
+            }
+
+            buffers.addFirst(buffer);
+            this.idleSizeInBytes += buffer.length;
+        }
+
+        this.notifyAll();
+    }
+
+    /**
+     * Drops idle buffers until the idle bytes fit within the specified size.
+     */
+    private void trimIdleBuffers(final long maximumIdleSizeInBytes) {
+        final Iterator<LinkedList<byte[]>> iterator = this.idleBuffers.values().iterator();
+        while (this.idleSizeInBytes > Math.max(maximumIdleSizeInBytes, 0) && iterator.hasNext()) {
+            final LinkedList<byte[]> buffers = iterator.next();
+            while (this.idleSizeInBytes > Math.max(maximumIdleSizeInBytes, 0) && !buffers.isEmpty()) {
+                this.idleSizeInBytes -= buffers.removeFirst().length;
+            }
+
+            if (buffers.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+}
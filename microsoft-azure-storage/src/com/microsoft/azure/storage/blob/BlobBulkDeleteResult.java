@@ -0,0 +1,110 @@
+/**
+ * Copyright Microsoft Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage.blob;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.microsoft.azure.storage.StorageException;
+
+/**
+ * Represents the summary of a bulk delete made with {@link CloudBlobContainer#deleteBlobs} or
+ * {@link CloudBlobDirectory#deleteBlobs}.
+ * <p>
+ * Blobs which could not be deleted do not stop the bulk delete; their errors are collected, keyed by blob name, and can
+ * be retrieved with {@link #getFailures()}.
+ */
+public final class BlobBulkDeleteResult {
+    /**
+     * Holds the number of blobs deleted.
+     */
+    private long deletedCount;
+
+    /**
+     * Holds the number of blobs which no longer existed when they were deleted.
+     */
+    private long notFoundCount;
+
+    /**
+     * Holds the number of delete requests rejected because the service was busy.
+     */
+    private long serverBusyCount;
+
+    /**
+     * Holds the failures, keyed by blob name.
+     */
+    private final TreeMap<String, StorageException> failures = new TreeMap<String, StorageException>();
+
+    /**
+     * Creates an instance of the <code>BlobBulkDeleteResult</code> class.
+     */
+    BlobBulkDeleteResult() {
+        // Empty constructor.
+    }
+
+    /**
+     * Gets the number of blobs which were deleted.
+     *
+     * @return A <code>long</code> which represents the number of deleted blobs.
+     */
+    public synchronized long getDeletedCount() {
+        return this.deletedCount;
+    }
+
+    /**
+     * Gets the number of listed blobs which had already been deleted by the time their delete request was sent.
+     *
+     * @return A <code>long</code> which represents the number of blobs not found.
+     */
+    public synchronized long getNotFoundCount() {
+        return this.notFoundCount;
+    }
+
+    /**
+     * Gets the number of delete requests which the service rejected as busy and which were retried after slowing
+     * down.
+     *
+     * @return A <code>long</code> which represents the number of server busy responses.
+     */
+    public synchronized long getServerBusyCount() {
+        return this.serverBusyCount;
+    }
+
+    /**
+     * Gets the blobs which could not be deleted.
+     *
+     * @return A <code>java.util.Map</code> object of the errors which occurred, keyed by blob name.
+     */
+    public synchronized Map<String, StorageException> getFailures() {
+        return Collections.unmodifiableMap(new TreeMap<String, StorageException>(this.failures));
+    }
+
+    synchronized void recordDeleted() {
+        this.deletedCount++;
+    }
+
+    synchronized void recordNotFound() {
+        this.notFoundCount++;
+    }
+
+    synchronized void recordServerBusy() {
+        this.serverBusyCount++;
+    }
+
+    synchronized void recordFailure(final String blobName, final StorageException exception) {
+        this.failures.put(blobName, exception);
+    }
+}
@@ -0,0 +1,238 @@
+/**
+ * Copyright Microsoft Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage.blob;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.util.EnumSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.microsoft.azure.storage.Constants;
+import com.microsoft.azure.storage.DoesServiceRequest;
+import com.microsoft.azure.storage.OperationContext;
+import com.microsoft.azure.storage.ResultContinuation;
+import com.microsoft.azure.storage.ResultSegment;
+import com.microsoft.azure.storage.RetryContext;
+import com.microsoft.azure.storage.RetryInfo;
+import com.microsoft.azure.storage.RetryPolicy;
+import com.microsoft.azure.storage.RetryPolicyFactory;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.core.Utility;
+
+/**
+ * RESERVED FOR INTERNAL USE. Deletes the blobs under a prefix, listing the next segment while the blobs of the
+ * previous one are being deleted on a pool of threads.
+ * <p>
+ * Delete requests share an adaptive delay: every server busy response doubles it and the request is retried, while
+ * every successful delete shrinks it, so the pool settles at a rate the service accepts. The retry policy of the
+ * options is not applied to server busy responses, so that only the shared delay paces those retries.
+ */
+final class BlobBulkDeleter {
+    /**
+     * The number of times a delete rejected as server busy is retried.
+     */
+    static final int MAX_SERVER_BUSY_RETRIES = 8;
+
+    /**
+     * The delay applied after the first server busy response.
+     */
+    static final long MIN_SERVER_BUSY_DELAY_IN_MS = 50;
+
+    /**
+     * The largest delay applied between delete requests.
+     */
+    static final long MAX_SERVER_BUSY_DELAY_IN_MS = 10000;
+
+    /**
+     * Holds the current delay applied before each delete request, in milliseconds.
+     */
+    private long delayInMs;
+
+    private BlobBulkDeleter() {
+        // Instances are only created by deleteBlobs.
+    }
+
+    /**
+     * Deletes every blob of the container whose name begins with the specified prefix.
+     *
+     * @param container
+     *            A {@link CloudBlobContainer} object which represents the container of the blobs.
+     * @param prefix
+     *            A <code>String</code> which represents the prefix of the names of the blobs to delete.
+     * @param deleteSnapshotsOption
+     *            A {@link DeleteSnapshotsOption} object that indicates whether to delete only blobs, only snapshots,
+     *            or both.
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies the options for the requests, with the defaults
+     *            applied.
+     * @param opContext
+     *            An {@link OperationContext} object that represents the context for the current operation.
+     *
+     * @return A {@link BlobBulkDeleteResult} object which represents the summary of the bulk delete.
+     *
+     * @throws StorageException
+     *             If the blobs could not be listed.
+     */
+    @DoesServiceRequest
+    static BlobBulkDeleteResult deleteBlobs(final CloudBlobContainer container, final String prefix,
+            final DeleteSnapshotsOption deleteSnapshotsOption, final BlobRequestOptions options,
+            final OperationContext opContext) throws StorageException {
+        final BlobBulkDeleter deleter = new BlobBulkDeleter();
+        final BlobBulkDeleteResult result = new BlobBulkDeleteResult();
+        final int concurrentRequestCount = options.getConcurrentRequestCount();
+        final ExecutorService threadExecutor = Executors.newFixedThreadPool(concurrentRequestCount);
+        final ExecutorCompletionService<Void> completionService = new ExecutorCompletionService<Void>(threadExecutor);
+        final BlobRequestOptions deleteOptions = new BlobRequestOptions(options);
+        deleteOptions.setRetryPolicyFactory(new ServerBusyRetryPolicy(options.getRetryPolicyFactory(), null));
+        int outstandingRequests = 0;
+
+        try {
+            ResultContinuation continuationToken = null;
+            do {
+                final ResultSegment<ListBlobItem> segment = container.listBlobsSegmented(prefix,
+                        true /* useFlatBlobListing */, EnumSet.noneOf(BlobListingDetails.class),
+                        Constants.MAXIMUM_SEGMENTED_RESULTS, continuationToken, options, opContext);
+
+                for (final ListBlobItem item : segment.getResults()) {
+                    // Leave room for a whole segment, so that the next one is listed while this one is deleted.
+                    if (outstandingRequests >= Constants.MAXIMUM_SEGMENTED_RESULTS + concurrentRequestCount) {
+                        CloudBlob.waitForTask(completionService);
+                        outstandingRequests--;
+                    }
+
+                    final CloudBlob blob = (CloudBlob) item;
+                    completionService.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            // Deletes still queued when the listing failed are not issued.
+                            if (threadExecutor.isShutdown()) {
+                                return null;
+                            }
+
+                            deleter.deleteBlob(blob, deleteSnapshotsOption, result, deleteOptions, opContext);
+                            return null;
+                        }
+                    });
+                    outstandingRequests++;
+                }
+
+                continuationToken = segment.getContinuationToken();
+            } while (continuationToken != null);
+
+            while (outstandingRequests > 0) {
+                CloudBlob.waitForTask(completionService);
+                outstandingRequests--;
+            }
+        }
+        catch (final IOException e) {
+            // Tasks record their errors, so only an interrupted wait ends up here.
+            throw Utility.generateNewUnexpectedStorageException(e);
+        }
+        finally {
+            // No blob may be deleted once the caller has seen the outcome.
+            CloudBlob.shutdownAndAwait(threadExecutor);
+        }
+
+        return result;
+    }
+
+    /**
+     * Deletes a blob, recording the outcome, and retrying after a growing delay while the service is busy.
+     */
+    @DoesServiceRequest
+    private void deleteBlob(final CloudBlob blob, final DeleteSnapshotsOption deleteSnapshotsOption,
+            final BlobBulkDeleteResult result, final BlobRequestOptions options, final OperationContext opContext)
+            throws InterruptedException, URISyntaxException {
+        for (int attempt = 0;; attempt++) {
+            final long delay = this.getDelay();
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+
+            try {
+                blob.delete(deleteSnapshotsOption, null /* accessCondition */, options, opContext);
+                this.onSuccess();
+                result.recordDeleted();
+                return;
+            }
+            catch (final StorageException e) {
+                if (e.getHttpStatusCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+                    result.recordNotFound();
+                    return;
+                }
+                else if (e.getHttpStatusCode() == HttpURLConnection.HTTP_UNAVAILABLE
+                        && attempt < MAX_SERVER_BUSY_RETRIES) {
+                    this.onServerBusy();
+                    result.recordServerBusy();
+                    continue;
+                }
+
+                result.recordFailure(blob.getName(), e);
+                return;
+            }
+        }
+    }
+
+    private synchronized long getDelay() {
+        return this.delayInMs;
+    }
+
+    private synchronized void onServerBusy() {
+        this.delayInMs = Math.min(Math.max(this.delayInMs * 2, MIN_SERVER_BUSY_DELAY_IN_MS),
+                MAX_SERVER_BUSY_DELAY_IN_MS);
+    }
+
+    private synchronized void onSuccess() {
+        this.delayInMs -= this.delayInMs / 8;
+        if (this.delayInMs < MIN_SERVER_BUSY_DELAY_IN_MS) {
+            this.delayInMs = 0;
+        }
+    }
+
+    /**
+     * Represents a retry policy which leaves server busy responses to the deleter, and applies the wrapped policy to
+     * every other failure.
+     */
+    private static final class ServerBusyRetryPolicy extends RetryPolicy {
+        private final RetryPolicyFactory retryPolicyFactory;
+
+        private final RetryPolicy retryPolicy;
+
+        ServerBusyRetryPolicy(final RetryPolicyFactory retryPolicyFactory, final RetryPolicy retryPolicy) {
+            this.retryPolicyFactory = retryPolicyFactory;
+            this.retryPolicy = retryPolicy;
+        }
+
+        @Override
+        public RetryPolicy createInstance(final OperationContext opContext) {
+            return new ServerBusyRetryPolicy(this.retryPolicyFactory, this.retryPolicyFactory == null ? null
+                    : this.retryPolicyFactory.createInstance(opContext));
+        }
+
+        @Override
+        public RetryInfo evaluate(final RetryContext retryContext, final OperationContext operationContext) {
+            if (this.retryPolicy == null
+                    || retryContext.getLastRequestResult().getStatusCode() == HttpURLConnection.HTTP_UNAVAILABLE) {
+                return null;
+            }
+
+            return this.retryPolicy.evaluate(retryContext, operationContext);
+        }
+    }
+}
@@ -165,6 +165,11 @@ final class BlobConstants {
      */
     public static final int DEFAULT_SINGLE_BLOB_PUT_THRESHOLD_IN_BYTES = 32 * com.microsoft.azure.storage.Constants.MB;
 
+    /**
+     * The extension appended to the path of a file to name the checkpoint of its resumable download.
+     */
+    public static final String DOWNLOAD_CHECKPOINT_EXTENSION = ".downloadcheckpoint";
+
     /**
      * Specifies snapshots are to be included.
      */
@@ -260,6 +265,11 @@ final class BlobConstants {
      */
     public static final String SNAPSHOTS_ONLY_VALUE = "only";
 
+    /**
+     * The size of the pieces in which data is read and scanned for pages of zeros by a sparse page blob upload.
+     */
+    public static final int SPARSE_READ_SIZE = 256 * com.microsoft.azure.storage.Constants.KB;
+
     /**
      * XML element for page range start elements.
      */
@@ -275,6 +285,11 @@ final class BlobConstants {
      */
     public static final String UNCOMMITTED_ELEMENT = "Uncommitted";
 
+    /**
+     * The extension appended to the path of a file to name the journal of its resumable upload.
+     */
+    public static final String UPLOAD_JOURNAL_EXTENSION = ".uploadjournal";
+
     /**
      * Query component value for lease.
      */
@@ -0,0 +1,316 @@
+/**
+ * Copyright Microsoft Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage.blob;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.microsoft.azure.storage.core.Utility;
+
+/**
+ * Represents a size-bounded in-memory cache of the content of small, frequently read blobs.
+ * <p>
+ * Once set on a {@link CloudBlobClient} via {@link CloudBlobClient#setContentCache(BlobContentCache)}, the content,
+ * properties and metadata of blobs read in full through {@link CloudBlockBlob#downloadText} and
+ * {@link CloudBlob#downloadToByteArray} are kept in memory, keyed by the blob URI and snapshot ID. A cached blob is
+ * served without contacting the service for the time to live of the cache after it was last validated. Past that, it
+ * is revalidated with an <i>If-None-Match</i> request, which costs a response without a body if the blob is unmodified.
+ * When the cache grows beyond its maximum size the least recently used blobs are evicted.
+ * <p>
+ * Writes made through the same client, such as uploads, property and metadata updates, copies and deletes, remove the
+ * blob from the cache. Writes made through other clients are only observed once the cached copy is revalidated.
+ */
+public final class BlobContentCache {
+    /**
+     * Holds the maximum number of content bytes the cache may hold.
+     */
+    private final long maximumSizeInBytes;
+
+    /**
+     * Holds the time, in milliseconds, a cached blob is served without being revalidated.
+     */
+    private final long timeToLiveInMs;
+
+    /**
+     * Holds the cache entries, keyed by content key, in least recently used order.
+     */
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+
+    /**
+     * Holds the number of content bytes currently held by the cache.
+     */
+    private long currentSizeInBytes;
+
+    /**
+     * Holds the number of invalidations, so that a download which started before a write is not cached after it.
+     */
+    private long invalidationCount;
+
+    /**
+     * Holds the number of reads served from the cache without contacting the service.
+     */
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /**
+     * Holds the number of reads served from the cache after the service reported the blob as unmodified.
+     */
+    private final AtomicLong revalidationCount = new AtomicLong();
+
+    /**
+     * Holds the number of reads which had to download the content from the service.
+     */
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Creates an instance of the <code>BlobContentCache</code> class using the specified maximum size and time to
+     * live.
+     *
+     * @param maximumSizeInBytes
+     *            A <code>long</code> which represents the maximum number of content bytes the cache may hold. Blobs
+     *            larger than this are never cached.
+     * @param timeToLiveInMs
+     *            A <code>long</code> which represents the time, in milliseconds, a cached blob is served without being
+     *            revalidated. If 0, every read is revalidated.
+     */
+    public BlobContentCache(final long maximumSizeInBytes, final long timeToLiveInMs) {
+        Utility.assertGreaterThanOrEqual("maximumSizeInBytes", maximumSizeInBytes, 1);
+        Utility.assertGreaterThanOrEqual("timeToLiveInMs", timeToLiveInMs, 0);
+
+        this.maximumSizeInBytes = maximumSizeInBytes;
+        this.timeToLiveInMs = timeToLiveInMs;
+    }
+
+    /**
+     * Gets the maximum number of content bytes the cache may hold.
+     *
+     * @return A <code>long</code> which represents the maximum size of the cache, in bytes.
+     */
+    public long getMaximumSizeInBytes() {
+        return this.maximumSizeInBytes;
+    }
+
+    /**
+     * Gets the time a cached blob is served without being revalidated.
+     *
+     * @return A <code>long</code> which represents the time to live, in milliseconds.
+     */
+    public long getTimeToLiveInMs() {
+        return this.timeToLiveInMs;
+    }
+
+    /**
+     * Gets the number of content bytes currently held by the cache.
+     *
+     * @return A <code>long</code> which represents the current size of the cache, in bytes.
+     */
+    public synchronized long getCurrentSizeInBytes() {
+        return this.currentSizeInBytes;
+    }
+
+    /**
+     * Gets the number of reads that were served from the cache without contacting the service.
+     *
+     * @return A <code>long</code> which represents the number of cache hits.
+     */
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    /**
+     * Gets the number of reads that were served from the cache after the service reported the blob as unmodified.
+     *
+     * @return A <code>long</code> which represents the number of revalidated reads.
+     */
+    public long getRevalidationCount() {
+        return this.revalidationCount.get();
+    }
+
+    /**
+     * Gets the number of reads that had to download the content from the service.
+     *
+     * @return A <code>long</code> which represents the number of cache misses.
+     */
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    /**
+     * Removes all blobs from the cache.
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+        this.currentSizeInBytes = 0;
+        this.invalidationCount++;
+    }
+
+    /**
+     * Gets the invalidation count, which must be read before a download whose result is passed to
+     * {@link #put(String, long, byte[], BlobProperties, HashMap)}.
+     *
+     * @return A <code>long</code> which represents the number of invalidations so far.
+     */
+    synchronized long getInvalidationCount() {
+        return this.invalidationCount;
+    }
+
+    /**
+     * Gets a cached blob and marks it as the most recently used.
+     *
+     * @param contentKey
+     *            A <code>String</code> which represents the key of the blob.
+     *
+     * @return A {@link CacheEntry} object which represents the cached blob, or <code>null</code> if the blob is not
+     *         cached.
+     */
+    synchronized CacheEntry get(final String contentKey) {
+        return this.entries.get(contentKey);
+    }
+
+    /**
+     * Determines whether a cached blob may be served without being revalidated.
+     *
+     * @param entry
+     *            A {@link CacheEntry} object which represents the cached blob.
+     *
+     * @return <code>true</code> if the time to live of the cached blob has not elapsed; otherwise, <code>false</code>.
+     */
+    boolean isFresh(final CacheEntry entry) {
+        return System.currentTimeMillis() - entry.validatedAt < this.timeToLiveInMs;
+    }
+
+    /**
+     * Stores a downloaded blob, unless it is too large, has no ETag, or was invalidated while it was downloaded.
+     *
+     * @param contentKey
+     *            A <code>String</code> which represents the key of the blob.
+     * @param invalidationCount
+     *            A <code>long</code> which represents the invalidation count read before the download started.
+     * @param content
+     *            A <code>byte</code> array which contains the content of the blob.
+     * @param properties
+     *            A {@link BlobProperties} object which represents the properties of the blob.
+     * @param metadata
+     *            A <code>java.util.HashMap</code> object which represents the metadata of the blob.
+     */
+    synchronized void put(final String contentKey, final long invalidationCount, final byte[] content,
+            final BlobProperties properties, final HashMap<String, String> metadata) {
+        if (invalidationCount != this.invalidationCount || content.length > this.maximumSizeInBytes
+                || Utility.isNullOrEmpty(properties.getEtag())) {
+            return;
+        }
+
+        this.remove(contentKey);
+
+        final CacheEntry entry = new CacheEntry(content, properties, metadata);
+        this.entries.put(contentKey, entry);
+        this.currentSizeInBytes += content.length;
+        this.evict();
+    }
+
+    /**
+     * Removes a blob from the cache, and prevents downloads in progress from caching a stale copy.
+     *
+     * @param contentKey
+     *            A <code>String</code> which represents the key of the blob.
+     */
+    synchronized void invalidate(final String contentKey) {
+        this.remove(contentKey);
+        this.invalidationCount++;
+    }
+
+    /**
+     * Records a read which was served from the cache without contacting the service.
+     */
+    void recordHit() {
+        this.hitCount.incrementAndGet();
+    }
+
+    /**
+     * Records a read which was served from the cache after the service reported the blob as unmodified, and restarts
+     * the time to live of the cached blob.
+     *
+     * @param entry
+     *            A {@link CacheEntry} object which represents the revalidated blob.
+     */
+    void recordRevalidation(final CacheEntry entry) {
+        entry.validatedAt = System.currentTimeMillis();
+        this.revalidationCount.incrementAndGet();
+    }
+
+    /**
+     * Records a read which had to download the content from the service.
+     */
+    void recordMiss() {
+        this.missCount.incrementAndGet();
+    }
+
+    /**
+     * Removes a blob from the cache.
+     */
+    private void remove(final String contentKey) {
+        final CacheEntry entry = this.entries.remove(contentKey);
+        if (entry != null) {
+            this.currentSizeInBytes -= entry.content.length;
+        }
+    }
+
+    /**
+     * Evicts the least recently used blobs until the cache is within its maximum size.
+     */
+    private void evict() {
+        final Iterator<Entry<String, CacheEntry>> iterator = this.entries.entrySet().iterator();
+        while (this.currentSizeInBytes > this.maximumSizeInBytes && iterator.hasNext()) {
+            final CacheEntry entry = iterator.next().getValue();
+            iterator.remove();
+            this.currentSizeInBytes -= entry.content.length;
+        }
+    }
+
+    /**
+     * Gets the cache key of a blob.
+     *
+     * @param blob
+     *            A {@link CloudBlob} object that represents the blob.
+     *
+     * @return A <code>String</code> which represents the key of the blob.
+     */
+    static String getContentKey(final CloudBlob blob) {
+        return blob.getStorageUri().getPrimaryUri().toString() + "\n"
+                + (blob.getSnapshotID() == null ? "" : blob.getSnapshotID());
+    }
+
+    /**
+     * RESERVED FOR INTERNAL USE. Represents a cached blob.
+     */
+    static final class CacheEntry {
+        final byte[] content;
+
+        final BlobProperties properties;
+
+        final HashMap<String, String> metadata;
+
+        private volatile long validatedAt = System.currentTimeMillis();
+
+        private CacheEntry(final byte[] content, final BlobProperties properties,
+                final HashMap<String, String> metadata) {
+            this.content = content;
+            this.properties = new BlobProperties(properties);
+            this.metadata = new HashMap<String, String>(metadata);
+        }
+    }
+}
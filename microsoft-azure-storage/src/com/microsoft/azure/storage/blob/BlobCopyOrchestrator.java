@@ -0,0 +1,480 @@
+/**
+ * Copyright Microsoft Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage.blob;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.microsoft.azure.storage.DoesServiceRequest;
+import com.microsoft.azure.storage.OperationContext;
+import com.microsoft.azure.storage.StorageErrorCodeStrings;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.core.SR;
+import com.microsoft.azure.storage.core.Utility;
+
+/**
+ * Copies many blobs into a container with server side copies, and waits for them to complete.
+ * <p>
+ * Copies are started a few at a time. Rather than requesting the attributes of every destination blob, the pending
+ * copies are then polled together by listing the destination blobs with {@link BlobListingDetails#COPY}, a directory
+ * at a time, as {@link CloudBlobContainer#downloadBlobAttributes} does: the copies of a directory holding only a few
+ * of them are polled with a request per blob instead. The polling interval follows the progress reported
+ * by {@link CopyState#getBytesCopied()}: it is shortened to when the first copy is expected to complete while the
+ * copies progress, and doubled while they do not. Copies which do not complete within the copy timeout are aborted.
+ */
+public final class BlobCopyOrchestrator {
+    /**
+     * The default number of copies started at a time.
+     */
+    public static final int DEFAULT_CONCURRENT_START_COUNT = 8;
+
+    /**
+     * The default shortest interval between two polls, in milliseconds.
+     */
+    public static final long DEFAULT_MINIMUM_POLLING_INTERVAL_IN_MS = 1000;
+
+    /**
+     * The default longest interval between two polls, in milliseconds.
+     */
+    public static final long DEFAULT_MAXIMUM_POLLING_INTERVAL_IN_MS = 60000;
+
+    /**
+     * Holds the destination container.
+     */
+    private final CloudBlobContainer container;
+
+    /**
+     * Holds the sources of the copies, keyed by destination blob name.
+     */
+    private final LinkedHashMap<String, URI> copies = new LinkedHashMap<String, URI>();
+
+    /**
+     * Holds the number of copies started at a time.
+     */
+    private int concurrentStartCount = DEFAULT_CONCURRENT_START_COUNT;
+
+    /**
+     * Holds the shortest interval between two polls, in milliseconds.
+     */
+    private long minimumPollingIntervalInMs = DEFAULT_MINIMUM_POLLING_INTERVAL_IN_MS;
+
+    /**
+     * Holds the longest interval between two polls, in milliseconds.
+     */
+    private long maximumPollingIntervalInMs = DEFAULT_MAXIMUM_POLLING_INTERVAL_IN_MS;
+
+    /**
+     * Holds the time a copy may remain pending before it is aborted, in milliseconds, or 0 if copies are not aborted.
+     */
+    private long copyTimeoutInMs;
+
+    /**
+     * Creates an instance of the <code>BlobCopyOrchestrator</code> class.
+     *
+     * @param container
+     *            A {@link CloudBlobContainer} object which represents the container the blobs are copied to.
+     */
+    public BlobCopyOrchestrator(final CloudBlobContainer container) {
+        Utility.assertNotNull("container", container);
+        this.container = container;
+    }
+
+    /**
+     * Adds a copy from a source blob.
+     *
+     * @param source
+     *            A {@link CloudBlob} object which represents the blob to copy.
+     * @param destinationBlobName
+     *            A <code>String</code> which represents the name of the blob to copy to in the container.
+     *
+     * @throws StorageException
+     *             If a storage service error occurred.
+     * @throws URISyntaxException
+     *             If the URI of the source blob is invalid.
+     */
+    public void addCopy(final CloudBlob source, final String destinationBlobName) throws StorageException,
+            URISyntaxException {
+        Utility.assertNotNull("source", source);
+        this.addCopy(source.getServiceClient().getCredentials().transformUri(source.getQualifiedUri()),
+                destinationBlobName);
+    }
+
+    /**
+     * Adds a copy from the URI of a source blob.
+     *
+     * @param source
+     *            A <code>java.net.URI</code> which represents the URI of the blob to copy.
+     * @param destinationBlobName
+     *            A <code>String</code> which represents the name of the blob to copy to in the container.
+     */
+    public void addCopy(final URI source, final String destinationBlobName) {
+        Utility.assertNotNull("source", source);
+        Utility.assertNotNullOrEmpty("destinationBlobName", destinationBlobName);
+        this.copies.put(destinationBlobName, source);
+    }
+
+    /**
+     * Gets the number of copies started at a time.
+     *
+     * @return An <code>int</code> which represents the number of concurrent starts.
+     */
+    public int getConcurrentStartCount() {
+        return this.concurrentStartCount;
+    }
+
+    /**
+     * Sets the number of copies started at a time. The default is {@link #DEFAULT_CONCURRENT_START_COUNT}.
+     *
+     * @param concurrentStartCount
+     *            An <code>int</code> which represents the number of concurrent starts.
+     */
+    public void setConcurrentStartCount(final int concurrentStartCount) {
+        Utility.assertGreaterThanOrEqual("concurrentStartCount", concurrentStartCount, 1);
+        this.concurrentStartCount = concurrentStartCount;
+    }
+
+    /**
+     * Gets the shortest interval between two polls.
+     *
+     * @return A <code>long</code> which represents the interval, in milliseconds.
+     */
+    public long getMinimumPollingIntervalInMs() {
+        return this.minimumPollingIntervalInMs;
+    }
+
+    /**
+     * Sets the shortest interval between two polls. The default is {@link #DEFAULT_MINIMUM_POLLING_INTERVAL_IN_MS}.
+     *
+     * @param minimumPollingIntervalInMs
+     *            A <code>long</code> which represents the interval, in milliseconds.
+     */
+    public void setMinimumPollingIntervalInMs(final long minimumPollingIntervalInMs) {
+        Utility.assertGreaterThanOrEqual("minimumPollingIntervalInMs", minimumPollingIntervalInMs, 1);
+        this.minimumPollingIntervalInMs = minimumPollingIntervalInMs;
+    }
+
+    /**
+     * Gets the longest interval between two polls.
+     *
+     * @return A <code>long</code> which represents the interval, in milliseconds.
+     */
+    public long getMaximumPollingIntervalInMs() {
+        return this.maximumPollingIntervalInMs;
+    }
+
+    /**
+     * Sets the longest interval between two polls. The default is {@link #DEFAULT_MAXIMUM_POLLING_INTERVAL_IN_MS}.
+     *
+     * @param maximumPollingIntervalInMs
+     *            A <code>long</code> which represents the interval, in milliseconds.
+     */
+    public void setMaximumPollingIntervalInMs(final long maximumPollingIntervalInMs) {
+        Utility.assertGreaterThanOrEqual("maximumPollingIntervalInMs", maximumPollingIntervalInMs, 1);
+        this.maximumPollingIntervalInMs = maximumPollingIntervalInMs;
+    }
+
+    /**
+     * Gets the time a copy may remain pending before it is aborted.
+     *
+     * @return A <code>long</code> which represents the timeout, in milliseconds, or 0 if copies are not aborted.
+     */
+    public long getCopyTimeoutInMs() {
+        return this.copyTimeoutInMs;
+    }
+
+    /**
+     * Sets the time a copy may remain pending, from the moment it was started, before it is aborted. The default is 0,
+     * which waits for every copy to complete.
+     *
+     * @param copyTimeoutInMs
+     *            A <code>long</code> which represents the timeout, in milliseconds, or 0 if copies are not aborted.
+     */
+    public void setCopyTimeoutInMs(final long copyTimeoutInMs) {
+        Utility.assertGreaterThanOrEqual("copyTimeoutInMs", copyTimeoutInMs, 0);
+        this.copyTimeoutInMs = copyTimeoutInMs;
+    }
+
+    /**
+     * Starts the copies which were added and waits for them to complete.
+     *
+     * @return A {@link BlobCopyResult} object which represents the summary of the copies.
+     *
+     * @throws StorageException
+     *             If the attributes of the destination blobs could not be downloaded.
+     * @throws URISyntaxException
+     *             If a destination blob name is invalid.
+     */
+    @DoesServiceRequest
+    public BlobCopyResult run() throws StorageException, URISyntaxException {
+        return this.run(null /* options */, null /* opContext */);
+    }
+
+    /**
+     * Starts the copies which were added and waits for them to complete, using the specified request options and
+     * operation context.
+     *
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies any additional options for the requests. Specifying
+     *            <code>null</code> will use the default request options from the associated service client (
+     *            {@link CloudBlobClient}).
+     * @param opContext
+     *            An {@link OperationContext} object that represents the context for the current operation. This object
+     *            is used to track requests to the storage service, and to provide additional runtime information about
+     *            the operation.
+     *
+     * @return A {@link BlobCopyResult} object which represents the summary of the copies.
+     *
+     * @throws StorageException
+     *             If the attributes of the destination blobs could not be downloaded.
+     * @throws URISyntaxException
+     *             If a destination blob name is invalid.
+     */
+    @DoesServiceRequest
+    public BlobCopyResult run(final BlobRequestOptions options, OperationContext opContext)
+            throws StorageException, URISyntaxException {
+        if (opContext == null) {
+            opContext = new OperationContext();
+        }
+
+        opContext.initialize();
+
+        final BlobCopyResult result = new BlobCopyResult();
+        final TreeMap<String, PendingCopy> pendingCopies = this.startCopies(result, options, opContext);
+
+        long pollingIntervalInMs = this.minimumPollingIntervalInMs;
+        while (!pendingCopies.isEmpty()) {
+            try {
+                Thread.sleep(pollingIntervalInMs);
+            }
+            catch (final InterruptedException e) {
+                throw Utility.generateNewUnexpectedStorageException(e);
+            }
+
+            final long expectedCompletionInMs = this.poll(pendingCopies, result, options, opContext);
+            if (expectedCompletionInMs < 0) {
+                pollingIntervalInMs = Math.min(pollingIntervalInMs * 2, this.maximumPollingIntervalInMs);
+            }
+            else {
+                pollingIntervalInMs = Math.min(Math.max(expectedCompletionInMs, this.minimumPollingIntervalInMs),
+                        this.maximumPollingIntervalInMs);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Starts the copies on a bounded pool, recording those which complete at once, and returns the pending ones.
+     */
+    @DoesServiceRequest
+    private TreeMap<String, PendingCopy> startCopies(final BlobCopyResult result, final BlobRequestOptions options,
+            final OperationContext opContext) throws StorageException, URISyntaxException {
+        final TreeMap<String, PendingCopy> pendingCopies = new TreeMap<String, PendingCopy>();
+        final ExecutorService threadExecutor = Executors.newFixedThreadPool(this.concurrentStartCount);
+        final ExecutorCompletionService<Void> completionService = new ExecutorCompletionService<Void>(threadExecutor);
+        int outstandingTasks = 0;
+
+        try {
+            for (final Entry<String, URI> entry : this.copies.entrySet()) {
+                if (outstandingTasks >= this.concurrentStartCount * 2) {
+                    CloudBlob.waitForTask(completionService);
+                    outstandingTasks--;
+                }
+
+                final String blobName = entry.getKey();
+                final URI source = entry.getValue();
+                final CloudBlockBlob destination = this.container.getBlockBlobReference(blobName);
+                completionService.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        // Copies still queued when the wait was interrupted are not started.
+                        if (threadExecutor.isShutdown()) {
+                            return null;
+                        }
+
+                        try {
+                            // The type of the destination blob is set by the service from the source.
+                            final String copyId = destination.startCopyFromBlob(source,
+                                    null /* sourceAccessCondition */, null /* destinationAccessCondition */, options,
+                                    opContext);
+                            final CopyState copyState = destination.getCopyState();
+                            if (copyState != null && copyState.getStatus() != CopyStatus.PENDING) {
+                                result.recordCompleted(blobName, copyState);
+                            }
+                            else {
+                                synchronized (pendingCopies) {
+                                    pendingCopies.put(blobName, new PendingCopy(destination, copyId));
+                                }
+                            }
+                        }
+                        catch (final StorageException e) {
+                            result.recordFailure(blobName, e);
+                        }
+
+                        return null;
+                    }
+                });
+                outstandingTasks++;
+            }
+
+            while (outstandingTasks > 0) {
+                CloudBlob.waitForTask(completionService);
+                outstandingTasks--;
+            }
+        }
+        catch (final IOException e) {
+            // Tasks record their errors, so only an interrupted wait ends up here.
+            throw Utility.generateNewUnexpectedStorageException(e);
+        }
+        finally {
+            // No copy may be started once the caller has seen the outcome, as it would never be tracked.
+            CloudBlob.shutdownAndAwait(threadExecutor);
+        }
+
+        return pendingCopies;
+    }
+
+    /**
+     * Downloads the attributes of the destination blobs of the pending copies, removing the copies which are no longer
+     * pending and aborting those which timed out.
+     *
+     * @return A <code>long</code> which represents the time until the first progressing copy is expected to complete,
+     *         in milliseconds, or -1 if no copy progressed since the previous poll.
+     */
+    @DoesServiceRequest
+    private long poll(final TreeMap<String, PendingCopy> pendingCopies, final BlobCopyResult result,
+            final BlobRequestOptions options, final OperationContext opContext) throws StorageException,
+            URISyntaxException {
+        final ArrayList<CloudBlob> destinations = new ArrayList<CloudBlob>(pendingCopies.size());
+        for (final PendingCopy pendingCopy : pendingCopies.values()) {
+            destinations.add(pendingCopy.destination);
+        }
+
+        final HashSet<String> missingBlobNames = new HashSet<String>();
+        for (final CloudBlob blob : BlobAttributesFetcher.downloadAttributes(this.container, destinations,
+                EnumSet.of(BlobListingDetails.METADATA, BlobListingDetails.COPY),
+                BlobRequestOptions.applyDefaults(options, BlobType.UNSPECIFIED, this.container.getServiceClient()),
+                opContext)) {
+            missingBlobNames.add(blob.getName());
+        }
+
+        final long now = System.currentTimeMillis();
+        long expectedCompletionInMs = -1;
+        final Iterator<Entry<String, PendingCopy>> iterator = pendingCopies.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Entry<String, PendingCopy> entry = iterator.next();
+            final String blobName = entry.getKey();
+            final PendingCopy pendingCopy = entry.getValue();
+            final CopyState copyState = pendingCopy.destination.getCopyState();
+            if (missingBlobNames.contains(blobName) || copyState == null
+                    || !pendingCopy.copyId.equals(copyState.getCopyId())) {
+                // The blob was deleted or overwritten since, so the outcome of the copy is unknown.
+                iterator.remove();
+                result.recordFailure(blobName, new StorageException(StorageErrorCodeStrings.BLOB_NOT_FOUND,
+                        SR.COPY_NOT_FOUND, HttpURLConnection.HTTP_NOT_FOUND, null /* extendedErrorInfo */,
+                        null /* innerException */));
+                continue;
+            }
+
+            if (copyState.getStatus() != CopyStatus.PENDING) {
+                iterator.remove();
+                result.recordCompleted(blobName, copyState);
+
+                // A completed copy counts as progress, so that the remaining ones are polled again soon.
+                expectedCompletionInMs = 0;
+                continue;
+            }
+
+            if (this.copyTimeoutInMs > 0 && !pendingCopy.abortRequested
+                    && now - pendingCopy.startTime >= this.copyTimeoutInMs) {
+                pendingCopy.abortRequested = true;
+                try {
+                    pendingCopy.destination.abortCopy(pendingCopy.copyId, null /* accessCondition */, options,
+                            opContext);
+                    result.recordTimedOut();
+                }
+                catch (final StorageException e) {
+                    // A conflict means the copy completed meanwhile, which the next poll will report.
+                    if (e.getHttpStatusCode() != HttpURLConnection.HTTP_CONFLICT) {
+                        iterator.remove();
+                        result.recordFailure(blobName, e);
+                    }
+                }
+
+                continue;
+            }
+
+            final long remainingInMs = pendingCopy.update(copyState, now);
+            if (remainingInMs >= 0 && (expectedCompletionInMs < 0 || remainingInMs < expectedCompletionInMs)) {
+                expectedCompletionInMs = remainingInMs;
+            }
+        }
+
+        return expectedCompletionInMs;
+    }
+
+    /**
+     * Represents a copy which was started and has not completed yet.
+     */
+    private static final class PendingCopy {
+        private final CloudBlob destination;
+
+        private final String copyId;
+
+        private final long startTime = System.currentTimeMillis();
+
+        private long lastPollTime = this.startTime;
+
+        private long lastBytesCopied;
+
+        private boolean abortRequested;
+
+        private PendingCopy(final CloudBlob destination, final String copyId) {
+            this.destination = destination;
+            this.copyId = copyId;
+        }
+
+        /**
+         * Records the progress of the copy and estimates the time until it completes, or returns -1 if it did not
+         * progress since the previous poll.
+         */
+        private long update(final CopyState copyState, final long now) {
+            final Long bytesCopied = copyState.getBytesCopied();
+            final Long totalBytes = copyState.getTotalBytes();
+            if (bytesCopied == null || totalBytes == null || bytesCopied <= this.lastBytesCopied) {
+                return -1;
+            }
+
+            final long elapsedInMs = Math.max(now - this.lastPollTime, 1);
+            final long remainingInMs = (totalBytes - bytesCopied) * elapsedInMs / (bytesCopied - this.lastBytesCopied);
+            this.lastBytesCopied = bytesCopied;
+            this.lastPollTime = now;
+            return remainingInMs;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright Microsoft Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage.blob;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.microsoft.azure.storage.StorageException;
+
+/**
+ * Represents the summary of the copies made by a {@link BlobCopyOrchestrator}.
+ * <p>
+ * The final {@link CopyState} of every copy which was started is kept, keyed by destination blob name. Copies which
+ * could not be started, aborted or tracked to completion do not stop the others; their errors are collected and can be
+ * retrieved with {@link #getFailures()}.
+ */
+public final class BlobCopyResult {
+    /**
+     * Holds the final copy states, keyed by destination blob name.
+     */
+    private final TreeMap<String, CopyState> copyStates = new TreeMap<String, CopyState>();
+
+    /**
+     * Holds the number of copies aborted because they did not complete in time.
+     */
+    private int timedOutCount;
+
+    /**
+     * Holds the failures, keyed by destination blob name.
+     */
+    private final TreeMap<String, StorageException> failures = new TreeMap<String, StorageException>();
+
+    /**
+     * Creates an instance of the <code>BlobCopyResult</code> class.
+     */
+    BlobCopyResult() {
+        // Empty constructor.
+    }
+
+    /**
+     * Gets the final state of the copies which were started and tracked to completion.
+     *
+     * @return A <code>java.util.Map</code> object of the {@link CopyState} of each copy, keyed by destination blob
+     *         name.
+     */
+    public synchronized Map<String, CopyState> getCopyStates() {
+        return Collections.unmodifiableMap(new TreeMap<String, CopyState>(this.copyStates));
+    }
+
+    /**
+     * Gets the number of copies which completed successfully.
+     *
+     * @return An <code>int</code> which represents the number of successful copies.
+     */
+    public synchronized int getSucceededCount() {
+        return this.countStatus(CopyStatus.SUCCESS);
+    }
+
+    /**
+     * Gets the number of copies which the service reported as failed.
+     *
+     * @return An <code>int</code> which represents the number of failed copies.
+     */
+    public synchronized int getFailedCount() {
+        return this.countStatus(CopyStatus.FAILED);
+    }
+
+    /**
+     * Gets the number of copies which were aborted, whether because they timed out or by another client.
+     *
+     * @return An <code>int</code> which represents the number of aborted copies.
+     */
+    public synchronized int getAbortedCount() {
+        return this.countStatus(CopyStatus.ABORTED);
+    }
+
+    /**
+     * Gets the number of copies which were aborted because they did not complete within the copy timeout.
+     *
+     * @return An <code>int</code> which represents the number of timed out copies.
+     */
+    public synchronized int getTimedOutCount() {
+        return this.timedOutCount;
+    }
+
+    /**
+     * Gets the copies which could not be started, aborted or tracked to completion.
+     *
+     * @return A <code>java.util.Map</code> object of the errors which occurred, keyed by destination blob name.
+     */
+    public synchronized Map<String, StorageException> getFailures() {
+        return Collections.unmodifiableMap(new TreeMap<String, StorageException>(this.failures));
+    }
+
+    synchronized void recordCompleted(final String blobName, final CopyState copyState) {
+        this.copyStates.put(blobName, copyState);
+    }
+
+    synchronized void recordTimedOut() {
+        this.timedOutCount++;
+    }
+
+    synchronized void recordFailure(final String blobName, final StorageException exception) {
+        this.failures.put(blobName, exception);
+    }
+
+    private int countStatus(final CopyStatus status) {
+        int count = 0;
+        for (final CopyState copyState : this.copyStates.values()) {
+            if (copyState.getStatus() == status) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+}
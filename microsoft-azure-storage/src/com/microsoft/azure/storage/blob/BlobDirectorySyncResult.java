@@ -0,0 +1,122 @@
+/**
+ * Copyright Microsoft Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage.blob;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Represents the summary of a synchronization made by a {@link BlobDirectorySynchronizer}.
+ * <p>
+ * Failures to transfer or delete individual files do not stop the synchronization; they are collected, keyed by the
+ * path of the file relative to the synchronized directories, and can be retrieved with {@link #getFailures()}.
+ */
+public final class BlobDirectorySyncResult {
+    /**
+     * Holds the number of files transferred.
+     */
+    private int transferredCount;
+
+    /**
+     * Holds the number of files found unchanged.
+     */
+    private int unchangedCount;
+
+    /**
+     * Holds the number of files or blobs deleted.
+     */
+    private int deletedCount;
+
+    /**
+     * Holds the number of bytes transferred.
+     */
+    private long bytesTransferred;
+
+    /**
+     * Holds the failures, keyed by relative path.
+     */
+    private final TreeMap<String, Exception> failures = new TreeMap<String, Exception>();
+
+    /**
+     * Creates an instance of the <code>BlobDirectorySyncResult</code> class.
+     */
+    BlobDirectorySyncResult() {
+        // Empty constructor.
+    }
+
+    /**
+     * Gets the number of files which were uploaded or downloaded.
+     *
+     * @return An <code>int</code> which represents the number of files transferred.
+     */
+    public synchronized int getTransferredCount() {
+        return this.transferredCount;
+    }
+
+    /**
+     * Gets the number of files which were found unchanged and were not transferred.
+     *
+     * @return An <code>int</code> which represents the number of unchanged files.
+     */
+    public synchronized int getUnchangedCount() {
+        return this.unchangedCount;
+    }
+
+    /**
+     * Gets the number of blobs or local files which were deleted because they no longer exist in the source.
+     *
+     * @return An <code>int</code> which represents the number of deletions.
+     */
+    public synchronized int getDeletedCount() {
+        return this.deletedCount;
+    }
+
+    /**
+     * Gets the number of bytes which were uploaded or downloaded.
+     *
+     * @return A <code>long</code> which represents the number of bytes transferred.
+     */
+    public synchronized long getBytesTransferred() {
+        return this.bytesTransferred;
+    }
+
+    /**
+     * Gets the failures of the synchronization.
+     *
+     * @return A <code>java.util.Map</code> object of the exceptions which occurred, keyed by the path of the file
+     *         relative to the synchronized directories.
+     */
+    public synchronized Map<String, Exception> getFailures() {
+        return Collections.unmodifiableMap(new TreeMap<String, Exception>(this.failures));
+    }
+
+    synchronized void recordTransfer(final long length) {
+        this.transferredCount++;
+        this.bytesTransferred += length;
+    }
+
+    synchronized void recordUnchanged() {
+        this.unchangedCount++;
+    }
+
+    synchronized void recordDelete() {
+        this.deletedCount++;
+    }
+
+    synchronized void recordFailure(final String relativePath, final Exception exception) {
+        this.failures.put(relativePath, exception);
+    }
+}
@@ -0,0 +1,622 @@
+/**
+ * Copyright Microsoft Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage.blob;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.util.EnumSet;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.microsoft.azure.storage.DoesServiceRequest;
+import com.microsoft.azure.storage.OperationContext;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.core.Utility;
+
+/**
+ * Synchronizes a local directory tree with the blobs of a {@link CloudBlobDirectory}, in either direction.
+ * <p>
+ * The blob directory is listed flat, with metadata, while the local directory is walked, so both sides are enumerated
+ * concurrently and no per-blob request is needed to compare them. A file and a blob of the same relative path are
+ * considered unchanged when their lengths match and, if content MD5 comparison is enabled and the blob has a
+ * Content-MD5, when the MD5 of the file matches it. Otherwise the last modified times are compared: an upload skips
+ * blobs modified after the file, and a download skips files whose last modified time is that of the blob, which is set
+ * on every downloaded file.
+ * <p>
+ * Transfers and deletions run on a bounded pool of threads, and the combined rate of all transfers can be capped.
+ * Failures of individual files do not stop the synchronization and are reported in the returned
+ * {@link BlobDirectorySyncResult}.
+ */
+public final class BlobDirectorySynchronizer {
+    /**
+     * The default number of files transferred at a time.
+     */
+    public static final int DEFAULT_CONCURRENT_TRANSFER_COUNT = 8;
+
+    /**
+     * Holds the blob directory.
+     */
+    private final CloudBlobDirectory directory;
+
+    /**
+     * Holds the local directory.
+     */
+    private final File localDirectory;
+
+    /**
+     * Holds the number of files transferred at a time.
+     */
+    private int concurrentTransferCount = DEFAULT_CONCURRENT_TRANSFER_COUNT;
+
+    /**
+     * Holds the maximum combined transfer rate, in bytes per second, or 0 if not limited.
+     */
+    private long maximumBytesPerSecond;
+
+    /**
+     * Holds whether files which no longer exist in the source are deleted from the target.
+     */
+    private boolean deleteExtraneous;
+
+    /**
+     * Holds whether the MD5 of local files is compared with the Content-MD5 of blobs.
+     */
+    private boolean compareContentMD5;
+
+    /**
+     * Creates an instance of the <code>BlobDirectorySynchronizer</code> class.
+     *
+     * @param directory
+     *            A {@link CloudBlobDirectory} object which represents the blob directory to synchronize.
+     * @param localDirectory
+     *            A <code>java.io.File</code> object which represents the local directory to synchronize.
+     */
+    public BlobDirectorySynchronizer(final CloudBlobDirectory directory, final File localDirectory) {
+        Utility.assertNotNull("directory", directory);
+        Utility.assertNotNull("localDirectory", localDirectory);
+
+        this.directory = directory;
+        this.localDirectory = localDirectory;
+    }
+
+    /**
+     * Gets the number of files transferred at a time.
+     *
+     * @return An <code>int</code> which represents the number of concurrent transfers.
+     */
+    public int getConcurrentTransferCount() {
+        return this.concurrentTransferCount;
+    }
+
+    /**
+     * Sets the number of files transferred at a time. The default is {@link #DEFAULT_CONCURRENT_TRANSFER_COUNT}.
+     *
+     * @param concurrentTransferCount
+     *            An <code>int</code> which represents the number of concurrent transfers.
+     */
+    public void setConcurrentTransferCount(final int concurrentTransferCount) {
+        Utility.assertGreaterThanOrEqual("concurrentTransferCount", concurrentTransferCount, 1);
+        this.concurrentTransferCount = concurrentTransferCount;
+    }
+
+    /**
+     * Gets the maximum combined rate of all transfers.
+     *
+     * @return A <code>long</code> which represents the maximum rate in bytes per second, or 0 if not limited.
+     */
+    public long getMaximumBytesPerSecond() {
+        return this.maximumBytesPerSecond;
+    }
+
+    /**
+     * Sets the maximum combined rate of all transfers. The default is 0, which does not limit the rate.
+     *
+     * @param maximumBytesPerSecond
+     *            A <code>long</code> which represents the maximum rate in bytes per second, or 0 to not limit it.
+     */
+    public void setMaximumBytesPerSecond(final long maximumBytesPerSecond) {
+        Utility.assertGreaterThanOrEqual("maximumBytesPerSecond", maximumBytesPerSecond, 0);
+        this.maximumBytesPerSecond = maximumBytesPerSecond;
+    }
+
+    /**
+     * Gets whether files which no longer exist in the source are deleted from the target.
+     *
+     * @return <code>true</code> if extraneous files are deleted; otherwise, <code>false</code>.
+     */
+    public boolean getDeleteExtraneous() {
+        return this.deleteExtraneous;
+    }
+
+    /**
+     * Sets whether files which no longer exist in the source are deleted from the target: blobs without a local file
+     * on upload, including their snapshots, and local files without a blob on download. The default is
+     * <code>false</code>.
+     *
+     * @param deleteExtraneous
+     *            <code>true</code> to delete extraneous files; otherwise, <code>false</code>.
+     */
+    public void setDeleteExtraneous(final boolean deleteExtraneous) {
+        this.deleteExtraneous = deleteExtraneous;
+    }
+
+    /**
+     * Gets whether the MD5 of local files is compared with the Content-MD5 of blobs.
+     *
+     * @return <code>true</code> if content MD5s are compared; otherwise, <code>false</code>.
+     */
+    public boolean getCompareContentMD5() {
+        return this.compareContentMD5;
+    }
+
+    /**
+     * Sets whether the MD5 of local files is compared with the Content-MD5 of blobs of the same length, instead of
+     * their last modified times. This reads every such file but detects changes regardless of clocks. The default is
+     * <code>false</code>.
+     *
+     * @param compareContentMD5
+     *            <code>true</code> to compare content MD5s; otherwise, <code>false</code>.
+     */
+    public void setCompareContentMD5(final boolean compareContentMD5) {
+        this.compareContentMD5 = compareContentMD5;
+    }
+
+    /**
+     * Uploads the new and changed files of the local directory to the blob directory as block blobs.
+     *
+     * @return A {@link BlobDirectorySyncResult} object which represents the summary of the synchronization.
+     *
+     * @throws StorageException
+     *             If the blob directory could not be listed.
+     * @throws IOException
+     *             If the local directory could not be walked.
+     * @throws URISyntaxException
+     *             If a blob URI is invalid.
+     */
+    @DoesServiceRequest
+    public BlobDirectorySyncResult upload() throws StorageException, IOException, URISyntaxException {
+        return this.upload(null /* options */, null /* opContext */);
+    }
+
+    /**
+     * Uploads the new and changed files of the local directory to the blob directory as block blobs, using the
+     * specified request options and operation context.
+     *
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies any additional options for the requests. Specifying
+     *            <code>null</code> will use the default request options from the associated service client (
+     *            {@link CloudBlobClient}).
+     * @param opContext
+     *            An {@link OperationContext} object that represents the context for the current operation. This object
+     *            is used to track requests to the storage service, and to provide additional runtime information about
+     *            the operation.
+     *
+     * @return A {@link BlobDirectorySyncResult} object which represents the summary of the synchronization.
+     *
+     * @throws StorageException
+     *             If the blob directory could not be listed.
+     * @throws IOException
+     *             If the local directory could not be walked.
+     * @throws URISyntaxException
+     *             If a blob URI is invalid.
+     */
+    @DoesServiceRequest
+    public BlobDirectorySyncResult upload(final BlobRequestOptions options, OperationContext opContext)
+            throws StorageException, IOException, URISyntaxException {
+        if (opContext == null) {
+            opContext = new OperationContext();
+        }
+
+        opContext.initialize();
+
+        final TreeMap<String, CloudBlob> blobs = new TreeMap<String, CloudBlob>();
+        final TreeMap<String, File> files = new TreeMap<String, File>();
+        this.enumerate(blobs, files, options, opContext);
+
+        final BlobDirectorySyncResult result = new BlobDirectorySyncResult();
+        final BandwidthThrottle throttle = new BandwidthThrottle(this.maximumBytesPerSecond);
+        final OperationContext transferContext = opContext;
+        final TransferScheduler scheduler = new TransferScheduler(this.concurrentTransferCount);
+        try {
+            for (final Entry<String, File> entry : files.entrySet()) {
+                final String relativePath = entry.getKey();
+                final File file = entry.getValue();
+                final CloudBlob existingBlob = blobs.get(relativePath);
+                final CloudBlockBlob blob = this.directory.getBlockBlobReference(relativePath);
+
+                scheduler.submit(result, relativePath, new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        if (existingBlob != null && BlobDirectorySynchronizer.this.isUnchanged(file, existingBlob,
+                                true /* upload */)) {
+                            result.recordUnchanged();
+                            return null;
+                        }
+
+                        final long length = file.length();
+                        final BlobRequestOptions fileOptions = BlobRequestOptions.applyDefaults(options,
+                                BlobType.BLOCK_BLOB, blob.getServiceClient());
+
+                        // Hash the file here rather than letting the upload analyze the stream, so that the
+                        // throttle is charged only for the bytes sent to the service.
+                        if (fileOptions.getStoreBlobContentMD5()) {
+                            blob.getProperties().setContentMD5(calculateContentMD5(file));
+                            fileOptions.setStoreBlobContentMD5(false);
+                        }
+
+                        // Only files sent with a single put need a markable stream to be retried; marking a larger
+                        // file would buffer all of it.
+                        final InputStream fileStream = length <= fileOptions.getSingleBlobPutThresholdInBytes()
+                                ? throttle.wrap(new BufferedInputStream(new FileInputStream(file)))
+                                : throttle.wrap(new FileInputStream(file));
+                        try {
+                            blob.upload(fileStream, length, null /* accessCondition */, fileOptions, transferContext);
+                        }
+                        finally {
+                            fileStream.close();
+                        }
+
+                        result.recordTransfer(length);
+                        return null;
+                    }
+                });
+            }
+
+            if (this.deleteExtraneous) {
+                for (final Entry<String, CloudBlob> entry : blobs.entrySet()) {
+                    if (files.containsKey(entry.getKey())) {
+                        continue;
+                    }
+
+                    final CloudBlob blob = entry.getValue();
+                    scheduler.submit(result, entry.getKey(), new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            if (blob.deleteIfExists(DeleteSnapshotsOption.INCLUDE_SNAPSHOTS,
+                                    null /* accessCondition */, options, transferContext)) {
+                                result.recordDelete();
+                            }
+
+                            return null;
+                        }
+                    });
+                }
+            }
+
+            scheduler.awaitAll();
+        }
+        finally {
+            scheduler.shutdown();
+        }
+
+        return result;
+    }
+
+    /**
+     * Downloads the new and changed blobs of the blob directory to the local directory.
+     *
+     * @return A {@link BlobDirectorySyncResult} object which represents the summary of the synchronization.
+     *
+     * @throws StorageException
+     *             If the blob directory could not be listed.
+     * @throws IOException
+     *             If the local directory could not be walked.
+     * @throws URISyntaxException
+     *             If a blob URI is invalid.
+     */
+    @DoesServiceRequest
+    public BlobDirectorySyncResult download() throws StorageException, IOException, URISyntaxException {
+        return this.download(null /* options */, null /* opContext */);
+    }
+
+    /**
+     * Downloads the new and changed blobs of the blob directory to the local directory, using the specified request
+     * options and operation context.
+     *
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies any additional options for the requests. Specifying
+     *            <code>null</code> will use the default request options from the associated service client (
+     *            {@link CloudBlobClient}).
+     * @param opContext
+     *            An {@link OperationContext} object that represents the context for the current operation. This object
+     *            is used to track requests to the storage service, and to provide additional runtime information about
+     *            the operation.
+     *
+     * @return A {@link BlobDirectorySyncResult} object which represents the summary of the synchronization.
+     *
+     * @throws StorageException
+     *             If the blob directory could not be listed.
+     * @throws IOException
+     *             If the local directory could not be walked.
+     * @throws URISyntaxException
+     *             If a blob URI is invalid.
+     */
+    @DoesServiceRequest
+    public BlobDirectorySyncResult download(final BlobRequestOptions options, OperationContext opContext)
+            throws StorageException, IOException, URISyntaxException {
+        if (opContext == null) {
+            opContext = new OperationContext();
+        }
+
+        opContext.initialize();
+
+        final TreeMap<String, CloudBlob> blobs = new TreeMap<String, CloudBlob>();
+        final TreeMap<String, File> files = new TreeMap<String, File>();
+        this.enumerate(blobs, files, options, opContext);
+
+        final BlobDirectorySyncResult result = new BlobDirectorySyncResult();
+        final BandwidthThrottle throttle = new BandwidthThrottle(this.maximumBytesPerSecond);
+        final OperationContext transferContext = opContext;
+        final String localRoot = this.localDirectory.getCanonicalPath() + File.separator;
+        final TransferScheduler scheduler = new TransferScheduler(this.concurrentTransferCount);
+        try {
+            for (final Entry<String, CloudBlob> entry : blobs.entrySet()) {
+                final String relativePath = entry.getKey();
+                final CloudBlob blob = entry.getValue();
+                final File existingFile = files.get(relativePath);
+                final File file = new File(this.localDirectory, relativePath.replace('/', File.separatorChar));
+
+                scheduler.submit(result, relativePath, new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        if (existingFile != null && BlobDirectorySynchronizer.this.isUnchanged(existingFile, blob,
+                                false /* upload */)) {
+                            result.recordUnchanged();
+                            return null;
+                        }
+
+                        // Blob names such as "../name" must not escape the local directory.
+                        if (!file.getCanonicalPath().startsWith(localRoot)) {
+                            throw new FileNotFoundException(file.getPath());
+                        }
+
+                        final File parent = file.getParentFile();
+                        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                            throw new FileNotFoundException(parent.getPath());
+                        }
+
+                        final OutputStream fileStream = throttle.wrap(new BufferedOutputStream(new FileOutputStream(
+                                file)));
+                        try {
+                            blob.download(fileStream, null /* accessCondition */, options, transferContext);
+                        }
+                        finally {
+                            fileStream.close();
+                        }
+
+                        if (blob.getProperties().getLastModified() != null) {
+                            file.setLastModified(blob.getProperties().getLastModified().getTime());
+                        }
+
+                        result.recordTransfer(file.length());
+                        return null;
+                    }
+                });
+            }
+
+            if (this.deleteExtraneous) {
+                for (final Entry<String, File> entry : files.entrySet()) {
+                    if (blobs.containsKey(entry.getKey())) {
+                        continue;
+                    }
+
+                    final File file = entry.getValue();
+                    scheduler.submit(result, entry.getKey(), new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            if (!file.delete()) {
+                                throw new IOException(file.getPath());
+                            }
+
+                            result.recordDelete();
+                            return null;
+                        }
+                    });
+                }
+            }
+
+            scheduler.awaitAll();
+        }
+        finally {
+            scheduler.shutdown();
+        }
+
+        return result;
+    }
+
+    /**
+     * Lists the blob directory on a separate thread while walking the local directory.
+     */
+    @DoesServiceRequest
+    private void enumerate(final TreeMap<String, CloudBlob> blobs, final TreeMap<String, File> files,
+            final BlobRequestOptions options, final OperationContext opContext) throws StorageException,
+            IOException, URISyntaxException {
+        final ExecutorService listingExecutor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Void> listing = listingExecutor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    final String prefix = BlobDirectorySynchronizer.this.directory.getPrefix();
+                    for (final ListBlobItem item : BlobDirectorySynchronizer.this.directory.listBlobs(
+                            null /* prefix */, true /* useFlatBlobListing */, EnumSet.of(BlobListingDetails.METADATA),
+                            options, opContext)) {
+                        final CloudBlob blob = (CloudBlob) item;
+                        blobs.put(blob.getName().substring(prefix.length()), blob);
+                    }
+
+                    return null;
+                }
+            });
+
+            if (this.localDirectory.isDirectory()) {
+                walk(this.localDirectory, "", files);
+            }
+
+            try {
+                listing.get();
+            }
+            catch (final InterruptedException e) {
+                throw Utility.initIOException(e);
+            }
+            catch (final ExecutionException e) {
+                if (e.getCause() instanceof StorageException) {
+                    throw (StorageException) e.getCause();
+                }
+                else if (e.getCause() instanceof URISyntaxException) {
+                    throw (URISyntaxException) e.getCause();
+                }
+                else if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+
+                throw Utility.initIOException(e);
+            }
+        }
+        finally {
+            listingExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Adds the files below the specified directory, keyed by their path relative to the local directory.
+     */
+    private static void walk(final File directory, final String relativePath, final TreeMap<String, File> files)
+            throws IOException {
+        final File[] children = directory.listFiles();
+        if (children == null) {
+            throw new IOException(directory.getPath());
+        }
+
+        for (final File child : children) {
+            if (child.isDirectory()) {
+                walk(child, relativePath + child.getName() + "/", files);
+            }
+            else if (child.isFile()) {
+                files.put(relativePath + child.getName(), child);
+            }
+        }
+    }
+
+    /**
+     * Calculates the base64 encoded MD5 of a file's content.
+     */
+    private static String calculateContentMD5(final File file) throws IOException, StorageException {
+        final InputStream fileStream = new BufferedInputStream(new FileInputStream(file));
+        try {
+            return Utility.analyzeStream(fileStream, -1L, -1L, false /* rewindSourceStream */,
+                    true /* calculateMD5 */).getMd5();
+        }
+        finally {
+            fileStream.close();
+        }
+    }
+
+    /**
+     * Gets whether a file and a blob hold the same content, as far as can be told without transferring it.
+     */
+    private boolean isUnchanged(final File file, final CloudBlob blob, final boolean upload) throws IOException,
+            StorageException {
+        final BlobProperties properties = blob.getProperties();
+        if (file.length() != properties.getLength()) {
+            return false;
+        }
+
+        if (this.compareContentMD5 && !Utility.isNullOrEmpty(properties.getContentMD5())) {
+            return properties.getContentMD5().equals(calculateContentMD5(file));
+        }
+
+        if (properties.getLastModified() == null) {
+            return false;
+        }
+
+        // File systems may keep last modified times with a precision of a second only.
+        final long blobSeconds = properties.getLastModified().getTime() / 1000;
+        final long fileSeconds = file.lastModified() / 1000;
+        return upload ? blobSeconds >= fileSeconds : blobSeconds == fileSeconds;
+    }
+
+    /**
+     * Runs the transfers and deletions of a synchronization on a bounded pool, recording their failures.
+     */
+    private static final class TransferScheduler {
+        private final int concurrentTransferCount;
+
+        private final ExecutorService threadExecutor;
+
+        private final ExecutorCompletionService<Void> completionService;
+
+        private int outstandingTasks;
+
+        private TransferScheduler(final int concurrentTransferCount) {
+            this.concurrentTransferCount = concurrentTransferCount;
+            this.threadExecutor = Executors.newFixedThreadPool(concurrentTransferCount);
+            this.completionService = new ExecutorCompletionService<Void>(this.threadExecutor);
+        }
+
+        /**
+         * Submits a task, waiting for an earlier one to complete if too many are queued.
+         */
+        private void submit(final BlobDirectorySyncResult result, final String relativePath, final Callable<Void> task)
+                throws StorageException, IOException {
+            if (this.outstandingTasks >= this.concurrentTransferCount * 2) {
+                CloudBlob.waitForTask(this.completionService);
+                this.outstandingTasks--;
+            }
+
+            this.completionService.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    try {
+                        task.call();
+                    }
+                    catch (final Exception e) {
+                        result.recordFailure(relativePath, e);
+                    }
+
+                    return null;
+                }
+            });
+            this.outstandingTasks++;
+        }
+
+        /**
+         * Waits for every submitted task to complete.
+         */
+        private void awaitAll() throws StorageException, IOException {
+            while (this.outstandingTasks > 0) {
+                CloudBlob.waitForTask(this.completionService);
+                this.outstandingTasks--;
+            }
+        }
+
+        private void shutdown() {
+            this.threadExecutor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ * Copyright Microsoft Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage.blob;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashSet;
+
+import com.microsoft.azure.storage.Constants;
+
+/**
+ * RESERVED FOR INTERNAL USE. Represents the checkpoint of a resumable blob download to a file.
+ * <p>
+ * The checkpoint starts with a header identifying the blob, its ETag and length and the chunk size, followed by the
+ * index of each chunk which has been written to the target file. A checkpoint whose header does not match the current
+ * download, because the blob changed or a different chunk size is used, is discarded and the download starts over.
+ */
+final class BlobDownloadCheckpoint {
+    /**
+     * The header prefix which identifies the checkpoint format.
+     */
+    private static final String HEADER_PREFIX = "BlobDownloadCheckpoint/1";
+
+    /**
+     * The separator used between the fields of the header.
+     */
+    private static final char FIELD_SEPARATOR = '\t';
+
+    /**
+     * The terminator of a chunk record, which tells a complete record from one cut short by an interruption.
+     */
+    private static final char RECORD_TERMINATOR = ';';
+
+    /**
+     * Holds the checkpoint file.
+     */
+    private final File checkpointFile;
+
+    /**
+     * Holds the indices of the completed chunks.
+     */
+    private final HashSet<Long> completedChunks = new HashSet<Long>();
+
+    /**
+     * Holds the writer appending to the checkpoint file.
+     */
+    private Writer writer;
+
+    /**
+     * Opens a checkpoint, continuing it if it belongs to the same download or starting a new one otherwise.
+     *
+     * @param checkpointFile
+     *            A <code>java.io.File</code> object that represents the checkpoint file.
+     * @param blobUri
+     *            A <code>String</code> which represents the URI of the blob, including any snapshot.
+     * @param etag
+     *            A <code>String</code> which represents the ETag of the blob.
+     * @param length
+     *            A <code>long</code> which represents the length of the blob.
+     * @param chunkSize
+     *            An <code>int</code> which represents the size of the chunks the blob is downloaded in.
+     *
+     * @return A {@link BlobDownloadCheckpoint} object that represents the open checkpoint.
+     *
+     * @throws IOException
+     *             If the checkpoint could not be read or written.
+     */
+    static BlobDownloadCheckpoint open(final File checkpointFile, final String blobUri, final String etag,
+            final long length, final int chunkSize) throws IOException {
+        final String header = HEADER_PREFIX + FIELD_SEPARATOR + blobUri + FIELD_SEPARATOR + etag + FIELD_SEPARATOR
+                + length + FIELD_SEPARATOR + chunkSize;
+
+        final BlobDownloadCheckpoint checkpoint = new BlobDownloadCheckpoint(checkpointFile);
+        final boolean resumed = checkpoint.load(header);
+        checkpoint.writer = new OutputStreamWriter(new FileOutputStream(checkpointFile, resumed),
+                Constants.UTF8_CHARSET);
+
+        if (!resumed) {
+            checkpoint.completedChunks.clear();
+            checkpoint.writeLine(header);
+        }
+
+        return checkpoint;
+    }
+
+    private BlobDownloadCheckpoint(final File checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * Gets whether any chunks have been completed, that is whether the download is being resumed.
+     *
+     * @return <code>true</code> if chunks have been completed; otherwise, <code>false</code>.
+     */
+    synchronized boolean hasCompletedChunks() {
+        return !this.completedChunks.isEmpty();
+    }
+
+    /**
+     * Gets whether the chunk at the specified index has been written to the target file.
+     *
+     * @param chunkIndex
+     *            A <code>long</code> which represents the index of the chunk.
+     *
+     * @return <code>true</code> if the chunk is complete; otherwise, <code>false</code>.
+     */
+    synchronized boolean isCompleted(final long chunkIndex) {
+        return this.completedChunks.contains(chunkIndex);
+    }
+
+    /**
+     * Records a chunk which has been written to the target file.
+     *
+     * @param chunkIndex
+     *            A <code>long</code> which represents the index of the chunk.
+     *
+     * @throws IOException
+     *             If the checkpoint could not be written.
+     */
+    synchronized void recordChunk(final long chunkIndex) throws IOException {
+        this.completedChunks.add(chunkIndex);
+        this.writeLine(Long.toString(chunkIndex) + RECORD_TERMINATOR);
+    }
+
+    /**
+     * Closes the checkpoint file.
+     */
+    synchronized void close() {
+        if (this.writer != null) {
+            try {
+                this.writer.close();
+            }
+            catch (final IOException e) {
+                // Ignore, every line was flushed when it was written.
+            }
+
+            this.writer = null;
+        }
+    }
+
+    /**
+     * Closes and deletes the checkpoint file, once the download has completed or must start over.
+     */
+    synchronized void delete() {
+        this.close();
+        this.checkpointFile.delete();
+    }
+
+    private void writeLine(final String line) throws IOException {
+        this.writer.write(line);
+        this.writer.write('\n');
+        this.writer.flush();
+    }
+
+    /**
+     * Loads the checkpoint file if it exists and its header matches.
+     */
+    private boolean load(final String header) throws IOException {
+        if (!this.checkpointFile.isFile()) {
+            return false;
+        }
+
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(
+                this.checkpointFile), Constants.UTF8_CHARSET));
+        try {
+            if (!header.equals(reader.readLine())) {
+                return false;
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() < 2 || line.charAt(line.length() - 1) != RECORD_TERMINATOR) {
+                    // A partially written record of an interrupted download.
+                    continue;
+                }
+
+                try {
+                    this.completedChunks.add(Long.parseLong(line.substring(0, line.length() - 1)));
+                }
+                catch (final NumberFormatException e) {
+                    continue;
+                }
+            }
+
+            return true;
+        }
+        finally {
+            reader.close();
+        }
+    }
+}
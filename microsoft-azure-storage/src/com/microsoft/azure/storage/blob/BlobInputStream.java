@@ -252,8 +252,21 @@ public final class BlobInputStream extends InputStream {
         try {
             final byte[] byteBuffer = new byte[readLength];
 
-            this.parentBlobRef.downloadRangeInternal(this.currentAbsoluteReadPosition, (long) readLength, byteBuffer,
-                    0, this.accessCondition, this.options, this.opContext);
+            // The stream is bound to the ETag of the blob, so a cached range with the same ETag is still current.
+            final BlobRangeCache rangeCache = this.parentBlobRef.getServiceClient().getRangeCache();
+            final String etag = this.accessCondition.getIfMatch();
+            final String rangeKey = rangeCache == null ? null : BlobRangeCache.getRangeKey(this.parentBlobRef,
+                    this.currentAbsoluteReadPosition, (long) readLength);
+
+            if (rangeKey == null || !rangeCache.readRange(rangeKey, etag, byteBuffer, 0, readLength)) {
+                this.parentBlobRef.downloadRangeInternal(this.currentAbsoluteReadPosition, (long) readLength,
+                        byteBuffer, 0, this.accessCondition, this.options, this.opContext);
+
+                if (rangeKey != null) {
+                    rangeCache.recordMiss();
+                    rangeCache.putRange(rangeKey, etag, byteBuffer, 0, readLength);
+                }
+            }
 
             this.currentBuffer = new ByteArrayInputStream(byteBuffer);
             this.bufferSize = readLength;
@@ -0,0 +1,527 @@
+/**
+ * Copyright Microsoft Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage.blob;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.microsoft.azure.storage.DoesServiceRequest;
+import com.microsoft.azure.storage.OperationContext;
+import com.microsoft.azure.storage.ResultContinuation;
+import com.microsoft.azure.storage.ResultSegment;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.core.SR;
+
+/**
+ * Represents an inventory of the blobs of a container, holding the name, length, ETag and last modified time of each
+ * blob whose name begins with a prefix.
+ * <p>
+ * The inventory is built by {@link #refresh()} and can be saved to a compact file with {@link #save(File)} and loaded
+ * again with {@link #load(File, CloudBlobContainer)}, so that a process can start from the saved inventory instead of
+ * listing the container. Lookups, such as {@link #get(String)} and {@link #list(String)}, never make a service request.
+ * <p>
+ * The inventory is refreshed one top-level virtual directory at a time. The blobs listed in each directory are
+ * compared with those of the inventory by name, ETag and length, and only the directories which changed are
+ * replaced. {@link #refresh()} still lists every blob under the prefix; only
+ * {@link #refresh(Iterable, BlobRequestOptions, OperationContext)}, which lists just the directories the caller knows
+ * changed, is incremental.
+ * <p>
+ * The inventory is thread safe; lookups made while it is refreshed see each directory either before or after it was
+ * replaced.
+ */
+public final class BlobInventory {
+    /**
+     * The value which identifies an inventory file.
+     */
+    private static final int FILE_MAGIC = 0x424C4956;
+
+    /**
+     * The version of the inventory file format.
+     */
+    private static final int FILE_VERSION = 1;
+
+    /**
+     * Holds the container of the blobs.
+     */
+    private final CloudBlobContainer container;
+
+    /**
+     * Holds the prefix of the blobs in the inventory.
+     */
+    private final String prefix;
+
+    /**
+     * Holds the records of the blobs, keyed by name.
+     */
+    private final TreeMap<String, BlobListingRecord> records = new TreeMap<String, BlobListingRecord>();
+
+    /**
+     * Creates an empty inventory of the blobs of a container whose names begin with the specified prefix.
+     *
+     * @param container
+     *            A {@link CloudBlobContainer} object which represents the container of the blobs.
+     * @param prefix
+     *            A <code>String</code> which represents the prefix of the blob names, or <code>null</code> for all
+     *            the blobs of the container.
+     */
+    public BlobInventory(final CloudBlobContainer container, final String prefix) {
+        this.container = container;
+        this.prefix = prefix == null ? "" : prefix;
+    }
+
+    /**
+     * Gets the container of the blobs in the inventory.
+     *
+     * @return A {@link CloudBlobContainer} object which represents the container.
+     */
+    public CloudBlobContainer getContainer() {
+        return this.container;
+    }
+
+    /**
+     * Gets the prefix of the blob names in the inventory.
+     *
+     * @return A <code>String</code> which represents the prefix, which is empty for all the blobs of the container.
+     */
+    public String getPrefix() {
+        return this.prefix;
+    }
+
+    /**
+     * Gets the number of blobs in the inventory.
+     *
+     * @return An <code>int</code> which represents the number of blobs.
+     */
+    public synchronized int size() {
+        return this.records.size();
+    }
+
+    /**
+     * Gets the record of the blob with the specified name.
+     *
+     * @param name
+     *            A <code>String</code> which represents the name of the blob.
+     *
+     * @return A {@link BlobListingRecord} object which represents the blob, or <code>null</code> if the inventory has
+     *         no such blob.
+     */
+    public synchronized BlobListingRecord get(final String name) {
+        return this.records.get(name);
+    }
+
+    /**
+     * Lists the records of the blobs whose names begin with the specified prefix, in name order.
+     *
+     * @param namePrefix
+     *            A <code>String</code> which represents the prefix of the blob names.
+     *
+     * @return A <code>java.util.List</code> of the {@link BlobListingRecord} objects of the blobs.
+     */
+    public synchronized List<BlobListingRecord> list(final String namePrefix) {
+        return new ArrayList<BlobListingRecord>(prefixMap(this.records, namePrefix).values());
+    }
+
+    /**
+     * Lists the records of the blobs whose names are within the specified range, in name order.
+     *
+     * @param fromName
+     *            A <code>String</code> which represents the first name of the range, inclusive.
+     * @param toName
+     *            A <code>String</code> which represents the last name of the range, exclusive.
+     *
+     * @return A <code>java.util.List</code> of the {@link BlobListingRecord} objects of the blobs.
+     */
+    public synchronized List<BlobListingRecord> list(final String fromName, final String toName) {
+        return new ArrayList<BlobListingRecord>(this.records.subMap(fromName, toName).values());
+    }
+
+    /**
+     * Refreshes the inventory, replacing the top-level virtual directories which changed. Every blob under the prefix
+     * of the inventory is listed.
+     *
+     * @return A <code>java.util.List</code> of the prefixes of the directories which changed. The prefix of the
+     *         inventory stands for the blobs which are not in a directory.
+     *
+     * @throws StorageException
+     *             If a storage service error occurred.
+     */
+    @DoesServiceRequest
+    public List<String> refresh() throws StorageException {
+        return this.refresh(null /* options */, null /* opContext */);
+    }
+
+    /**
+     * Refreshes the inventory using the specified request options and operation context, replacing the top-level
+     * virtual directories which changed. Every blob under the prefix of the inventory is listed.
+     *
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies any additional options for the request. Specifying
+     *            <code>null</code> will use the default request options from the associated service client (
+     *            {@link CloudBlobClient}).
+     * @param opContext
+     *            An {@link OperationContext} object that represents the context for the current operation. This object
+     *            is used to track requests to the storage service, and to provide additional runtime information about
+     *            the operation.
+     *
+     * @return A <code>java.util.List</code> of the prefixes of the directories which changed. The prefix of the
+     *         inventory stands for the blobs which are not in a directory.
+     *
+     * @throws StorageException
+     *             If a storage service error occurred.
+     */
+    @DoesServiceRequest
+    public List<String> refresh(BlobRequestOptions options, OperationContext opContext) throws StorageException {
+        if (opContext == null) {
+            opContext = new OperationContext();
+        }
+
+        opContext.initialize();
+        options = BlobRequestOptions.applyDefaults(options, BlobType.UNSPECIFIED, this.container.getServiceClient());
+
+        // The top level lists the blobs which are not in a directory along with the directories themselves.
+        final ArrayList<BlobListingRecord> rootRecords = new ArrayList<BlobListingRecord>();
+        final ArrayList<String> directories = new ArrayList<String>();
+        ResultContinuation token = null;
+        do {
+            final ResultSegment<BlobListingRecord> segment = this.container.listBlobRecordsSegmented(this.prefix,
+                    false /* useFlatBlobListing */, EnumSet.noneOf(BlobListingDetails.class), -1, token, options,
+                    opContext);
+            for (final BlobListingRecord record : segment.getResults()) {
+                if (record.isDirectory()) {
+                    directories.add(record.getName());
+                }
+                else {
+                    rootRecords.add(record);
+                }
+            }
+
+            token = segment.getContinuationToken();
+        } while (token != null);
+
+        final ArrayList<String> changedDirectories = new ArrayList<String>();
+        if (this.replaceRoot(rootRecords)) {
+            changedDirectories.add(this.prefix);
+        }
+
+        for (final String directory : directories) {
+            if (this.replaceDirectory(directory, this.listDirectory(directory, options, opContext))) {
+                changedDirectories.add(directory);
+            }
+        }
+
+        // The directories which are no longer listed were deleted.
+        final HashSet<String> listedDirectories = new HashSet<String>(directories);
+        for (final String directory : this.getDirectories()) {
+            if (!listedDirectories.contains(directory)) {
+                this.replaceDirectory(directory, new ArrayList<BlobListingRecord>());
+                changedDirectories.add(directory);
+            }
+        }
+
+        return changedDirectories;
+    }
+
+    /**
+     * Refreshes the specified virtual directories of the inventory, using the specified request options and operation
+     * context.
+     * <p>
+     * Only the specified directories are listed. This is the only incremental refresh: {@link #refresh()} lists
+     * every blob under the prefix of the inventory, so callers which know which directories changed should use this
+     * method instead.
+     *
+     * @param directoryPrefixes
+     *            An <code>Iterable</code> of the prefixes of the directories to refresh, which must begin with the
+     *            prefix of the inventory.
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies any additional options for the request. Specifying
+     *            <code>null</code> will use the default request options from the associated service client (
+     *            {@link CloudBlobClient}).
+     * @param opContext
+     *            An {@link OperationContext} object that represents the context for the current operation. This object
+     *            is used to track requests to the storage service, and to provide additional runtime information about
+     *            the operation.
+     *
+     * @throws StorageException
+     *             If a storage service error occurred.
+     */
+    @DoesServiceRequest
+    public void refresh(final Iterable<String> directoryPrefixes, BlobRequestOptions options,
+            OperationContext opContext) throws StorageException {
+        for (final String directory : directoryPrefixes) {
+            if (!directory.startsWith(this.prefix)) {
+                throw new IllegalArgumentException(String.format(SR.INVENTORY_PREFIX_MISMATCH, directory,
+                        this.prefix));
+            }
+        }
+
+        if (opContext == null) {
+            opContext = new OperationContext();
+        }
+
+        opContext.initialize();
+        options = BlobRequestOptions.applyDefaults(options, BlobType.UNSPECIFIED, this.container.getServiceClient());
+
+        for (final String directory : directoryPrefixes) {
+            this.replaceDirectory(directory, this.listDirectory(directory, options, opContext));
+        }
+    }
+
+    /**
+     * Saves the inventory to the specified file.
+     * <p>
+     * The inventory is written to a temporary file next to the specified file first, which then replaces it, so that
+     * an interrupted save does not leave a partial inventory behind.
+     *
+     * @param file
+     *            A <code>java.io.File</code> object which represents the file to save to.
+     *
+     * @throws IOException
+     *             If the file could not be written.
+     */
+    public void save(final File file) throws IOException {
+        final ArrayList<BlobListingRecord> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<BlobListingRecord>(this.records.values());
+        }
+
+        final File tempFile = new File(file.getPath() + ".tmp");
+        final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            output.writeInt(FILE_MAGIC);
+            output.writeInt(FILE_VERSION);
+            output.writeUTF(this.container.getUri().toString());
+            output.writeUTF(this.prefix);
+            output.writeInt(snapshot.size());
+
+            // Sorted names share long prefixes, so each name only stores what differs from the previous one.
+            String previousName = "";
+            for (final BlobListingRecord record : snapshot) {
+                final String name = record.getName();
+                final int shared = sharedPrefixLength(previousName, name);
+                output.writeShort(shared);
+                output.writeUTF(name.substring(shared));
+                output.writeByte(record.getBlobType().ordinal());
+                output.writeLong(record.getLength());
+                output.writeUTF(record.getEtag() == null ? "" : record.getEtag());
+                output.writeLong(record.getLastModified() == null ? 0 : record.getLastModified().getTime());
+                previousName = name;
+            }
+        }
+        finally {
+            output.close();
+        }
+
+        if (file.exists() && !file.delete()) {
+            throw new IOException(String.format(SR.INVENTORY_FILE_NOT_REPLACED, file));
+        }
+
+        if (!tempFile.renameTo(file)) {
+            throw new IOException(String.format(SR.INVENTORY_FILE_NOT_REPLACED, file));
+        }
+    }
+
+    /**
+     * Loads an inventory saved with {@link #save(File)}.
+     *
+     * @param file
+     *            A <code>java.io.File</code> object which represents the file to load.
+     * @param container
+     *            A {@link CloudBlobContainer} object which represents the container the inventory was built for.
+     *
+     * @return A {@link BlobInventory} object which represents the loaded inventory.
+     *
+     * @throws IOException
+     *             If the file could not be read or is not an inventory file.
+     * @throws IllegalArgumentException
+     *             If the inventory was built for another container.
+     */
+    public static BlobInventory load(final File file, final CloudBlobContainer container) throws IOException {
+        final DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (input.readInt() != FILE_MAGIC || input.readInt() != FILE_VERSION) {
+                throw new IOException(SR.INVALID_INVENTORY_FILE);
+            }
+
+            final String containerUri = input.readUTF();
+            if (!containerUri.equals(container.getUri().toString())) {
+                throw new IllegalArgumentException(String.format(SR.INVENTORY_CONTAINER_MISMATCH, containerUri));
+            }
+
+            final BlobInventory inventory = new BlobInventory(container, input.readUTF());
+            final BlobType[] blobTypes = BlobType.values();
+            final int count = input.readInt();
+            String previousName = "";
+            for (int i = 0; i < count; i++) {
+                final int shared = input.readShort();
+                final String name = previousName.substring(0, shared) + input.readUTF();
+                final int blobType = input.readByte();
+                final long length = input.readLong();
+                final String etag = input.readUTF();
+                final long lastModified = input.readLong();
+                if (blobType < 0 || blobType >= blobTypes.length) {
+                    throw new IOException(SR.INVALID_INVENTORY_FILE);
+                }
+
+                inventory.records.put(name, new BlobListingRecord(container, name, null /* snapshotID */,
+                        blobTypes[blobType], length, etag.length() == 0 ? null : etag, lastModified == 0 ? null
+                                : new Date(lastModified), null /* contentMD5 */, null /* metadata */));
+                previousName = name;
+            }
+
+            return inventory;
+        }
+        catch (final StringIndexOutOfBoundsException e) {
+            throw new IOException(SR.INVALID_INVENTORY_FILE);
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Lists all the blobs of a directory.
+     */
+    private ArrayList<BlobListingRecord> listDirectory(final String directory, final BlobRequestOptions options,
+            final OperationContext opContext) throws StorageException {
+        final ArrayList<BlobListingRecord> directoryRecords = new ArrayList<BlobListingRecord>();
+        ResultContinuation token = null;
+        do {
+            final ResultSegment<BlobListingRecord> segment = this.container.listBlobRecordsSegmented(directory,
+                    true /* useFlatBlobListing */, EnumSet.noneOf(BlobListingDetails.class), -1, token, options,
+                    opContext);
+            directoryRecords.addAll(segment.getResults());
+            token = segment.getContinuationToken();
+        } while (token != null);
+
+        return directoryRecords;
+    }
+
+    /**
+     * Replaces the blobs of a directory if they changed.
+     */
+    private synchronized boolean replaceDirectory(final String directory, final List<BlobListingRecord> listed) {
+        final SortedMap<String, BlobListingRecord> current = prefixMap(this.records, directory);
+        if (sameRecords(current, listed)) {
+            return false;
+        }
+
+        current.clear();
+        for (final BlobListingRecord record : listed) {
+            this.records.put(record.getName(), record);
+        }
+
+        return true;
+    }
+
+    /**
+     * Replaces the blobs which are not in a directory if they changed.
+     */
+    private synchronized boolean replaceRoot(final List<BlobListingRecord> listed) {
+        final TreeMap<String, BlobListingRecord> current = new TreeMap<String, BlobListingRecord>();
+        for (final BlobListingRecord record : prefixMap(this.records, this.prefix).values()) {
+            if (this.getDirectory(record.getName()) == null) {
+                current.put(record.getName(), record);
+            }
+        }
+
+        if (sameRecords(current, listed)) {
+            return false;
+        }
+
+        for (final String name : current.keySet()) {
+            this.records.remove(name);
+        }
+
+        for (final BlobListingRecord record : listed) {
+            this.records.put(record.getName(), record);
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the top-level directories of the blobs in the inventory.
+     */
+    private synchronized HashSet<String> getDirectories() {
+        final HashSet<String> directories = new HashSet<String>();
+        for (final String name : prefixMap(this.records, this.prefix).keySet()) {
+            final String directory = this.getDirectory(name);
+            if (directory != null) {
+                directories.add(directory);
+            }
+        }
+
+        return directories;
+    }
+
+    /**
+     * Gets the top-level directory of a blob, or <code>null</code> if it is not in a directory.
+     */
+    private String getDirectory(final String name) {
+        final String delimiter = this.container.getServiceClient().getDirectoryDelimiter();
+        final int delimiterIndex = name.indexOf(delimiter, this.prefix.length());
+        return delimiterIndex < 0 ? null : name.substring(0, delimiterIndex + delimiter.length());
+    }
+
+    private static SortedMap<String, BlobListingRecord> prefixMap(final TreeMap<String, BlobListingRecord> map,
+            final String namePrefix) {
+        return namePrefix.length() == 0 ? map : map.subMap(namePrefix, namePrefix + Character.MAX_VALUE);
+    }
+
+    /**
+     * Gets whether the listed blobs are those of the inventory, with the same names, ETags and lengths.
+     */
+    private static boolean sameRecords(final Map<String, BlobListingRecord> current,
+            final List<BlobListingRecord> listed) {
+        if (current.size() != listed.size()) {
+            return false;
+        }
+
+        for (final BlobListingRecord record : listed) {
+            final BlobListingRecord currentRecord = current.get(record.getName());
+            if (currentRecord == null || currentRecord.getLength() != record.getLength()
+                    || (currentRecord.getEtag() == null ? record.getEtag() != null : !currentRecord.getEtag().equals(
+                            record.getEtag()))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int sharedPrefixLength(final String first, final String second) {
+        final int maxLength = Math.min(first.length(), second.length());
+        int length = 0;
+        while (length < maxLength && first.charAt(length) == second.charAt(length)) {
+            length++;
+        }
+
+        return length;
+    }
+}
@@ -43,7 +43,7 @@ final class BlobListHandler extends DefaultHandler {
     private final Stack<String> elementStack = new Stack<String>();
     private StringBuilder bld = new StringBuilder();
 
-    private final ListBlobsResponse response = new ListBlobsResponse();
+    private final ListBlobsResponse response;
 
     private final CloudBlobContainer container;
 
@@ -53,8 +53,9 @@ final class BlobListHandler extends DefaultHandler {
     private String blobName;
     private String snapshotID;
 
-    private BlobListHandler(CloudBlobContainer container) {
+    private BlobListHandler(CloudBlobContainer container, ListBlobsResponse response) {
         this.container = container;
+        this.response = response;
     }
 
     /**
@@ -69,8 +70,25 @@ final class BlobListHandler extends DefaultHandler {
      */
     public static ListBlobsResponse getBlobList(final InputStream stream, final CloudBlobContainer container)
             throws ParserConfigurationException, SAXException, IOException {
+        return getBlobList(stream, container, new ListBlobsResponse());
+    }
+
+    /**
+     * Parse the response into the specified response object, which may deliver the items to a consumer as they are
+     * read.
+     * 
+     * @param stream
+     * @param container
+     * @param response
+     * @return
+     * @throws ParserConfigurationException
+     * @throws SAXException
+     * @throws IOException
+     */
+    public static ListBlobsResponse getBlobList(final InputStream stream, final CloudBlobContainer container,
+            final ListBlobsResponse response) throws ParserConfigurationException, SAXException, IOException {
         SAXParser saxParser = Utility.getSAXParser();
-        BlobListHandler handler = new BlobListHandler(container);
+        BlobListHandler handler = new BlobListHandler(container, response);
         saxParser.parse(stream, handler);
 
         return handler.response;
@@ -133,15 +151,23 @@ final class BlobListHandler extends DefaultHandler {
             retBlob.metadata = this.metadata;
             retBlob.properties.setCopyState(this.copyState);
 
-            this.response.getResults().add(retBlob);
+            try {
+                this.response.addResult(retBlob);
+            }
+            catch (StorageException e) {
+                throw new SAXException(e);
+            }
         }
         else if (BlobConstants.BLOB_PREFIX_ELEMENT.equals(currentNode)) {
             try {
-                this.response.getResults().add(this.container.getDirectoryReference(this.blobName));
+                this.response.addResult(this.container.getDirectoryReference(this.blobName));
             }
             catch (URISyntaxException e) {
                 throw new SAXException(e);
             }
+            catch (StorageException e) {
+                throw new SAXException(e);
+            }
         }
         else if (ListResponse.ENUMERATION_RESULTS.equals(parentNode)) {
             if (Constants.PREFIX_ELEMENT.equals(currentNode)) {
@@ -0,0 +1,38 @@
+/**
+ * Copyright Microsoft Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage.blob;
+
+import java.util.List;
+
+/**
+ * Receives the blobs listed by a {@link BlobPartitionedLister}.
+ * <p>
+ * The partitions are listed concurrently, so the handler is called from several threads at once and must be thread
+ * safe. Within a partition, segments are handled one at a time, in name order.
+ */
+public interface BlobListingHandler {
+    /**
+     * Handles a segment of the blobs listed in a partition.
+     *
+     * @param partitionPrefix
+     *            A <code>String</code> which represents the prefix of the partition the blobs were listed in.
+     * @param items
+     *            A <code>java.util.List</code> of the {@link ListBlobItem} objects listed.
+     *
+     * @throws Exception
+     *             If the segment could not be handled, which stops the listing.
+     */
+    void handleSegment(String partitionPrefix, List<ListBlobItem> items) throws Exception;
+}
@@ -0,0 +1,235 @@
+/**
+ * Copyright Microsoft Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage.blob;
+
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.core.SR;
+
+/**
+ * Represents a blob or virtual directory returned by a lightweight listing, such as
+ * {@link CloudBlobContainer#listBlobRecords(String, boolean, java.util.EnumSet, BlobRequestOptions,
+ * com.microsoft.azure.storage.OperationContext)}.
+ * <p>
+ * A record holds only the name and the main properties of the blob, and is immutable. Unlike the {@link CloudBlob}
+ * objects of a regular listing, no URI is built while listing; a reference to the blob is only created when
+ * {@link #getBlob()} or {@link #getDirectory()} is called.
+ */
+public final class BlobListingRecord {
+    /**
+     * Holds the container of the blob.
+     */
+    private final CloudBlobContainer container;
+
+    /**
+     * Holds the name of the blob, or the prefix of the virtual directory.
+     */
+    private final String name;
+
+    /**
+     * Holds the snapshot ID of the blob, if it is a snapshot.
+     */
+    private final String snapshotID;
+
+    /**
+     * Holds the type of the blob, or <code>null</code> for a virtual directory.
+     */
+    private final BlobType blobType;
+
+    /**
+     * Holds the length of the blob, in bytes.
+     */
+    private final long length;
+
+    /**
+     * Holds the ETag of the blob.
+     */
+    private final String etag;
+
+    /**
+     * Holds the last modified time of the blob, in milliseconds since the epoch, or 0 if unknown.
+     */
+    private final long lastModified;
+
+    /**
+     * Holds the Content-MD5 of the blob.
+     */
+    private final String contentMD5;
+
+    /**
+     * Holds the metadata of the blob, or <code>null</code> if metadata was not listed.
+     */
+    private final Map<String, String> metadata;
+
+    /**
+     * Creates a record for a blob.
+     */
+    BlobListingRecord(final CloudBlobContainer container, final String name, final String snapshotID,
+            final BlobType blobType, final long length, final String etag, final Date lastModified,
+            final String contentMD5, final HashMap<String, String> metadata) {
+        this.container = container;
+        this.name = name;
+        this.snapshotID = snapshotID;
+        this.blobType = blobType;
+        this.length = length;
+        this.etag = etag;
+        this.lastModified = lastModified == null ? 0 : lastModified.getTime();
+        this.contentMD5 = contentMD5;
+        this.metadata = metadata == null ? null : Collections.unmodifiableMap(metadata);
+    }
+
+    /**
+     * Creates a record for a virtual directory.
+     */
+    BlobListingRecord(final CloudBlobContainer container, final String prefix) {
+        this(container, prefix, null /* snapshotID */, null /* blobType */, 0 /* length */, null /* etag */,
+                null /* lastModified */, null /* contentMD5 */, null /* metadata */);
+    }
+
+    /**
+     * Gets whether the record represents a virtual directory, listed in hierarchical mode, rather than a blob.
+     *
+     * @return <code>true</code> if the record represents a virtual directory; otherwise, <code>false</code>.
+     */
+    public boolean isDirectory() {
+        return this.blobType == null;
+    }
+
+    /**
+     * Gets the name of the blob, or the prefix of the virtual directory.
+     *
+     * @return A <code>String</code> which represents the name.
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Gets the snapshot ID of the blob.
+     *
+     * @return A <code>String</code> which represents the snapshot ID, or <code>null</code> if the blob is not a
+     *         snapshot.
+     */
+    public String getSnapshotID() {
+        return this.snapshotID;
+    }
+
+    /**
+     * Gets the type of the blob.
+     *
+     * @return A {@link BlobType} value which represents the type of the blob, or <code>null</code> for a virtual
+     *         directory.
+     */
+    public BlobType getBlobType() {
+        return this.blobType;
+    }
+
+    /**
+     * Gets the length of the blob.
+     *
+     * @return A <code>long</code> which represents the length of the blob, in bytes.
+     */
+    public long getLength() {
+        return this.length;
+    }
+
+    /**
+     * Gets the ETag of the blob.
+     *
+     * @return A <code>String</code> which represents the ETag.
+     */
+    public String getEtag() {
+        return this.etag;
+    }
+
+    /**
+     * Gets the time the blob was last modified.
+     *
+     * @return A <code>java.util.Date</code> object which represents the last modified time, or <code>null</code> for
+     *         a virtual directory.
+     */
+    public Date getLastModified() {
+        return this.lastModified == 0 ? null : new Date(this.lastModified);
+    }
+
+    /**
+     * Gets the Content-MD5 of the blob.
+     *
+     * @return A <code>String</code> which represents the Base64 encoded MD5 of the content, or <code>null</code> if it
+     *         is not set.
+     */
+    public String getContentMD5() {
+        return this.contentMD5;
+    }
+
+    /**
+     * Gets the metadata of the blob.
+     *
+     * @return A read-only <code>java.util.Map</code> object of the metadata, or <code>null</code> if metadata was not
+     *         included in the listing.
+     */
+    public Map<String, String> getMetadata() {
+        return this.metadata;
+    }
+
+    /**
+     * Creates a reference to the blob, with the properties of the record.
+     *
+     * @return A {@link CloudBlob} object which represents the blob.
+     *
+     * @throws StorageException
+     *             If a storage service error occurred.
+     * @throws URISyntaxException
+     *             If the resource URI is invalid.
+     */
+    public CloudBlob getBlob() throws StorageException, URISyntaxException {
+        if (this.isDirectory()) {
+            throw new IllegalStateException(SR.LISTING_RECORD_IS_DIRECTORY);
+        }
+
+        final CloudBlob blob = this.blobType == BlobType.PAGE_BLOB ? this.container.getPageBlobReference(this.name,
+                this.snapshotID) : this.container.getBlockBlobReference(this.name, this.snapshotID);
+        blob.properties.setLength(this.length);
+        blob.properties.setEtag(this.etag);
+        blob.properties.setLastModified(this.getLastModified());
+        blob.properties.setContentMD5(this.contentMD5);
+        if (this.metadata != null) {
+            blob.metadata = new HashMap<String, String>(this.metadata);
+        }
+
+        return blob;
+    }
+
+    /**
+     * Creates a reference to the virtual directory.
+     *
+     * @return A {@link CloudBlobDirectory} object which represents the virtual directory.
+     *
+     * @throws URISyntaxException
+     *             If the resource URI is invalid.
+     */
+    public CloudBlobDirectory getDirectory() throws URISyntaxException {
+        if (!this.isDirectory()) {
+            throw new IllegalStateException(SR.LISTING_RECORD_IS_BLOB);
+        }
+
+        return this.container.getDirectoryReference(this.name);
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright Microsoft Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage.blob;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Stack;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.microsoft.azure.storage.Constants;
+import com.microsoft.azure.storage.core.ListResponse;
+import com.microsoft.azure.storage.core.SR;
+import com.microsoft.azure.storage.core.Utility;
+
+/**
+ * RESERVED FOR INTERNAL USE. A class used to deserialize a list of blobs into {@link BlobListingRecord} objects.
+ * <p>
+ * Unlike {@link BlobListHandler}, no blob reference is created and only the properties kept by the records are parsed.
+ */
+final class BlobListingRecordHandler extends DefaultHandler {
+
+    private final Stack<String> elementStack = new Stack<String>();
+    private final StringBuilder bld = new StringBuilder();
+
+    private final ListResponse<BlobListingRecord> response = new ListResponse<BlobListingRecord>();
+
+    private final CloudBlobContainer container;
+
+    private String blobName;
+    private String snapshotID;
+    private BlobType blobType;
+    private long length;
+    private String etag;
+    private Date lastModified;
+    private String contentMD5;
+    private HashMap<String, String> metadata;
+
+    private BlobListingRecordHandler(CloudBlobContainer container) {
+        this.container = container;
+    }
+
+    /**
+     * Parse and return the response.
+     * 
+     * @param stream
+     * @param container
+     * @return
+     * @throws ParserConfigurationException
+     * @throws SAXException
+     * @throws IOException
+     */
+    public static ListResponse<BlobListingRecord> getRecordList(final InputStream stream,
+            final CloudBlobContainer container) throws ParserConfigurationException, SAXException, IOException {
+        SAXParser saxParser = Utility.getSAXParser();
+        BlobListingRecordHandler handler = new BlobListingRecordHandler(container);
+        saxParser.parse(stream, handler);
+
+        return handler.response;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+        this.elementStack.push(localName);
+
+        if (BlobConstants.BLOB_ELEMENT.equals(localName) || BlobConstants.BLOB_PREFIX_ELEMENT.equals(localName)) {
+            this.blobName = Constants.EMPTY_STRING;
+            this.snapshotID = null;
+            this.blobType = null;
+            this.length = 0;
+            this.etag = null;
+            this.lastModified = null;
+            this.contentMD5 = null;
+            this.metadata = null;
+        }
+        else if (Constants.METADATA_ELEMENT.equals(localName)) {
+            this.metadata = new HashMap<String, String>();
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        String currentNode = this.elementStack.pop();
+
+        // if the node popped from the stack and the localName don't match, the xml document is improperly formatted
+        if (!localName.equals(currentNode)) {
+            throw new SAXException(SR.INVALID_RESPONSE_RECEIVED);
+        }
+
+        String parentNode = null;
+        if (!this.elementStack.isEmpty()) {
+            parentNode = this.elementStack.peek();
+        }
+
+        String value = this.bld.length() == 0 ? null : this.bld.toString();
+        this.bld.setLength(0);
+
+        if (BlobConstants.BLOB_ELEMENT.equals(currentNode)) {
+            if (this.blobType == null) {
+                throw new SAXException(SR.INVALID_RESPONSE_RECEIVED);
+            }
+
+            this.response.getResults().add(
+                    new BlobListingRecord(this.container, this.blobName, this.snapshotID, this.blobType,
+                            this.length, this.etag, this.lastModified, this.contentMD5, this.metadata));
+        }
+        else if (BlobConstants.BLOB_PREFIX_ELEMENT.equals(currentNode)) {
+            this.response.getResults().add(new BlobListingRecord(this.container, this.blobName));
+        }
+        else if (ListResponse.ENUMERATION_RESULTS.equals(parentNode)) {
+            if (Constants.PREFIX_ELEMENT.equals(currentNode)) {
+                this.response.setPrefix(value);
+            }
+            else if (Constants.MARKER_ELEMENT.equals(currentNode)) {
+                this.response.setMarker(value);
+            }
+            else if (Constants.NEXT_MARKER_ELEMENT.equals(currentNode)) {
+                this.response.setNextMarker(value);
+            }
+            else if (Constants.MAX_RESULTS_ELEMENT.equals(currentNode)) {
+                this.response.setMaxResults(Integer.parseInt(value));
+            }
+        }
+        else if (BlobConstants.BLOB_ELEMENT.equals(parentNode)) {
+            if (Constants.NAME_ELEMENT.equals(currentNode)) {
+                this.blobName = value;
+            }
+            else if (BlobConstants.SNAPSHOT_ELEMENT.equals(currentNode)) {
+                this.snapshotID = value;
+            }
+        }
+        else if (BlobConstants.BLOB_PREFIX_ELEMENT.equals(parentNode)) {
+            if (Constants.NAME_ELEMENT.equals(currentNode)) {
+                this.blobName = value;
+            }
+        }
+        else if (BlobConstants.PROPERTIES.equals(parentNode)) {
+            try {
+                this.setProperty(currentNode, value);
+            }
+            catch (ParseException e) {
+                throw new SAXException(e);
+            }
+        }
+        else if (Constants.METADATA_ELEMENT.equals(parentNode)) {
+            this.metadata.put(currentNode, value);
+        }
+    }
+
+    @Override
+    public void characters(char ch[], int start, int length) throws SAXException {
+        this.bld.append(ch, start, length);
+    }
+
+    private void setProperty(String currentNode, String value) throws ParseException, SAXException {
+        if (Constants.LAST_MODIFIED_ELEMENT.equals(currentNode)) {
+            this.lastModified = Utility.parseRFC1123DateFromStringInGMT(value);
+        }
+        else if (Constants.ETAG_ELEMENT.equals(currentNode)) {
+            this.etag = Utility.formatETag(value);
+        }
+        else if (Constants.HeaderConstants.CONTENT_LENGTH.equals(currentNode)) {
+            this.length = Long.parseLong(value);
+        }
+        else if (Constants.HeaderConstants.CONTENT_MD5.equals(currentNode)) {
+            this.contentMD5 = value;
+        }
+        else if (BlobConstants.BLOB_TYPE_ELEMENT.equals(currentNode)) {
+            if (BlobConstants.BLOCK_BLOB_VALUE.equals(value)) {
+                this.blobType = BlobType.BLOCK_BLOB;
+            }
+            else if (BlobConstants.PAGE_BLOB_VALUE.equals(value)) {
+                this.blobType = BlobType.PAGE_BLOB;
+            }
+            else {
+                throw new SAXException(SR.INVALID_RESPONSE_RECEIVED);
+            }
+        }
+    }
+}
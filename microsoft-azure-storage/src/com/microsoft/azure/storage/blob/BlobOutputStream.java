@@ -15,10 +15,10 @@
 package com.microsoft.azure.storage.blob;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
@@ -29,6 +29,8 @@ import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.microsoft.azure.storage.AccessCondition;
 import com.microsoft.azure.storage.DoesServiceRequest;
@@ -83,10 +85,27 @@ public final class BlobOutputStream extends OutputStream {
     BlobRequestOptions options;
 
     /**
-     * Holds the reference to the MD5 digest for the blob.
+     * Holds the reference to the MD5 digest for the blob. Only updated on the hash stage.
      */
     private MessageDigest md5Digest;
 
+    /**
+     * Used when the blob MD5 is stored, the single thread on which the MD5 digest is updated with each dispatched
+     * buffer, in order, while earlier buffers are being uploaded and later ones written.
+     */
+    private final ExecutorService hashExecutor;
+
+    /**
+     * Used when the blob MD5 is stored, bounds the number of dispatched buffers waiting to be hashed, so that a hash
+     * stage slower than the network holds back the writer instead of queuing buffers without limit.
+     */
+    private final Semaphore hashPermits;
+
+    /**
+     * Holds the last task submitted to the hash stage, which completes once all dispatched buffers have been hashed.
+     */
+    private Future<?> lastHashTask;
+
     /**
      * Used for block blobs, holds the current BlockID Sequence number.
      */
@@ -103,9 +122,20 @@ public final class BlobOutputStream extends OutputStream {
     private long currentPageOffset;
 
     /**
-     * A private buffer to store data prior to committing to the cloud.
+     * A private buffer to store data prior to committing to the cloud. Taken from the buffer pool when the first byte
+     * of a block or page range is written.
+     */
+    private byte[] outBuffer;
+
+    /**
+     * Holds the pool the block and page buffers are taken from and returned to.
      */
-    private ByteArrayOutputStream outBuffer;
+    private final BlobBufferPool bufferPool;
+
+    /**
+     * Holds the number of buffers handed to upload workers which have not yet been returned to the pool.
+     */
+    private final AtomicInteger pendingBuffers = new AtomicInteger();
 
     /**
      * Holds the number of currently buffered bytes.
@@ -118,6 +148,11 @@ public final class BlobOutputStream extends OutputStream {
      */
     private int internalWriteThreshold = -1;
 
+    /**
+     * Used for block blobs when adaptive block sizing is enabled, picks the size of each block.
+     */
+    private AdaptiveBlockSizePolicy blockSizePolicy;
+
     /**
      * Holds the number of current outstanding requests.
      */
@@ -159,7 +194,6 @@ public final class BlobOutputStream extends OutputStream {
         this.parentBlobRef = parentBlob;
         this.parentBlobRef.assertCorrectBlobType();
         this.options = new BlobRequestOptions(options);
-        this.outBuffer = new ByteArrayOutputStream();
         this.opContext = opContext;
         this.streamFaulted = false;
 
@@ -175,8 +209,19 @@ public final class BlobOutputStream extends OutputStream {
                 // This wont happen, throw fatal.
                 throw Utility.generateNewUnexpectedStorageException(e);
             }
+
+            this.hashExecutor = Executors.newSingleThreadExecutor();
+            this.hashPermits = new Semaphore(this.options.getConcurrentRequestCount() * 2);
+        }
+        else {
+            this.hashExecutor = null;
+            this.hashPermits = null;
         }
 
+        // Share the client's buffer pool if it has one, so the memory used by all of its streams is bounded.
+        final BlobBufferPool clientBufferPool = this.parentBlobRef.getServiceClient().getBufferPool();
+        this.bufferPool = clientBufferPool != null ? clientBufferPool : new BlobBufferPool(Long.MAX_VALUE);
+
         // V2 cachedThreadPool for perf.
         this.threadExecutor = Executors.newFixedThreadPool(this.options.getConcurrentRequestCount());
         this.completionService = new ExecutorCompletionService<Void>(this.threadExecutor);
@@ -206,6 +251,10 @@ public final class BlobOutputStream extends OutputStream {
 
         this.streamType = BlobType.BLOCK_BLOB;
         this.internalWriteThreshold = this.parentBlobRef.getStreamWriteSizeInBytes();
+
+        if (this.options.getUseAdaptiveBlockSize() != null && this.options.getUseAdaptiveBlockSize()) {
+            this.blockSizePolicy = new AdaptiveBlockSizePolicy(this.internalWriteThreshold);
+        }
     }
 
     /**
@@ -235,6 +284,23 @@ public final class BlobOutputStream extends OutputStream {
         this.internalWriteThreshold = (int) Math.min(this.parentBlobRef.getStreamWriteSizeInBytes(), length);
     }
 
+    /**
+     * Sets the number of bytes expected to be written to this stream, which lets adaptive block sizing pick a block
+     * size that fits the blob within the maximum number of blocks from the start.
+     * 
+     * @param expectedLength
+     *            A <code>long</code> which represents the expected length in bytes, or -1 if unknown.
+     */
+    synchronized void setExpectedLength(final long expectedLength) {
+        if (this.blockSizePolicy != null) {
+            this.blockSizePolicy.setExpectedLength(expectedLength);
+
+            if (this.outBuffer == null) {
+                this.internalWriteThreshold = this.blockSizePolicy.getNextBlockSize();
+            }
+        }
+    }
+
     /**
      * Helper function to check if the stream is faulted, if it is it surfaces the exception.
      * 
@@ -276,6 +342,9 @@ public final class BlobOutputStream extends OutputStream {
                 this.waitForTaskToComplete();
             }
 
+            // Waits for the hash stage to finish the MD5 of the blob
+            this.waitForHashStage();
+
             // if one of the tasks threw an exception, realize it now.
             this.checkStreamState();
 
@@ -294,10 +363,14 @@ public final class BlobOutputStream extends OutputStream {
                 this.lastError = new IOException(SR.STREAM_CLOSED);
             }
 
-            // if an exception was thrown and the executor was not yet closed, call shutDownNow() to cancel all tasks 
-            // and shutdown the ExecutorService
-            if (!threadExecutor.isShutdown()) {
-                this.threadExecutor.shutdownNow();
+            // return the buffer of any data that was not dispatched
+            this.releaseOutBuffer();
+
+            // if an exception was thrown, let the queued tasks run so that they return their buffers to the pool, now
+            // that the stream is faulted they skip their uploads
+            CloudBlob.shutdownAndAwait(this.threadExecutor);
+            if (this.hashExecutor != null) {
+                CloudBlob.shutdownAndAwait(this.hashExecutor);
             }
         }
     }
@@ -347,24 +420,64 @@ public final class BlobOutputStream extends OutputStream {
             this.waitForTaskToComplete();
         }
 
-        final ByteArrayInputStream bufferRef = new ByteArrayInputStream(this.outBuffer.toByteArray());
+        if (this.hashPermits != null) {
+            try {
+                this.hashPermits.acquire();
+            }
+            catch (final InterruptedException e) {
+                throw Utility.initIOException(e);
+            }
+        }
+
+        // Hand the buffer to the worker without copying it. The buffer is returned to the pool once both the worker
+        // and, if the blob MD5 is stored, the hash stage are done with it.
+        final byte[] buffer = this.outBuffer;
+        this.outBuffer = null;
+        this.pendingBuffers.incrementAndGet();
+        final AtomicInteger bufferUsers = new AtomicInteger(1);
+
+        if (this.hashExecutor != null) {
+            bufferUsers.incrementAndGet();
+            this.lastHashTask = this.hashExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        BlobOutputStream.this.md5Digest.update(buffer, 0, writeLength);
+                    }
+                    finally {
+                        BlobOutputStream.this.hashPermits.release();
+                        BlobOutputStream.this.releaseBuffer(buffer, bufferUsers);
+                    }
+                }
+            });
+        }
 
         if (this.streamType == BlobType.BLOCK_BLOB) {
             final CloudBlockBlob blobRef = (CloudBlockBlob) this.parentBlobRef;
             final String blockID = Base64.encode(Utility.getBytesFromLong(this.blockIdSequenceNumber++));
             this.blockList.add(new BlockEntry(blockID, BlockSearchMode.LATEST));
 
+            final AdaptiveBlockSizePolicy sizePolicy = this.blockSizePolicy;
+
             worker = new Callable<Void>() {
                 @Override
                 public Void call() {
                     try {
-                        blobRef.uploadBlock(blockID, bufferRef, writeLength, BlobOutputStream.this.accessCondition,
+                        if (BlobOutputStream.this.streamFaulted) {
+                            return null;
+                        }
+
+                        // The block MD5 is calculated here, concurrently with the uploads of other blocks.
+                        final String blockMd5 = BlobOutputStream.this.options.getUseTransactionalContentMD5() ? Utility
+                                .calculateMD5(ByteBuffer.wrap(buffer, 0, writeLength)) : null;
+
+                        final long startTime = System.currentTimeMillis();
+                        blobRef.uploadBlockInternal(blockID, blockMd5, new ByteArrayInputStream(buffer, 0,
+                                writeLength), writeLength, BlobOutputStream.this.accessCondition,
                                 BlobOutputStream.this.options, BlobOutputStream.this.opContext);
-                    }
-                    catch (final IOException e) {
-                        synchronized (BlobOutputStream.this.lastErrorLock) {
-                            BlobOutputStream.this.streamFaulted = true;
-                            BlobOutputStream.this.lastError = e;
+
+                        if (sizePolicy != null) {
+                            sizePolicy.recordUpload(writeLength, System.currentTimeMillis() - startTime);
                         }
                     }
                     catch (final StorageException e) {
@@ -373,6 +486,9 @@ public final class BlobOutputStream extends OutputStream {
                             BlobOutputStream.this.lastError = Utility.initIOException(e);
                         }
                     }
+                    finally {
+                        BlobOutputStream.this.releaseBuffer(buffer, bufferUsers);
+                    }
                     return null;
                 }
             };
@@ -390,14 +506,12 @@ public final class BlobOutputStream extends OutputStream {
                 @Override
                 public Void call() {
                     try {
-                        blobRef.uploadPages(bufferRef, opOffset, opWriteLength, BlobOutputStream.this.accessCondition,
-                                BlobOutputStream.this.options, BlobOutputStream.this.opContext);
-                    }
-                    catch (final IOException e) {
-                        synchronized (BlobOutputStream.this.lastErrorLock) {
-                            BlobOutputStream.this.streamFaulted = true;
-                            BlobOutputStream.this.lastError = e;
+                        if (BlobOutputStream.this.streamFaulted) {
+                            return null;
                         }
+
+                        blobRef.uploadPages(buffer, opOffset, opWriteLength, BlobOutputStream.this.accessCondition,
+                                BlobOutputStream.this.options, BlobOutputStream.this.opContext);
                     }
                     catch (final StorageException e) {
                         synchronized (BlobOutputStream.this.lastErrorLock) {
@@ -405,6 +519,9 @@ public final class BlobOutputStream extends OutputStream {
                             BlobOutputStream.this.lastError = Utility.initIOException(e);
                         }
                     }
+                    finally {
+                        BlobOutputStream.this.releaseBuffer(buffer, bufferUsers);
+                    }
                     return null;
                 }
             };
@@ -414,7 +531,37 @@ public final class BlobOutputStream extends OutputStream {
         this.completionService.submit(worker);
         this.outstandingRequests++;
         this.currentBufferedBytes = 0;
-        this.outBuffer = new ByteArrayOutputStream();
+
+        if (this.blockSizePolicy != null) {
+            this.blockSizePolicy.recordDispatch(writeLength);
+            this.internalWriteThreshold = this.blockSizePolicy.getNextBlockSize();
+        }
+    }
+
+    /**
+     * Releases a dispatched buffer on behalf of one of its users, returning it to the buffer pool after the last one.
+     * 
+     * @param buffer
+     *            A <code>byte</code> array which represents the dispatched buffer.
+     * @param bufferUsers
+     *            An <code>AtomicInteger</code> which holds the number of stages still using the buffer.
+     */
+    private void releaseBuffer(final byte[] buffer, final AtomicInteger bufferUsers) {
+        if (bufferUsers.decrementAndGet() == 0) {
+            this.pendingBuffers.decrementAndGet();
+            this.bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Returns the buffer holding undispatched data, if any, to the buffer pool.
+     */
+    private synchronized void releaseOutBuffer() {
+        if (this.outBuffer != null) {
+            this.bufferPool.release(this.outBuffer);
+            this.outBuffer = null;
+            this.currentBufferedBytes = 0;
+        }
     }
 
     /**
@@ -465,6 +612,29 @@ public final class BlobOutputStream extends OutputStream {
         this.outstandingRequests--;
     }
 
+    /**
+     * Waits for the hash stage to hash all dispatched buffers.
+     * 
+     * @throws IOException
+     *             If an I/O error occurs. In particular, an IOException may be thrown if the output stream has been
+     *             closed.
+     */
+    private void waitForHashStage() throws IOException {
+        if (this.lastHashTask == null) {
+            return;
+        }
+
+        try {
+            this.lastHashTask.get();
+        }
+        catch (final InterruptedException e) {
+            throw Utility.initIOException(e);
+        }
+        catch (final ExecutionException e) {
+            throw Utility.initIOException(e);
+        }
+    }
+
     /**
      * Writes <code>b.length</code> bytes from the specified byte array to this output stream.
      * 
@@ -563,12 +733,17 @@ public final class BlobOutputStream extends OutputStream {
             final int availableBufferBytes = this.internalWriteThreshold - this.currentBufferedBytes;
             final int nextWrite = Math.min(availableBufferBytes, length);
 
-            // If we need to set MD5 then update the digest accordingly
-            if (this.options.getStoreBlobContentMD5()) {
-                this.md5Digest.update(data, offset, nextWrite);
+            if (this.outBuffer == null) {
+                // Blocks while the pool is exhausted and this stream has uploads in flight.
+                try {
+                    this.outBuffer = this.bufferPool.acquire(this.internalWriteThreshold, this.pendingBuffers);
+                }
+                catch (final InterruptedException e) {
+                    throw Utility.initIOException(e);
+                }
             }
 
-            this.outBuffer.write(data, offset, nextWrite);
+            System.arraycopy(data, offset, this.outBuffer, this.currentBufferedBytes, nextWrite);
             this.currentBufferedBytes += nextWrite;
             offset += nextWrite;
             length -= nextWrite;
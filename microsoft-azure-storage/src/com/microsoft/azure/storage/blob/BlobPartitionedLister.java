@@ -0,0 +1,371 @@
+/**
+ * Copyright Microsoft Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage.blob;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.microsoft.azure.storage.Constants;
+import com.microsoft.azure.storage.DoesServiceRequest;
+import com.microsoft.azure.storage.OperationContext;
+import com.microsoft.azure.storage.ResultContinuation;
+import com.microsoft.azure.storage.ResultSegment;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.core.SR;
+import com.microsoft.azure.storage.core.Utility;
+
+/**
+ * Lists the blobs under a prefix by splitting the listing into partitions which are listed concurrently.
+ * <p>
+ * A flat listing follows a single chain of continuation tokens, one segment after another. The partitioned lister
+ * instead lists each partition, a prefix no other partition overlaps, on its own chain. The partitions are either
+ * specified with {@link #setPartitionPrefixes(Collection)} or discovered by listing the virtual directories under the
+ * prefix with the delimiter of the service client. Directories are split further, breadth first, while there are fewer
+ * partitions than partitions listed at a time and a directory can be listed in a single segment. The blobs found next
+ * to the directories while discovering them are handled as a partition of their own.
+ */
+public final class BlobPartitionedLister {
+    /**
+     * The default number of partitions listed at a time.
+     */
+    public static final int DEFAULT_CONCURRENT_PARTITION_COUNT = 8;
+
+    /**
+     * Holds the container of the blobs.
+     */
+    private final CloudBlobContainer container;
+
+    /**
+     * Holds the prefix of the blobs to list.
+     */
+    private final String prefix;
+
+    /**
+     * Holds the number of partitions listed at a time.
+     */
+    private int concurrentPartitionCount = DEFAULT_CONCURRENT_PARTITION_COUNT;
+
+    /**
+     * Holds the details to include in the listing.
+     */
+    private EnumSet<BlobListingDetails> listingDetails = EnumSet.noneOf(BlobListingDetails.class);
+
+    /**
+     * Holds the prefixes of the partitions, or <code>null</code> if they are discovered.
+     */
+    private ArrayList<String> partitionPrefixes;
+
+    /**
+     * Creates an instance of the <code>BlobPartitionedLister</code> class to list the blobs of a container.
+     *
+     * @param container
+     *            A {@link CloudBlobContainer} object which represents the container to list.
+     * @param prefix
+     *            A <code>String</code> which represents the prefix of the blobs to list, or <code>null</code> to list
+     *            every blob of the container.
+     */
+    public BlobPartitionedLister(final CloudBlobContainer container, final String prefix) {
+        Utility.assertNotNull("container", container);
+        this.container = container;
+        this.prefix = prefix == null ? Constants.EMPTY_STRING : prefix;
+    }
+
+    /**
+     * Creates an instance of the <code>BlobPartitionedLister</code> class to list the blobs of a virtual directory.
+     *
+     * @param directory
+     *            A {@link CloudBlobDirectory} object which represents the virtual directory to list.
+     *
+     * @throws StorageException
+     *             If a storage service error occurred.
+     * @throws URISyntaxException
+     *             If the URI of the directory is invalid.
+     */
+    public BlobPartitionedLister(final CloudBlobDirectory directory) throws StorageException, URISyntaxException {
+        this(directory.getContainer(), directory.getPrefix());
+    }
+
+    /**
+     * Gets the number of partitions listed at a time.
+     *
+     * @return An <code>int</code> which represents the number of concurrent partitions.
+     */
+    public int getConcurrentPartitionCount() {
+        return this.concurrentPartitionCount;
+    }
+
+    /**
+     * Sets the number of partitions listed at a time. The default is {@link #DEFAULT_CONCURRENT_PARTITION_COUNT}.
+     *
+     * @param concurrentPartitionCount
+     *            An <code>int</code> which represents the number of concurrent partitions.
+     */
+    public void setConcurrentPartitionCount(final int concurrentPartitionCount) {
+        Utility.assertGreaterThanOrEqual("concurrentPartitionCount", concurrentPartitionCount, 1);
+        this.concurrentPartitionCount = concurrentPartitionCount;
+    }
+
+    /**
+     * Gets the details included in the listing.
+     *
+     * @return A <code>java.util.EnumSet</code> object of {@link BlobListingDetails} values.
+     */
+    public EnumSet<BlobListingDetails> getListingDetails() {
+        return this.listingDetails;
+    }
+
+    /**
+     * Sets the details included in the listing. Snapshots can only be listed when the partition prefixes are
+     * specified, as discovering partitions lists with a delimiter.
+     *
+     * @param listingDetails
+     *            A <code>java.util.EnumSet</code> object of {@link BlobListingDetails} values.
+     */
+    public void setListingDetails(final EnumSet<BlobListingDetails> listingDetails) {
+        Utility.assertNotNull("listingDetails", listingDetails);
+        this.listingDetails = listingDetails;
+    }
+
+    /**
+     * Gets the prefixes of the partitions.
+     *
+     * @return A <code>java.util.List</code> of the partition prefixes, or <code>null</code> if the partitions are
+     *         discovered.
+     */
+    public List<String> getPartitionPrefixes() {
+        return this.partitionPrefixes;
+    }
+
+    /**
+     * Sets the prefixes of the partitions, instead of discovering them. The prefixes must not overlap, and together
+     * they define the blobs which are listed.
+     *
+     * @param partitionPrefixes
+     *            A <code>java.util.Collection</code> of the partition prefixes, or <code>null</code> to discover the
+     *            partitions.
+     */
+    public void setPartitionPrefixes(final Collection<String> partitionPrefixes) {
+        this.partitionPrefixes = partitionPrefixes == null ? null : new ArrayList<String>(partitionPrefixes);
+    }
+
+    /**
+     * Lists the blobs, passing each segment to the handler.
+     *
+     * @param handler
+     *            A {@link BlobListingHandler} object which handles the listed blobs.
+     *
+     * @return A <code>long</code> which represents the number of items listed.
+     *
+     * @throws StorageException
+     *             If a partition could not be listed, or the handler failed.
+     */
+    @DoesServiceRequest
+    public long list(final BlobListingHandler handler) throws StorageException {
+        return this.list(handler, null /* options */, null /* opContext */);
+    }
+
+    /**
+     * Lists the blobs, passing each segment to the handler, using the specified request options and operation context.
+     * <p>
+     * The first error listing a partition or handling a segment stops the listing and is thrown once the partitions
+     * being listed have stopped.
+     *
+     * @param handler
+     *            A {@link BlobListingHandler} object which handles the listed blobs.
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies any additional options for the requests. Specifying
+     *            <code>null</code> will use the default request options from the associated service client (
+     *            {@link CloudBlobClient}).
+     * @param opContext
+     *            An {@link OperationContext} object that represents the context for the current operation. This object
+     *            is used to track requests to the storage service, and to provide additional runtime information about
+     *            the operation.
+     *
+     * @return A <code>long</code> which represents the number of items listed.
+     *
+     * @throws StorageException
+     *             If a partition could not be listed, or the handler failed.
+     */
+    @DoesServiceRequest
+    public long list(final BlobListingHandler handler, final BlobRequestOptions options, OperationContext opContext)
+            throws StorageException {
+        Utility.assertNotNull("handler", handler);
+        if (this.partitionPrefixes == null && this.listingDetails.contains(BlobListingDetails.SNAPSHOTS)) {
+            throw new IllegalArgumentException(SR.PARTITIONED_SNAPSHOT_LISTING_ERROR);
+        }
+
+        if (opContext == null) {
+            opContext = new OperationContext();
+        }
+
+        opContext.initialize();
+
+        final AtomicLong itemCount = new AtomicLong();
+        final List<String> partitions = this.partitionPrefixes != null ? this.partitionPrefixes : this.discover(
+                handler, itemCount, options, opContext);
+
+        final OperationContext listingContext = opContext;
+        final ExecutorService threadExecutor = Executors.newFixedThreadPool(Math.max(1,
+                Math.min(this.concurrentPartitionCount, partitions.size())));
+        final ExecutorCompletionService<Void> completionService = new ExecutorCompletionService<Void>(threadExecutor);
+        int outstandingPartitions = 0;
+
+        try {
+            for (final String partitionPrefix : partitions) {
+                completionService.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        BlobPartitionedLister.this.listPartition(threadExecutor, partitionPrefix, handler, itemCount,
+                                options, listingContext);
+                        return null;
+                    }
+                });
+                outstandingPartitions++;
+            }
+
+            while (outstandingPartitions > 0) {
+                CloudBlob.waitForTask(completionService);
+                outstandingPartitions--;
+            }
+        }
+        catch (final IOException e) {
+            throw Utility.generateNewUnexpectedStorageException(e);
+        }
+        finally {
+            // The handler must not be called once the listing has returned.
+            CloudBlob.shutdownAndAwait(threadExecutor);
+        }
+
+        return itemCount.get();
+    }
+
+    /**
+     * Discovers the partitions by listing directories, handling the blobs found next to them.
+     */
+    @DoesServiceRequest
+    private List<String> discover(final BlobListingHandler handler, final AtomicLong itemCount,
+            final BlobRequestOptions options, final OperationContext opContext) throws StorageException {
+        final LinkedList<String> directories = new LinkedList<String>();
+        final ArrayList<String> partitions = new ArrayList<String>();
+
+        // The top level is always split, whatever the number of segments it takes.
+        ResultContinuation continuationToken = null;
+        do {
+            final ResultSegment<ListBlobItem> segment = this.listSegment(this.prefix, false /* useFlatBlobListing */,
+                    continuationToken, options, opContext);
+            this.handleDiscoveredSegment(this.prefix, segment, directories, handler, itemCount);
+            continuationToken = segment.getContinuationToken();
+        } while (continuationToken != null);
+
+        while (!directories.isEmpty()) {
+            if (directories.size() + partitions.size() >= this.concurrentPartitionCount) {
+                partitions.addAll(directories);
+                break;
+            }
+
+            final String directory = directories.removeFirst();
+            final ResultSegment<ListBlobItem> segment = this.listSegment(directory, false /* useFlatBlobListing */,
+                    null /* continuationToken */, options, opContext);
+            if (segment.getContinuationToken() != null) {
+                // Splitting a directory too large for a single segment would list it serially.
+                partitions.add(directory);
+                continue;
+            }
+
+            this.handleDiscoveredSegment(directory, segment, directories, handler, itemCount);
+        }
+
+        return partitions;
+    }
+
+    /**
+     * Handles the blobs of a segment listed with a delimiter, and queues its directories.
+     */
+    private void handleDiscoveredSegment(final String partitionPrefix, final ResultSegment<ListBlobItem> segment,
+            final LinkedList<String> directories, final BlobListingHandler handler, final AtomicLong itemCount)
+            throws StorageException {
+        final ArrayList<ListBlobItem> blobs = new ArrayList<ListBlobItem>();
+        for (final ListBlobItem item : segment.getResults()) {
+            if (item instanceof CloudBlobDirectory) {
+                directories.add(((CloudBlobDirectory) item).getPrefix());
+            }
+            else {
+                blobs.add(item);
+            }
+        }
+
+        if (!blobs.isEmpty()) {
+            this.handle(partitionPrefix, blobs, handler, itemCount);
+        }
+    }
+
+    /**
+     * Lists a partition in flat mode, handling each of its segments until the listing is stopped by shutting down the
+     * executor, after an error in another partition.
+     */
+    @DoesServiceRequest
+    private void listPartition(final ExecutorService threadExecutor, final String partitionPrefix,
+            final BlobListingHandler handler, final AtomicLong itemCount, final BlobRequestOptions options,
+            final OperationContext opContext) throws StorageException {
+        ResultContinuation continuationToken = null;
+        do {
+            if (threadExecutor.isShutdown()) {
+                return;
+            }
+
+            final ResultSegment<ListBlobItem> segment = this.listSegment(partitionPrefix,
+                    true /* useFlatBlobListing */, continuationToken, options, opContext);
+            if (!segment.getResults().isEmpty() && !threadExecutor.isShutdown()) {
+                this.handle(partitionPrefix, segment.getResults(), handler, itemCount);
+            }
+
+            continuationToken = segment.getContinuationToken();
+        } while (continuationToken != null);
+    }
+
+    @DoesServiceRequest
+    private ResultSegment<ListBlobItem> listSegment(final String partitionPrefix, final boolean useFlatBlobListing,
+            final ResultContinuation continuationToken, final BlobRequestOptions options,
+            final OperationContext opContext) throws StorageException {
+        // Snapshots are only listed in flat mode, as they are rejected when discovering partitions.
+        return this.container.listBlobsSegmented(partitionPrefix, useFlatBlobListing, this.listingDetails,
+                Constants.MAXIMUM_SEGMENTED_RESULTS, continuationToken, options, opContext);
+    }
+
+    private void handle(final String partitionPrefix, final List<ListBlobItem> items,
+            final BlobListingHandler handler, final AtomicLong itemCount) throws StorageException {
+        try {
+            handler.handleSegment(partitionPrefix, items);
+        }
+        catch (final StorageException e) {
+            throw e;
+        }
+        catch (final Exception e) {
+            throw Utility.generateNewUnexpectedStorageException(e);
+        }
+
+        itemCount.addAndGet(items.size());
+    }
+}
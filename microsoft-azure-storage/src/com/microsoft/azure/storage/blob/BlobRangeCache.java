@@ -0,0 +1,667 @@
+/**
+ * Copyright Microsoft Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage.blob;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.microsoft.azure.storage.AccessCondition;
+import com.microsoft.azure.storage.Constants;
+import com.microsoft.azure.storage.core.Utility;
+
+/**
+ * Represents a size-bounded cache of downloaded blob ranges persisted on the local disk.
+ * <p>
+ * Once set on a {@link CloudBlobClient} via {@link CloudBlobClient#setRangeCache(BlobRangeCache)}, ranges read through
+ * {@link CloudBlob#downloadRange} and {@link BlobInputStream} are stored in the cache directory, keyed by the blob URI,
+ * snapshot ID, range and ETag. A cached range read through <code>downloadRange</code> is revalidated with an
+ * <i>If-None-Match</i> request and is served from disk if the service reports the blob as unmodified. A
+ * {@link BlobInputStream} is already bound to the ETag of the blob when it is opened, so its cached ranges are served
+ * without contacting the service. When the cache grows beyond its maximum size the least recently used ranges are
+ * evicted.
+ * <p>
+ * The cache directory is scanned on construction, so ranges cached by a previous process are reused. A single cache
+ * may be shared between multiple clients, but a cache directory must not be used by more than one
+ * <code>BlobRangeCache</code> instance at a time.
+ */
+public final class BlobRangeCache {
+    /**
+     * The file extension used for committed cache entries.
+     */
+    private static final String RANGE_FILE_EXTENSION = ".range";
+
+    /**
+     * The file extension used for ranges which are still being downloaded.
+     */
+    private static final String TEMP_FILE_EXTENSION = ".tmp";
+
+    /**
+     * Holds the directory the cached ranges are stored in.
+     */
+    private final File directory;
+
+    /**
+     * Holds the maximum number of bytes the cache may hold on disk.
+     */
+    private final long maximumSizeInBytes;
+
+    /**
+     * Holds the cache entries, keyed by range key, in least recently used order.
+     */
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+
+    /**
+     * Holds the number of bytes currently held by the cache.
+     */
+    private long currentSizeInBytes;
+
+    /**
+     * Holds the number of reads served from the cache.
+     */
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /**
+     * Holds the number of reads which had to be served from the service.
+     */
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Holds the number of bytes served from the cache instead of the service.
+     */
+    private final AtomicLong bytesSaved = new AtomicLong();
+
+    /**
+     * Creates an instance of the <code>BlobRangeCache</code> class using the specified directory and maximum size.
+     *
+     * @param directory
+     *            A <code>java.io.File</code> object that represents the directory in which ranges are cached. The
+     *            directory is created if it does not exist.
+     * @param maximumSizeInBytes
+     *            A <code>long</code> which represents the maximum number of bytes the cache may hold on disk.
+     *
+     * @throws IOException
+     *             If the cache directory could not be created or read.
+     */
+    public BlobRangeCache(final File directory, final long maximumSizeInBytes) throws IOException {
+        Utility.assertNotNull("directory", directory);
+        Utility.assertGreaterThanOrEqual("maximumSizeInBytes", maximumSizeInBytes, 1);
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException(directory.getAbsolutePath());
+        }
+
+        this.directory = directory;
+        this.maximumSizeInBytes = maximumSizeInBytes;
+        this.loadEntries();
+    }
+
+    /**
+     * Gets the directory the cached ranges are stored in.
+     *
+     * @return A <code>java.io.File</code> object that represents the cache directory.
+     */
+    public File getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Gets the maximum number of bytes the cache may hold on disk.
+     *
+     * @return A <code>long</code> which represents the maximum size of the cache, in bytes.
+     */
+    public long getMaximumSizeInBytes() {
+        return this.maximumSizeInBytes;
+    }
+
+    /**
+     * Gets the number of bytes currently held by the cache.
+     *
+     * @return A <code>long</code> which represents the current size of the cache, in bytes.
+     */
+    public synchronized long getCurrentSizeInBytes() {
+        return this.currentSizeInBytes;
+    }
+
+    /**
+     * Gets the number of range reads that were served from the cache.
+     *
+     * @return A <code>long</code> which represents the number of cache hits.
+     */
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    /**
+     * Gets the number of range reads that had to be downloaded from the service.
+     *
+     * @return A <code>long</code> which represents the number of cache misses.
+     */
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    /**
+     * Gets the number of bytes that were served from the cache instead of being downloaded from the service.
+     *
+     * @return A <code>long</code> which represents the number of bytes saved.
+     */
+    public long getBytesSaved() {
+        return this.bytesSaved.get();
+    }
+
+    /**
+     * Removes all ranges from the cache and deletes their files.
+     */
+    public synchronized void clear() {
+        for (final CacheEntry entry : this.entries.values()) {
+            entry.file.delete();
+        }
+
+        this.entries.clear();
+        this.currentSizeInBytes = 0;
+    }
+
+    /**
+     * Gets the ETag of the cached copy of the specified range.
+     *
+     * @param rangeKey
+     *            A <code>String</code> which represents the key of the range.
+     *
+     * @return A <code>String</code> which represents the ETag of the cached range, or <code>null</code> if the range
+     *         is not cached.
+     */
+    synchronized String getCachedEtag(final String rangeKey) {
+        final CacheEntry entry = this.entries.get(rangeKey);
+        return entry == null ? null : entry.etag;
+    }
+
+    /**
+     * Copies a cached range to the specified stream.
+     *
+     * @param rangeKey
+     *            A <code>String</code> which represents the key of the range.
+     * @param etag
+     *            A <code>String</code> which represents the ETag the cached range must have.
+     * @param outStream
+     *            An <code>OutputStream</code> object that represents the target stream.
+     *
+     * @return <code>true</code> if the range was copied from the cache; otherwise, <code>false</code>.
+     *
+     * @throws IOException
+     *             If an error occurred while writing to the target stream.
+     */
+    boolean copyRange(final String rangeKey, final String etag, final OutputStream outStream) throws IOException {
+        final InputStream cachedStream = this.openRange(rangeKey, etag);
+        if (cachedStream == null) {
+            return false;
+        }
+
+        long copied = 0;
+        try {
+            final byte[] buffer = new byte[Constants.BUFFER_COPY_LENGTH];
+            int count;
+            while ((count = cachedStream.read(buffer)) != -1) {
+                outStream.write(buffer, 0, count);
+                copied += count;
+            }
+        }
+        finally {
+            cachedStream.close();
+        }
+
+        this.recordHit(copied);
+        return true;
+    }
+
+    /**
+     * Reads a cached range into the specified buffer.
+     *
+     * @param rangeKey
+     *            A <code>String</code> which represents the key of the range.
+     * @param etag
+     *            A <code>String</code> which represents the ETag the cached range must have.
+     * @param buffer
+     *            A <code>byte</code> array which represents the buffer to read into.
+     * @param offset
+     *            An <code>int</code> which represents the offset in the buffer to start writing at.
+     * @param length
+     *            An <code>int</code> which represents the length of the range.
+     *
+     * @return <code>true</code> if the whole range was read from the cache; otherwise, <code>false</code>.
+     */
+    boolean readRange(final String rangeKey, final String etag, final byte[] buffer, final int offset,
+            final int length) {
+        try {
+            final InputStream cachedStream = this.openRange(rangeKey, etag);
+            if (cachedStream == null) {
+                return false;
+            }
+
+            int totalRead = 0;
+            try {
+                int count;
+                while (totalRead < length
+                        && (count = cachedStream.read(buffer, offset + totalRead, length - totalRead)) != -1) {
+                    totalRead += count;
+                }
+            }
+            finally {
+                cachedStream.close();
+            }
+
+            if (totalRead != length) {
+                this.remove(rangeKey);
+                return false;
+            }
+        }
+        catch (final IOException e) {
+            this.remove(rangeKey);
+            return false;
+        }
+
+        this.recordHit(length);
+        return true;
+    }
+
+    /**
+     * Stores a range which is held in memory. Failures to write the cache file are ignored.
+     *
+     * @param rangeKey
+     *            A <code>String</code> which represents the key of the range.
+     * @param etag
+     *            A <code>String</code> which represents the ETag of the blob the range was read from.
+     * @param buffer
+     *            A <code>byte</code> array which contains the range data.
+     * @param offset
+     *            An <code>int</code> which represents the offset of the range data in the buffer.
+     * @param length
+     *            An <code>int</code> which represents the length of the range.
+     */
+    void putRange(final String rangeKey, final String etag, final byte[] buffer, final int offset, final int length) {
+        final PendingRange pendingRange = this.beginRange(rangeKey, null /* targetStream */);
+        try {
+            pendingRange.write(buffer, offset, length);
+        }
+        catch (final IOException e) {
+            // Not reachable, cache write failures are recorded by the pending range.
+        }
+
+        pendingRange.commit(etag);
+    }
+
+    /**
+     * Starts caching a range which is being downloaded. The returned stream writes to the target stream and to a
+     * temporary cache file, and must be either committed or aborted.
+     *
+     * @param rangeKey
+     *            A <code>String</code> which represents the key of the range.
+     * @param targetStream
+     *            An <code>OutputStream</code> object that represents the stream the caller downloads to, or
+     *            <code>null</code>.
+     *
+     * @return A {@link PendingRange} object that represents the range being cached.
+     */
+    PendingRange beginRange(final String rangeKey, final OutputStream targetStream) {
+        return new PendingRange(rangeKey, targetStream);
+    }
+
+    /**
+     * Records a range read which had to be downloaded from the service.
+     */
+    void recordMiss() {
+        this.missCount.incrementAndGet();
+    }
+
+    /**
+     * Records a range read which was served from the cache.
+     *
+     * @param length
+     *            A <code>long</code> which represents the number of bytes served from the cache.
+     */
+    private void recordHit(final long length) {
+        this.hitCount.incrementAndGet();
+        this.bytesSaved.addAndGet(length);
+    }
+
+    /**
+     * Opens the file of a cached range and marks it as the most recently used.
+     */
+    private synchronized InputStream openRange(final String rangeKey, final String etag) {
+        final CacheEntry entry = this.entries.get(rangeKey);
+        if (entry == null || etag == null || !etag.equals(entry.etag)) {
+            return null;
+        }
+
+        try {
+            return new FileInputStream(entry.file);
+        }
+        catch (final IOException e) {
+            this.remove(rangeKey);
+            return null;
+        }
+    }
+
+    /**
+     * Moves a completely downloaded temporary file into the cache and evicts the least recently used ranges if needed.
+     */
+    private synchronized void commit(final String rangeKey, final String etag, final File tempFile) {
+        this.remove(rangeKey);
+
+        final File rangeFile = new File(this.directory, rangeKey + "." + toHex(getUTF8Bytes(etag))
+                + RANGE_FILE_EXTENSION);
+        if (!tempFile.renameTo(rangeFile)) {
+            tempFile.delete();
+            return;
+        }
+
+        final CacheEntry entry = new CacheEntry(etag, rangeFile, rangeFile.length());
+        this.entries.put(rangeKey, entry);
+        this.currentSizeInBytes += entry.length;
+        this.evict();
+    }
+
+    /**
+     * Removes a range from the cache and deletes its file.
+     */
+    private synchronized void remove(final String rangeKey) {
+        final CacheEntry entry = this.entries.remove(rangeKey);
+        if (entry != null) {
+            this.currentSizeInBytes -= entry.length;
+            entry.file.delete();
+        }
+    }
+
+    /**
+     * Evicts the least recently used ranges until the cache is within its maximum size.
+     */
+    private void evict() {
+        final Iterator<Entry<String, CacheEntry>> iterator = this.entries.entrySet().iterator();
+        while (this.currentSizeInBytes > this.maximumSizeInBytes && iterator.hasNext()) {
+            final CacheEntry entry = iterator.next().getValue();
+            iterator.remove();
+            this.currentSizeInBytes -= entry.length;
+            entry.file.delete();
+        }
+    }
+
+    /**
+     * Rebuilds the cache index from the files in the cache directory, oldest first, and deletes any leftover
+     * temporary files.
+     */
+    private void loadEntries() {
+        final File[] files = this.directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        final ArrayList<File> rangeFiles = new ArrayList<File>();
+        for (final File file : files) {
+            if (file.getName().endsWith(TEMP_FILE_EXTENSION)) {
+                file.delete();
+            }
+            else if (file.getName().endsWith(RANGE_FILE_EXTENSION)) {
+                rangeFiles.add(file);
+            }
+        }
+
+        final File[] sortedFiles = rangeFiles.toArray(new File[rangeFiles.size()]);
+        Arrays.sort(sortedFiles, new Comparator<File>() {
+            @Override
+            public int compare(final File left, final File right) {
+                return Long.valueOf(left.lastModified()).compareTo(right.lastModified());
+            }
+        });
+
+        for (final File file : sortedFiles) {
+            final String name = file.getName().substring(0, file.getName().length() - RANGE_FILE_EXTENSION.length());
+            final int separator = name.indexOf('.');
+            if (separator <= 0) {
+                continue;
+            }
+
+            final String etag = fromHex(name.substring(separator + 1));
+            if (etag == null) {
+                file.delete();
+                continue;
+            }
+
+            final CacheEntry entry = new CacheEntry(etag, file, file.length());
+            this.entries.put(name.substring(0, separator), entry);
+            this.currentSizeInBytes += entry.length;
+        }
+
+        this.evict();
+    }
+
+    /**
+     * Gets the cache key of a range of a blob.
+     *
+     * @param blob
+     *            A {@link CloudBlob} object that represents the blob.
+     * @param offset
+     *            A <code>long</code> which represents the offset of the range.
+     * @param length
+     *            A <code>Long</code> which represents the length of the range, or <code>null</code> if the range
+     *            extends to the end of the blob.
+     *
+     * @return A <code>String</code> which represents the key of the range.
+     */
+    static String getRangeKey(final CloudBlob blob, final long offset, final Long length) {
+        final StringBuilder builder = new StringBuilder(blob.getStorageUri().getPrimaryUri().toString());
+        builder.append('\n').append(blob.getSnapshotID() == null ? "" : blob.getSnapshotID());
+        builder.append('\n').append(offset).append('-').append(length == null ? "" : length.toString());
+
+        try {
+            return toHex(MessageDigest.getInstance("SHA-1").digest(getUTF8Bytes(builder.toString())));
+        }
+        catch (final NoSuchAlgorithmException e) {
+            // This wont happen, throw fatal.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Determines whether a download with the specified access condition may be served from the cache. Only
+     * conditions carrying nothing but a lease ID are cacheable.
+     *
+     * @param accessCondition
+     *            An {@link AccessCondition} object that represents the access conditions of the download.
+     *
+     * @return <code>true</code> if the download may use the cache; otherwise, <code>false</code>.
+     */
+    static boolean isCacheableCondition(final AccessCondition accessCondition) {
+        return accessCondition == null
+                || (accessCondition.getIfMatch() == null && accessCondition.getIfNoneMatch() == null
+                        && accessCondition.getIfModifiedSinceDate() == null && accessCondition
+                        .getIfUnmodifiedSinceDate() == null);
+    }
+
+    private static byte[] getUTF8Bytes(final String value) {
+        try {
+            return value.getBytes(Constants.UTF8_CHARSET);
+        }
+        catch (final UnsupportedEncodingException e) {
+            // This wont happen, throw fatal.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(final byte[] bytes) {
+        final StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return builder.toString();
+    }
+
+    private static String fromHex(final String hex) {
+        if (hex.length() % 2 != 0) {
+            return null;
+        }
+
+        final byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            final int high = Character.digit(hex.charAt(2 * i), 16);
+            final int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+
+        try {
+            return new String(bytes, Constants.UTF8_CHARSET);
+        }
+        catch (final UnsupportedEncodingException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Represents a cached range.
+     */
+    private static final class CacheEntry {
+        private final String etag;
+
+        private final File file;
+
+        private final long length;
+
+        private CacheEntry(final String etag, final File file, final long length) {
+            this.etag = etag;
+            this.file = file;
+            this.length = length;
+        }
+    }
+
+    /**
+     * RESERVED FOR INTERNAL USE. Represents a range which is being downloaded into the cache. Data written to this
+     * stream is forwarded to the target stream and copied to a temporary file. Failures to write the temporary file
+     * do not fail the download; the range is simply not cached.
+     */
+    final class PendingRange extends OutputStream {
+        private final String rangeKey;
+
+        private final OutputStream targetStream;
+
+        private File tempFile;
+
+        private OutputStream cacheStream;
+
+        private PendingRange(final String rangeKey, final OutputStream targetStream) {
+            this.rangeKey = rangeKey;
+            this.targetStream = targetStream;
+
+            try {
+                this.tempFile = File.createTempFile("range", TEMP_FILE_EXTENSION, BlobRangeCache.this.directory);
+                this.cacheStream = new BufferedOutputStream(new FileOutputStream(this.tempFile));
+            }
+            catch (final IOException e) {
+                this.abort();
+            }
+        }
+
+        @Override
+        public void write(final int byteVal) throws IOException {
+            this.write(new byte[] { (byte) (byteVal & 0xFF) }, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] data, final int offset, final int length) throws IOException {
+            if (this.targetStream != null) {
+                this.targetStream.write(data, offset, length);
+            }
+
+            if (this.cacheStream != null) {
+                try {
+                    this.cacheStream.write(data, offset, length);
+                }
+                catch (final IOException e) {
+                    this.abort();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (this.targetStream != null) {
+                this.targetStream.flush();
+            }
+        }
+
+        /**
+         * Adds the downloaded range to the cache.
+         *
+         * @param etag
+         *            A <code>String</code> which represents the ETag of the blob the range was read from.
+         */
+        void commit(final String etag) {
+            if (this.cacheStream == null || Utility.isNullOrEmpty(etag)) {
+                this.abort();
+                return;
+            }
+
+            try {
+                this.cacheStream.close();
+            }
+            catch (final IOException e) {
+                this.abort();
+                return;
+            }
+
+            this.cacheStream = null;
+            BlobRangeCache.this.commit(this.rangeKey, etag, this.tempFile);
+            this.tempFile = null;
+        }
+
+        /**
+         * Discards the range without adding it to the cache.
+         */
+        void abort() {
+            if (this.cacheStream != null) {
+                try {
+                    this.cacheStream.close();
+                }
+                catch (final IOException e) {
+                    // Ignore, the file is discarded anyway.
+                }
+
+                this.cacheStream = null;
+            }
+
+            if (this.tempFile != null) {
+                this.tempFile.delete();
+                this.tempFile = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/**
+ * Copyright Microsoft Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage.blob;
+
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.microsoft.azure.storage.AccessCondition;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.core.Utility;
+
+/**
+ * Represents the read coalescing of a {@link CloudBlobClient}, which lets concurrent identical reads share a single
+ * request.
+ * <p>
+ * Once enabled with {@link CloudBlobClient#setReadCoalescingEnabled(boolean)}, a call to
+ * {@link CloudBlob#downloadToByteArray}, {@link CloudBlob#downloadRangeToByteArray}, {@link CloudBlockBlob#downloadText}
+ * or {@link CloudBlob#downloadAttributes} made while an identical read is in flight, for the same blob URI, snapshot,
+ * range, access condition and location mode, waits for that read instead of issuing its own request. The waiting calls
+ * receive the content and attributes returned to the first call, or the error it failed with.
+ * <p>
+ * Content reads are buffered in memory so that they can be shared, which is why streaming downloads are never
+ * coalesced.
+ */
+public final class BlobReadCoalescer {
+    /**
+     * Holds the reads in flight, keyed by read key.
+     */
+    private final HashMap<String, PendingRead> pendingReads = new HashMap<String, PendingRead>();
+
+    /**
+     * Holds the number of reads that issued a request.
+     */
+    private final AtomicLong requestCount = new AtomicLong();
+
+    /**
+     * Holds the number of reads that were served by the request of another read.
+     */
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    /**
+     * Creates an instance of the <code>BlobReadCoalescer</code> class.
+     */
+    BlobReadCoalescer() {
+        // Empty constructor.
+    }
+
+    /**
+     * Gets the number of reads that issued a request.
+     *
+     * @return A <code>long</code> which represents the number of requests.
+     */
+    public long getRequestCount() {
+        return this.requestCount.get();
+    }
+
+    /**
+     * Gets the number of reads that were served by the request of an identical read in flight instead of issuing
+     * their own.
+     *
+     * @return A <code>long</code> which represents the number of coalesced reads.
+     */
+    public long getCoalescedCount() {
+        return this.coalescedCount.get();
+    }
+
+    /**
+     * Executes a read, or waits for the identical read in flight.
+     *
+     * @param readKey
+     *            A <code>String</code> which represents the key of the read, as returned by
+     *            {@link #getReadKey(CloudBlob, String, Long, Long, AccessCondition, BlobRequestOptions)}.
+     * @param operation
+     *            A {@link ReadOperation} object which represents the request to execute if no identical read is in
+     *            flight.
+     *
+     * @return A {@link ReadResult} object which represents the result of the read.
+     *
+     * @throws StorageException
+     *             If the read failed.
+     */
+    ReadResult read(final String readKey, final ReadOperation operation) throws StorageException {
+        PendingRead pendingRead;
+        boolean isLeader = false;
+        synchronized (this) {
+            pendingRead = this.pendingReads.get(readKey);
+            if (pendingRead == null) {
+                pendingRead = new PendingRead();
+                this.pendingReads.put(readKey, pendingRead);
+                isLeader = true;
+            }
+        }
+
+        if (!isLeader) {
+            this.coalescedCount.incrementAndGet();
+            return pendingRead.await();
+        }
+
+        this.requestCount.incrementAndGet();
+        try {
+            final ReadResult result = operation.execute();
+            pendingRead.complete(result, null);
+            return result;
+        }
+        catch (final StorageException e) {
+            pendingRead.complete(null, e);
+            throw e;
+        }
+        catch (final RuntimeException e) {
+            pendingRead.complete(null, Utility.generateNewUnexpectedStorageException(e));
+            throw e;
+        }
+        catch (final Error e) {
+            // The waiters must not stay blocked on a read which will never complete.
+            pendingRead.complete(null, Utility.generateNewUnexpectedStorageException(null /* cause */));
+            throw e;
+        }
+        finally {
+            synchronized (this) {
+                this.pendingReads.remove(readKey);
+            }
+        }
+    }
+
+    /**
+     * Gets the key identifying a read, so that only reads returning the same response are coalesced.
+     *
+     * @param blob
+     *            A {@link CloudBlob} object which represents the blob being read.
+     * @param operation
+     *            A <code>String</code> which identifies the kind of read.
+     * @param offset
+     *            A <code>Long</code> which represents the offset of the range read, or <code>null</code>.
+     * @param length
+     *            A <code>Long</code> which represents the length of the range read, or <code>null</code>.
+     * @param accessCondition
+     *            An {@link AccessCondition} object that represents the access conditions of the read.
+     * @param options
+     *            A {@link BlobRequestOptions} object that represents the options of the read.
+     *
+     * @return A <code>String</code> which represents the key of the read.
+     */
+    static String getReadKey(final CloudBlob blob, final String operation, final Long offset, final Long length,
+            final AccessCondition accessCondition, final BlobRequestOptions options) {
+        final StringBuilder builder = new StringBuilder(operation);
+        builder.append('\n').append(blob.getStorageUri().getPrimaryUri().toString());
+        builder.append('\n').append(blob.getSnapshotID() == null ? "" : blob.getSnapshotID());
+        builder.append('\n').append(offset == null ? "" : offset.toString()).append('-')
+                .append(length == null ? "" : length.toString());
+        builder.append('\n').append(options.getLocationMode());
+        if (accessCondition != null) {
+            builder.append('\n').append(accessCondition.getLeaseID());
+            builder.append('\n').append(accessCondition.getIfMatch());
+            builder.append('\n').append(accessCondition.getIfNoneMatch());
+            builder.append('\n').append(
+                    accessCondition.getIfModifiedSinceDate() == null ? "" : accessCondition.getIfModifiedSinceDate()
+                            .getTime());
+            builder.append('\n').append(
+                    accessCondition.getIfUnmodifiedSinceDate() == null ? "" : accessCondition
+                            .getIfUnmodifiedSinceDate().getTime());
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * RESERVED FOR INTERNAL USE. Represents the request executed by the first of identical reads.
+     */
+    interface ReadOperation {
+        ReadResult execute() throws StorageException;
+    }
+
+    /**
+     * RESERVED FOR INTERNAL USE. Represents the content and attributes returned by a read.
+     */
+    static final class ReadResult {
+        final byte[] content;
+
+        final BlobProperties properties;
+
+        final HashMap<String, String> metadata;
+
+        ReadResult(final byte[] content, final BlobProperties properties, final HashMap<String, String> metadata) {
+            this.content = content;
+            this.properties = new BlobProperties(properties);
+            this.metadata = new HashMap<String, String>(metadata);
+        }
+    }
+
+    /**
+     * Represents a read in flight.
+     */
+    private static final class PendingRead {
+        private final CountDownLatch completed = new CountDownLatch(1);
+
+        private ReadResult result;
+
+        private StorageException exception;
+
+        synchronized void complete(final ReadResult result, final StorageException exception) {
+            this.result = result;
+            this.exception = exception;
+            this.completed.countDown();
+        }
+
+        ReadResult await() throws StorageException {
+            try {
+                this.completed.await();
+            }
+            catch (final InterruptedException e) {
+                throw Utility.generateNewUnexpectedStorageException(e);
+            }
+
+            synchronized (this) {
+                if (this.exception != null) {
+                    // Each waiter gets its own exception, wrapping the one the request failed with.
+                    throw new StorageException(this.exception.getErrorCode(), this.exception.getMessage(),
+                            this.exception.getHttpStatusCode(), this.exception.getExtendedErrorInformation(),
+                            this.exception);
+                }
+
+                return this.result;
+            }
+        }
+    }
+}
@@ -55,6 +55,18 @@ public final class BlobRequestOptions extends RequestOptions {
      */
     private Integer singleBlobPutThresholdInBytes = null;
 
+    /**
+     * Specifies whether {@link BlobOutputStream} should adapt the size of the blocks it writes to block blobs. The
+     * default value is <code>false</code>.
+     */
+    private Boolean useAdaptiveBlockSize = null;
+
+    /**
+     * Specifies the priority with which the client's {@link BlobTransferManager}, if any, schedules the transfer. The
+     * default value is {@link TransferPriority#INTERACTIVE}.
+     */
+    private TransferPriority transferPriority = null;
+
     /**
      * Creates an instance of the <code>BlobRequestOptions</code> class.
      */
@@ -77,6 +89,8 @@ public final class BlobRequestOptions extends RequestOptions {
             this.setStoreBlobContentMD5(other.getStoreBlobContentMD5());
             this.setDisableContentMD5Validation(other.getDisableContentMD5Validation());
             this.setSingleBlobPutThresholdInBytes(other.getSingleBlobPutThresholdInBytes());
+            this.setUseAdaptiveBlockSize(other.getUseAdaptiveBlockSize());
+            this.setTransferPriority(other.getTransferPriority());
         }
     }
 
@@ -146,6 +160,14 @@ public final class BlobRequestOptions extends RequestOptions {
             modifiedOptions.setDisableContentMD5Validation(false);
         }
 
+        if (modifiedOptions.getUseAdaptiveBlockSize() == null) {
+            modifiedOptions.setUseAdaptiveBlockSize(false);
+        }
+
+        if (modifiedOptions.getTransferPriority() == null) {
+            modifiedOptions.setTransferPriority(TransferPriority.INTERACTIVE);
+        }
+
         return modifiedOptions;
     }
 
@@ -175,6 +197,14 @@ public final class BlobRequestOptions extends RequestOptions {
             modifiedOptions.setDisableContentMD5Validation(clientOptions.getDisableContentMD5Validation());
         }
 
+        if (modifiedOptions.getUseAdaptiveBlockSize() == null) {
+            modifiedOptions.setUseAdaptiveBlockSize(clientOptions.getUseAdaptiveBlockSize());
+        }
+
+        if (modifiedOptions.getTransferPriority() == null) {
+            modifiedOptions.setTransferPriority(clientOptions.getTransferPriority());
+        }
+
         return modifiedOptions;
     }
 
@@ -232,6 +262,26 @@ public final class BlobRequestOptions extends RequestOptions {
         return this.singleBlobPutThresholdInBytes;
     }
 
+    /**
+     * Gets whether {@link BlobOutputStream} adapts the size of the blocks it writes to block blobs. For more
+     * information about adaptive block size defaults, see {@link #setUseAdaptiveBlockSize(Boolean)}.
+     * 
+     * @return the useAdaptiveBlockSize
+     */
+    public Boolean getUseAdaptiveBlockSize() {
+        return this.useAdaptiveBlockSize;
+    }
+
+    /**
+     * Gets the priority with which the client's {@link BlobTransferManager} schedules the transfer. For more
+     * information about transfer priority defaults, see {@link #setTransferPriority(TransferPriority)}.
+     * 
+     * @return the transferPriority
+     */
+    public TransferPriority getTransferPriority() {
+        return this.transferPriority;
+    }
+
     /**
      * Sets the concurrent number of simultaneous requests per operation.
      * <p>
@@ -318,4 +368,41 @@ public final class BlobRequestOptions extends RequestOptions {
 
         this.singleBlobPutThresholdInBytes = singleBlobPutThresholdInBytes;
     }
+
+    /**
+     * Sets whether {@link BlobOutputStream} adapts the size of the blocks it writes to block blobs.
+     * <p>
+     * When enabled, blocks start at the blob's stream write size and grow, up to 4 MB, so that the blob fits within
+     * the 50,000 block limit of a block blob and so that each block uploads in about a second at the measured
+     * throughput. The expected length is taken into account when the blob is uploaded from a stream of known length.
+     * <p>
+     * The default useAdaptiveBlockSize value is set in the client and is by default <code>false</code>. You can change
+     * the useAdaptiveBlockSize value on this request by setting this property. You can also change the value on the
+     * {@link BlobServiceClient#getDefaultRequestOptions()} object so that all subsequent requests made via the service
+     * client will use that useAdaptiveBlockSize value.
+     * 
+     * @param useAdaptiveBlockSize
+     *            the useAdaptiveBlockSize to set
+     */
+    public void setUseAdaptiveBlockSize(final Boolean useAdaptiveBlockSize) {
+        this.useAdaptiveBlockSize = useAdaptiveBlockSize;
+    }
+
+    /**
+     * Sets the priority with which the client's {@link BlobTransferManager}, if any, schedules the transfer.
+     * <p>
+     * The requests of interactive transfers are sent before any queued request of a bulk transfer. The priority of a
+     * transfer is taken from its first request.
+     * <p>
+     * The default transferPriority value is set in the client and is by default {@link TransferPriority#INTERACTIVE}.
+     * You can change the transferPriority value on this request by setting this property. You can also change the
+     * value on the {@link BlobServiceClient#getDefaultRequestOptions()} object so that all subsequent requests made via
+     * the service client will use that transferPriority value.
+     * 
+     * @param transferPriority
+     *            the transferPriority to set
+     */
+    public void setTransferPriority(final TransferPriority transferPriority) {
+        this.transferPriority = transferPriority;
+    }
 }
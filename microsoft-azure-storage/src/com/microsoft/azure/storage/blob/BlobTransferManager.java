@@ -0,0 +1,397 @@
+/**
+ * Copyright Microsoft Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage.blob;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.microsoft.azure.storage.OperationContext;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.core.Utility;
+
+/**
+ * Represents a scheduler for the uploads and downloads of a {@link CloudBlobClient}, which shares the connections and
+ * bandwidth of the host between concurrent transfers according to their priority. Single put uploads, block uploads,
+ * page writes, and whole blob and range downloads are scheduled.
+ * <p>
+ * Once set on a {@link CloudBlobClient} via {@link CloudBlobClient#setTransferManager(BlobTransferManager)}, each of
+ * these requests waits for a slot before it is sent, so that at most the maximum number of concurrent requests are in
+ * flight across all transfers of the client, whatever the concurrent request count of each. Free slots go to
+ * {@link TransferPriority#INTERACTIVE} transfers before {@link TransferPriority#BULK} ones, and are handed in turn to
+ * the transfers of the same priority, so that a transfer with many queued blocks does not hold back one with a single
+ * block. If a maximum rate is set, the bytes sent and received by these requests are limited to it.
+ * <p>
+ * A transfer is made of the requests sharing an {@link OperationContext}, such as the blocks written by a
+ * {@link BlobOutputStream} or the ranges of a parallel download, and has the priority set in the request options of
+ * its first request. Its statistics are available from {@link #getTransferStatistics(OperationContext)} for as long as
+ * the operation context is referenced, and {@link #getActiveTransfers()} lists the transfers which have requests
+ * queued or in flight.
+ */
+public final class BlobTransferManager {
+    /**
+     * Holds the maximum number of requests in flight across all transfers.
+     */
+    private final int maximumConcurrentRequests;
+
+    /**
+     * Holds the maximum number of bytes per second across all transfers, or 0 if the rate is not limited.
+     */
+    private final long maximumBytesPerSecond;
+
+    /**
+     * Holds the throttle shared by all transfers.
+     */
+    private final BandwidthThrottle throttle;
+
+    /**
+     * Holds the transfers, keyed by operation context, for as long as their operation context is referenced.
+     */
+    private final WeakHashMap<OperationContext, Transfer> transfers = new WeakHashMap<OperationContext, Transfer>();
+
+    /**
+     * Holds the interactive transfers which have queued requests, in the order they are next given a slot.
+     */
+    private final LinkedList<Transfer> interactiveQueue = new LinkedList<Transfer>();
+
+    /**
+     * Holds the bulk transfers which have queued requests, in the order they are next given a slot.
+     */
+    private final LinkedList<Transfer> bulkQueue = new LinkedList<Transfer>();
+
+    /**
+     * Holds the number of requests in flight across all transfers.
+     */
+    private int inFlightRequestCount;
+
+    /**
+     * Holds the number of requests waiting for a slot across all transfers.
+     */
+    private int queuedRequestCount;
+
+    /**
+     * Creates an instance of the <code>BlobTransferManager</code> class using the specified limits.
+     *
+     * @param maximumConcurrentRequests
+     *            An <code>int</code> which represents the maximum number of requests in flight across all transfers.
+     * @param maximumBytesPerSecond
+     *            A <code>long</code> which represents the maximum number of bytes per second across all transfers, or
+     *            0 if the rate is not limited.
+     */
+    public BlobTransferManager(final int maximumConcurrentRequests, final long maximumBytesPerSecond) {
+        Utility.assertGreaterThanOrEqual("maximumConcurrentRequests", maximumConcurrentRequests, 1);
+        Utility.assertGreaterThanOrEqual("maximumBytesPerSecond", maximumBytesPerSecond, 0);
+
+        this.maximumConcurrentRequests = maximumConcurrentRequests;
+        this.maximumBytesPerSecond = maximumBytesPerSecond;
+        this.throttle = new BandwidthThrottle(maximumBytesPerSecond);
+    }
+
+    /**
+     * Gets the maximum number of requests in flight across all transfers.
+     *
+     * @return An <code>int</code> which represents the maximum number of concurrent requests.
+     */
+    public int getMaximumConcurrentRequests() {
+        return this.maximumConcurrentRequests;
+    }
+
+    /**
+     * Gets the maximum number of bytes per second across all transfers.
+     *
+     * @return A <code>long</code> which represents the maximum rate, or 0 if the rate is not limited.
+     */
+    public long getMaximumBytesPerSecond() {
+        return this.maximumBytesPerSecond;
+    }
+
+    /**
+     * Gets the number of requests in flight across all transfers.
+     *
+     * @return An <code>int</code> which represents the number of requests in flight.
+     */
+    public synchronized int getInFlightRequestCount() {
+        return this.inFlightRequestCount;
+    }
+
+    /**
+     * Gets the number of requests waiting for a slot across all transfers.
+     *
+     * @return An <code>int</code> which represents the number of queued requests.
+     */
+    public synchronized int getQueuedRequestCount() {
+        return this.queuedRequestCount;
+    }
+
+    /**
+     * Gets the statistics of the transfer made with the specified operation context.
+     *
+     * @param opContext
+     *            An {@link OperationContext} object which represents the operation context of the transfer.
+     *
+     * @return A {@link BlobTransferStatistics} object which represents the statistics of the transfer, or
+     *         <code>null</code> if no request was scheduled with the operation context.
+     */
+    public synchronized BlobTransferStatistics getTransferStatistics(final OperationContext opContext) {
+        final Transfer transfer = this.transfers.get(opContext);
+        return transfer == null ? null : transfer.getStatistics();
+    }
+
+    /**
+     * Gets the statistics of the transfers which have requests queued or in flight.
+     *
+     * @return An <code>ArrayList</code> of the {@link BlobTransferStatistics} of the active transfers.
+     */
+    public synchronized ArrayList<BlobTransferStatistics> getActiveTransfers() {
+        final ArrayList<BlobTransferStatistics> activeTransfers = new ArrayList<BlobTransferStatistics>();
+        for (final Transfer transfer : this.transfers.values()) {
+            if (transfer.inFlightRequestCount > 0 || !transfer.waiters.isEmpty()) {
+                activeTransfers.add(transfer.getStatistics());
+            }
+        }
+
+        return activeTransfers;
+    }
+
+    /**
+     * Waits for a slot for a request of the transfer made with the specified operation context. Every call which
+     * returns must be followed by a call to {@link #end(Transfer)} once the request completes.
+     *
+     * @param opContext
+     *            An {@link OperationContext} object which represents the operation context of the transfer.
+     * @param priority
+     *            A {@link TransferPriority} value which represents the priority of the transfer, used if this is its
+     *            first request.
+     *
+     * @return A {@link Transfer} object which represents the transfer the request belongs to.
+     *
+     * @throws StorageException
+     *             If the thread was interrupted while waiting for a slot.
+     */
+    synchronized Transfer begin(final OperationContext opContext, final TransferPriority priority)
+            throws StorageException {
+        Transfer transfer = this.transfers.get(opContext);
+        if (transfer == null) {
+            transfer = new Transfer(opContext.getClientRequestID(), priority, this.throttle);
+            this.transfers.put(opContext, transfer);
+        }
+
+        if (this.queuedRequestCount == 0 && this.inFlightRequestCount < this.maximumConcurrentRequests) {
+            this.startRequest(transfer);
+            return transfer;
+        }
+
+        final Waiter waiter = new Waiter();
+        transfer.waiters.addLast(waiter);
+        if (transfer.waiters.size() == 1) {
+            this.getQueue(transfer.priority).addLast(transfer);
+        }
+
+        this.queuedRequestCount++;
+
+        try {
+            while (!waiter.granted) {
+                this.wait();
+            }
+        }
+        catch (final InterruptedException e) {
+            if (waiter.granted) {
+                this.end(transfer);
+            }
+            else {
+                transfer.waiters.remove(waiter);
+                if (transfer.waiters.isEmpty()) {
+                    this.getQueue(transfer.priority).remove(transfer);
+                }
+
+                this.queuedRequestCount--;
+            }
+
+            throw Utility.generateNewUnexpectedStorageException(e);
+        }
+
+        return transfer;
+    }
+
+    /**
+     * Releases the slot of a completed request and hands it to the next queued request.
+     *
+     * @param transfer
+     *            A {@link Transfer} object which represents the transfer the request belongs to.
+     */
+    synchronized void end(final Transfer transfer) {
+        this.inFlightRequestCount--;
+        transfer.inFlightRequestCount--;
+        transfer.completedRequestCount++;
+
+        boolean granted = false;
+        while (this.inFlightRequestCount < this.maximumConcurrentRequests) {
+            final LinkedList<Transfer> queue = this.interactiveQueue.isEmpty() ? this.bulkQueue
+                    : this.interactiveQueue;
+            final Transfer next = queue.poll();
+            if (next == null) {
+                break;
+            }
+
+            next.waiters.removeFirst().granted = true;
+            this.queuedRequestCount--;
+            this.startRequest(next);
+            granted = true;
+
+            // Move the transfer to the back of its queue, so that the transfers of the same priority take turns.
+            if (!next.waiters.isEmpty()) {
+                queue.addLast(next);
+            }
+        }
+
+        if (granted) {
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * Records a request as in flight.
+     */
+    private void startRequest(final Transfer transfer) {
+        this.inFlightRequestCount++;
+        transfer.inFlightRequestCount++;
+    }
+
+    /**
+     * Gets the queue of the transfers of the specified priority.
+     */
+    private LinkedList<Transfer> getQueue(final TransferPriority priority) {
+        return priority == TransferPriority.BULK ? this.bulkQueue : this.interactiveQueue;
+    }
+
+    /**
+     * RESERVED FOR INTERNAL USE. Represents a request waiting for a slot.
+     */
+    private static final class Waiter {
+        private boolean granted;
+    }
+
+    /**
+     * RESERVED FOR INTERNAL USE. Represents a transfer, which counts and throttles the bytes moved by its requests.
+     * The request counts and waiters are guarded by the manager.
+     */
+    static final class Transfer {
+        private final String clientRequestID;
+
+        private final TransferPriority priority;
+
+        private final BandwidthThrottle throttle;
+
+        private final Date startTime = new Date();
+
+        private final AtomicLong bytesTransferred = new AtomicLong();
+
+        private final LinkedList<Waiter> waiters = new LinkedList<Waiter>();
+
+        private int inFlightRequestCount;
+
+        private long completedRequestCount;
+
+        private Transfer(final String clientRequestID, final TransferPriority priority,
+                final BandwidthThrottle throttle) {
+            this.clientRequestID = clientRequestID;
+            this.priority = priority;
+            this.throttle = throttle;
+        }
+
+        /**
+         * Waits until the specified number of bytes may be transferred, and adds them to the transfer.
+         *
+         * @param byteCount
+         *            A <code>long</code> which represents the number of bytes transferred.
+         *
+         * @throws IOException
+         *             If the thread was interrupted while waiting.
+         */
+        void recordBytes(final long byteCount) throws IOException {
+            if (byteCount > 0) {
+                this.throttle.acquire(byteCount);
+                this.bytesTransferred.addAndGet(byteCount);
+            }
+        }
+
+        /**
+         * Wraps a stream so that the bytes read from it are throttled and added to the transfer.
+         *
+         * @param stream
+         *            An <code>InputStream</code> object which represents the data sent by a request.
+         *
+         * @return An <code>InputStream</code> object which reads from the stream.
+         */
+        InputStream wrap(final InputStream stream) {
+            return new FilterInputStream(stream) {
+                @Override
+                public int read() throws IOException {
+                    final int value = super.read();
+                    if (value >= 0) {
+                        Transfer.this.recordBytes(1);
+                    }
+
+                    return value;
+                }
+
+                @Override
+                public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+                    final int count = super.read(buffer, offset, length);
+                    Transfer.this.recordBytes(count);
+                    return count;
+                }
+            };
+        }
+
+        /**
+         * Wraps a stream so that the bytes written to it are throttled and added to the transfer.
+         *
+         * @param stream
+         *            An <code>OutputStream</code> object which represents the destination of the data received by a
+         *            request.
+         *
+         * @return An <code>OutputStream</code> object which writes to the stream.
+         */
+        OutputStream wrap(final OutputStream stream) {
+            return new FilterOutputStream(stream) {
+                @Override
+                public void write(final int value) throws IOException {
+                    Transfer.this.recordBytes(1);
+                    this.out.write(value);
+                }
+
+                @Override
+                public void write(final byte[] buffer, final int offset, final int length) throws IOException {
+                    Transfer.this.recordBytes(length);
+                    this.out.write(buffer, offset, length);
+                }
+            };
+        }
+
+        private BlobTransferStatistics getStatistics() {
+            return new BlobTransferStatistics(this.clientRequestID, this.priority, this.startTime,
+                    this.bytesTransferred.get(), this.waiters.size(), this.inFlightRequestCount,
+                    this.completedRequestCount);
+        }
+    }
+}
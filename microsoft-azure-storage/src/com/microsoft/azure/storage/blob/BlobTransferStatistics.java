@@ -0,0 +1,152 @@
+/**
+ * Copyright Microsoft Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage.blob;
+
+import java.util.Date;
+
+/**
+ * Represents a snapshot of the statistics of a transfer scheduled by a {@link BlobTransferManager}.
+ * <p>
+ * The byte count includes the bytes sent again or received again when a request is retried.
+ */
+public final class BlobTransferStatistics {
+    /**
+     * Holds the client request ID of the operation context of the transfer.
+     */
+    private final String clientRequestID;
+
+    /**
+     * Holds the priority of the transfer.
+     */
+    private final TransferPriority priority;
+
+    /**
+     * Holds the time the first request of the transfer was scheduled.
+     */
+    private final Date startTime;
+
+    /**
+     * Holds the number of bytes sent or received by the requests of the transfer.
+     */
+    private final long bytesTransferred;
+
+    /**
+     * Holds the number of requests of the transfer waiting for a slot.
+     */
+    private final int queuedRequestCount;
+
+    /**
+     * Holds the number of requests of the transfer in flight.
+     */
+    private final int inFlightRequestCount;
+
+    /**
+     * Holds the number of requests of the transfer which have completed, successfully or not.
+     */
+    private final long completedRequestCount;
+
+    /**
+     * Holds the time the snapshot was taken.
+     */
+    private final Date snapshotTime = new Date();
+
+    /**
+     * Creates an instance of the <code>BlobTransferStatistics</code> class.
+     */
+    BlobTransferStatistics(final String clientRequestID, final TransferPriority priority, final Date startTime,
+            final long bytesTransferred, final int queuedRequestCount, final int inFlightRequestCount,
+            final long completedRequestCount) {
+        this.clientRequestID = clientRequestID;
+        this.priority = priority;
+        this.startTime = startTime;
+        this.bytesTransferred = bytesTransferred;
+        this.queuedRequestCount = queuedRequestCount;
+        this.inFlightRequestCount = inFlightRequestCount;
+        this.completedRequestCount = completedRequestCount;
+    }
+
+    /**
+     * Gets the client request ID of the operation context of the transfer.
+     *
+     * @return A <code>String</code> which represents the client request ID.
+     */
+    public String getClientRequestID() {
+        return this.clientRequestID;
+    }
+
+    /**
+     * Gets the priority of the transfer.
+     *
+     * @return A {@link TransferPriority} value which represents the priority of the transfer.
+     */
+    public TransferPriority getPriority() {
+        return this.priority;
+    }
+
+    /**
+     * Gets the time the first request of the transfer was scheduled.
+     *
+     * @return A <code>java.util.Date</code> object which represents the start time of the transfer.
+     */
+    public Date getStartTime() {
+        return new Date(this.startTime.getTime());
+    }
+
+    /**
+     * Gets the number of bytes sent or received by the requests of the transfer.
+     *
+     * @return A <code>long</code> which represents the number of bytes transferred.
+     */
+    public long getBytesTransferred() {
+        return this.bytesTransferred;
+    }
+
+    /**
+     * Gets the average rate of the transfer from its start time to the time of the snapshot.
+     *
+     * @return A <code>long</code> which represents the average number of bytes transferred per second.
+     */
+    public long getBytesPerSecond() {
+        final long elapsedMs = Math.max(1, this.snapshotTime.getTime() - this.startTime.getTime());
+        return this.bytesTransferred * 1000 / elapsedMs;
+    }
+
+    /**
+     * Gets the number of requests of the transfer waiting for a slot.
+     *
+     * @return An <code>int</code> which represents the number of queued requests.
+     */
+    public int getQueuedRequestCount() {
+        return this.queuedRequestCount;
+    }
+
+    /**
+     * Gets the number of requests of the transfer in flight.
+     *
+     * @return An <code>int</code> which represents the number of requests in flight.
+     */
+    public int getInFlightRequestCount() {
+        return this.inFlightRequestCount;
+    }
+
+    /**
+     * Gets the number of requests of the transfer which have completed, successfully or not.
+     *
+     * @return A <code>long</code> which represents the number of completed requests.
+     */
+    public long getCompletedRequestCount() {
+        return this.completedRequestCount;
+    }
+}
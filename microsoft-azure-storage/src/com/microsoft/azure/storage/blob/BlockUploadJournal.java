@@ -0,0 +1,292 @@
+/**
+ * Copyright Microsoft Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage.blob;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import com.microsoft.azure.storage.Constants;
+import com.microsoft.azure.storage.core.Base64;
+import com.microsoft.azure.storage.core.Utility;
+
+/**
+ * RESERVED FOR INTERNAL USE. Represents the local journal of a resumable block blob upload from a file.
+ * <p>
+ * The journal starts with a header identifying the blob, the source file and the block layout, followed by one line per
+ * uploaded block holding its block ID, offset, length and MD5. A journal whose header does not match the current upload
+ * is discarded. Block IDs are derived from a random base recorded in the header and the index of the block, so a
+ * resumed upload uses the same IDs as the upload it continues.
+ */
+final class BlockUploadJournal {
+    /**
+     * The header prefix which identifies the journal format.
+     */
+    private static final String HEADER_PREFIX = "BlockUploadJournal/1";
+
+    /**
+     * The separator used between the fields of a journal line.
+     */
+    private static final char FIELD_SEPARATOR = '\t';
+
+    /**
+     * Holds the random number generator used to create block ID bases.
+     */
+    private static Random blockIdBaseGenerator = new Random();
+
+    /**
+     * Holds the journal file.
+     */
+    private final File journalFile;
+
+    /**
+     * Holds the journaled blocks, keyed by offset.
+     */
+    private final HashMap<Long, JournalEntry> entries = new HashMap<Long, JournalEntry>();
+
+    /**
+     * Holds the value block IDs are derived from.
+     */
+    private long blockIdBase;
+
+    /**
+     * Holds the writer appending to the journal file.
+     */
+    private Writer writer;
+
+    /**
+     * Opens a journal, continuing it if it belongs to the same upload or starting a new one otherwise.
+     *
+     * @param journalFile
+     *            A <code>java.io.File</code> object that represents the journal file.
+     * @param blobUri
+     *            A <code>String</code> which represents the URI of the blob being uploaded.
+     * @param sourceFile
+     *            A <code>java.io.File</code> object that represents the file being uploaded.
+     * @param blockSize
+     *            An <code>int</code> which represents the size of the blocks the file is split into.
+     *
+     * @return A {@link BlockUploadJournal} object that represents the open journal.
+     *
+     * @throws IOException
+     *             If the journal could not be read or written.
+     */
+    static BlockUploadJournal open(final File journalFile, final String blobUri, final File sourceFile,
+            final int blockSize) throws IOException {
+        final String headerFields = blobUri + FIELD_SEPARATOR + sourceFile.length() + FIELD_SEPARATOR
+                + sourceFile.lastModified() + FIELD_SEPARATOR + blockSize;
+
+        final BlockUploadJournal journal = new BlockUploadJournal(journalFile);
+        if (!journal.load(headerFields)) {
+            journal.entries.clear();
+            journal.blockIdBase = (long) (blockIdBaseGenerator.nextInt(Integer.MAX_VALUE))
+                    + blockIdBaseGenerator.nextInt(Integer.MAX_VALUE - 100000);
+
+            journal.writer = new OutputStreamWriter(new FileOutputStream(journalFile, false), Constants.UTF8_CHARSET);
+            journal.writeLine(HEADER_PREFIX + FIELD_SEPARATOR + headerFields + FIELD_SEPARATOR + journal.blockIdBase);
+        }
+        else {
+            journal.writer = new OutputStreamWriter(new FileOutputStream(journalFile, true), Constants.UTF8_CHARSET);
+        }
+
+        return journal;
+    }
+
+    private BlockUploadJournal(final File journalFile) {
+        this.journalFile = journalFile;
+    }
+
+    /**
+     * Gets the block ID of the block at the specified index.
+     *
+     * @param blockIndex
+     *            A <code>long</code> which represents the index of the block.
+     *
+     * @return A <code>String</code> which represents the Base64 encoded block ID.
+     */
+    String getBlockId(final long blockIndex) {
+        return Base64.encode(Utility.getBytesFromLong(this.blockIdBase + blockIndex));
+    }
+
+    /**
+     * Gets whether any blocks are journaled.
+     *
+     * @return <code>true</code> if the journal holds blocks; otherwise, <code>false</code>.
+     */
+    synchronized boolean hasEntries() {
+        return !this.entries.isEmpty();
+    }
+
+    /**
+     * Gets whether the block at the specified offset is journaled with the specified length and MD5.
+     *
+     * @param blockId
+     *            A <code>String</code> which represents the ID of the block.
+     * @param offset
+     *            A <code>long</code> which represents the offset of the block in the file.
+     * @param length
+     *            An <code>int</code> which represents the length of the block.
+     * @param md5
+     *            A <code>String</code> which represents the Base64 encoded MD5 of the block data.
+     *
+     * @return <code>true</code> if the block is journaled; otherwise, <code>false</code>.
+     */
+    synchronized boolean isUploaded(final String blockId, final long offset, final int length, final String md5) {
+        final JournalEntry entry = this.entries.get(offset);
+        return entry != null && entry.blockId.equals(blockId) && entry.length == length && entry.md5.equals(md5);
+    }
+
+    /**
+     * Drops the journaled blocks which are not among the uncommitted blocks of the blob.
+     *
+     * @param uncommittedBlocks
+     *            A <code>Map</code> of the IDs of the uncommitted blocks of the blob to their sizes.
+     */
+    synchronized void retainUncommitted(final Map<String, Long> uncommittedBlocks) {
+        final Iterator<JournalEntry> iterator = this.entries.values().iterator();
+        while (iterator.hasNext()) {
+            final JournalEntry entry = iterator.next();
+            final Long size = uncommittedBlocks.get(entry.blockId);
+            if (size == null || size != entry.length) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Records an uploaded block.
+     *
+     * @param blockId
+     *            A <code>String</code> which represents the ID of the block.
+     * @param offset
+     *            A <code>long</code> which represents the offset of the block in the file.
+     * @param length
+     *            An <code>int</code> which represents the length of the block.
+     * @param md5
+     *            A <code>String</code> which represents the Base64 encoded MD5 of the block data.
+     *
+     * @throws IOException
+     *             If the journal could not be written.
+     */
+    synchronized void recordBlock(final String blockId, final long offset, final int length, final String md5)
+            throws IOException {
+        this.entries.put(offset, new JournalEntry(blockId, length, md5));
+        this.writeLine(blockId + FIELD_SEPARATOR + offset + FIELD_SEPARATOR + length + FIELD_SEPARATOR + md5);
+    }
+
+    /**
+     * Closes the journal file.
+     */
+    synchronized void close() {
+        if (this.writer != null) {
+            try {
+                this.writer.close();
+            }
+            catch (final IOException e) {
+                // Ignore, every line was flushed when it was written.
+            }
+
+            this.writer = null;
+        }
+    }
+
+    /**
+     * Closes and deletes the journal file, once the upload has been committed.
+     */
+    synchronized void delete() {
+        this.close();
+        this.journalFile.delete();
+    }
+
+    private void writeLine(final String line) throws IOException {
+        this.writer.write(line);
+        this.writer.write('\n');
+        this.writer.flush();
+    }
+
+    /**
+     * Loads the journal file if it exists and its header matches.
+     */
+    private boolean load(final String headerFields) throws IOException {
+        if (!this.journalFile.isFile()) {
+            return false;
+        }
+
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.journalFile),
+                Constants.UTF8_CHARSET));
+        try {
+            final String header = reader.readLine();
+            final String expectedPrefix = HEADER_PREFIX + FIELD_SEPARATOR + headerFields + FIELD_SEPARATOR;
+            if (header == null || !header.startsWith(expectedPrefix)) {
+                return false;
+            }
+
+            try {
+                this.blockIdBase = Long.parseLong(header.substring(expectedPrefix.length()));
+            }
+            catch (final NumberFormatException e) {
+                return false;
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] fields = line.split(String.valueOf(FIELD_SEPARATOR));
+                if (fields.length != 4) {
+                    // A partially written line of an interrupted upload.
+                    continue;
+                }
+
+                try {
+                    this.entries.put(Long.parseLong(fields[1]),
+                            new JournalEntry(fields[0], Integer.parseInt(fields[2]), fields[3]));
+                }
+                catch (final NumberFormatException e) {
+                    continue;
+                }
+            }
+
+            return true;
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Represents a journaled block.
+     */
+    private static final class JournalEntry {
+        private final String blockId;
+
+        private final int length;
+
+        private final String md5;
+
+        private JournalEntry(final String blockId, final int length, final String md5) {
+            this.blockId = blockId;
+            this.length = length;
+            this.md5 = md5;
+        }
+    }
+}
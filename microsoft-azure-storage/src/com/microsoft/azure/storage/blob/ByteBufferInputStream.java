@@ -0,0 +1,97 @@
+/**
+ * Copyright Microsoft Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage.blob;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * RESERVED FOR INTERNAL USE. An input stream which reads the remaining bytes of a <code>ByteBuffer</code>.
+ * <p>
+ * The stream reads from a duplicate of the buffer, so the position of the caller's buffer is not changed. Reads copy
+ * directly from the buffer into the caller's array, which lets requests send a direct buffer one copy buffer at a time
+ * instead of first copying it to the heap as a whole. The stream supports <code>mark</code> and <code>reset</code>,
+ * so that requests can be retried.
+ */
+final class ByteBufferInputStream extends InputStream {
+    /**
+     * Holds the duplicate of the buffer being read.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Holds the marked position.
+     */
+    private int markedPosition;
+
+    /**
+     * Creates an instance of the <code>ByteBufferInputStream</code> class which reads the remaining bytes of the
+     * specified buffer.
+     *
+     * @param buffer
+     *            A <code>java.nio.ByteBuffer</code> object which represents the data to read.
+     */
+    ByteBufferInputStream(final ByteBuffer buffer) {
+        this.buffer = buffer.duplicate();
+        this.markedPosition = this.buffer.position();
+    }
+
+    @Override
+    public int available() {
+        return this.buffer.remaining();
+    }
+
+    @Override
+    public int read() {
+        return this.buffer.hasRemaining() ? this.buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(final byte[] data, final int offset, final int length) {
+        if (length == 0) {
+            return 0;
+        }
+
+        if (!this.buffer.hasRemaining()) {
+            return -1;
+        }
+
+        final int count = Math.min(length, this.buffer.remaining());
+        this.buffer.get(data, offset, count);
+        return count;
+    }
+
+    @Override
+    public long skip(final long n) {
+        final int count = (int) Math.max(0, Math.min(n, this.buffer.remaining()));
+        this.buffer.position(this.buffer.position() + count);
+        return count;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(final int readlimit) {
+        this.markedPosition = this.buffer.position();
+    }
+
+    @Override
+    public synchronized void reset() {
+        this.buffer.position(this.markedPosition);
+    }
+}
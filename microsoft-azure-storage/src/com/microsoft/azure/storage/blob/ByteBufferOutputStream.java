@@ -0,0 +1,63 @@
+/**
+ * Copyright Microsoft Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage.blob;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import com.microsoft.azure.storage.core.SR;
+
+/**
+ * RESERVED FOR INTERNAL USE. An output stream which writes into the remaining space of a <code>ByteBuffer</code>,
+ * advancing its position.
+ * <p>
+ * Writes copy directly from the caller's array into the buffer, which lets downloads fill a direct buffer one copy
+ * buffer at a time instead of first reading the whole content into the heap.
+ */
+final class ByteBufferOutputStream extends OutputStream {
+    /**
+     * Holds the buffer being written.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Creates an instance of the <code>ByteBufferOutputStream</code> class which writes into the specified buffer.
+     *
+     * @param buffer
+     *            A <code>java.nio.ByteBuffer</code> object which represents the buffer to write into.
+     */
+    ByteBufferOutputStream(final ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public void write(final int byteVal) throws IOException {
+        if (!this.buffer.hasRemaining()) {
+            throw new IOException(SR.CONTENT_LENGTH_MISMATCH);
+        }
+
+        this.buffer.put((byte) byteVal);
+    }
+
+    @Override
+    public void write(final byte[] data, final int offset, final int length) throws IOException {
+        if (length > this.buffer.remaining()) {
+            throw new IOException(SR.CONTENT_LENGTH_MISMATCH);
+        }
+
+        this.buffer.put(data, offset, length);
+    }
+}
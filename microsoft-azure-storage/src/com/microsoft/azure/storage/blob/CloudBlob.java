@@ -17,15 +17,19 @@ package com.microsoft.azure.storage.blob;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.InvalidKeyException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -33,7 +37,14 @@ import java.text.ParseException;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.microsoft.azure.storage.AccessCondition;
 import com.microsoft.azure.storage.Constants;
@@ -276,8 +287,13 @@ public abstract class CloudBlob implements ListBlobItem {
         opContext.initialize();
         options = BlobRequestOptions.applyDefaults(options, this.properties.getBlobType(), this.blobServiceClient);
 
-        ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
-                this.abortCopyImpl(copyId, accessCondition, options), options.getRetryPolicyFactory(), opContext);
+        try {
+            ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
+                    this.abortCopyImpl(copyId, accessCondition, options), options.getRetryPolicyFactory(), opContext);
+        }
+        finally {
+            this.invalidateCaches();
+        }
     }
 
     private StorageRequest<CloudBlobClient, CloudBlob, Void> abortCopyImpl(final String copyId,
@@ -381,9 +397,14 @@ public abstract class CloudBlob implements ListBlobItem {
         opContext.initialize();
         options = BlobRequestOptions.applyDefaults(options, this.properties.getBlobType(), this.blobServiceClient);
 
-        return ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
-                this.acquireLeaseImpl(leaseTimeInSeconds, proposedLeaseId, accessCondition, options),
-                options.getRetryPolicyFactory(), opContext);
+        try {
+            return ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
+                    this.acquireLeaseImpl(leaseTimeInSeconds, proposedLeaseId, accessCondition, options),
+                    options.getRetryPolicyFactory(), opContext);
+        }
+        finally {
+            this.invalidateCaches();
+        }
     }
 
     private StorageRequest<CloudBlobClient, CloudBlob, String> acquireLeaseImpl(final Integer leaseTimeInSeconds,
@@ -510,9 +531,14 @@ public abstract class CloudBlob implements ListBlobItem {
         opContext.initialize();
         options = BlobRequestOptions.applyDefaults(options, this.properties.getBlobType(), this.blobServiceClient);
 
-        return ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
-                this.breakLeaseImpl(breakPeriodInSeconds, accessCondition, options), options.getRetryPolicyFactory(),
-                opContext);
+        try {
+            return ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
+                    this.breakLeaseImpl(breakPeriodInSeconds, accessCondition, options),
+                    options.getRetryPolicyFactory(), opContext);
+        }
+        finally {
+            this.invalidateCaches();
+        }
     }
 
     private StorageRequest<CloudBlobClient, CloudBlob, Long> breakLeaseImpl(final Integer breakPeriodInSeconds,
@@ -613,9 +639,14 @@ public abstract class CloudBlob implements ListBlobItem {
         opContext.initialize();
         options = BlobRequestOptions.applyDefaults(options, this.properties.getBlobType(), this.blobServiceClient);
 
-        return ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
-                this.changeLeaseImpl(proposedLeaseId, accessCondition, options), options.getRetryPolicyFactory(),
-                opContext);
+        try {
+            return ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
+                    this.changeLeaseImpl(proposedLeaseId, accessCondition, options), options.getRetryPolicyFactory(),
+                    opContext);
+        }
+        finally {
+            this.invalidateCaches();
+        }
     }
 
     private StorageRequest<CloudBlobClient, CloudBlob, String> changeLeaseImpl(final String proposedLeaseId,
@@ -761,9 +792,14 @@ public abstract class CloudBlob implements ListBlobItem {
         opContext.initialize();
         options = BlobRequestOptions.applyDefaults(options, this.properties.getBlobType(), this.blobServiceClient);
 
-        return ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
-                this.startCopyFromBlobImpl(source, sourceAccessCondition, destinationAccessCondition, options),
-                options.getRetryPolicyFactory(), opContext);
+        try {
+            return ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
+                    this.startCopyFromBlobImpl(source, sourceAccessCondition, destinationAccessCondition, options),
+                    options.getRetryPolicyFactory(), opContext);
+        }
+        finally {
+            this.invalidateCaches();
+        }
     }
 
     private StorageRequest<CloudBlobClient, CloudBlob, String> startCopyFromBlobImpl(final URI source,
@@ -996,9 +1032,14 @@ public abstract class CloudBlob implements ListBlobItem {
         opContext.initialize();
         options = BlobRequestOptions.applyDefaults(options, this.properties.getBlobType(), this.blobServiceClient);
 
-        ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
-                this.deleteImpl(deleteSnapshotsOption, accessCondition, options), options.getRetryPolicyFactory(),
-                opContext);
+        try {
+            ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
+                    this.deleteImpl(deleteSnapshotsOption, accessCondition, options), options.getRetryPolicyFactory(),
+                    opContext);
+        }
+        finally {
+            this.invalidateCaches();
+        }
     }
 
     /**
@@ -1151,9 +1192,23 @@ public abstract class CloudBlob implements ListBlobItem {
         opContext.initialize();
         options = BlobRequestOptions.applyDefaults(options, this.properties.getBlobType(), this.blobServiceClient);
 
-        ExecutionEngine.executeWithRetry(this.blobServiceClient, this, this.downloadToStreamImpl(
-                null /* blobOffset */, null /* length */, outStream, accessCondition, options, opContext), options
-                .getRetryPolicyFactory(), opContext);
+        final BlobTransferManager transferManager = this.blobServiceClient.getTransferManager();
+        if (transferManager == null) {
+            ExecutionEngine.executeWithRetry(this.blobServiceClient, this, this.downloadToStreamImpl(
+                    null /* blobOffset */, null /* length */, outStream, accessCondition, options, opContext,
+                    false /* allowNotModified */), options.getRetryPolicyFactory(), opContext);
+            return;
+        }
+
+        final BlobTransferManager.Transfer transfer = transferManager.begin(opContext, options.getTransferPriority());
+        try {
+            ExecutionEngine.executeWithRetry(this.blobServiceClient, this, this.downloadToStreamImpl(
+                    null /* blobOffset */, null /* length */, transfer.wrap(outStream), accessCondition, options,
+                    opContext, false /* allowNotModified */), options.getRetryPolicyFactory(), opContext);
+        }
+        finally {
+            transferManager.end(transfer);
+        }
     }
 
     /**
@@ -1215,9 +1270,161 @@ public abstract class CloudBlob implements ListBlobItem {
             throw new IllegalArgumentException(SR.INVALID_RANGE_CONTENT_MD5_HEADER);
         }
 
-        ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
-                this.downloadToStreamImpl(offset, length, outStream, accessCondition, options, opContext),
-                options.getRetryPolicyFactory(), opContext);
+        final BlobRangeCache rangeCache = this.blobServiceClient.getRangeCache();
+        if (rangeCache != null && BlobRangeCache.isCacheableCondition(accessCondition)) {
+            this.downloadRangeUsingCache(rangeCache, offset, length, outStream, accessCondition, options, opContext);
+            return;
+        }
+
+        final BlobTransferManager transferManager = this.blobServiceClient.getTransferManager();
+        if (transferManager == null) {
+            ExecutionEngine.executeWithRetry(this.blobServiceClient, this, this.downloadToStreamImpl(offset, length,
+                    outStream, accessCondition, options, opContext, false /* allowNotModified */),
+                    options.getRetryPolicyFactory(), opContext);
+            return;
+        }
+
+        final BlobTransferManager.Transfer transfer = transferManager.begin(opContext, options.getTransferPriority());
+        try {
+            ExecutionEngine.executeWithRetry(this.blobServiceClient, this, this.downloadToStreamImpl(offset, length,
+                    transfer.wrap(outStream), accessCondition, options, opContext, false /* allowNotModified */),
+                    options.getRetryPolicyFactory(), opContext);
+        }
+        finally {
+            transferManager.end(transfer);
+        }
+    }
+
+    /**
+     * Downloads a range of the blob into the remaining space of a buffer.
+     * <p>
+     * The range starts at the specified offset and is as long as the space remaining in the buffer, or ends at the end
+     * of the blob if that comes first. The data is copied from the connection into the buffer one copy buffer at a
+     * time, so a direct buffer is filled without reading the range into the heap first.
+     * 
+     * @param offset
+     *            A <code>long</code> which represents the byte offset to use as the starting point for the source.
+     * @param buffer
+     *            A <code>java.nio.ByteBuffer</code> object which represents the buffer to download into. Its position
+     *            is advanced by the number of bytes read.
+     * 
+     * @return An <code>int</code> which represents the number of bytes read into the buffer, which is 0 without any
+     *         request if the buffer has no space remaining.
+     * 
+     * @throws StorageException
+     *             If a storage service error occurred.
+     */
+    @DoesServiceRequest
+    public final int downloadRange(final long offset, final ByteBuffer buffer) throws StorageException {
+        return this.downloadRange(offset, buffer, null /* accessCondition */, null /* options */, null /* opContext */);
+    }
+
+    /**
+     * Downloads a range of the blob into the remaining space of a buffer using the specified request options and
+     * operation context.
+     * <p>
+     * The range starts at the specified offset and is as long as the space remaining in the buffer, or ends at the end
+     * of the blob if that comes first. The data is copied from the connection into the buffer one copy buffer at a
+     * time, so a direct buffer is filled without reading the range into the heap first.
+     * 
+     * @param offset
+     *            A <code>long</code> which represents the byte offset to use as the starting point for the source.
+     * @param buffer
+     *            A <code>java.nio.ByteBuffer</code> object which represents the buffer to download into. Its position
+     *            is advanced by the number of bytes read, and is left unchanged if the download fails.
+     * @param accessCondition
+     *            An {@link AccessCondition} object that represents the access conditions for the blob.
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies any additional options for the request. Specifying
+     *            <code>null</code> will use the default request options from the associated service client (
+     *            {@link CloudBlobClient}).
+     * @param opContext
+     *            An {@link OperationContext} object that represents the context for the current operation. This object
+     *            is used to track requests to the storage service, and to provide additional runtime information about
+     *            the operation.
+     * 
+     * @return An <code>int</code> which represents the number of bytes read into the buffer, which is 0 without any
+     *         request if the buffer has no space remaining.
+     * 
+     * @throws StorageException
+     *             If a storage service error occurred.
+     */
+    @DoesServiceRequest
+    public final int downloadRange(final long offset, final ByteBuffer buffer, final AccessCondition accessCondition,
+            final BlobRequestOptions options, final OperationContext opContext) throws StorageException {
+        Utility.assertNotNull("buffer", buffer);
+        if (offset < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        if (!buffer.hasRemaining()) {
+            return 0;
+        }
+
+        final int startPosition = buffer.position();
+        boolean completed = false;
+        try {
+            this.downloadRange(offset, (long) buffer.remaining(), new ByteBufferOutputStream(buffer),
+                    accessCondition, options, opContext);
+            completed = true;
+        }
+        finally {
+            if (!completed) {
+                buffer.position(startPosition);
+            }
+        }
+
+        return buffer.position() - startPosition;
+    }
+
+    /**
+     * Downloads a range of a blob to a stream, serving it from the client's range cache if the cached copy is still
+     * current and caching it otherwise.
+     */
+    @DoesServiceRequest
+    private void downloadRangeUsingCache(final BlobRangeCache rangeCache, final long offset, final Long length,
+            final OutputStream outStream, final AccessCondition accessCondition, final BlobRequestOptions options,
+            final OperationContext opContext) throws StorageException {
+        final String rangeKey = BlobRangeCache.getRangeKey(this, offset, length);
+        final String cachedEtag = rangeCache.getCachedEtag(rangeKey);
+
+        AccessCondition requestCondition = accessCondition;
+        if (cachedEtag != null) {
+            requestCondition = AccessCondition.generateIfNoneMatchCondition(cachedEtag);
+            if (accessCondition != null) {
+                requestCondition.setLeaseID(accessCondition.getLeaseID());
+            }
+        }
+
+        final BlobRangeCache.PendingRange pendingRange = rangeCache.beginRange(rangeKey, outStream);
+        try {
+            final Integer status = ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
+                    this.downloadToStreamImpl(offset, length, pendingRange, requestCondition, options, opContext,
+                            cachedEtag != null /* allowNotModified */), options.getRetryPolicyFactory(), opContext);
+
+            if (status != null && status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                pendingRange.abort();
+                try {
+                    if (rangeCache.copyRange(rangeKey, cachedEtag, outStream)) {
+                        return;
+                    }
+                }
+                catch (final IOException e) {
+                    throw Utility.generateNewUnexpectedStorageException(e);
+                }
+
+                // The cached copy was evicted after it was revalidated, download the range unconditionally.
+                this.downloadRangeUsingCache(rangeCache, offset, length, outStream, accessCondition, options,
+                        opContext);
+                return;
+            }
+
+            rangeCache.recordMiss();
+            pendingRange.commit(this.properties.getEtag());
+        }
+        finally {
+            pendingRange.abort();
+        }
     }
 
     /**
@@ -1265,10 +1472,175 @@ public abstract class CloudBlob implements ListBlobItem {
 
         options = BlobRequestOptions.applyDefaults(options, this.properties.getBlobType(), this.blobServiceClient);
 
+        final BlobAttributeCache attributeCache = this.blobServiceClient.getAttributeCache();
+        if (attributeCache == null || !BlobAttributeCache.isCacheableCondition(accessCondition)) {
+            this.downloadAttributesFromService(accessCondition, options, opContext);
+            return;
+        }
+
+        final String attributesKey = BlobAttributeCache.getAttributesKey(this);
+        final long invalidationCount = attributeCache.getInvalidationCount();
+        final BlobAttributeCache.CacheEntry entry = attributeCache.get(attributesKey);
+        if (entry != null && entry.properties == null) {
+            attributeCache.recordHit();
+            throw new StorageException(StorageErrorCodeStrings.BLOB_NOT_FOUND, SR.BLOB_NOT_FOUND_CACHED,
+                    HttpURLConnection.HTTP_NOT_FOUND, null, null);
+        }
+
+        // Attributes of a blob of another type are left to the service request, which fails the type check.
+        if (entry != null && entry.properties.getBlobType() == this.properties.getBlobType()) {
+            attributeCache.recordHit();
+            this.properties = new BlobProperties(entry.properties);
+            this.metadata = new HashMap<String, String>(entry.metadata);
+            return;
+        }
+
+        attributeCache.recordMiss();
+        try {
+            this.downloadAttributesFromService(accessCondition, options, opContext);
+        }
+        catch (final StorageException e) {
+            if (e.getHttpStatusCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+                attributeCache.putNotFound(attributesKey, invalidationCount);
+            }
+
+            throw e;
+        }
+
+        attributeCache.put(attributesKey, invalidationCount, this.properties, this.metadata);
+    }
+
+    /**
+     * Retrieves the attributes of the blob from the service, through the client's read coalescer if it has one.
+     */
+    @DoesServiceRequest
+    private void downloadAttributesFromService(final AccessCondition accessCondition,
+            final BlobRequestOptions options, final OperationContext opContext) throws StorageException {
+        final BlobReadCoalescer readCoalescer = this.blobServiceClient.getReadCoalescer();
+        if (readCoalescer != null) {
+            this.readCoalesced(readCoalescer, false /* includeContent */, null /* offset */, null /* length */,
+                    accessCondition, options, opContext);
+            return;
+        }
+
         ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
                 this.downloadAttributesImpl(accessCondition, options), options.getRetryPolicyFactory(), opContext);
     }
 
+    /**
+     * Reads the attributes, and optionally the content, of the blob through the client's read coalescer, so that
+     * concurrent identical reads share a single request, and updates the attributes of this blob.
+     */
+    @DoesServiceRequest
+    final byte[] readCoalesced(final BlobReadCoalescer readCoalescer, final boolean includeContent, final Long offset,
+            final Long length, final AccessCondition accessCondition, final BlobRequestOptions options,
+            final OperationContext opContext) throws StorageException {
+        final String readKey = BlobReadCoalescer.getReadKey(this, includeContent ? "content" : "attributes", offset,
+                length, accessCondition, options);
+
+        final BlobReadCoalescer.ReadResult result = readCoalescer.read(readKey, new BlobReadCoalescer.ReadOperation() {
+            @Override
+            public BlobReadCoalescer.ReadResult execute() throws StorageException {
+                final CloudBlob blob = CloudBlob.this;
+                byte[] content = null;
+                if (includeContent) {
+                    final ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+                    ExecutionEngine.executeWithRetry(blob.blobServiceClient, blob, blob.downloadToStreamImpl(offset,
+                            length, outStream, accessCondition, options, opContext, false /* allowNotModified */),
+                            options.getRetryPolicyFactory(), opContext);
+                    content = outStream.toByteArray();
+                }
+                else {
+                    ExecutionEngine.executeWithRetry(blob.blobServiceClient, blob,
+                            blob.downloadAttributesImpl(accessCondition, options), options.getRetryPolicyFactory(),
+                            opContext);
+                }
+
+                return new BlobReadCoalescer.ReadResult(content, blob.properties, blob.metadata);
+            }
+        });
+
+        this.properties = new BlobProperties(result.properties);
+        this.metadata = new HashMap<String, String>(result.metadata);
+        return result.content;
+    }
+
+    /**
+     * Reads the attributes and content of the blob through the client's content cache, revalidating the cached copy
+     * with an <i>If-None-Match</i> request once its time to live has elapsed, and updates the attributes of this blob.
+     */
+    @DoesServiceRequest
+    final byte[] downloadUsingContentCache(final BlobContentCache contentCache, final AccessCondition accessCondition,
+            final BlobRequestOptions options, final OperationContext opContext) throws StorageException {
+        final String contentKey = BlobContentCache.getContentKey(this);
+        final long invalidationCount = contentCache.getInvalidationCount();
+        final BlobContentCache.CacheEntry entry = contentCache.get(contentKey);
+
+        // A read conditioned on a lease must reach the service for the lease to be checked.
+        if (entry != null && contentCache.isFresh(entry)
+                && (accessCondition == null || accessCondition.getLeaseID() == null)) {
+            contentCache.recordHit();
+            this.properties = new BlobProperties(entry.properties);
+            this.metadata = new HashMap<String, String>(entry.metadata);
+            return entry.content;
+        }
+
+        AccessCondition requestCondition = accessCondition;
+        if (entry != null) {
+            requestCondition = AccessCondition.generateIfNoneMatchCondition(entry.properties.getEtag());
+            if (accessCondition != null) {
+                requestCondition.setLeaseID(accessCondition.getLeaseID());
+            }
+        }
+
+        final ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+        final Integer status = ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
+                this.downloadToStreamImpl(null /* blobOffset */, null /* length */, outStream, requestCondition,
+                        options, opContext, entry != null /* allowNotModified */), options.getRetryPolicyFactory(),
+                opContext);
+
+        if (status != null && status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            contentCache.recordRevalidation(entry);
+            this.properties = new BlobProperties(entry.properties);
+            this.metadata = new HashMap<String, String>(entry.metadata);
+            return entry.content;
+        }
+
+        contentCache.recordMiss();
+        final byte[] content = outStream.toByteArray();
+        contentCache.put(contentKey, invalidationCount, content, this.properties, this.metadata);
+        return content;
+    }
+
+    /**
+     * Removes this blob from the client's content and attribute caches, after a write made through this client.
+     */
+    final void invalidateCaches() {
+        final BlobContentCache contentCache = this.blobServiceClient.getContentCache();
+        if (contentCache != null) {
+            contentCache.invalidate(BlobContentCache.getContentKey(this));
+        }
+
+        final BlobAttributeCache attributeCache = this.blobServiceClient.getAttributeCache();
+        if (attributeCache != null) {
+            attributeCache.invalidate(BlobAttributeCache.getAttributesKey(this));
+        }
+    }
+
+    /**
+     * Copies content read into memory by a coalesced or cached read to the caller's buffer.
+     */
+    private static int copyBufferedContent(final byte[] content, final byte[] buffer, final int bufferOffset)
+            throws StorageException {
+        if (content.length > buffer.length - bufferOffset) {
+            throw new StorageException(StorageErrorCodeStrings.OUT_OF_RANGE_INPUT, SR.CONTENT_LENGTH_MISMATCH,
+                    Constants.HeaderConstants.HTTP_UNUSED_306, null, null);
+        }
+
+        System.arraycopy(content, 0, buffer, bufferOffset, content.length);
+        return content.length;
+    }
+
     private StorageRequest<CloudBlobClient, CloudBlob, Void> downloadAttributesImpl(
             final AccessCondition accessCondition, final BlobRequestOptions options) {
         final StorageRequest<CloudBlobClient, CloudBlob, Void> getRequest = new StorageRequest<CloudBlobClient, CloudBlob, Void>(
@@ -1324,7 +1696,7 @@ public abstract class CloudBlob implements ListBlobItem {
     @DoesServiceRequest
     private final StorageRequest<CloudBlobClient, CloudBlob, Integer> downloadToStreamImpl(final Long blobOffset,
             final Long length, final OutputStream outStream, final AccessCondition accessCondition,
-            final BlobRequestOptions options, OperationContext opContext) {
+            final BlobRequestOptions options, OperationContext opContext, final boolean allowNotModified) {
 
         final long startingOffset = blobOffset == null ? 0 : blobOffset;
         final boolean isRangeGet = blobOffset != null;
@@ -1366,12 +1738,22 @@ public abstract class CloudBlob implements ListBlobItem {
             @Override
             public Integer preProcessResponse(CloudBlob blob, CloudBlobClient client, OperationContext context)
                     throws Exception {
+                // A cached copy is being revalidated and is still current, there is no content to read.
+                if (allowNotModified
+                        && this.getResult().getStatusCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    return HttpURLConnection.HTTP_NOT_MODIFIED;
+                }
+
                 return preProcessDownloadResponse(this, options, client, blob, context, isRangeGet);
             }
 
             @Override
             public Integer postProcessResponse(HttpURLConnection connection, CloudBlob blob, CloudBlobClient client,
                     OperationContext context, Integer storageObject) throws Exception {
+                if (storageObject != null) {
+                    return storageObject;
+                }
+
                 final Boolean validateMD5 = !options.getDisableContentMD5Validation()
                         && !Utility.isNullOrEmpty(this.getContentMD5());
                 final String contentLength = connection.getHeaderField(Constants.HeaderConstants.CONTENT_LENGTH);
@@ -1465,9 +1847,29 @@ public abstract class CloudBlob implements ListBlobItem {
             throw new IllegalArgumentException(SR.INVALID_RANGE_CONTENT_MD5_HEADER);
         }
 
-        return ExecutionEngine.executeWithRetry(this.blobServiceClient, this, this.downloadToByteArrayImpl(blobOffset,
-                length, buffer, bufferOffset, accessCondition, options, opContext), options.getRetryPolicyFactory(),
-                opContext);
+        final BlobTransferManager transferManager = this.blobServiceClient.getTransferManager();
+        if (transferManager == null) {
+            return ExecutionEngine.executeWithRetry(this.blobServiceClient, this, this.downloadToByteArrayImpl(
+                    blobOffset, length, buffer, bufferOffset, accessCondition, options, opContext),
+                    options.getRetryPolicyFactory(), opContext);
+        }
+
+        final BlobTransferManager.Transfer transfer = transferManager.begin(opContext, options.getTransferPriority());
+        try {
+            final int count = ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
+                    this.downloadToByteArrayImpl(blobOffset, length, buffer, bufferOffset, accessCondition, options,
+                            opContext), options.getRetryPolicyFactory(), opContext);
+
+            // The range is read directly into the buffer, so its bytes are throttled once it has been received.
+            transfer.recordBytes(count);
+            return count;
+        }
+        catch (final IOException e) {
+            throw Utility.generateNewUnexpectedStorageException(e);
+        }
+        finally {
+            transferManager.end(transfer);
+        }
     }
 
     /**
@@ -1536,6 +1938,21 @@ public abstract class CloudBlob implements ListBlobItem {
 
         opContext.initialize();
 
+        final BlobReadCoalescer readCoalescer = this.blobServiceClient.getReadCoalescer();
+        if (readCoalescer != null) {
+            if (bufferOffset < 0 || offset < 0 || (length != null && length <= 0)) {
+                throw new IndexOutOfBoundsException();
+            }
+
+            options = BlobRequestOptions.applyDefaults(options, this.properties.getBlobType(), this.blobServiceClient);
+            if (options.getUseTransactionalContentMD5() && (length != null && length > 4 * Constants.MB)) {
+                throw new IllegalArgumentException(SR.INVALID_RANGE_CONTENT_MD5_HEADER);
+            }
+
+            return copyBufferedContent(this.readCoalesced(readCoalescer, true /* includeContent */, offset, length,
+                    accessCondition, options, opContext), buffer, bufferOffset);
+        }
+
         return this.downloadRangeInternal(offset, length, buffer, bufferOffset, accessCondition, options, opContext);
     }
 
@@ -1599,9 +2016,41 @@ public abstract class CloudBlob implements ListBlobItem {
         opContext.initialize();
         options = BlobRequestOptions.applyDefaults(options, this.properties.getBlobType(), this.blobServiceClient);
 
-        return ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
-                this.downloadToByteArrayImpl(null, null, buffer, bufferOffset, accessCondition, options, opContext),
-                options.getRetryPolicyFactory(), opContext);
+        final BlobContentCache contentCache = this.blobServiceClient.getContentCache();
+        if (contentCache != null && BlobRangeCache.isCacheableCondition(accessCondition)) {
+            return copyBufferedContent(this.downloadUsingContentCache(contentCache, accessCondition, options,
+                    opContext), buffer, bufferOffset);
+        }
+
+        final BlobReadCoalescer readCoalescer = this.blobServiceClient.getReadCoalescer();
+        if (readCoalescer != null) {
+            return copyBufferedContent(this.readCoalesced(readCoalescer, true /* includeContent */,
+                    null /* offset */, null /* length */, accessCondition, options, opContext), buffer, bufferOffset);
+        }
+
+        final BlobTransferManager transferManager = this.blobServiceClient.getTransferManager();
+        if (transferManager == null) {
+            return ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
+                    this.downloadToByteArrayImpl(null, null, buffer, bufferOffset, accessCondition, options, opContext),
+                    options.getRetryPolicyFactory(), opContext);
+        }
+
+        final BlobTransferManager.Transfer transfer = transferManager.begin(opContext, options.getTransferPriority());
+        try {
+            final int count = ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
+                    this.downloadToByteArrayImpl(null, null, buffer, bufferOffset, accessCondition, options, opContext),
+                    options.getRetryPolicyFactory(), opContext);
+
+            // The blob is read directly into the buffer, so its bytes are throttled once it has been received.
+            transfer.recordBytes(count);
+            return count;
+        }
+        catch (final IOException e) {
+            throw Utility.generateNewUnexpectedStorageException(e);
+        }
+        finally {
+            transferManager.end(transfer);
+        }
     }
 
     private StorageRequest<CloudBlobClient, CloudBlob, Integer> downloadToByteArrayImpl(final Long blobOffset,
@@ -1882,6 +2331,275 @@ public abstract class CloudBlob implements ListBlobItem {
         outputStream.close();
     }
 
+    /**
+     * Downloads a blob to a file so that an interrupted download can be resumed.
+     * <p>
+     * The blob is downloaded in 4 MB ranges. As ranges are written to the file, they are recorded in a checkpoint
+     * next to the file, named after the file with the <code>.downloadcheckpoint</code> extension. Calling this method
+     * again after an interruption downloads only the missing ranges, provided the blob's ETag has not changed;
+     * otherwise the download starts over.
+     * 
+     * @param path
+     *            A <code>String</code> which represents the path to the file that will be created with the contents of
+     *            the blob.
+     * 
+     * @throws StorageException
+     *             If a storage service error occurred.
+     * @throws IOException
+     *             If an I/O error occurred.
+     */
+    @DoesServiceRequest
+    public void downloadToFileResumable(final String path) throws StorageException, IOException {
+        this.downloadToFileResumable(path, null /* accessCondition */, null /* options */, null /* opContext */);
+    }
+
+    /**
+     * Downloads a blob to a file so that an interrupted download can be resumed, using the specified access condition,
+     * request options, and operation context.
+     * <p>
+     * The blob is downloaded in 4 MB ranges. As ranges are written to the file, they are recorded in a checkpoint
+     * next to the file, named after the file with the <code>.downloadcheckpoint</code> extension. Calling this method
+     * again after an interruption downloads only the missing ranges, provided the blob's ETag has not changed;
+     * otherwise the download starts over.
+     * 
+     * @param path
+     *            A <code>String</code> which represents the path to the file that will be created with the contents of
+     *            the blob.
+     * @param accessCondition
+     *            An {@link AccessCondition} object that represents the access conditions for the blob.
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies any additional options for the request. Specifying
+     *            <code>null</code> will use the default request options from the associated service client (
+     *            {@link CloudBlobClient}).
+     * @param opContext
+     *            An {@link OperationContext} object that represents the context for the current operation. This object
+     *            is used to track requests to the storage service, and to provide additional runtime information about
+     *            the operation.
+     * 
+     * @throws StorageException
+     *             If a storage service error occurred.
+     * @throws IOException
+     *             If an I/O error occurred.
+     */
+    @DoesServiceRequest
+    public void downloadToFileResumable(final String path, final AccessCondition accessCondition,
+            BlobRequestOptions options, OperationContext opContext) throws StorageException, IOException {
+        if (opContext == null) {
+            opContext = new OperationContext();
+        }
+
+        opContext.initialize();
+        options = BlobRequestOptions.applyDefaults(options, this.properties.getBlobType(), this.blobServiceClient);
+
+        this.downloadAttributes(accessCondition, options, opContext);
+        final String etag = this.properties.getEtag();
+        final long length = this.properties.getLength();
+        final String expectedMd5 = this.properties.getContentMD5();
+        final int chunkSize = BlobConstants.DEFAULT_MINIMUM_READ_SIZE_IN_BYTES;
+
+        final File file = new File(path);
+        final File checkpointFile = new File(path + BlobConstants.DOWNLOAD_CHECKPOINT_EXTENSION);
+        final String blobUri = this.getStorageUri().getPrimaryUri().toString()
+                + (this.snapshotID == null ? "" : "?snapshot=" + this.snapshotID);
+
+        BlobDownloadCheckpoint checkpoint = BlobDownloadCheckpoint.open(checkpointFile, blobUri, etag, length,
+                chunkSize);
+        if (checkpoint.hasCompletedChunks() && file.length() != length) {
+            // The file was changed since the checkpoint was written, start over.
+            checkpoint.delete();
+            checkpoint = BlobDownloadCheckpoint.open(checkpointFile, blobUri, etag, length, chunkSize);
+        }
+
+        // Every range must come from the version of the blob the checkpoint was written for.
+        final AccessCondition rangeCondition = AccessCondition.generateIfMatchCondition(etag);
+        if (accessCondition != null) {
+            rangeCondition.setLeaseID(accessCondition.getLeaseID());
+        }
+
+        boolean completed = false;
+        try {
+            this.downloadCheckpointedRanges(file, length, chunkSize, checkpoint, rangeCondition, options, opContext);
+
+            if (!options.getDisableContentMD5Validation() && !Utility.isNullOrEmpty(expectedMd5)) {
+                final InputStream fileStream = new BufferedInputStream(new FileInputStream(file));
+                final String calculatedMd5;
+                try {
+                    calculatedMd5 = Utility.analyzeStream(fileStream, -1L, -1L, false /* rewindSourceStream */,
+                            true /* calculateMD5 */).getMd5();
+                }
+                finally {
+                    fileStream.close();
+                }
+
+                if (!expectedMd5.equals(calculatedMd5)) {
+                    throw new StorageException(StorageErrorCodeStrings.INVALID_MD5, String.format(
+                            SR.BLOB_HASH_MISMATCH, expectedMd5, calculatedMd5),
+                            Constants.HeaderConstants.HTTP_UNUSED_306, null, null);
+                }
+            }
+
+            completed = true;
+        }
+        catch (final StorageException e) {
+            // The blob changed or the downloaded content is corrupt, the next attempt has to start over.
+            if (e.getHttpStatusCode() == HttpURLConnection.HTTP_PRECON_FAILED
+                    || StorageErrorCodeStrings.INVALID_MD5.equals(e.getErrorCode())) {
+                checkpoint.delete();
+            }
+
+            throw e;
+        }
+        finally {
+            if (completed) {
+                checkpoint.delete();
+            }
+            else {
+                checkpoint.close();
+            }
+        }
+    }
+
+    /**
+     * Downloads each range of the blob which is not recorded in the checkpoint into the file, recording it once it
+     * has been written.
+     */
+    @DoesServiceRequest
+    private void downloadCheckpointedRanges(final File file, final long length, final int chunkSize,
+            final BlobDownloadCheckpoint checkpoint, final AccessCondition rangeCondition,
+            final BlobRequestOptions options, final OperationContext opContext) throws StorageException, IOException {
+        final int concurrentRequestCount = options.getConcurrentRequestCount();
+        final BlobBufferPool bufferPool = new BlobBufferPool(Long.MAX_VALUE);
+        final AtomicInteger pendingBuffers = new AtomicInteger();
+        final ExecutorService threadExecutor = Executors.newFixedThreadPool(concurrentRequestCount);
+        final ExecutorCompletionService<Void> completionService = new ExecutorCompletionService<Void>(threadExecutor);
+        int outstandingRequests = 0;
+
+        final RandomAccessFile targetFile = new RandomAccessFile(file, "rw");
+        try {
+            targetFile.setLength(length);
+            final FileChannel targetChannel = targetFile.getChannel();
+
+            for (long chunkIndex = 0; chunkIndex * chunkSize < length; chunkIndex++) {
+                if (checkpoint.isCompleted(chunkIndex)) {
+                    continue;
+                }
+
+                if (outstandingRequests >= concurrentRequestCount * 2) {
+                    waitForTask(completionService);
+                    outstandingRequests--;
+                }
+
+                final long index = chunkIndex;
+                final long offset = chunkIndex * chunkSize;
+                final int rangeLength = (int) Math.min(chunkSize, length - offset);
+                final byte[] buffer;
+                try {
+                    buffer = bufferPool.acquire(chunkSize, pendingBuffers);
+                }
+                catch (final InterruptedException e) {
+                    throw Utility.initIOException(e);
+                }
+
+                pendingBuffers.incrementAndGet();
+                completionService.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        try {
+                            // Ranges still queued when another one failed are not downloaded.
+                            if (threadExecutor.isShutdown()) {
+                                return null;
+                            }
+
+                            CloudBlob.this.downloadRangeInternal(offset, (long) rangeLength, buffer, 0,
+                                    rangeCondition, options, opContext);
+
+                            final ByteBuffer data = ByteBuffer.wrap(buffer, 0, rangeLength);
+                            while (data.hasRemaining()) {
+                                targetChannel.write(data, offset + data.position());
+                            }
+
+                            checkpoint.recordChunk(index);
+                        }
+                        finally {
+                            pendingBuffers.decrementAndGet();
+                            bufferPool.release(buffer);
+                        }
+
+                        return null;
+                    }
+                });
+                outstandingRequests++;
+            }
+
+            while (outstandingRequests > 0) {
+                waitForTask(completionService);
+                outstandingRequests--;
+            }
+        }
+        finally {
+            // No range may be written to the file or recorded in the checkpoint once they are closed.
+            shutdownAndAwait(threadExecutor);
+            targetFile.close();
+        }
+    }
+
+    /**
+     * Waits for one task of a parallel transfer to complete and surfaces its error, if any.
+     * 
+     * @param completionService
+     *            An <code>ExecutorCompletionService</code> object which the transfer tasks were submitted to.
+     * 
+     * @throws StorageException
+     *             If the task failed with a storage service error.
+     * @throws IOException
+     *             If the task failed with an I/O error or the wait was interrupted.
+     */
+    static void waitForTask(final ExecutorCompletionService<Void> completionService) throws StorageException,
+            IOException {
+        try {
+            completionService.take().get();
+        }
+        catch (final InterruptedException e) {
+            throw Utility.initIOException(e);
+        }
+        catch (final ExecutionException e) {
+            if (e.getCause() instanceof StorageException) {
+                throw (StorageException) e.getCause();
+            }
+            else if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+
+            throw Utility.initIOException(e);
+        }
+    }
+
+    /**
+     * Shuts down the executor of a parallel transfer and waits for its tasks to finish, so that tasks which were still
+     * queued when the transfer failed run and return the pooled buffers they hold. Such tasks are expected to skip
+     * their request once the executor is shut down.
+     * 
+     * @param threadExecutor
+     *            An <code>ExecutorService</code> object which the transfer tasks were submitted to.
+     */
+    static void shutdownAndAwait(final ExecutorService threadExecutor) {
+        threadExecutor.shutdown();
+
+        boolean interrupted = false;
+        while (!threadExecutor.isTerminated()) {
+            try {
+                threadExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            }
+            catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * Checks to see if the blob exists.
      * 
@@ -1930,8 +2648,37 @@ public abstract class CloudBlob implements ListBlobItem {
         opContext.initialize();
         options = BlobRequestOptions.applyDefaults(options, this.properties.getBlobType(), this.blobServiceClient);
 
-        return ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
+        final BlobAttributeCache attributeCache = this.blobServiceClient.getAttributeCache();
+        if (attributeCache == null || !BlobAttributeCache.isCacheableCondition(accessCondition)) {
+            return ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
+                    this.existsImpl(primaryOnly, accessCondition, options), options.getRetryPolicyFactory(), opContext);
+        }
+
+        final String attributesKey = BlobAttributeCache.getAttributesKey(this);
+        final long invalidationCount = attributeCache.getInvalidationCount();
+        final BlobAttributeCache.CacheEntry entry = attributeCache.get(attributesKey);
+        if (entry != null) {
+            attributeCache.recordHit();
+            if (entry.properties == null) {
+                return false;
+            }
+
+            this.properties = new BlobProperties(entry.properties);
+            this.metadata = new HashMap<String, String>(entry.metadata);
+            return true;
+        }
+
+        attributeCache.recordMiss();
+        final boolean exists = ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
                 this.existsImpl(primaryOnly, accessCondition, options), options.getRetryPolicyFactory(), opContext);
+        if (exists) {
+            attributeCache.put(attributesKey, invalidationCount, this.properties, this.metadata);
+        }
+        else {
+            attributeCache.putNotFound(attributesKey, invalidationCount);
+        }
+
+        return exists;
     }
 
     private StorageRequest<CloudBlobClient, CloudBlob, Boolean> existsImpl(final boolean primaryOnly,
@@ -2454,8 +3201,13 @@ public abstract class CloudBlob implements ListBlobItem {
         opContext.initialize();
         options = BlobRequestOptions.applyDefaults(options, this.properties.getBlobType(), this.blobServiceClient);
 
-        ExecutionEngine.executeWithRetry(this.blobServiceClient, this, this.releaseLeaseImpl(accessCondition, options),
-                options.getRetryPolicyFactory(), opContext);
+        try {
+            ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
+                    this.releaseLeaseImpl(accessCondition, options), options.getRetryPolicyFactory(), opContext);
+        }
+        finally {
+            this.invalidateCaches();
+        }
     }
 
     private StorageRequest<CloudBlobClient, CloudBlob, Void> releaseLeaseImpl(final AccessCondition accessCondition,
@@ -2541,8 +3293,13 @@ public abstract class CloudBlob implements ListBlobItem {
         opContext.initialize();
         options = BlobRequestOptions.applyDefaults(options, this.properties.getBlobType(), this.blobServiceClient);
 
-        ExecutionEngine.executeWithRetry(this.blobServiceClient, this, this.renewLeaseImpl(accessCondition, options),
-                options.getRetryPolicyFactory(), opContext);
+        try {
+            ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
+                    this.renewLeaseImpl(accessCondition, options), options.getRetryPolicyFactory(), opContext);
+        }
+        finally {
+            this.invalidateCaches();
+        }
     }
 
     private StorageRequest<CloudBlobClient, CloudBlob, Void> renewLeaseImpl(final AccessCondition accessCondition,
@@ -2758,9 +3515,22 @@ public abstract class CloudBlob implements ListBlobItem {
                     BlobConstants.MAX_SINGLE_UPLOAD_BLOB_SIZE_IN_BYTES / Constants.MB));
         }
 
-        ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
-                uploadFullBlobImpl(sourceStream, length, accessCondition, options, opContext),
-                options.getRetryPolicyFactory(), opContext);
+        final BlobTransferManager transferManager = this.blobServiceClient.getTransferManager();
+        final BlobTransferManager.Transfer transfer = transferManager == null ? null : transferManager.begin(
+                opContext, options.getTransferPriority());
+        try {
+            // The wrapped stream passes mark and reset through, so a retried put still rewinds the source stream.
+            ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
+                    uploadFullBlobImpl(transfer == null ? sourceStream : transfer.wrap(sourceStream), length,
+                            accessCondition, options, opContext), options.getRetryPolicyFactory(), opContext);
+        }
+        finally {
+            if (transfer != null) {
+                transferManager.end(transfer);
+            }
+
+            this.invalidateCaches();
+        }
     }
 
     private StorageRequest<CloudBlobClient, CloudBlob, Void> uploadFullBlobImpl(final InputStream sourceStream,
@@ -2869,8 +3639,13 @@ public abstract class CloudBlob implements ListBlobItem {
         opContext.initialize();
         options = BlobRequestOptions.applyDefaults(options, this.properties.getBlobType(), this.blobServiceClient);
 
-        ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
-                this.uploadMetadataImpl(accessCondition, options), options.getRetryPolicyFactory(), opContext);
+        try {
+            ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
+                    this.uploadMetadataImpl(accessCondition, options), options.getRetryPolicyFactory(), opContext);
+        }
+        finally {
+            this.invalidateCaches();
+        }
     }
 
     private StorageRequest<CloudBlobClient, CloudBlob, Void> uploadMetadataImpl(final AccessCondition accessCondition,
@@ -2958,8 +3733,13 @@ public abstract class CloudBlob implements ListBlobItem {
         opContext.initialize();
         options = BlobRequestOptions.applyDefaults(options, this.properties.getBlobType(), this.blobServiceClient);
 
-        ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
-                this.uploadPropertiesImpl(accessCondition, options), options.getRetryPolicyFactory(), opContext);
+        try {
+            ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
+                    this.uploadPropertiesImpl(accessCondition, options), options.getRetryPolicyFactory(), opContext);
+        }
+        finally {
+            this.invalidateCaches();
+        }
     }
 
     private StorageRequest<CloudBlobClient, CloudBlob, Void> uploadPropertiesImpl(
@@ -3035,6 +3815,12 @@ public abstract class CloudBlob implements ListBlobItem {
 
             blob.properties = retrievedAttributes.getProperties();
             blob.metadata = retrievedAttributes.getMetadata();
+            final BlobAttributeCache attributeCache = blob.blobServiceClient.getAttributeCache();
+            if (attributeCache != null) {
+                attributeCache.invalidateIfChanged(BlobAttributeCache.getAttributesKey(blob),
+                        blob.properties.getEtag());
+            }
+
             request.setContentMD5(retrievedAttributes.getProperties().getContentMD5());
             blob.properties.setContentMD5(originalContentMD5);
             request.setLockedETag(blob.properties.getEtag());
@@ -18,9 +18,12 @@ import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
 
+import org.xml.sax.SAXException;
+
 import com.microsoft.azure.storage.DoesServiceRequest;
 import com.microsoft.azure.storage.LocationMode;
 import com.microsoft.azure.storage.OperationContext;
+import com.microsoft.azure.storage.ResultConsumer;
 import com.microsoft.azure.storage.ResultContinuation;
 import com.microsoft.azure.storage.ResultContinuationType;
 import com.microsoft.azure.storage.ResultSegment;
@@ -58,6 +61,38 @@ public final class CloudBlobClient extends ServiceClient {
      */
     private BlobRequestOptions defaultRequestOptions;
 
+    /**
+     * Holds the local disk cache used for blob range reads, or <code>null</code> if caching is disabled.
+     */
+    private BlobRangeCache rangeCache;
+
+    /**
+     * Holds the in-memory cache used for whole blob reads, or <code>null</code> if caching is disabled.
+     */
+    private volatile BlobContentCache contentCache;
+
+    /**
+     * Holds the in-memory cache of blob properties and metadata, or <code>null</code> if caching is disabled.
+     */
+    private volatile BlobAttributeCache attributeCache;
+
+    /**
+     * Holds the read coalescing of this client, or <code>null</code> if reads are not coalesced.
+     */
+    private volatile BlobReadCoalescer readCoalescer;
+
+    /**
+     * Holds the buffer pool shared by the output streams of this client, or <code>null</code> if each stream uses its
+     * own.
+     */
+    private BlobBufferPool bufferPool;
+
+    /**
+     * Holds the transfer manager which schedules the uploads and downloads of this client, or <code>null</code> if
+     * they are not scheduled.
+     */
+    private volatile BlobTransferManager transferManager;
+
     /**
      * Creates an instance of the <code>CloudBlobClient</code> class using the specified Blob service endpoint and
      * anonymous credentials.
@@ -306,6 +341,64 @@ public final class CloudBlobClient extends ServiceClient {
                 opContext);
     }
 
+    /**
+     * Lists a segment of the blob containers whose names begin with the specified prefix, delivering each container to
+     * the specified consumer as soon as it is read from the response, using the specified listing details options,
+     * request options, and operation context.
+     * <p>
+     * The containers are not collected, and the consumer is called on the calling thread. If a response is interrupted
+     * and the request is retried, the containers already delivered are not delivered again.
+     * 
+     * @param prefix
+     *            A <code>String</code> that represents the prefix of the container name.
+     * @param detailsIncluded
+     *            A {@link ContainerListingDetails} value that indicates whether container metadata will be returned.
+     * @param maxResults
+     *            The maximum number of results to retrieve.
+     * @param continuationToken
+     *            A {@link ResultContinuation} object that represents a continuation token returned by a previous
+     *            listing operation.
+     * @param consumer
+     *            A {@link ResultConsumer} object that receives the {@link CloudBlobContainer} objects listed. An
+     *            exception thrown by the consumer stops the listing.
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies any additional options for the request. Specifying
+     *            <code>null</code> will use the default request options from the associated service client (
+     *            {@link CloudBlobClient}).
+     * @param opContext
+     *            An {@link OperationContext} object that represents the context for the current operation. This object
+     *            is used to track requests to the storage service, and to provide additional runtime information about
+     *            the operation.
+     * 
+     * @return A {@link ResultContinuation} object that represents the continuation token of the next segment, or
+     *         <code>null</code> if this was the last segment.
+     * 
+     * @throws StorageException
+     *             If a storage service error occurred, or if the consumer failed.
+     */
+    @DoesServiceRequest
+    public ResultContinuation streamContainersSegmented(final String prefix,
+            final ContainerListingDetails detailsIncluded, final int maxResults,
+            final ResultContinuation continuationToken, final ResultConsumer<CloudBlobContainer> consumer,
+            BlobRequestOptions options, OperationContext opContext) throws StorageException {
+        if (opContext == null) {
+            opContext = new OperationContext();
+        }
+
+        opContext.initialize();
+        options = BlobRequestOptions.applyDefaults(options, BlobType.UNSPECIFIED, this);
+
+        Utility.assertNotNull("consumer", consumer);
+        Utility.assertContinuationType(continuationToken, ResultContinuationType.CONTAINER);
+
+        SegmentedStorageRequest segmentedRequest = new SegmentedStorageRequest();
+        segmentedRequest.setToken(continuationToken);
+
+        return ExecutionEngine.executeWithRetry(this, null, this.listContainersWithPrefixSegmentedImpl(prefix,
+                detailsIncluded, maxResults, consumer, options, segmentedRequest), options.getRetryPolicyFactory(),
+                opContext).getContinuationToken();
+    }
+
     /**
      * Returns an enumerable collection of blob containers whose names begin with the specified prefix, using the
      * specified details setting, request options, and operation context.
@@ -338,8 +431,9 @@ public final class CloudBlobClient extends ServiceClient {
         SegmentedStorageRequest segmentedRequest = new SegmentedStorageRequest();
 
         return new LazySegmentedIterable<CloudBlobClient, Void, CloudBlobContainer>(
-                this.listContainersWithPrefixSegmentedImpl(prefix, detailsIncluded, -1, options, segmentedRequest),
-                this, null, options.getRetryPolicyFactory(), opContext);
+                this.listContainersWithPrefixSegmentedImpl(prefix, detailsIncluded, -1, null, options,
+                        segmentedRequest),
+                this, null, options.getRetryPolicyFactory(), opContext, options.getSegmentPrefetchDepth());
     }
 
     /**
@@ -387,12 +481,14 @@ public final class CloudBlobClient extends ServiceClient {
         segmentedRequest.setToken(continuationToken);
 
         return ExecutionEngine.executeWithRetry(this, null, this.listContainersWithPrefixSegmentedImpl(prefix,
-                detailsIncluded, maxResults, options, segmentedRequest), options.getRetryPolicyFactory(), opContext);
+                detailsIncluded, maxResults, null, options, segmentedRequest), options.getRetryPolicyFactory(),
+                opContext);
     }
 
     private StorageRequest<CloudBlobClient, Void, ResultSegment<CloudBlobContainer>> listContainersWithPrefixSegmentedImpl(
             final String prefix, final ContainerListingDetails detailsIncluded, final int maxResults,
-            final BlobRequestOptions options, final SegmentedStorageRequest segmentedRequest) {
+            final ResultConsumer<CloudBlobContainer> consumer, final BlobRequestOptions options,
+            final SegmentedStorageRequest segmentedRequest) {
 
         Utility.assertContinuationType(segmentedRequest.getToken(), ResultContinuationType.CONTAINER);
 
@@ -401,6 +497,11 @@ public final class CloudBlobClient extends ServiceClient {
         final StorageRequest<CloudBlobClient, Void, ResultSegment<CloudBlobContainer>> getRequest = new StorageRequest<CloudBlobClient, Void, ResultSegment<CloudBlobContainer>>(
                 options, this.getStorageUri()) {
 
+            /**
+             * The number of containers delivered to the consumer by previous attempts.
+             */
+            private int deliveredCount;
+
             @Override
             public void setRequestLocationMode() {
                 this.setRequestLocationMode(Utility.getListingLocationMode(segmentedRequest.getToken()));
@@ -434,8 +535,21 @@ public final class CloudBlobClient extends ServiceClient {
             public ResultSegment<CloudBlobContainer> postProcessResponse(HttpURLConnection connection, Void container,
                     CloudBlobClient client, OperationContext context, ResultSegment<CloudBlobContainer> storageObject)
                     throws Exception {
-                final ListResponse<CloudBlobContainer> response = ContainerListHandler.getContainerList(this
-                        .getConnection().getInputStream(), client);
+                final ListResponse<CloudBlobContainer> response = new ListResponse<CloudBlobContainer>();
+                if (consumer != null) {
+                    response.setConsumer(consumer, this.deliveredCount);
+                }
+
+                try {
+                    ContainerListHandler.getContainerList(this.getConnection().getInputStream(), client, response);
+                }
+                catch (SAXException e) {
+                    throw Utility.unwrapConsumerException(consumer, e);
+                }
+                finally {
+                    this.deliveredCount = Math.max(this.deliveredCount, response.getItemCount());
+                }
+
                 ResultContinuation newToken = null;
 
                 if (response.getNextMarker() != null) {
@@ -662,6 +776,145 @@ public final class CloudBlobClient extends ServiceClient {
         this.defaultRequestOptions = defaultRequestOptions;
     }
 
+    /**
+     * Gets the local disk cache used for blob range reads made through this <code>CloudBlobClient</code>.
+     * 
+     * @return A {@link BlobRangeCache} object that represents the range cache, or <code>null</code> if range caching
+     *         is disabled.
+     */
+    public BlobRangeCache getRangeCache() {
+        return this.rangeCache;
+    }
+
+    /**
+     * Sets the local disk cache used for blob range reads made through this <code>CloudBlobClient</code>. Range
+     * caching is disabled by default.
+     * 
+     * @param rangeCache
+     *            A {@link BlobRangeCache} object which specifies the range cache to use, or <code>null</code> to
+     *            disable range caching.
+     */
+    public void setRangeCache(final BlobRangeCache rangeCache) {
+        this.rangeCache = rangeCache;
+    }
+
+    /**
+     * Gets the in-memory cache used for whole blob reads made through this <code>CloudBlobClient</code>.
+     * 
+     * @return A {@link BlobContentCache} object that represents the content cache, or <code>null</code> if content
+     *         caching is disabled.
+     */
+    public BlobContentCache getContentCache() {
+        return this.contentCache;
+    }
+
+    /**
+     * Sets the in-memory cache used for whole blob reads made through this <code>CloudBlobClient</code>. Content
+     * caching is disabled by default. See {@link BlobContentCache} for the reads which are cached.
+     * 
+     * @param contentCache
+     *            A {@link BlobContentCache} object which specifies the content cache to use, or <code>null</code> to
+     *            disable content caching.
+     */
+    public void setContentCache(final BlobContentCache contentCache) {
+        this.contentCache = contentCache;
+    }
+
+    /**
+     * Gets the in-memory cache of the properties and metadata of blobs read through this <code>CloudBlobClient</code>.
+     * 
+     * @return A {@link BlobAttributeCache} object that represents the attribute cache, or <code>null</code> if
+     *         attribute caching is disabled.
+     */
+    public BlobAttributeCache getAttributeCache() {
+        return this.attributeCache;
+    }
+
+    /**
+     * Sets the in-memory cache of the properties and metadata of blobs read through this <code>CloudBlobClient</code>.
+     * Attribute caching is disabled by default. See {@link BlobAttributeCache} for the reads which are cached.
+     * 
+     * @param attributeCache
+     *            A {@link BlobAttributeCache} object which specifies the attribute cache to use, or <code>null</code>
+     *            to disable attribute caching.
+     */
+    public void setAttributeCache(final BlobAttributeCache attributeCache) {
+        this.attributeCache = attributeCache;
+    }
+
+    /**
+     * Gets the read coalescing of this <code>CloudBlobClient</code>, which reports how many reads were coalesced.
+     * 
+     * @return A {@link BlobReadCoalescer} object that represents the read coalescing, or <code>null</code> if read
+     *         coalescing is disabled.
+     */
+    public BlobReadCoalescer getReadCoalescer() {
+        return this.readCoalescer;
+    }
+
+    /**
+     * Sets whether concurrent identical reads made through this <code>CloudBlobClient</code> share a single request.
+     * Read coalescing is disabled by default. See {@link BlobReadCoalescer} for the reads which are coalesced.
+     * 
+     * @param readCoalescingEnabled
+     *            <code>true</code> to coalesce concurrent identical reads; otherwise, <code>false</code>.
+     */
+    public synchronized void setReadCoalescingEnabled(final boolean readCoalescingEnabled) {
+        if (!readCoalescingEnabled) {
+            this.readCoalescer = null;
+        }
+        else if (this.readCoalescer == null) {
+            this.readCoalescer = new BlobReadCoalescer();
+        }
+    }
+
+    /**
+     * Gets the buffer pool shared by the {@link BlobOutputStream} objects opened through this
+     * <code>CloudBlobClient</code>.
+     * 
+     * @return A {@link BlobBufferPool} object that represents the shared buffer pool, or <code>null</code> if each
+     *         stream uses a buffer pool of its own.
+     */
+    public BlobBufferPool getBufferPool() {
+        return this.bufferPool;
+    }
+
+    /**
+     * Sets the buffer pool shared by the {@link BlobOutputStream} objects opened through this
+     * <code>CloudBlobClient</code>, which bounds the memory used to buffer their uploads. Streams which are already
+     * open keep the pool they were opened with.
+     * 
+     * @param bufferPool
+     *            A {@link BlobBufferPool} object which specifies the buffer pool to share, or <code>null</code> to have
+     *            each stream use a buffer pool of its own.
+     */
+    public void setBufferPool(final BlobBufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Gets the transfer manager which schedules the uploads and downloads of this <code>CloudBlobClient</code>.
+     * 
+     * @return A {@link BlobTransferManager} object that represents the transfer manager, or <code>null</code> if
+     *         requests are not scheduled.
+     */
+    public BlobTransferManager getTransferManager() {
+        return this.transferManager;
+    }
+
+    /**
+     * Sets the transfer manager which schedules the uploads and downloads of this <code>CloudBlobClient</code>. A
+     * transfer manager may be shared by several clients to bound the requests and bandwidth of all of them. Requests
+     * which are already waiting for a slot keep the manager they were scheduled with.
+     * 
+     * @param transferManager
+     *            A {@link BlobTransferManager} object which specifies the transfer manager to use, or
+     *            <code>null</code> to send requests without scheduling them.
+     */
+    public void setTransferManager(final BlobTransferManager transferManager) {
+        this.transferManager = transferManager;
+    }
+
     /**
      * Indicates whether path-style URIs are being used.
      * 
@@ -21,6 +21,7 @@ import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.security.InvalidKeyException;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.EnumSet;
@@ -28,10 +29,13 @@ import java.util.HashMap;
 
 import javax.xml.stream.XMLStreamException;
 
+import org.xml.sax.SAXException;
+
 import com.microsoft.azure.storage.AccessCondition;
 import com.microsoft.azure.storage.Constants;
 import com.microsoft.azure.storage.DoesServiceRequest;
 import com.microsoft.azure.storage.OperationContext;
+import com.microsoft.azure.storage.ResultConsumer;
 import com.microsoft.azure.storage.ResultContinuation;
 import com.microsoft.azure.storage.ResultContinuationType;
 import com.microsoft.azure.storage.ResultSegment;
@@ -44,6 +48,7 @@ import com.microsoft.azure.storage.StorageException;
 import com.microsoft.azure.storage.StorageUri;
 import com.microsoft.azure.storage.core.ExecutionEngine;
 import com.microsoft.azure.storage.core.LazySegmentedIterable;
+import com.microsoft.azure.storage.core.ListResponse;
 import com.microsoft.azure.storage.core.PathUtility;
 import com.microsoft.azure.storage.core.RequestLocationMode;
 import com.microsoft.azure.storage.core.SR;
@@ -510,6 +515,142 @@ public final class CloudBlobContainer {
         }
     }
 
+    /**
+     * Deletes every blob in the container whose name begins with the specified prefix, together with its snapshots.
+     * <p>
+     * The blobs are listed a segment at a time, and the next segment is listed while the blobs of the previous one are
+     * deleted, up to the concurrent request count of the request options at a time. Blobs which were already deleted
+     * are counted but are not failures. When the service reports it is busy, deletes slow down and are retried. The
+     * progress of the bulk delete can be followed through the request completed events of the operation context.
+     * 
+     * @param prefix
+     *            A <code>String</code> that represents the prefix of the names of the blobs to delete, or
+     *            <code>null</code> to delete every blob in the container.
+     * 
+     * @return A {@link BlobBulkDeleteResult} object which represents the summary of the bulk delete, including the
+     *         blobs which could not be deleted.
+     * 
+     * @throws StorageException
+     *             If the blobs could not be listed.
+     */
+    @DoesServiceRequest
+    public BlobBulkDeleteResult deleteBlobs(final String prefix) throws StorageException {
+        return this.deleteBlobs(prefix, DeleteSnapshotsOption.INCLUDE_SNAPSHOTS, null /* options */, null /* opContext */);
+    }
+
+    /**
+     * Deletes every blob in the container whose name begins with the specified prefix, using the specified snapshot
+     * option, request options and operation context.
+     * <p>
+     * The blobs are listed a segment at a time, and the next segment is listed while the blobs of the previous one are
+     * deleted, up to the concurrent request count of the request options at a time. Blobs which were already deleted
+     * are counted but are not failures. When the service reports it is busy, deletes slow down and are retried. The
+     * progress of the bulk delete can be followed through the request completed events of the operation context.
+     * 
+     * @param prefix
+     *            A <code>String</code> that represents the prefix of the names of the blobs to delete, or
+     *            <code>null</code> to delete every blob in the container.
+     * @param deleteSnapshotsOption
+     *            A {@link DeleteSnapshotsOption} object that indicates whether to delete only blobs, only snapshots, or
+     *            both.
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies any additional options for the requests. Specifying
+     *            <code>null</code> will use the default request options from the associated service client (
+     *            {@link CloudBlobClient}).
+     * @param opContext
+     *            An {@link OperationContext} object that represents the context for the current operation. This object
+     *            is used to track requests to the storage service, and to provide additional runtime information about
+     *            the operation.
+     * 
+     * @return A {@link BlobBulkDeleteResult} object which represents the summary of the bulk delete, including the
+     *         blobs which could not be deleted.
+     * 
+     * @throws StorageException
+     *             If the blobs could not be listed.
+     */
+    @DoesServiceRequest
+    public BlobBulkDeleteResult deleteBlobs(final String prefix, final DeleteSnapshotsOption deleteSnapshotsOption,
+            BlobRequestOptions options, OperationContext opContext) throws StorageException {
+        Utility.assertNotNull("deleteSnapshotsOption", deleteSnapshotsOption);
+
+        if (opContext == null) {
+            opContext = new OperationContext();
+        }
+
+        opContext.initialize();
+        options = BlobRequestOptions.applyDefaults(options, BlobType.UNSPECIFIED, this.blobServiceClient);
+
+        return BlobBulkDeleter.deleteBlobs(this, prefix, deleteSnapshotsOption, options, opContext);
+    }
+
+    /**
+     * Downloads the properties and metadata of many blobs of the container.
+     * <p>
+     * Rather than requesting the attributes of each blob, the blobs are listed, grouped by the top level directory
+     * of their names. Blobs of groups too sparse to be worth listing are requested one by one, up to the concurrent
+     * request count of the request options at a time. Either way, the attributes are set on the supplied blob objects
+     * as {@link CloudBlob#exists()} would.
+     * 
+     * @param blobs
+     *            An <code>Iterable</code> of the {@link CloudBlob} objects of the container, or of its snapshots, whose
+     *            attributes are to be downloaded.
+     * 
+     * @return An <code>ArrayList</code> of the {@link CloudBlob} objects which do not exist.
+     * 
+     * @throws StorageException
+     *             If a storage service error occurred.
+     * @throws URISyntaxException
+     *             If a blob URI is invalid.
+     */
+    @DoesServiceRequest
+    public ArrayList<CloudBlob> downloadBlobAttributes(final Iterable<? extends CloudBlob> blobs)
+            throws StorageException, URISyntaxException {
+        return this.downloadBlobAttributes(blobs, null /* options */, null /* opContext */);
+    }
+
+    /**
+     * Downloads the properties and metadata of many blobs of the container, using the specified request options and
+     * operation context.
+     * <p>
+     * Rather than requesting the attributes of each blob, the blobs are listed, grouped by the top level directory
+     * of their names. Blobs of groups too sparse to be worth listing are requested one by one, up to the concurrent
+     * request count of the request options at a time. Either way, the attributes are set on the supplied blob objects
+     * as {@link CloudBlob#exists()} would.
+     * 
+     * @param blobs
+     *            An <code>Iterable</code> of the {@link CloudBlob} objects of the container, or of its snapshots, whose
+     *            attributes are to be downloaded.
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies any additional options for the requests. Specifying
+     *            <code>null</code> will use the default request options from the associated service client (
+     *            {@link CloudBlobClient}).
+     * @param opContext
+     *            An {@link OperationContext} object that represents the context for the current operation. This object
+     *            is used to track requests to the storage service, and to provide additional runtime information about
+     *            the operation.
+     * 
+     * @return An <code>ArrayList</code> of the {@link CloudBlob} objects which do not exist.
+     * 
+     * @throws StorageException
+     *             If a storage service error occurred.
+     * @throws URISyntaxException
+     *             If a blob URI is invalid.
+     */
+    @DoesServiceRequest
+    public ArrayList<CloudBlob> downloadBlobAttributes(final Iterable<? extends CloudBlob> blobs,
+            BlobRequestOptions options, OperationContext opContext) throws StorageException, URISyntaxException {
+        Utility.assertNotNull("blobs", blobs);
+
+        if (opContext == null) {
+            opContext = new OperationContext();
+        }
+
+        opContext.initialize();
+        options = BlobRequestOptions.applyDefaults(options, BlobType.UNSPECIFIED, this.blobServiceClient);
+
+        return BlobAttributesFetcher.downloadAttributes(this, blobs, options, opContext);
+    }
+
     /**
      * Downloads the container's attributes, which consist of metadata and properties.
      * 
@@ -1103,8 +1244,10 @@ public final class CloudBlobContainer {
         SegmentedStorageRequest segmentedRequest = new SegmentedStorageRequest();
 
         return new LazySegmentedIterable<CloudBlobClient, CloudBlobContainer, ListBlobItem>(
-                this.listBlobsSegmentedImpl(prefix, useFlatBlobListing, listingDetails, -1, options, segmentedRequest),
-                this.blobServiceClient, this, options.getRetryPolicyFactory(), opContext);
+                this.listBlobsSegmentedImpl(prefix, useFlatBlobListing, listingDetails, -1, null, options,
+                        segmentedRequest),
+                this.blobServiceClient, this, options.getRetryPolicyFactory(), opContext,
+                options.getSegmentPrefetchDepth());
     }
 
     /**
@@ -1195,13 +1338,134 @@ public final class CloudBlobContainer {
         segmentedRequest.setToken(continuationToken);
 
         return ExecutionEngine.executeWithRetry(this.blobServiceClient, this, this.listBlobsSegmentedImpl(prefix,
-                useFlatBlobListing, listingDetails, maxResults, options, segmentedRequest), options
+                useFlatBlobListing, listingDetails, maxResults, null, options, segmentedRequest), options
                 .getRetryPolicyFactory(), opContext);
     }
 
+    /**
+     * Lists the blob items whose names begin with the specified prefix, delivering each item to the specified consumer
+     * as soon as it is read from the response, using the specified flat or hierarchical option, listing details
+     * options, request options, and operation context.
+     * <p>
+     * The items are not collected, so that memory use does not grow with the size of the listing, and each item can
+     * be processed while the rest of the response is still being received. The consumer is called on the calling
+     * thread. If a response is interrupted and the request is retried, the items already delivered are not delivered
+     * again.
+     * 
+     * @param prefix
+     *            A <code>String</code> that represents the prefix of the blob name.
+     * @param useFlatBlobListing
+     *            <code>true</code> to indicate that the listing will be flat; <code>false</code> to indicate that the
+     *            listing will be hierarchical.
+     * @param listingDetails
+     *            A <code>java.util.EnumSet</code> object that contains {@link BlobListingDetails} values that indicate
+     *            whether snapshots, metadata, and/or uncommitted blocks are returned. Committed blocks are always
+     *            returned.
+     * @param consumer
+     *            A {@link ResultConsumer} object that receives the {@link ListBlobItem} objects listed. An exception
+     *            thrown by the consumer stops the listing.
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies any additional options for the request. Specifying
+     *            <code>null</code> will use the default request options from the associated service client (
+     *            {@link CloudBlobClient}).
+     * @param opContext
+     *            An {@link OperationContext} object that represents the context for the current operation. This object
+     *            is used to track requests to the storage service, and to provide additional runtime information about
+     *            the operation.
+     * 
+     * @throws StorageException
+     *             If a storage service error occurred, or if the consumer failed.
+     */
+    @DoesServiceRequest
+    public void streamBlobs(final String prefix, final boolean useFlatBlobListing,
+            final EnumSet<BlobListingDetails> listingDetails, final ResultConsumer<ListBlobItem> consumer,
+            BlobRequestOptions options, OperationContext opContext) throws StorageException {
+        if (opContext == null) {
+            opContext = new OperationContext();
+        }
+
+        opContext.initialize();
+        options = BlobRequestOptions.applyDefaults(options, BlobType.UNSPECIFIED, this.blobServiceClient);
+
+        ResultContinuation continuationToken = null;
+        do {
+            continuationToken = this.streamBlobsSegmented(prefix, useFlatBlobListing, listingDetails, -1,
+                    continuationToken, consumer, options, opContext);
+        } while (continuationToken != null);
+    }
+
+    /**
+     * Lists a segment of the blob items whose names begin with the specified prefix, delivering each item to the
+     * specified consumer as soon as it is read from the response, using the specified flat or hierarchical option,
+     * listing details options, request options, and operation context.
+     * <p>
+     * The items are not collected, so that memory use does not grow with the size of the segment, and each item can be
+     * processed while the rest of the response is still being received. The consumer is called on the calling thread.
+     * If a response is interrupted and the request is retried, the items already delivered are not delivered again.
+     * 
+     * @param prefix
+     *            A <code>String</code> that represents the prefix of the blob name.
+     * @param useFlatBlobListing
+     *            <code>true</code> to indicate that the listing will be flat; <code>false</code> to indicate that the
+     *            listing will be hierarchical.
+     * @param listingDetails
+     *            A <code>java.util.EnumSet</code> object that contains {@link BlobListingDetails} values that indicate
+     *            whether snapshots, metadata, and/or uncommitted blocks are returned. Committed blocks are always
+     *            returned.
+     * @param maxResults
+     *            The maximum number of results to retrieve.
+     * @param continuationToken
+     *            A {@link ResultContinuation} object that represents a continuation token returned by a previous
+     *            listing operation.
+     * @param consumer
+     *            A {@link ResultConsumer} object that receives the {@link ListBlobItem} objects listed. An exception
+     *            thrown by the consumer stops the listing.
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies any additional options for the request. Specifying
+     *            <code>null</code> will use the default request options from the associated service client (
+     *            {@link CloudBlobClient}).
+     * @param opContext
+     *            An {@link OperationContext} object that represents the context for the current operation. This object
+     *            is used to track requests to the storage service, and to provide additional runtime information about
+     *            the operation.
+     * 
+     * @return A {@link ResultContinuation} object that represents the continuation token of the next segment, or
+     *         <code>null</code> if this was the last segment.
+     * 
+     * @throws StorageException
+     *             If a storage service error occurred, or if the consumer failed.
+     */
+    @DoesServiceRequest
+    public ResultContinuation streamBlobsSegmented(final String prefix, final boolean useFlatBlobListing,
+            final EnumSet<BlobListingDetails> listingDetails, final int maxResults,
+            final ResultContinuation continuationToken, final ResultConsumer<ListBlobItem> consumer,
+            BlobRequestOptions options, OperationContext opContext) throws StorageException {
+        if (opContext == null) {
+            opContext = new OperationContext();
+        }
+
+        opContext.initialize();
+        options = BlobRequestOptions.applyDefaults(options, BlobType.UNSPECIFIED, this.blobServiceClient);
+
+        Utility.assertNotNull("consumer", consumer);
+        Utility.assertContinuationType(continuationToken, ResultContinuationType.BLOB);
+
+        if (!useFlatBlobListing && listingDetails != null && listingDetails.contains(BlobListingDetails.SNAPSHOTS)) {
+            throw new IllegalArgumentException(SR.SNAPSHOT_LISTING_ERROR);
+        }
+
+        SegmentedStorageRequest segmentedRequest = new SegmentedStorageRequest();
+        segmentedRequest.setToken(continuationToken);
+
+        return ExecutionEngine.executeWithRetry(this.blobServiceClient, this, this.listBlobsSegmentedImpl(prefix,
+                useFlatBlobListing, listingDetails, maxResults, consumer, options, segmentedRequest), options
+                .getRetryPolicyFactory(), opContext).getContinuationToken();
+    }
+
     private StorageRequest<CloudBlobClient, CloudBlobContainer, ResultSegment<ListBlobItem>> listBlobsSegmentedImpl(
             final String prefix, final boolean useFlatBlobListing, final EnumSet<BlobListingDetails> listingDetails,
-            final int maxResults, final BlobRequestOptions options, final SegmentedStorageRequest segmentedRequest) {
+            final int maxResults, final ResultConsumer<ListBlobItem> consumer, final BlobRequestOptions options,
+            final SegmentedStorageRequest segmentedRequest) {
 
         Utility.assertContinuationType(segmentedRequest.getToken(), ResultContinuationType.BLOB);
         Utility.assertNotNull("options", options);
@@ -1213,6 +1477,11 @@ public final class CloudBlobContainer {
         final StorageRequest<CloudBlobClient, CloudBlobContainer, ResultSegment<ListBlobItem>> getRequest = new StorageRequest<CloudBlobClient, CloudBlobContainer, ResultSegment<ListBlobItem>>(
                 options, this.getStorageUri()) {
 
+            /**
+             * The number of items delivered to the consumer by previous attempts.
+             */
+            private int deliveredCount;
+
             @Override
             public void setRequestLocationMode() {
                 this.setRequestLocationMode(Utility.getListingLocationMode(segmentedRequest.getToken()));
@@ -1247,7 +1516,20 @@ public final class CloudBlobContainer {
             public ResultSegment<ListBlobItem> postProcessResponse(HttpURLConnection connection,
                     CloudBlobContainer container, CloudBlobClient client, OperationContext context,
                     ResultSegment<ListBlobItem> storageObject) throws Exception {
-                final ListBlobsResponse response = BlobListHandler.getBlobList(connection.getInputStream(), container);
+                final ListBlobsResponse response = new ListBlobsResponse();
+                if (consumer != null) {
+                    response.setConsumer(consumer, this.deliveredCount);
+                }
+
+                try {
+                    BlobListHandler.getBlobList(connection.getInputStream(), container, response);
+                }
+                catch (SAXException e) {
+                    throw Utility.unwrapConsumerException(consumer, e);
+                }
+                finally {
+                    this.deliveredCount = Math.max(this.deliveredCount, response.getItemCount());
+                }
 
                 ResultContinuation newToken = null;
 
@@ -1271,6 +1553,209 @@ public final class CloudBlobContainer {
         return getRequest;
     }
 
+    /**
+     * Returns an enumerable collection of lightweight records for the blobs whose names begin with the specified
+     * prefix.
+     * <p>
+     * Records hold only the name and the main properties of each blob, and no blob reference is created while listing,
+     * which makes them cheaper to list than the {@link ListBlobItem} objects returned by {@link #listBlobs(String)}.
+     * 
+     * @param prefix
+     *            A <code>String</code> that represents the blob name prefix.
+     * 
+     * @return An enumerable collection of {@link BlobListingRecord} objects retrieved lazily that represent the items
+     *         whose names begin with the specified prefix in this container.
+     */
+    @DoesServiceRequest
+    public Iterable<BlobListingRecord> listBlobRecords(final String prefix) {
+        return this.listBlobRecords(prefix, false, EnumSet.noneOf(BlobListingDetails.class), null, null);
+    }
+
+    /**
+     * Returns an enumerable collection of lightweight records for the blobs whose names begin with the specified
+     * prefix, using the specified flat or hierarchical option, listing details options, request options, and operation
+     * context.
+     * <p>
+     * Records hold only the name and the main properties of each blob, and no blob reference is created while listing,
+     * which makes them cheaper to list than the {@link ListBlobItem} objects returned by
+     * {@link #listBlobs(String, boolean, EnumSet, BlobRequestOptions, OperationContext)}.
+     * 
+     * @param prefix
+     *            A <code>String</code> that represents the blob name prefix.
+     * @param useFlatBlobListing
+     *            <code>true</code> to indicate that the returned list will be flat; <code>false</code> to indicate that
+     *            the returned list will be hierarchical.
+     * @param listingDetails
+     *            A <code>java.util.EnumSet</code> object that contains {@link BlobListingDetails} values that indicate
+     *            whether snapshots, metadata, and/or uncommitted blocks are returned. Committed blocks are always
+     *            returned.
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies any additional options for the request. Specifying
+     *            <code>null</code> will use the default request options from the associated service client (
+     *            {@link CloudBlobClient}).
+     * @param opContext
+     *            An {@link OperationContext} object that represents the context for the current operation. This object
+     *            is used to track requests to the storage service, and to provide additional runtime information about
+     *            the operation.
+     * 
+     * @return An enumerable collection of {@link BlobListingRecord} objects retrieved lazily that represent the items
+     *         whose names begin with the specified prefix in this container.
+     */
+    @DoesServiceRequest
+    public Iterable<BlobListingRecord> listBlobRecords(final String prefix, final boolean useFlatBlobListing,
+            final EnumSet<BlobListingDetails> listingDetails, BlobRequestOptions options, OperationContext opContext) {
+        if (opContext == null) {
+            opContext = new OperationContext();
+        }
+
+        opContext.initialize();
+        options = BlobRequestOptions.applyDefaults(options, BlobType.UNSPECIFIED, this.blobServiceClient);
+
+        if (!useFlatBlobListing && listingDetails != null && listingDetails.contains(BlobListingDetails.SNAPSHOTS)) {
+            throw new IllegalArgumentException(SR.SNAPSHOT_LISTING_ERROR);
+        }
+
+        SegmentedStorageRequest segmentedRequest = new SegmentedStorageRequest();
+
+        return new LazySegmentedIterable<CloudBlobClient, CloudBlobContainer, BlobListingRecord>(
+                this.listBlobRecordsSegmentedImpl(prefix, useFlatBlobListing, listingDetails, -1, options,
+                        segmentedRequest), this.blobServiceClient, this, options.getRetryPolicyFactory(), opContext,
+                options.getSegmentPrefetchDepth());
+    }
+
+    /**
+     * Returns a result segment containing lightweight records for the blobs whose names begin with the specified
+     * prefix, using the specified flat or hierarchical option, listing details options, request options, and operation
+     * context.
+     * 
+     * @param prefix
+     *            A <code>String</code> that represents the prefix of the blob name.
+     * @param useFlatBlobListing
+     *            <code>true</code> to indicate that the returned list will be flat; <code>false</code> to indicate that
+     *            the returned list will be hierarchical.
+     * @param listingDetails
+     *            A <code>java.util.EnumSet</code> object that contains {@link BlobListingDetails} values that indicate
+     *            whether snapshots, metadata, and/or uncommitted blocks are returned. Committed blocks are always
+     *            returned.
+     * @param maxResults
+     *            The maximum number of results to retrieve.
+     * @param continuationToken
+     *            A {@link ResultContinuation} object that represents a continuation token returned by a previous
+     *            listing operation.
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies any additional options for the request. Specifying
+     *            <code>null</code> will use the default request options from the associated service client (
+     *            {@link CloudBlobClient}).
+     * @param opContext
+     *            An {@link OperationContext} object that represents the context for the current operation. This object
+     *            is used to track requests to the storage service, and to provide additional runtime information about
+     *            the operation.
+     * 
+     * @return A {@link ResultSegment} object that contains a segment of the {@link BlobListingRecord} objects that
+     *         represent the items whose names begin with the specified prefix in the container.
+     * 
+     * @throws StorageException
+     *             If a storage service error occurred.
+     */
+    @DoesServiceRequest
+    public ResultSegment<BlobListingRecord> listBlobRecordsSegmented(final String prefix,
+            final boolean useFlatBlobListing, final EnumSet<BlobListingDetails> listingDetails, final int maxResults,
+            final ResultContinuation continuationToken, BlobRequestOptions options, OperationContext opContext)
+            throws StorageException {
+        if (opContext == null) {
+            opContext = new OperationContext();
+        }
+
+        opContext.initialize();
+        options = BlobRequestOptions.applyDefaults(options, BlobType.UNSPECIFIED, this.blobServiceClient);
+
+        Utility.assertContinuationType(continuationToken, ResultContinuationType.BLOB);
+
+        if (!useFlatBlobListing && listingDetails != null && listingDetails.contains(BlobListingDetails.SNAPSHOTS)) {
+            throw new IllegalArgumentException(SR.SNAPSHOT_LISTING_ERROR);
+        }
+
+        SegmentedStorageRequest segmentedRequest = new SegmentedStorageRequest();
+        segmentedRequest.setToken(continuationToken);
+
+        return ExecutionEngine.executeWithRetry(this.blobServiceClient, this, this.listBlobRecordsSegmentedImpl(
+                prefix, useFlatBlobListing, listingDetails, maxResults, options, segmentedRequest), options
+                .getRetryPolicyFactory(), opContext);
+    }
+
+    private StorageRequest<CloudBlobClient, CloudBlobContainer, ResultSegment<BlobListingRecord>> listBlobRecordsSegmentedImpl(
+            final String prefix, final boolean useFlatBlobListing, final EnumSet<BlobListingDetails> listingDetails,
+            final int maxResults, final BlobRequestOptions options, final SegmentedStorageRequest segmentedRequest) {
+
+        Utility.assertContinuationType(segmentedRequest.getToken(), ResultContinuationType.BLOB);
+        Utility.assertNotNull("options", options);
+
+        final String delimiter = useFlatBlobListing ? null : this.blobServiceClient.getDirectoryDelimiter();
+
+        final BlobListingContext listingContext = new BlobListingContext(prefix, maxResults, delimiter, listingDetails);
+
+        final StorageRequest<CloudBlobClient, CloudBlobContainer, ResultSegment<BlobListingRecord>> getRequest = new StorageRequest<CloudBlobClient, CloudBlobContainer, ResultSegment<BlobListingRecord>>(
+                options, this.getStorageUri()) {
+
+            @Override
+            public void setRequestLocationMode() {
+                this.setRequestLocationMode(Utility.getListingLocationMode(segmentedRequest.getToken()));
+            }
+
+            @Override
+            public HttpURLConnection buildRequest(CloudBlobClient client, CloudBlobContainer container,
+                    OperationContext context) throws Exception {
+                listingContext.setMarker(segmentedRequest.getToken() != null ? segmentedRequest.getToken()
+                        .getNextMarker() : null);
+                return BlobRequest.listBlobs(container.getTransformedAddress().getUri(this.getCurrentLocation()),
+                        options, context, listingContext);
+            }
+
+            @Override
+            public void signRequest(HttpURLConnection connection, CloudBlobClient client, OperationContext context)
+                    throws Exception {
+                StorageRequest.signBlobAndQueueRequest(connection, client, -1L, null);
+            }
+
+            @Override
+            public ResultSegment<BlobListingRecord> preProcessResponse(CloudBlobContainer container,
+                    CloudBlobClient client, OperationContext context) throws Exception {
+                if (this.getResult().getStatusCode() != HttpURLConnection.HTTP_OK) {
+                    this.setNonExceptionedRetryableFailure(true);
+                }
+
+                return null;
+            }
+
+            @Override
+            public ResultSegment<BlobListingRecord> postProcessResponse(HttpURLConnection connection,
+                    CloudBlobContainer container, CloudBlobClient client, OperationContext context,
+                    ResultSegment<BlobListingRecord> storageObject) throws Exception {
+                final ListResponse<BlobListingRecord> response = BlobListingRecordHandler.getRecordList(
+                        connection.getInputStream(), container);
+
+                ResultContinuation newToken = null;
+
+                if (response.getNextMarker() != null) {
+                    newToken = new ResultContinuation();
+                    newToken.setNextMarker(response.getNextMarker());
+                    newToken.setContinuationType(ResultContinuationType.BLOB);
+                    newToken.setTargetLocation(this.getResult().getTargetLocation());
+                }
+
+                final ResultSegment<BlobListingRecord> resSegment = new ResultSegment<BlobListingRecord>(
+                        response.getResults(), maxResults, newToken);
+
+                // Important for listBlobRecords because this is required by the lazy iterator between executions.
+                segmentedRequest.setToken(resSegment.getContinuationToken());
+
+                return resSegment;
+            }
+        };
+
+        return getRequest;
+    }
+
     /**
      * Returns an enumerable collection of containers for the service client associated with this container.
      * 
@@ -110,6 +110,63 @@ public final class CloudBlobDirectory implements ListBlobItem {
         this.storageUri = uri;
     }
 
+    /**
+     * Deletes every blob in the directory, including the blobs of its sub-directories, together with their
+     * snapshots.
+     * <p>
+     * The blobs are listed a segment at a time, and the next segment is listed while the blobs of the previous one are
+     * deleted, up to the concurrent request count of the request options at a time. Blobs which were already deleted
+     * are counted but are not failures. When the service reports it is busy, deletes slow down and are retried.
+     * 
+     * @return A {@link BlobBulkDeleteResult} object which represents the summary of the bulk delete, including the
+     *         blobs which could not be deleted.
+     * 
+     * @throws StorageException
+     *             If the blobs could not be listed.
+     * @throws URISyntaxException
+     *             If the resource URI is invalid.
+     */
+    @DoesServiceRequest
+    public BlobBulkDeleteResult deleteBlobs() throws StorageException, URISyntaxException {
+        return this.getContainer().deleteBlobs(this.getPrefix());
+    }
+
+    /**
+     * Deletes every blob in the directory, including the blobs of its sub-directories, using the specified snapshot
+     * option, request options and operation context.
+     * <p>
+     * The blobs are listed a segment at a time, and the next segment is listed while the blobs of the previous one are
+     * deleted, up to the concurrent request count of the request options at a time. Blobs which were already deleted
+     * are counted but are not failures. When the service reports it is busy, deletes slow down and are retried. The
+     * progress of the bulk delete can be followed through the request completed events of the operation context.
+     * 
+     * @param deleteSnapshotsOption
+     *            A {@link DeleteSnapshotsOption} object that indicates whether to delete only blobs, only snapshots, or
+     *            both.
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies any additional options for the requests. Specifying
+     *            <code>null</code> will use the default request options from the associated service client (
+     *            {@link CloudBlobClient}).
+     * @param opContext
+     *            An {@link OperationContext} object that represents the context for the current operation. This object
+     *            is used to track requests to the storage service, and to provide additional runtime information about
+     *            the operation.
+     * 
+     * @return A {@link BlobBulkDeleteResult} object which represents the summary of the bulk delete, including the
+     *         blobs which could not be deleted.
+     * 
+     * @throws StorageException
+     *             If the blobs could not be listed.
+     * @throws URISyntaxException
+     *             If the resource URI is invalid.
+     */
+    @DoesServiceRequest
+    public BlobBulkDeleteResult deleteBlobs(final DeleteSnapshotsOption deleteSnapshotsOption,
+            final BlobRequestOptions options, final OperationContext opContext) throws StorageException,
+            URISyntaxException {
+        return this.getContainer().deleteBlobs(this.getPrefix(), deleteSnapshotsOption, options, opContext);
+    }
+
     /**
      * Returns a reference to a {@link CloudBlockBlob} object that represents a block blob in this directory.
      * 
@@ -16,11 +16,25 @@ package com.microsoft.azure.storage.blob;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.stream.XMLStreamException;
 
@@ -241,9 +255,14 @@ public final class CloudBlockBlob extends CloudBlob {
 
         options = BlobRequestOptions.applyDefaults(options, BlobType.BLOCK_BLOB, this.blobServiceClient);
 
-        ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
-                this.commitBlockListImpl(blockList, accessCondition, options, opContext),
-                options.getRetryPolicyFactory(), opContext);
+        try {
+            ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
+                    this.commitBlockListImpl(blockList, accessCondition, options, opContext),
+                    options.getRetryPolicyFactory(), opContext);
+        }
+        finally {
+            this.invalidateCaches();
+        }
     }
 
     private StorageRequest<CloudBlobClient, CloudBlob, Void> commitBlockListImpl(final Iterable<BlockEntry> blockList,
@@ -498,6 +517,10 @@ public final class CloudBlockBlob extends CloudBlob {
 
     /**
      * Uploads the source stream data to the blob, using the specified lease ID, request options, and operation context.
+     * <p>
+     * A stream of unknown length is read only once: the first block is read ahead, and if the stream ends within it
+     * the data is uploaded in a single put; otherwise the upload continues as a block upload. The stream is never
+     * marked, so wrappers such as <code>BufferedInputStream</code> do not buffer it.
      * 
      * @param sourceStream
      *            An {@link InputStream} object that represents the input stream to write to the block blob.
@@ -536,6 +559,11 @@ public final class CloudBlockBlob extends CloudBlob {
         opContext.initialize();
         options = BlobRequestOptions.applyDefaults(options, BlobType.BLOCK_BLOB, this.blobServiceClient);
 
+        if (length == -1) {
+            this.uploadUnknownLength(sourceStream, accessCondition, options, opContext);
+            return;
+        }
+
         StreamMd5AndLength descriptor = new StreamMd5AndLength();
         descriptor.setLength(length);
 
@@ -544,18 +572,11 @@ public final class CloudBlockBlob extends CloudBlob {
             sourceStream.mark(Constants.MAX_MARK_LENGTH);
         }
 
-        // If the stream is rewindable and the length is unknown or we need to
-        // set md5, then analyze the stream.
-        // Note this read will abort at
-        // options.getSingleBlobPutThresholdInBytes() bytes and return
-        // -1 as length in which case we will revert to using a stream as it is
-        // over the single put threshold.
-        if (sourceStream.markSupported()
-                && (length < 0 || (options.getStoreBlobContentMD5() && length <= options
-                        .getSingleBlobPutThresholdInBytes()))) {
-            // If the stream is of unknown length or we need to calculate
-            // the MD5, then we we need to read the stream contents first
-
+        // The length is known here. If the stream is rewindable and small enough
+        // for a single put which needs its MD5, read the stream once to calculate
+        // the MD5, then rewind it.
+        if (sourceStream.markSupported() && options.getStoreBlobContentMD5()
+                && length <= options.getSingleBlobPutThresholdInBytes()) {
             descriptor = Utility.analyzeStream(sourceStream, length, options.getSingleBlobPutThresholdInBytes() + 1,
                     true /* rewindSourceStream */, options.getStoreBlobContentMD5());
 
@@ -564,15 +585,15 @@ public final class CloudBlockBlob extends CloudBlob {
             }
         }
 
-        // If the stream is rewindable, and the length is known and less than
-        // threshold the upload in a single put, otherwise use a stream.
-        if (sourceStream.markSupported() && descriptor.getLength() != -1
-                && descriptor.getLength() < options.getSingleBlobPutThresholdInBytes() + 1) {
+        // If the stream is rewindable and the length is not over the threshold,
+        // upload in a single put, otherwise use a stream.
+        if (sourceStream.markSupported() && descriptor.getLength() <= options.getSingleBlobPutThresholdInBytes()) {
             this.uploadFullBlob(sourceStream, descriptor.getLength(), accessCondition, options, opContext);
         }
         else {
             final BlobOutputStream writeStream = this.openOutputStream(accessCondition, options, opContext);
             try {
+                writeStream.setExpectedLength(descriptor.getLength());
                 writeStream.write(sourceStream, length);
             }
             finally {
@@ -581,6 +602,657 @@ public final class CloudBlockBlob extends CloudBlob {
         }
     }
 
+    /**
+     * Uploads a stream of unknown length in a single pass. The first block is read ahead; if the stream ends within
+     * it, the block is uploaded in a single put, otherwise it is written to a {@link BlobOutputStream} followed by the
+     * rest of the stream.
+     */
+    @DoesServiceRequest
+    private void uploadUnknownLength(final InputStream sourceStream, final AccessCondition accessCondition,
+            final BlobRequestOptions options, final OperationContext opContext) throws StorageException, IOException {
+        final int readAheadLength = Math.min(this.getStreamWriteSizeInBytes(),
+                options.getSingleBlobPutThresholdInBytes());
+
+        // Read one byte past the first block, to find out whether the stream ends within it.
+        final ReadAheadBuffer readAhead = new ReadAheadBuffer();
+        Utility.writeToOutputStream(sourceStream, readAhead, readAheadLength + 1, false /* rewindSourceStream */,
+                false /* calculateMD5 */, opContext, options);
+
+        if (readAhead.size() <= readAheadLength) {
+            final ByteBuffer data = readAhead.toByteBuffer();
+            if (options.getStoreBlobContentMD5()) {
+                this.properties.setContentMD5(Utility.calculateMD5(data));
+            }
+
+            this.uploadFullBlob(new ByteBufferInputStream(data), data.remaining(), accessCondition, options,
+                    opContext);
+            return;
+        }
+
+        final BlobOutputStream writeStream = this.openOutputStream(accessCondition, options, opContext);
+        try {
+            readAhead.writeTo(writeStream);
+            writeStream.write(sourceStream, -1);
+        }
+        finally {
+            writeStream.close();
+        }
+    }
+
+    /**
+     * Uploads the remaining bytes of a buffer to the block blob.
+     * <p>
+     * The data is copied from the buffer to the connection one copy buffer at a time, and MD5 hashes are calculated
+     * over the buffer itself, so a direct buffer is uploaded without being copied to the heap as a whole. Data larger
+     * than the single blob put threshold is uploaded as concurrent blocks of the blob's stream write size. The position
+     * of the buffer is not changed.
+     * 
+     * @param buffer
+     *            A <code>java.nio.ByteBuffer</code> object whose remaining bytes represent the data to write to the
+     *            blob.
+     * 
+     * @throws StorageException
+     *             If a storage service error occurred.
+     * @throws IOException
+     *             If an I/O error occurred.
+     */
+    @DoesServiceRequest
+    public void upload(final ByteBuffer buffer) throws StorageException, IOException {
+        this.upload(buffer, null /* accessCondition */, null /* options */, null /* opContext */);
+    }
+
+    /**
+     * Uploads the remaining bytes of a buffer to the block blob using the specified access condition, request
+     * options, and operation context.
+     * <p>
+     * The data is copied from the buffer to the connection one copy buffer at a time, and MD5 hashes are calculated
+     * over the buffer itself, so a direct buffer is uploaded without being copied to the heap as a whole. Data larger
+     * than the single blob put threshold is uploaded as concurrent blocks of the blob's stream write size. The position
+     * of the buffer is not changed.
+     * 
+     * @param buffer
+     *            A <code>java.nio.ByteBuffer</code> object whose remaining bytes represent the data to write to the
+     *            blob.
+     * @param accessCondition
+     *            An {@link AccessCondition} object that represents the access conditions for the blob.
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies any additional options for the request. Specifying
+     *            <code>null</code> will use the default request options from the associated service client (
+     *            {@link CloudBlobClient}).
+     * @param opContext
+     *            An {@link OperationContext} object that represents the context for the current operation. This object
+     *            is used to track requests to the storage service, and to provide additional runtime information about
+     *            the operation.
+     * 
+     * @throws StorageException
+     *             If a storage service error occurred.
+     * @throws IOException
+     *             If an I/O error occurred.
+     */
+    @DoesServiceRequest
+    public void upload(final ByteBuffer buffer, final AccessCondition accessCondition, BlobRequestOptions options,
+            OperationContext opContext) throws StorageException, IOException {
+        Utility.assertNotNull("buffer", buffer);
+        assertNoWriteOperationForSnapshot();
+
+        if (opContext == null) {
+            opContext = new OperationContext();
+        }
+
+        opContext.initialize();
+        options = BlobRequestOptions.applyDefaults(options, BlobType.BLOCK_BLOB, this.blobServiceClient);
+
+        final ByteBuffer data = buffer.slice();
+        if (data.remaining() <= options.getSingleBlobPutThresholdInBytes()) {
+            if (options.getStoreBlobContentMD5()) {
+                this.properties.setContentMD5(Utility.calculateMD5(data));
+            }
+
+            this.uploadFullBlob(new ByteBufferInputStream(data), data.remaining(), accessCondition, options,
+                    opContext);
+        }
+        else {
+            this.commitBlockList(this.uploadBufferBlocks(data, accessCondition, options, opContext),
+                    accessCondition, options, opContext);
+        }
+    }
+
+    /**
+     * Uploads a buffer as concurrent blocks of the blob's stream write size. Each block MD5 is calculated by the task
+     * uploading it, and the blob MD5, if stored, is calculated on the calling thread while the blocks are uploaded.
+     * 
+     * @return An <code>ArrayList</code> of the {@link BlockEntry} objects to commit.
+     */
+    @DoesServiceRequest
+    private ArrayList<BlockEntry> uploadBufferBlocks(final ByteBuffer data, final AccessCondition accessCondition,
+            final BlobRequestOptions options, final OperationContext opContext) throws StorageException,
+            IOException {
+        final int blockSize = this.getStreamWriteSizeInBytes();
+        final int concurrentRequestCount = options.getConcurrentRequestCount();
+        final Random random = new Random();
+        final long blockIdBase = (long) random.nextInt(Integer.MAX_VALUE) + random.nextInt(Integer.MAX_VALUE / 2);
+
+        MessageDigest blobDigest = null;
+        if (options.getStoreBlobContentMD5()) {
+            try {
+                blobDigest = MessageDigest.getInstance("MD5");
+            }
+            catch (final NoSuchAlgorithmException e) {
+                // This wont happen, throw fatal.
+                throw Utility.generateNewUnexpectedStorageException(e);
+            }
+        }
+
+        final ArrayList<BlockEntry> blockList = new ArrayList<BlockEntry>();
+        final ExecutorService threadExecutor = Executors.newFixedThreadPool(concurrentRequestCount);
+        final ExecutorCompletionService<Void> completionService = new ExecutorCompletionService<Void>(threadExecutor);
+        int outstandingRequests = 0;
+
+        try {
+            for (int offset = 0; offset < data.limit(); offset += blockSize) {
+                final ByteBuffer block = data.duplicate();
+                block.position(offset);
+                block.limit(Math.min(offset + blockSize, data.limit()));
+
+                final String blockId = Base64.encode(Utility.getBytesFromLong(blockIdBase + blockList.size()));
+                blockList.add(new BlockEntry(blockId, BlockSearchMode.UNCOMMITTED));
+
+                if (outstandingRequests >= concurrentRequestCount * 2) {
+                    waitForTask(completionService);
+                    outstandingRequests--;
+                }
+
+                completionService.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        // Blocks still queued when another one failed are not uploaded.
+                        if (threadExecutor.isShutdown()) {
+                            return null;
+                        }
+
+                        final String blockMd5 = options.getUseTransactionalContentMD5() ? Utility.calculateMD5(block)
+                                : null;
+                        CloudBlockBlob.this.uploadBlockInternal(blockId, blockMd5, new ByteBufferInputStream(block),
+                                block.remaining(), accessCondition, options, opContext);
+                        return null;
+                    }
+                });
+                outstandingRequests++;
+
+                if (blobDigest != null) {
+                    blobDigest.update(block.duplicate());
+                }
+            }
+
+            if (blobDigest != null) {
+                this.properties.setContentMD5(Base64.encode(blobDigest.digest()));
+            }
+
+            while (outstandingRequests > 0) {
+                waitForTask(completionService);
+                outstandingRequests--;
+            }
+        }
+        finally {
+            // No block may be uploaded once the caller has seen the outcome.
+            shutdownAndAwait(threadExecutor);
+        }
+
+        return blockList;
+    }
+
+    /**
+     * Uploads a file to a block blob so that an interrupted upload can be resumed.
+     * <p>
+     * The file is uploaded as blocks of the blob's stream write size. As blocks complete, they are recorded in a
+     * journal next to the file, named after the file with the <code>.uploadjournal</code>
+     * extension. If the upload is interrupted, calling this method again for the same unchanged file and blob
+     * uploads only the blocks that are missing from the blob's uncommitted block list, then commits the block list
+     * and deletes the journal.
+     * 
+     * @param path
+     *            A <code>String</code> which represents the path to the file to be uploaded.
+     * 
+     * @throws StorageException
+     *             If a storage service error occurred.
+     * @throws IOException
+     *             If an I/O error occurred.
+     */
+    @DoesServiceRequest
+    public void uploadFromFileResumable(final String path) throws StorageException, IOException {
+        this.uploadFromFileResumable(path, null /* accessCondition */, null /* options */, null /* opContext */);
+    }
+
+    /**
+     * Uploads a file to a block blob so that an interrupted upload can be resumed, using the specified access
+     * condition, request options, and operation context.
+     * <p>
+     * The file is uploaded as blocks of the blob's stream write size. As blocks complete, they are recorded in a
+     * journal next to the file, named after the file with the <code>.uploadjournal</code>
+     * extension. If the upload is interrupted, calling this method again for the same unchanged file and blob
+     * uploads only the blocks that are missing from the blob's uncommitted block list, then commits the block list
+     * and deletes the journal.
+     * 
+     * @param path
+     *            A <code>String</code> which represents the path to the file to be uploaded.
+     * @param accessCondition
+     *            An {@link AccessCondition} object that represents the access conditions for the blob.
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies any additional options for the request. Specifying
+     *            <code>null</code> will use the default request options from the associated service client (
+     *            {@link CloudBlobClient}).
+     * @param opContext
+     *            An {@link OperationContext} object that represents the context for the current operation. This object
+     *            is used to track requests to the storage service, and to provide additional runtime information about
+     *            the operation.
+     * 
+     * @throws StorageException
+     *             If a storage service error occurred.
+     * @throws IOException
+     *             If an I/O error occurred.
+     */
+    @DoesServiceRequest
+    public void uploadFromFileResumable(final String path, final AccessCondition accessCondition,
+            BlobRequestOptions options, OperationContext opContext) throws StorageException, IOException {
+        assertNoWriteOperationForSnapshot();
+
+        if (opContext == null) {
+            opContext = new OperationContext();
+        }
+
+        opContext.initialize();
+        options = BlobRequestOptions.applyDefaults(options, BlobType.BLOCK_BLOB, this.blobServiceClient);
+
+        final File file = new File(path);
+        if (!file.isFile()) {
+            throw new FileNotFoundException(path);
+        }
+
+        final BlockUploadJournal journal = BlockUploadJournal.open(new File(path
+                + BlobConstants.UPLOAD_JOURNAL_EXTENSION), this.getStorageUri().getPrimaryUri().toString(), file,
+                this.getStreamWriteSizeInBytes());
+
+        boolean committed = false;
+        try {
+            // Blocks recorded by an earlier attempt are reused only if the service still holds them uncommitted.
+            if (journal.hasEntries()) {
+                journal.retainUncommitted(this.getUncommittedBlockSizes(accessCondition, options, opContext));
+            }
+
+            final ArrayList<BlockEntry> blockList = this.uploadJournaledBlocks(file, journal, accessCondition,
+                    options, opContext);
+            this.commitBlockList(blockList, accessCondition, options, opContext);
+            committed = true;
+        }
+        finally {
+            if (committed) {
+                journal.delete();
+            }
+            else {
+                journal.close();
+            }
+        }
+    }
+
+    /**
+     * Gets the IDs and sizes of the uncommitted blocks of this blob.
+     */
+    @DoesServiceRequest
+    private HashMap<String, Long> getUncommittedBlockSizes(final AccessCondition accessCondition,
+            final BlobRequestOptions options, final OperationContext opContext) throws StorageException {
+        final HashMap<String, Long> blockSizes = new HashMap<String, Long>();
+        try {
+            for (final BlockEntry block : this.downloadBlockList(BlockListingFilter.UNCOMMITTED, accessCondition,
+                    options, opContext)) {
+                blockSizes.put(block.getId(), block.getSize());
+            }
+        }
+        catch (final StorageException e) {
+            // A blob which does not exist has no uncommitted blocks.
+            if (e.getHttpStatusCode() != HttpURLConnection.HTTP_NOT_FOUND) {
+                throw e;
+            }
+        }
+
+        return blockSizes;
+    }
+
+    /**
+     * Reads the file sequentially and uploads each block which is not already journaled, recording it in the journal
+     * once uploaded.
+     * 
+     * @return An <code>ArrayList</code> of the {@link BlockEntry} objects to commit.
+     */
+    @DoesServiceRequest
+    private ArrayList<BlockEntry> uploadJournaledBlocks(final File file, final BlockUploadJournal journal,
+            final AccessCondition accessCondition, final BlobRequestOptions options, final OperationContext opContext)
+            throws StorageException, IOException {
+        final int blockSize = this.getStreamWriteSizeInBytes();
+        final int concurrentRequestCount = options.getConcurrentRequestCount();
+        final BlobBufferPool bufferPool = this.blobServiceClient.getBufferPool() != null ? this.blobServiceClient
+                .getBufferPool() : new BlobBufferPool(Long.MAX_VALUE);
+        final AtomicInteger pendingBuffers = new AtomicInteger();
+
+        MessageDigest fileDigest = null;
+        MessageDigest blockDigest = null;
+        try {
+            blockDigest = MessageDigest.getInstance("MD5");
+            if (options.getStoreBlobContentMD5()) {
+                fileDigest = MessageDigest.getInstance("MD5");
+            }
+        }
+        catch (final NoSuchAlgorithmException e) {
+            // This wont happen, throw fatal.
+            throw Utility.generateNewUnexpectedStorageException(e);
+        }
+
+        final ArrayList<BlockEntry> blockList = new ArrayList<BlockEntry>();
+        final ExecutorService threadExecutor = Executors.newFixedThreadPool(concurrentRequestCount);
+        final ExecutorCompletionService<Void> completionService = new ExecutorCompletionService<Void>(threadExecutor);
+        int outstandingRequests = 0;
+
+        final InputStream fileStream = new FileInputStream(file);
+        try {
+            long offset = 0;
+            for (long blockIndex = 0; offset < file.length(); blockIndex++) {
+                final int length = (int) Math.min(blockSize, file.length() - offset);
+                final byte[] buffer;
+                try {
+                    buffer = bufferPool.acquire(blockSize, pendingBuffers);
+                }
+                catch (final InterruptedException e) {
+                    throw Utility.initIOException(e);
+                }
+
+                int read = 0;
+                while (read < length) {
+                    final int count = fileStream.read(buffer, read, length - read);
+                    if (count < 0) {
+                        bufferPool.release(buffer);
+                        throw new IOException(SR.FILE_CHANGED_DURING_UPLOAD);
+                    }
+
+                    read += count;
+                }
+
+                if (fileDigest != null) {
+                    fileDigest.update(buffer, 0, length);
+                }
+
+                blockDigest.update(buffer, 0, length);
+                final String blockMd5 = Base64.encode(blockDigest.digest());
+                final String blockId = journal.getBlockId(blockIndex);
+                final long blockOffset = offset;
+                blockList.add(new BlockEntry(blockId, BlockSearchMode.UNCOMMITTED));
+                offset += length;
+
+                if (journal.isUploaded(blockId, blockOffset, length, blockMd5)) {
+                    bufferPool.release(buffer);
+                    continue;
+                }
+
+                if (outstandingRequests >= concurrentRequestCount * 2) {
+                    waitForTask(completionService);
+                    outstandingRequests--;
+                }
+
+                pendingBuffers.incrementAndGet();
+                completionService.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        try {
+                            // The upload failed and is returning the buffers of the blocks still queued.
+                            if (threadExecutor.isShutdown()) {
+                                return null;
+                            }
+
+                            CloudBlockBlob.this.uploadBlock(blockId, new ByteArrayInputStream(buffer, 0, length),
+                                    length, accessCondition, options, opContext);
+                            journal.recordBlock(blockId, blockOffset, length, blockMd5);
+                        }
+                        finally {
+                            pendingBuffers.decrementAndGet();
+                            bufferPool.release(buffer);
+                        }
+
+                        return null;
+                    }
+                });
+                outstandingRequests++;
+            }
+
+            while (outstandingRequests > 0) {
+                waitForTask(completionService);
+                outstandingRequests--;
+            }
+        }
+        finally {
+            fileStream.close();
+            shutdownAndAwait(threadExecutor);
+        }
+
+        if (fileDigest != null) {
+            this.properties.setContentMD5(Base64.encode(fileDigest.digest()));
+        }
+
+        return blockList;
+    }
+
+    /**
+     * Uploads a file to a block blob, transferring only the parts of the file which the blob does not already hold.
+     * <p>
+     * The file is split into chunks of about 1 MB, and at most 4 MB, at boundaries chosen by the content of the file
+     * rather than by offset, so that inserting or removing data only changes the chunks around the edit. Each chunk is
+     * uploaded as a block whose ID is derived from the SHA-256 hash of its content. Chunks which match a block in the
+     * blob's committed block list are not uploaded; the new block list refers to the committed blocks instead. Blocks
+     * of a blob last written by other upload methods have unrelated IDs, so the first delta upload of such a blob
+     * transfers the whole file.
+     * 
+     * @param path
+     *            A <code>String</code> which represents the path to the file to be uploaded.
+     * 
+     * @return A <code>long</code> which represents the number of bytes of the file which were uploaded.
+     * 
+     * @throws StorageException
+     *             If a storage service error occurred.
+     * @throws IOException
+     *             If an I/O error occurred.
+     */
+    @DoesServiceRequest
+    public long uploadFromFileDelta(final String path) throws StorageException, IOException {
+        return this.uploadFromFileDelta(path, null /* accessCondition */, null /* options */, null /* opContext */);
+    }
+
+    /**
+     * Uploads a file to a block blob, transferring only the parts of the file which the blob does not already hold,
+     * using the specified access condition, request options, and operation context.
+     * <p>
+     * The file is split into chunks of about 1 MB, and at most 4 MB, at boundaries chosen by the content of the file
+     * rather than by offset, so that inserting or removing data only changes the chunks around the edit. Each chunk is
+     * uploaded as a block whose ID is derived from the SHA-256 hash of its content. Chunks which match a block in the
+     * blob's committed block list are not uploaded; the new block list refers to the committed blocks instead. Blocks
+     * of a blob last written by other upload methods have unrelated IDs, so the first delta upload of such a blob
+     * transfers the whole file.
+     * 
+     * @param path
+     *            A <code>String</code> which represents the path to the file to be uploaded.
+     * @param accessCondition
+     *            An {@link AccessCondition} object that represents the access conditions for the blob.
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies any additional options for the request. Specifying
+     *            <code>null</code> will use the default request options from the associated service client (
+     *            {@link CloudBlobClient}).
+     * @param opContext
+     *            An {@link OperationContext} object that represents the context for the current operation. This object
+     *            is used to track requests to the storage service, and to provide additional runtime information about
+     *            the operation.
+     * 
+     * @return A <code>long</code> which represents the number of bytes of the file which were uploaded.
+     * 
+     * @throws StorageException
+     *             If a storage service error occurred.
+     * @throws IOException
+     *             If an I/O error occurred.
+     */
+    @DoesServiceRequest
+    public long uploadFromFileDelta(final String path, final AccessCondition accessCondition,
+            BlobRequestOptions options, OperationContext opContext) throws StorageException, IOException {
+        assertNoWriteOperationForSnapshot();
+
+        if (opContext == null) {
+            opContext = new OperationContext();
+        }
+
+        opContext.initialize();
+        options = BlobRequestOptions.applyDefaults(options, BlobType.BLOCK_BLOB, this.blobServiceClient);
+
+        final File file = new File(path);
+        if (!file.isFile()) {
+            throw new FileNotFoundException(path);
+        }
+
+        final HashMap<String, Long> committedBlocks = new HashMap<String, Long>();
+        try {
+            for (final BlockEntry block : this.downloadBlockList(BlockListingFilter.COMMITTED, accessCondition,
+                    options, opContext)) {
+                committedBlocks.put(block.getId(), block.getSize());
+            }
+        }
+        catch (final StorageException e) {
+            // A blob which does not exist has no blocks to reuse.
+            if (e.getHttpStatusCode() != HttpURLConnection.HTTP_NOT_FOUND) {
+                throw e;
+            }
+        }
+
+        final ArrayList<BlockEntry> blockList = new ArrayList<BlockEntry>();
+        final long uploadedBytes = this.uploadChangedChunks(file, committedBlocks, blockList, accessCondition,
+                options, opContext);
+        this.commitBlockList(blockList, accessCondition, options, opContext);
+        return uploadedBytes;
+    }
+
+    /**
+     * Splits the file into content-defined chunks and uploads each chunk which is not among the committed blocks,
+     * adding an entry for every chunk to the block list.
+     * 
+     * @return A <code>long</code> which represents the number of bytes uploaded.
+     */
+    @DoesServiceRequest
+    private long uploadChangedChunks(final File file, final HashMap<String, Long> committedBlocks,
+            final ArrayList<BlockEntry> blockList, final AccessCondition accessCondition,
+            final BlobRequestOptions options, final OperationContext opContext) throws StorageException, IOException {
+        final int concurrentRequestCount = options.getConcurrentRequestCount();
+        final BlobBufferPool bufferPool = this.blobServiceClient.getBufferPool() != null ? this.blobServiceClient
+                .getBufferPool() : new BlobBufferPool(Long.MAX_VALUE);
+        final AtomicInteger pendingBuffers = new AtomicInteger();
+
+        MessageDigest fileDigest = null;
+        MessageDigest chunkDigest = null;
+        try {
+            chunkDigest = MessageDigest.getInstance("SHA-256");
+            if (options.getStoreBlobContentMD5()) {
+                fileDigest = MessageDigest.getInstance("MD5");
+            }
+        }
+        catch (final NoSuchAlgorithmException e) {
+            // This wont happen, throw fatal.
+            throw Utility.generateNewUnexpectedStorageException(e);
+        }
+
+        // Identical chunks within the file are uploaded once.
+        final HashSet<String> uploadedBlockIds = new HashSet<String>();
+        long uploadedBytes = 0;
+
+        final ExecutorService threadExecutor = Executors.newFixedThreadPool(concurrentRequestCount);
+        final ExecutorCompletionService<Void> completionService = new ExecutorCompletionService<Void>(threadExecutor);
+        int outstandingRequests = 0;
+
+        final InputStream fileStream = new FileInputStream(file);
+        try {
+            final ContentDefinedChunker chunker = new ContentDefinedChunker(fileStream);
+            while (true) {
+                final byte[] buffer;
+                try {
+                    buffer = bufferPool.acquire(ContentDefinedChunker.MAX_CHUNK_SIZE, pendingBuffers);
+                }
+                catch (final InterruptedException e) {
+                    throw Utility.initIOException(e);
+                }
+
+                final int length = chunker.nextChunk(buffer);
+                if (length < 0) {
+                    bufferPool.release(buffer);
+                    break;
+                }
+
+                if (fileDigest != null) {
+                    fileDigest.update(buffer, 0, length);
+                }
+
+                chunkDigest.update(buffer, 0, length);
+                final String blockId = Base64.encode(chunkDigest.digest());
+
+                final Long committedSize = committedBlocks.get(blockId);
+                if (committedSize != null && committedSize == length) {
+                    blockList.add(new BlockEntry(blockId, BlockSearchMode.COMMITTED));
+                    bufferPool.release(buffer);
+                    continue;
+                }
+
+                blockList.add(new BlockEntry(blockId, BlockSearchMode.UNCOMMITTED));
+                if (!uploadedBlockIds.add(blockId)) {
+                    bufferPool.release(buffer);
+                    continue;
+                }
+
+                if (outstandingRequests >= concurrentRequestCount * 2) {
+                    waitForTask(completionService);
+                    outstandingRequests--;
+                }
+
+                pendingBuffers.incrementAndGet();
+                completionService.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        try {
+                            // The upload failed and is returning the buffers of the chunks still queued.
+                            if (threadExecutor.isShutdown()) {
+                                return null;
+                            }
+
+                            CloudBlockBlob.this.uploadBlock(blockId, new ByteArrayInputStream(buffer, 0, length),
+                                    length, accessCondition, options, opContext);
+                        }
+                        finally {
+                            pendingBuffers.decrementAndGet();
+                            bufferPool.release(buffer);
+                        }
+
+                        return null;
+                    }
+                });
+                outstandingRequests++;
+                uploadedBytes += length;
+            }
+
+            while (outstandingRequests > 0) {
+                waitForTask(completionService);
+                outstandingRequests--;
+            }
+        }
+        finally {
+            fileStream.close();
+            shutdownAndAwait(threadExecutor);
+        }
+
+        if (fileDigest != null) {
+            this.properties.setContentMD5(Base64.encode(fileDigest.digest()));
+        }
+
+        return uploadedBytes;
+    }
+
     /**
      * Uploads a block to be committed as part of the block blob, using the specified block ID.
      * 
@@ -687,6 +1359,84 @@ public final class CloudBlockBlob extends CloudBlob {
                 accessCondition, options, opContext);
     }
 
+    /**
+     * Uploads the remaining bytes of a buffer as a block to be committed as part of the block blob, using the specified
+     * block ID.
+     * <p>
+     * The data is copied from the buffer to the connection one copy buffer at a time, and the transactional MD5 is
+     * calculated over the buffer itself, so a direct buffer is uploaded without being copied to the heap as a whole.
+     * The position of the buffer is not changed.
+     * 
+     * @param blockId
+     *            A <code>String</code> which represents the Base64-encoded block ID. Note for a given blob the length
+     *            of all Block IDs must be identical.
+     * @param data
+     *            A <code>java.nio.ByteBuffer</code> object whose remaining bytes, at most 4 MB, represent the data to
+     *            write to the block.
+     * 
+     * @throws StorageException
+     *             If a storage service error occurred.
+     */
+    @DoesServiceRequest
+    public void uploadBlock(final String blockId, final ByteBuffer data) throws StorageException {
+        this.uploadBlock(blockId, data, null /* accessCondition */, null /* options */, null /* opContext */);
+    }
+
+    /**
+     * Uploads the remaining bytes of a buffer as a block to be committed as part of the block blob, using the specified
+     * block ID, access condition, request options, and operation context.
+     * <p>
+     * The data is copied from the buffer to the connection one copy buffer at a time, and the transactional MD5 is
+     * calculated over the buffer itself, so a direct buffer is uploaded without being copied to the heap as a whole.
+     * The position of the buffer is not changed.
+     * 
+     * @param blockId
+     *            A <code>String</code> which represents the Base64-encoded block ID. Note for a given blob the length
+     *            of all Block IDs must be identical.
+     * @param data
+     *            A <code>java.nio.ByteBuffer</code> object whose remaining bytes, at most 4 MB, represent the data to
+     *            write to the block.
+     * @param accessCondition
+     *            An {@link AccessCondition} object that represents the access conditions for the blob.
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies any additional options for the request. Specifying
+     *            <code>null</code> will use the default request options from the associated service client (
+     *            {@link CloudBlobClient}).
+     * @param opContext
+     *            An {@link OperationContext} object that represents the context for the current operation. This object
+     *            is used to track requests to the storage service, and to provide additional runtime information about
+     *            the operation.
+     * 
+     * @throws StorageException
+     *             If a storage service error occurred.
+     */
+    @DoesServiceRequest
+    public void uploadBlock(final String blockId, final ByteBuffer data, final AccessCondition accessCondition,
+            BlobRequestOptions options, OperationContext opContext) throws StorageException {
+        Utility.assertNotNull("data", data);
+
+        if (data.remaining() > 4 * Constants.MB) {
+            throw new IllegalArgumentException(SR.STREAM_LENGTH_GREATER_THAN_4MB);
+        }
+
+        assertNoWriteOperationForSnapshot();
+
+        if (opContext == null) {
+            opContext = new OperationContext();
+        }
+
+        opContext.initialize();
+        options = BlobRequestOptions.applyDefaults(options, BlobType.BLOCK_BLOB, this.blobServiceClient);
+
+        if (Utility.isNullOrEmpty(blockId) || !Base64.validateIsBase64String(blockId)) {
+            throw new IllegalArgumentException(SR.INVALID_BLOCK_ID);
+        }
+
+        final String md5 = options.getUseTransactionalContentMD5() ? Utility.calculateMD5(data) : null;
+        this.uploadBlockInternal(blockId, md5, new ByteBufferInputStream(data), data.remaining(), accessCondition,
+                options, opContext);
+    }
+
     /**
      * Uploads a block of the blob to the server.
      * 
@@ -708,12 +1458,26 @@ public final class CloudBlockBlob extends CloudBlob {
      *             If a storage service error occurred.
      */
     @DoesServiceRequest
-    private void uploadBlockInternal(final String blockId, final String md5, final InputStream sourceStream,
+    void uploadBlockInternal(final String blockId, final String md5, final InputStream sourceStream,
             final long length, final AccessCondition accessCondition, final BlobRequestOptions options,
             final OperationContext opContext) throws StorageException {
-        ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
-                uploadBlockImpl(blockId, md5, sourceStream, length, accessCondition, options, opContext),
-                options.getRetryPolicyFactory(), opContext);
+        final BlobTransferManager transferManager = this.blobServiceClient.getTransferManager();
+        if (transferManager == null) {
+            ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
+                    uploadBlockImpl(blockId, md5, sourceStream, length, accessCondition, options, opContext),
+                    options.getRetryPolicyFactory(), opContext);
+            return;
+        }
+
+        final BlobTransferManager.Transfer transfer = transferManager.begin(opContext, options.getTransferPriority());
+        try {
+            ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
+                    uploadBlockImpl(blockId, md5, transfer.wrap(sourceStream), length, accessCondition, options,
+                            opContext), options.getRetryPolicyFactory(), opContext);
+        }
+        finally {
+            transferManager.end(transfer);
+        }
     }
 
     private StorageRequest<CloudBlobClient, CloudBlob, Void> uploadBlockImpl(final String blockId, final String md5,
@@ -849,6 +1613,23 @@ public final class CloudBlockBlob extends CloudBlob {
     public String downloadText(final String charsetName, final AccessCondition accessCondition,
             BlobRequestOptions options, OperationContext opContext) throws StorageException, IOException {
 
+        final BlobContentCache contentCache = this.blobServiceClient.getContentCache();
+        final BlobReadCoalescer readCoalescer = this.blobServiceClient.getReadCoalescer();
+        final boolean useContentCache = contentCache != null && BlobRangeCache.isCacheableCondition(accessCondition);
+        if (useContentCache || readCoalescer != null) {
+            if (opContext == null) {
+                opContext = new OperationContext();
+            }
+
+            opContext.initialize();
+            options = BlobRequestOptions.applyDefaults(options, BlobType.BLOCK_BLOB, this.blobServiceClient);
+
+            final byte[] content = useContentCache ? this.downloadUsingContentCache(contentCache, accessCondition,
+                    options, opContext) : this.readCoalesced(readCoalescer, true /* includeContent */,
+                    null /* offset */, null /* length */, accessCondition, options, opContext);
+            return charsetName == null ? new String(content) : new String(content, charsetName);
+        }
+
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         this.download(baos, accessCondition, options, opContext);
         return charsetName == null ? baos.toString() : baos.toString(charsetName);
@@ -872,4 +1653,13 @@ public final class CloudBlockBlob extends CloudBlob {
 
         this.streamWriteSizeInBytes = streamWriteSizeInBytes;
     }
+
+    /**
+     * Holds the data read ahead from a stream of unknown length, without copying it out of its buffer.
+     */
+    private static final class ReadAheadBuffer extends ByteArrayOutputStream {
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(this.buf, 0, this.count);
+        }
+    }
 }
@@ -14,14 +14,24 @@
  */
 package com.microsoft.azure.storage.blob;
 
-import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.net.HttpURLConnection;
 import java.net.URI;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.microsoft.azure.storage.AccessCondition;
 import com.microsoft.azure.storage.Constants;
@@ -29,7 +39,6 @@ import com.microsoft.azure.storage.DoesServiceRequest;
 import com.microsoft.azure.storage.OperationContext;
 import com.microsoft.azure.storage.StorageException;
 import com.microsoft.azure.storage.StorageUri;
-import com.microsoft.azure.storage.core.Base64;
 import com.microsoft.azure.storage.core.ExecutionEngine;
 import com.microsoft.azure.storage.core.RequestLocationMode;
 import com.microsoft.azure.storage.core.SR;
@@ -311,8 +320,13 @@ public final class CloudPageBlob extends CloudBlob {
 
         options = BlobRequestOptions.applyDefaults(options, BlobType.PAGE_BLOB, this.blobServiceClient);
 
-        ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
-                this.createImpl(length, accessCondition, options), options.getRetryPolicyFactory(), opContext);
+        try {
+            ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
+                    this.createImpl(length, accessCondition, options), options.getRetryPolicyFactory(), opContext);
+        }
+        finally {
+            this.invalidateCaches();
+        }
     }
 
     private StorageRequest<CloudBlobClient, CloudBlob, Void> createImpl(final long length,
@@ -454,6 +468,464 @@ public final class CloudPageBlob extends CloudBlob {
         return getRequest;
     }
 
+    /**
+     * Downloads the populated pages of the page blob to a sparse file.
+     * <p>
+     * The page ranges of the blob are listed first, and only those ranges are downloaded, in parallel. The file is
+     * sized to the length of the blob and the ranges are written at their offsets, leaving the unpopulated pages as
+     * holes, which read as zeros and, on file systems supporting sparse files, take no space. The amount of data
+     * transferred is proportional to the data written to the blob rather than to its length.
+     * 
+     * @param path
+     *            A <code>String</code> which represents the path to the file that will be created with the contents of
+     *            the blob.
+     * 
+     * @return A <code>long</code> which represents the number of bytes which were downloaded.
+     * 
+     * @throws StorageException
+     *             If a storage service error occurred.
+     * @throws IOException
+     *             If an I/O error occurred.
+     */
+    @DoesServiceRequest
+    public long downloadToFileSparse(final String path) throws StorageException, IOException {
+        return this.downloadToFileSparse(path, null /* accessCondition */, null /* options */, null /* opContext */);
+    }
+
+    /**
+     * Downloads the populated pages of the page blob to a sparse file, using the specified access condition, request
+     * options, and operation context.
+     * <p>
+     * The page ranges of the blob are listed first, and only those ranges are downloaded, in parallel. The file is
+     * sized to the length of the blob and the ranges are written at their offsets, leaving the unpopulated pages as
+     * holes, which read as zeros and, on file systems supporting sparse files, take no space. The amount of data
+     * transferred is proportional to the data written to the blob rather than to its length.
+     * 
+     * @param path
+     *            A <code>String</code> which represents the path to the file that will be created with the contents of
+     *            the blob.
+     * @param accessCondition
+     *            An {@link AccessCondition} object that represents the access conditions for the blob.
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies any additional options for the request. Specifying
+     *            <code>null</code> will use the default request options from the associated service client (
+     *            {@link CloudBlobClient}).
+     * @param opContext
+     *            An {@link OperationContext} object that represents the context for the current operation. This object
+     *            is used to track requests to the storage service, and to provide additional runtime information about
+     *            the operation.
+     * 
+     * @return A <code>long</code> which represents the number of bytes which were downloaded.
+     * 
+     * @throws StorageException
+     *             If a storage service error occurred.
+     * @throws IOException
+     *             If an I/O error occurred.
+     */
+    @DoesServiceRequest
+    public long downloadToFileSparse(final String path, final AccessCondition accessCondition,
+            BlobRequestOptions options, OperationContext opContext) throws StorageException, IOException {
+        if (opContext == null) {
+            opContext = new OperationContext();
+        }
+
+        opContext.initialize();
+        options = BlobRequestOptions.applyDefaults(options, BlobType.PAGE_BLOB, this.blobServiceClient);
+
+        this.downloadAttributes(accessCondition, options, opContext);
+        final long length = this.properties.getLength();
+
+        // The page ranges and their content must come from the same version of the blob.
+        final AccessCondition rangeCondition = AccessCondition.generateIfMatchCondition(this.properties.getEtag());
+        if (accessCondition != null) {
+            rangeCondition.setLeaseID(accessCondition.getLeaseID());
+        }
+
+        final ArrayList<PageRange> pageRanges = this.downloadPageRanges(rangeCondition, options, opContext);
+
+        final RandomAccessFile targetFile = new RandomAccessFile(new File(path), "rw");
+        try {
+            // Truncate first so that no previous content of the file is left in the holes.
+            targetFile.setLength(0);
+            targetFile.setLength(length);
+            return this.writePageRangesToChannel(pageRanges, new ArrayList<PageRange>(), targetFile.getChannel(),
+                    false /* skipUnchanged */, rangeCondition, options, opContext);
+        }
+        finally {
+            targetFile.close();
+        }
+    }
+
+    /**
+     * Gets the page ranges which may differ between this page blob and a previous snapshot of it.
+     * <p>
+     * The page ranges of both are listed and merged. Pages which are populated in neither are zeros in both and are
+     * therefore unchanged; every other page is returned as a candidate change. Pages populated in both may still hold
+     * the same data.
+     * 
+     * @param previousSnapshotID
+     *            A <code>String</code> which represents the snapshot ID of the previous snapshot of the blob.
+     * 
+     * @return An <code>ArrayList</code> object which represents the sorted set of candidate changed page ranges.
+     * 
+     * @throws StorageException
+     *             If a storage service error occurred.
+     */
+    @DoesServiceRequest
+    public ArrayList<PageRange> downloadPageRangesDiff(final String previousSnapshotID) throws StorageException {
+        return this.downloadPageRangesDiff(previousSnapshotID, null /* accessCondition */, null /* options */,
+                null /* opContext */);
+    }
+
+    /**
+     * Gets the page ranges which may differ between this page blob and a previous snapshot of it, using the specified
+     * access condition, request options, and operation context.
+     * <p>
+     * The page ranges of both are listed and merged. Pages which are populated in neither are zeros in both and are
+     * therefore unchanged; every other page is returned as a candidate change. Pages populated in both may still hold
+     * the same data.
+     * 
+     * @param previousSnapshotID
+     *            A <code>String</code> which represents the snapshot ID of the previous snapshot of the blob.
+     * @param accessCondition
+     *            An {@link AccessCondition} object that represents the access conditions for this blob.
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies any additional options for the request. Specifying
+     *            <code>null</code> will use the default request options from the associated service client (
+     *            {@link CloudBlobClient}).
+     * @param opContext
+     *            An {@link OperationContext} object that represents the context for the current operation. This object
+     *            is used to track requests to the storage service, and to provide additional runtime information about
+     *            the operation.
+     * 
+     * @return An <code>ArrayList</code> object which represents the sorted set of candidate changed page ranges.
+     * 
+     * @throws StorageException
+     *             If a storage service error occurred.
+     */
+    @DoesServiceRequest
+    public ArrayList<PageRange> downloadPageRangesDiff(final String previousSnapshotID,
+            final AccessCondition accessCondition, BlobRequestOptions options, OperationContext opContext)
+            throws StorageException {
+        Utility.assertNotNullOrEmpty("previousSnapshotID", previousSnapshotID);
+
+        if (opContext == null) {
+            opContext = new OperationContext();
+        }
+
+        opContext.initialize();
+        options = BlobRequestOptions.applyDefaults(options, BlobType.PAGE_BLOB, this.blobServiceClient);
+
+        final ArrayList<PageRange> currentRanges = this.downloadPageRanges(accessCondition, options, opContext);
+        final ArrayList<PageRange> previousRanges = new CloudPageBlob(this.getStorageUri(), previousSnapshotID,
+                this.blobServiceClient).downloadPageRanges(null /* accessCondition */, options, opContext);
+        return unionPageRanges(currentRanges, previousRanges);
+    }
+
+    /**
+     * Updates a file holding the content of a previous snapshot of this page blob to the content of this blob,
+     * writing only the pages which changed.
+     * <p>
+     * The page ranges of this blob and of the snapshot are listed first. Pages populated in this blob are downloaded in
+     * parallel and written to the file, pages populated only in the snapshot are overwritten with zeros, and pages
+     * populated in neither are left untouched. When <code>confirmChanges</code> is <code>true</code>, each downloaded
+     * piece is first compared with the content of the file and only written if it differs, which keeps unchanged data
+     * out of incremental backups of the file.
+     * 
+     * @param path
+     *            A <code>String</code> which represents the path to the file holding the content of the previous
+     *            snapshot, for example as written by {@link #downloadToFileSparse(String)}.
+     * @param previousSnapshotID
+     *            A <code>String</code> which represents the snapshot ID of the previous snapshot of the blob.
+     * @param confirmChanges
+     *            <code>true</code> to compare candidate changes with the content of the file before writing them;
+     *            otherwise, <code>false</code>.
+     * 
+     * @return A <code>long</code> which represents the number of bytes written to the file.
+     * 
+     * @throws StorageException
+     *             If a storage service error occurred.
+     * @throws IOException
+     *             If an I/O error occurred.
+     */
+    @DoesServiceRequest
+    public long downloadDiffToFile(final String path, final String previousSnapshotID, final boolean confirmChanges)
+            throws StorageException, IOException {
+        return this.downloadDiffToFile(path, previousSnapshotID, confirmChanges, null /* accessCondition */,
+                null /* options */, null /* opContext */);
+    }
+
+    /**
+     * Updates a file holding the content of a previous snapshot of this page blob to the content of this blob,
+     * writing only the pages which changed, using the specified access condition, request options, and operation
+     * context.
+     * <p>
+     * The page ranges of this blob and of the snapshot are listed first. Pages populated in this blob are downloaded in
+     * parallel and written to the file, pages populated only in the snapshot are overwritten with zeros, and pages
+     * populated in neither are left untouched. When <code>confirmChanges</code> is <code>true</code>, each downloaded
+     * piece is first compared with the content of the file and only written if it differs, which keeps unchanged data
+     * out of incremental backups of the file.
+     * 
+     * @param path
+     *            A <code>String</code> which represents the path to the file holding the content of the previous
+     *            snapshot, for example as written by {@link #downloadToFileSparse(String)}.
+     * @param previousSnapshotID
+     *            A <code>String</code> which represents the snapshot ID of the previous snapshot of the blob.
+     * @param confirmChanges
+     *            <code>true</code> to compare candidate changes with the content of the file before writing them;
+     *            otherwise, <code>false</code>.
+     * @param accessCondition
+     *            An {@link AccessCondition} object that represents the access conditions for this blob.
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies any additional options for the request. Specifying
+     *            <code>null</code> will use the default request options from the associated service client (
+     *            {@link CloudBlobClient}).
+     * @param opContext
+     *            An {@link OperationContext} object that represents the context for the current operation. This object
+     *            is used to track requests to the storage service, and to provide additional runtime information about
+     *            the operation.
+     * 
+     * @return A <code>long</code> which represents the number of bytes written to the file.
+     * 
+     * @throws StorageException
+     *             If a storage service error occurred.
+     * @throws IOException
+     *             If an I/O error occurred.
+     */
+    @DoesServiceRequest
+    public long downloadDiffToFile(final String path, final String previousSnapshotID, final boolean confirmChanges,
+            final AccessCondition accessCondition, BlobRequestOptions options, OperationContext opContext)
+            throws StorageException, IOException {
+        Utility.assertNotNullOrEmpty("previousSnapshotID", previousSnapshotID);
+
+        if (opContext == null) {
+            opContext = new OperationContext();
+        }
+
+        opContext.initialize();
+        options = BlobRequestOptions.applyDefaults(options, BlobType.PAGE_BLOB, this.blobServiceClient);
+
+        this.downloadAttributes(accessCondition, options, opContext);
+        final long length = this.properties.getLength();
+
+        // The page ranges and their content must come from the same version of the blob.
+        final AccessCondition rangeCondition = AccessCondition.generateIfMatchCondition(this.properties.getEtag());
+        if (accessCondition != null) {
+            rangeCondition.setLeaseID(accessCondition.getLeaseID());
+        }
+
+        final ArrayList<PageRange> currentRanges = this.downloadPageRanges(rangeCondition, options, opContext);
+        final ArrayList<PageRange> previousRanges = new CloudPageBlob(this.getStorageUri(), previousSnapshotID,
+                this.blobServiceClient).downloadPageRanges(null /* accessCondition */, options, opContext);
+        final ArrayList<PageRange> clearedRanges = subtractPageRanges(previousRanges, currentRanges, length);
+
+        final RandomAccessFile targetFile = new RandomAccessFile(new File(path), "rw");
+        try {
+            // The blob may have been resized since the snapshot was taken.
+            targetFile.setLength(length);
+            return this.writePageRangesToChannel(currentRanges, clearedRanges, targetFile.getChannel(),
+                    confirmChanges, rangeCondition, options, opContext);
+        }
+        finally {
+            targetFile.close();
+        }
+    }
+
+    /**
+     * Writes the specified page ranges to the channel at their offsets in the blob, in parallel pieces of up to 4 MB.
+     * Populated ranges are downloaded while cleared ranges are written as zeros. When <code>skipUnchanged</code> is
+     * <code>true</code>, a piece is compared with the content of the channel and only written if it differs.
+     * 
+     * @return A <code>long</code> which represents the number of bytes written to the channel.
+     */
+    @DoesServiceRequest
+    private long writePageRangesToChannel(final ArrayList<PageRange> populatedRanges,
+            final ArrayList<PageRange> clearedRanges, final FileChannel targetChannel, final boolean skipUnchanged,
+            final AccessCondition rangeCondition, final BlobRequestOptions options, final OperationContext opContext)
+            throws StorageException, IOException {
+        final int pieceSize = BlobConstants.DEFAULT_MINIMUM_READ_SIZE_IN_BYTES;
+        final int concurrentRequestCount = options.getConcurrentRequestCount();
+        final BlobBufferPool bufferPool = new BlobBufferPool(Long.MAX_VALUE);
+        final AtomicInteger pendingBuffers = new AtomicInteger();
+        final AtomicLong writtenBytes = new AtomicLong();
+        final ExecutorService threadExecutor = Executors.newFixedThreadPool(concurrentRequestCount);
+        final ExecutorCompletionService<Void> completionService = new ExecutorCompletionService<Void>(threadExecutor);
+        int outstandingRequests = 0;
+
+        final ArrayList<PageRange> allRanges = new ArrayList<PageRange>(populatedRanges);
+        allRanges.addAll(clearedRanges);
+
+        try {
+            for (int rangeIndex = 0; rangeIndex < allRanges.size(); rangeIndex++) {
+                final PageRange pageRange = allRanges.get(rangeIndex);
+                final boolean populated = rangeIndex < populatedRanges.size();
+
+                for (long offset = pageRange.getStartOffset(); offset <= pageRange.getEndOffset(); offset += pieceSize) {
+                    if (outstandingRequests >= concurrentRequestCount * 2) {
+                        waitForTask(completionService);
+                        outstandingRequests--;
+                    }
+
+                    final long pieceOffset = offset;
+                    final int pieceLength = (int) Math.min(pieceSize, pageRange.getEndOffset() + 1 - offset);
+                    final byte[] buffer;
+                    try {
+                        buffer = bufferPool.acquire(pieceSize, pendingBuffers);
+                    }
+                    catch (final InterruptedException e) {
+                        throw Utility.initIOException(e);
+                    }
+
+                    pendingBuffers.incrementAndGet();
+                    completionService.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            try {
+                                // Pieces still queued when another one failed are not written.
+                                if (threadExecutor.isShutdown()) {
+                                    return null;
+                                }
+
+                                if (populated) {
+                                    CloudPageBlob.this.downloadRangeInternal(pieceOffset, (long) pieceLength, buffer,
+                                            0, rangeCondition, options, opContext);
+                                }
+                                else {
+                                    Arrays.fill(buffer, 0, pieceLength, (byte) 0);
+                                }
+
+                                if (skipUnchanged) {
+                                    // The pool is unbounded and this piece's buffer is pending, so this never waits.
+                                    final byte[] existing = bufferPool.acquire(pieceSize, pendingBuffers);
+                                    try {
+                                        if (isChannelContentEqual(targetChannel, pieceOffset, buffer, existing,
+                                                pieceLength)) {
+                                            return null;
+                                        }
+                                    }
+                                    finally {
+                                        bufferPool.release(existing);
+                                    }
+                                }
+
+                                final ByteBuffer data = ByteBuffer.wrap(buffer, 0, pieceLength);
+                                while (data.hasRemaining()) {
+                                    targetChannel.write(data, pieceOffset + data.position());
+                                }
+
+                                writtenBytes.addAndGet(pieceLength);
+                            }
+                            finally {
+                                pendingBuffers.decrementAndGet();
+                                bufferPool.release(buffer);
+                            }
+
+                            return null;
+                        }
+                    });
+                    outstandingRequests++;
+                }
+            }
+
+            while (outstandingRequests > 0) {
+                waitForTask(completionService);
+                outstandingRequests--;
+            }
+        }
+        finally {
+            // The caller closes the channel once this returns, so no piece may still be written to it.
+            shutdownAndAwait(threadExecutor);
+        }
+
+        return writtenBytes.get();
+    }
+
+    /**
+     * Gets whether the channel holds the specified data at the specified position, reading the content of the channel
+     * into the specified buffer.
+     */
+    private static boolean isChannelContentEqual(final FileChannel channel, final long position, final byte[] data,
+            final byte[] buffer, final int length) throws IOException {
+        final ByteBuffer existing = ByteBuffer.wrap(buffer, 0, length);
+        while (existing.hasRemaining()) {
+            if (channel.read(existing, position + existing.position()) < 0) {
+                return false;
+            }
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (data[i] != buffer[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Merges two sorted lists of page ranges into a sorted list of the pages which are in either of them.
+     */
+    private static ArrayList<PageRange> unionPageRanges(final ArrayList<PageRange> first,
+            final ArrayList<PageRange> second) {
+        final ArrayList<PageRange> all = new ArrayList<PageRange>(first);
+        all.addAll(second);
+        Collections.sort(all, new Comparator<PageRange>() {
+            @Override
+            public int compare(final PageRange left, final PageRange right) {
+                return Long.valueOf(left.getStartOffset()).compareTo(right.getStartOffset());
+            }
+        });
+
+        final ArrayList<PageRange> union = new ArrayList<PageRange>();
+        for (final PageRange range : all) {
+            final PageRange last = union.isEmpty() ? null : union.get(union.size() - 1);
+            if (last != null && range.getStartOffset() <= last.getEndOffset() + 1) {
+                last.setEndOffset(Math.max(last.getEndOffset(), range.getEndOffset()));
+            }
+            else {
+                union.add(new PageRange(range.getStartOffset(), range.getEndOffset()));
+            }
+        }
+
+        return union;
+    }
+
+    /**
+     * Gets the sorted list of the pages which are in the first sorted list of page ranges but not in the second one,
+     * limited to the specified length.
+     */
+    private static ArrayList<PageRange> subtractPageRanges(final ArrayList<PageRange> ranges,
+            final ArrayList<PageRange> excludedRanges, final long length) {
+        final ArrayList<PageRange> difference = new ArrayList<PageRange>();
+        int excludedIndex = 0;
+        for (final PageRange range : ranges) {
+            long start = range.getStartOffset();
+            final long end = Math.min(range.getEndOffset(), length - 1);
+
+            while (start <= end) {
+                // Skip the excluded ranges ending before the remainder of this range.
+                while (excludedIndex < excludedRanges.size()
+                        && excludedRanges.get(excludedIndex).getEndOffset() < start) {
+                    excludedIndex++;
+                }
+
+                if (excludedIndex == excludedRanges.size() || excludedRanges.get(excludedIndex).getStartOffset() > end) {
+                    difference.add(new PageRange(start, end));
+                    break;
+                }
+
+                final PageRange excluded = excludedRanges.get(excludedIndex);
+                if (excluded.getStartOffset() > start) {
+                    difference.add(new PageRange(start, excluded.getStartOffset() - 1));
+                }
+
+                start = excluded.getEndOffset() + 1;
+            }
+        }
+
+        return difference;
+    }
+
     /**
      * Opens an output stream object to write data to the page blob. The page blob must already exist.
      * 
@@ -607,7 +1079,7 @@ public final class CloudPageBlob extends CloudBlob {
      * @param pageProperties
      *            A {@link PageProperties} object that specifies the page properties.
      * @param data
-     *            A <code>byte</code> array which represents the data to write.
+     *            A <code>java.nio.ByteBuffer</code> object whose remaining bytes represent the data to write.
      * @param length
      *            A <code>long</code> which represents the number of bytes to write.
      * @param md5
@@ -627,17 +1099,30 @@ public final class CloudPageBlob extends CloudBlob {
      *             If a storage service error occurred.
      */
     @DoesServiceRequest
-    private void putPagesInternal(final PageProperties pageProperties, final byte[] data, final long length,
+    private void putPagesInternal(final PageProperties pageProperties, final ByteBuffer data, final long length,
             final String md5, final AccessCondition accessCondition, final BlobRequestOptions options,
             final OperationContext opContext) throws StorageException {
-        ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
-                putPagesImpl(pageProperties, data, length, md5, accessCondition, options, opContext),
-                options.getRetryPolicyFactory(), opContext);
+        final BlobTransferManager transferManager = this.blobServiceClient.getTransferManager();
+        final BlobTransferManager.Transfer transfer = transferManager == null ? null : transferManager.begin(
+                opContext, options.getTransferPriority());
+        try {
+            ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
+                    putPagesImpl(pageProperties, data, length, md5, accessCondition, options, opContext, transfer),
+                    options.getRetryPolicyFactory(), opContext);
+        }
+        finally {
+            if (transfer != null) {
+                transferManager.end(transfer);
+            }
+
+            this.invalidateCaches();
+        }
     }
 
     private StorageRequest<CloudBlobClient, CloudBlob, Void> putPagesImpl(final PageProperties pageProperties,
-            final byte[] data, final long length, final String md5, final AccessCondition accessCondition,
-            final BlobRequestOptions options, final OperationContext opContext) {
+            final ByteBuffer data, final long length, final String md5, final AccessCondition accessCondition,
+            final BlobRequestOptions options, final OperationContext opContext,
+            final BlobTransferManager.Transfer transfer) {
         final StorageRequest<CloudBlobClient, CloudBlob, Void> putRequest = new StorageRequest<CloudBlobClient, CloudBlob, Void>(
                 options, this.getStorageUri()) {
 
@@ -645,7 +1130,8 @@ public final class CloudPageBlob extends CloudBlob {
             public HttpURLConnection buildRequest(CloudBlobClient client, CloudBlob blob, OperationContext context)
                     throws Exception {
                 if (pageProperties.getPageOperation() == PageOperationType.UPDATE) {
-                    this.setSendStream(new ByteArrayInputStream(data));
+                    final InputStream sendStream = new ByteBufferInputStream(data);
+                    this.setSendStream(transfer == null ? sendStream : transfer.wrap(sendStream));
                     this.setLength(length);
                 }
 
@@ -736,8 +1222,13 @@ public final class CloudPageBlob extends CloudBlob {
         opContext.initialize();
         options = BlobRequestOptions.applyDefaults(options, this.properties.getBlobType(), this.blobServiceClient);
 
-        ExecutionEngine.executeWithRetry(this.blobServiceClient, this, this.resizeImpl(size, accessCondition, options),
-                options.getRetryPolicyFactory(), opContext);
+        try {
+            ExecutionEngine.executeWithRetry(this.blobServiceClient, this,
+                    this.resizeImpl(size, accessCondition, options), options.getRetryPolicyFactory(), opContext);
+        }
+        finally {
+            this.invalidateCaches();
+        }
     }
 
     private StorageRequest<CloudBlobClient, CloudBlob, Void> resizeImpl(final long size,
@@ -854,6 +1345,240 @@ public final class CloudPageBlob extends CloudBlob {
         }
     }
 
+    /**
+     * Uploads the source stream data to a new page blob, skipping the pages which hold only zeros.
+     * <p>
+     * The blob is created with the length of the data, so all of its pages start out as zeros. The data is then examined
+     * one 512-byte page at a time; runs of pages which are not all zeros are uploaded in parallel as ranges of up to
+     * the stream write size, while pages of zeros are never transmitted. This makes uploading disk images and other
+     * mostly empty data proportional to the data actually written.
+     * 
+     * @param sourceStream
+     *            An {@link IntputStream} object to read from.
+     * @param length
+     *            A <code>long</code> which represents the length, in bytes, of the stream data. This must be great than
+     *            zero and a multiple of 512.
+     * 
+     * @return A <code>long</code> which represents the number of bytes of zeros which were skipped.
+     * 
+     * @throws IOException
+     *             If an I/O exception occurred.
+     * @throws StorageException
+     *             If a storage service error occurred.
+     */
+    @DoesServiceRequest
+    public long uploadSparse(final InputStream sourceStream, final long length) throws StorageException, IOException {
+        return this.uploadSparse(sourceStream, length, null /* accessCondition */, null /* options */, null /* opContext */);
+    }
+
+    /**
+     * Uploads the source stream data to a new page blob, skipping the pages which hold only zeros, using the specified
+     * lease ID, request options, and operation context.
+     * <p>
+     * The blob is created with the length of the data, so all of its pages start out as zeros. The data is then examined
+     * one 512-byte page at a time; runs of pages which are not all zeros are uploaded in parallel as ranges of up to
+     * the stream write size, while pages of zeros are never transmitted. This makes uploading disk images and other
+     * mostly empty data proportional to the data actually written.
+     * 
+     * @param sourceStream
+     *            An {@link IntputStream} object to read from.
+     * @param length
+     *            A <code>long</code> which represents the length, in bytes, of the stream data. This must be great than
+     *            zero and a multiple of 512.
+     * @param accessCondition
+     *            An {@link AccessCondition} object which represents the access conditions for the blob.
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies any additional options for the request. Specifying
+     *            <code>null</code> will use the default request options from the associated service client (
+     *            {@link CloudBlobClient}).
+     * @param opContext
+     *            An {@link OperationContext} object which represents the context for the current operation. This object
+     *            is used to track requests to the storage service, and to provide additional runtime information about
+     *            the operation.
+     * 
+     * @return A <code>long</code> which represents the number of bytes of zeros which were skipped.
+     * 
+     * @throws IOException
+     *             If an I/O exception occurred.
+     * @throws StorageException
+     *             If a storage service error occurred.
+     */
+    @DoesServiceRequest
+    public long uploadSparse(final InputStream sourceStream, final long length, AccessCondition accessCondition,
+            BlobRequestOptions options, OperationContext opContext) throws StorageException, IOException {
+        assertNoWriteOperationForSnapshot();
+
+        if (opContext == null) {
+            opContext = new OperationContext();
+        }
+
+        opContext.initialize();
+        options = BlobRequestOptions.applyDefaults(options, BlobType.PAGE_BLOB, this.blobServiceClient);
+
+        if (length <= 0 || length % BlobConstants.PAGE_SIZE != 0) {
+            throw new IllegalArgumentException(SR.INVALID_PAGE_BLOB_LENGTH);
+        }
+
+        if (options.getStoreBlobContentMD5()) {
+            throw new IllegalArgumentException(SR.BLOB_MD5_NOT_SUPPORTED_FOR_PAGE_BLOBS);
+        }
+
+        this.create(length, accessCondition, options, opContext);
+
+        if (accessCondition != null) {
+            accessCondition = AccessCondition.generateLeaseCondition(accessCondition.getLeaseID());
+        }
+
+        return this.uploadNonZeroPages(sourceStream, length, accessCondition, options, opContext);
+    }
+
+    /**
+     * Reads the source stream page by page and uploads the runs of pages which are not all zeros.
+     * 
+     * @return A <code>long</code> which represents the number of bytes of zeros which were skipped.
+     */
+    @DoesServiceRequest
+    private long uploadNonZeroPages(final InputStream sourceStream, final long length,
+            final AccessCondition accessCondition, final BlobRequestOptions options, final OperationContext opContext)
+            throws StorageException, IOException {
+        final int runSize = this.getStreamWriteSizeInBytes();
+        final int concurrentRequestCount = options.getConcurrentRequestCount();
+        final BlobBufferPool bufferPool = this.blobServiceClient.getBufferPool() != null ? this.blobServiceClient
+                .getBufferPool() : new BlobBufferPool(Long.MAX_VALUE);
+        final AtomicInteger pendingBuffers = new AtomicInteger();
+
+        final ExecutorService threadExecutor = Executors.newFixedThreadPool(concurrentRequestCount);
+        final ExecutorCompletionService<Void> completionService = new ExecutorCompletionService<Void>(threadExecutor);
+        int outstandingRequests = 0;
+
+        // Data is read in large pieces and copied page by page into the buffer of the current run.
+        final byte[] readBuffer = new byte[BlobConstants.SPARSE_READ_SIZE];
+        byte[] runBuffer = null;
+        int runLength = 0;
+        long runOffset = 0;
+        long skippedBytes = 0;
+
+        try {
+            long offset = 0;
+            while (offset < length) {
+                final int readLength = (int) Math.min(readBuffer.length, length - offset);
+                int read = 0;
+                while (read < readLength) {
+                    final int count = sourceStream.read(readBuffer, read, readLength - read);
+                    if (count < 0) {
+                        throw new IOException(SR.UNEXPECTED_STREAM_READ_ERROR);
+                    }
+
+                    read += count;
+                }
+
+                for (int position = 0; position < readLength; position += BlobConstants.PAGE_SIZE) {
+                    final long pageOffset = offset + position;
+                    final boolean isZeroPage = isZeroPage(readBuffer, position);
+
+                    // The current run ends at a page of zeros or when its buffer is full.
+                    if (runLength > 0 && (isZeroPage || runLength == runSize)) {
+                        if (outstandingRequests >= concurrentRequestCount * 2) {
+                            waitForTask(completionService);
+                            outstandingRequests--;
+                        }
+
+                        this.submitPages(threadExecutor, completionService, bufferPool, pendingBuffers, runBuffer,
+                                runOffset, runLength, accessCondition, options, opContext);
+                        outstandingRequests++;
+                        runBuffer = null;
+                        runLength = 0;
+                    }
+
+                    if (isZeroPage) {
+                        skippedBytes += BlobConstants.PAGE_SIZE;
+                        continue;
+                    }
+
+                    if (runBuffer == null) {
+                        try {
+                            runBuffer = bufferPool.acquire(runSize, pendingBuffers);
+                        }
+                        catch (final InterruptedException e) {
+                            throw Utility.initIOException(e);
+                        }
+
+                        runOffset = pageOffset;
+                    }
+
+                    System.arraycopy(readBuffer, position, runBuffer, runLength, BlobConstants.PAGE_SIZE);
+                    runLength += BlobConstants.PAGE_SIZE;
+                }
+
+                offset += readLength;
+            }
+
+            if (runLength > 0) {
+                this.submitPages(threadExecutor, completionService, bufferPool, pendingBuffers, runBuffer, runOffset,
+                        runLength, accessCondition, options, opContext);
+                outstandingRequests++;
+                runBuffer = null;
+            }
+
+            while (outstandingRequests > 0) {
+                waitForTask(completionService);
+                outstandingRequests--;
+            }
+        }
+        finally {
+            if (runBuffer != null) {
+                bufferPool.release(runBuffer);
+            }
+
+            shutdownAndAwait(threadExecutor);
+        }
+
+        return skippedBytes;
+    }
+
+    /**
+     * Submits the upload of a run of pages, returning the buffer to the pool once it completes. A run which starts
+     * after the executor was shut down because the upload failed only returns its buffer.
+     */
+    private void submitPages(final ExecutorService threadExecutor,
+            final ExecutorCompletionService<Void> completionService, final BlobBufferPool bufferPool,
+            final AtomicInteger pendingBuffers, final byte[] buffer, final long offset, final int length,
+            final AccessCondition accessCondition, final BlobRequestOptions options, final OperationContext opContext) {
+        pendingBuffers.incrementAndGet();
+        completionService.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                try {
+                    if (threadExecutor.isShutdown()) {
+                        return null;
+                    }
+
+                    CloudPageBlob.this.uploadPagesFromBuffer(ByteBuffer.wrap(buffer, 0, length), offset,
+                            accessCondition, options, opContext);
+                }
+                finally {
+                    pendingBuffers.decrementAndGet();
+                    bufferPool.release(buffer);
+                }
+
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Gets whether the page starting at the specified position of the buffer holds only zeros.
+     */
+    private static boolean isZeroPage(final byte[] buffer, final int position) {
+        for (int i = position; i < position + BlobConstants.PAGE_SIZE; i++) {
+            if (buffer[i] != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     /**
      * Uploads a range of contiguous pages, up to 4 MB in size, at the specified offset in the page blob.
      * 
@@ -936,12 +1661,7 @@ public final class CloudPageBlob extends CloudBlob {
 
         options = BlobRequestOptions.applyDefaults(options, BlobType.PAGE_BLOB, this.blobServiceClient);
 
-        final PageProperties pageProps = new PageProperties();
-        pageProps.setPageOperation(PageOperationType.UPDATE);
-        pageProps.getRange().setStartOffset(offset);
-        pageProps.getRange().setEndOffset(offset + length - 1);
         final byte[] data = new byte[(int) length];
-        String md5 = null;
 
         int count = 0;
         int total = 0;
@@ -950,16 +1670,154 @@ public final class CloudPageBlob extends CloudBlob {
             total += count;
         }
 
+        this.uploadPagesFromBuffer(ByteBuffer.wrap(data, 0, (int) length), offset, accessCondition, options,
+                opContext);
+    }
+
+    /**
+     * Uploads a range of contiguous pages held in a buffer. Used by {@link BlobOutputStream} to upload its buffers
+     * without copying them.
+     * 
+     * @param data
+     *            A <code>byte</code> array which holds the data to write, starting at index 0.
+     * @param offset
+     *            A <code>long</code> which represents the offset, in number of bytes, at which to begin writing the
+     *            data. This value must be a multiple of 512.
+     * @param length
+     *            A <code>long</code> which represents the length, in bytes, of the data to write. This value must be a
+     *            multiple of 512.
+     * @param accessCondition
+     *            An {@link AccessCondition} object which represents the access conditions for the blob.
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies any additional options for the request.
+     * @param opContext
+     *            An {@link OperationContext} object which represents the context for the current operation.
+     * 
+     * @throws StorageException
+     *             If a storage service error occurred.
+     */
+    @DoesServiceRequest
+    void uploadPages(final byte[] data, final long offset, final long length, final AccessCondition accessCondition,
+            BlobRequestOptions options, OperationContext opContext) throws StorageException {
+        if (offset % BlobConstants.PAGE_SIZE != 0) {
+            throw new IllegalArgumentException(SR.INVALID_PAGE_START_OFFSET);
+        }
+
+        if (length == 0 || length % BlobConstants.PAGE_SIZE != 0) {
+            throw new IllegalArgumentException(SR.INVALID_PAGE_BLOB_LENGTH);
+        }
+
+        if (length > 4 * Constants.MB || length > data.length) {
+            throw new IllegalArgumentException(SR.INVALID_MAX_WRITE_SIZE);
+        }
+
+        assertNoWriteOperationForSnapshot();
+
+        if (opContext == null) {
+            opContext = new OperationContext();
+        }
+
+        options = BlobRequestOptions.applyDefaults(options, BlobType.PAGE_BLOB, this.blobServiceClient);
+        this.uploadPagesFromBuffer(ByteBuffer.wrap(data, 0, (int) length), offset, accessCondition, options,
+                opContext);
+    }
+
+    /**
+     * Uploads a range of contiguous pages, up to 4 MB in size, at the specified offset in the page blob, from the
+     * remaining bytes of a buffer.
+     * <p>
+     * The data is copied from the buffer to the connection one copy buffer at a time, and the transactional MD5 is
+     * calculated over the buffer itself, so a direct buffer is uploaded without being copied to the heap as a whole.
+     * The position of the buffer is not changed.
+     * 
+     * @param data
+     *            A <code>java.nio.ByteBuffer</code> object whose remaining bytes represent the data to write to the
+     *            page blob. The number of remaining bytes must be a multiple of 512.
+     * @param offset
+     *            A <code>long</code> which represents the offset, in number of bytes, at which to begin writing the
+     *            data. This value must be a multiple of 512.
+     * 
+     * @throws IllegalArgumentException
+     *             If the offset or length are not multiples of 512, or if the length is greater than 4 MB.
+     * @throws StorageException
+     *             If a storage service error occurred.
+     */
+    @DoesServiceRequest
+    public void uploadPages(final ByteBuffer data, final long offset) throws StorageException {
+        this.uploadPages(data, offset, null /* accessCondition */, null /* options */, null /* opContext */);
+    }
+
+    /**
+     * Uploads a range of contiguous pages, up to 4 MB in size, at the specified offset in the page blob, from the
+     * remaining bytes of a buffer, using the specified lease ID, request options, and operation context.
+     * <p>
+     * The data is copied from the buffer to the connection one copy buffer at a time, and the transactional MD5 is
+     * calculated over the buffer itself, so a direct buffer is uploaded without being copied to the heap as a whole.
+     * The position of the buffer is not changed.
+     * 
+     * @param data
+     *            A <code>java.nio.ByteBuffer</code> object whose remaining bytes represent the data to write to the
+     *            page blob. The number of remaining bytes must be a multiple of 512.
+     * @param offset
+     *            A <code>long</code> which represents the offset, in number of bytes, at which to begin writing the
+     *            data. This value must be a multiple of 512.
+     * @param accessCondition
+     *            An {@link AccessCondition} object which represents the access conditions for the blob.
+     * @param options
+     *            A {@link BlobRequestOptions} object that specifies any additional options for the request. Specifying
+     *            <code>null</code> will use the default request options from the associated service client (
+     *            {@link CloudBlobClient}).
+     * @param opContext
+     *            An {@link OperationContext} object which represents the context for the current operation. This object
+     *            is used to track requests to the storage service, and to provide additional runtime information about
+     *            the operation.
+     * 
+     * @throws IllegalArgumentException
+     *             If the offset or length are not multiples of 512, or if the length is greater than 4 MB.
+     * @throws StorageException
+     *             If a storage service error occurred.
+     */
+    @DoesServiceRequest
+    public void uploadPages(final ByteBuffer data, final long offset, final AccessCondition accessCondition,
+            BlobRequestOptions options, OperationContext opContext) throws StorageException {
+        Utility.assertNotNull("data", data);
+
+        if (offset % BlobConstants.PAGE_SIZE != 0) {
+            throw new IllegalArgumentException(SR.INVALID_PAGE_START_OFFSET);
+        }
+
+        if (data.remaining() == 0 || data.remaining() % BlobConstants.PAGE_SIZE != 0) {
+            throw new IllegalArgumentException(SR.INVALID_PAGE_BLOB_LENGTH);
+        }
+
+        if (data.remaining() > 4 * Constants.MB) {
+            throw new IllegalArgumentException(SR.INVALID_MAX_WRITE_SIZE);
+        }
+
+        assertNoWriteOperationForSnapshot();
+
+        if (opContext == null) {
+            opContext = new OperationContext();
+        }
+
+        opContext.initialize();
+        options = BlobRequestOptions.applyDefaults(options, BlobType.PAGE_BLOB, this.blobServiceClient);
+        this.uploadPagesFromBuffer(data, offset, accessCondition, options, opContext);
+    }
+
+    @DoesServiceRequest
+    private void uploadPagesFromBuffer(final ByteBuffer data, final long offset,
+            final AccessCondition accessCondition, final BlobRequestOptions options, final OperationContext opContext)
+            throws StorageException {
+        final long length = data.remaining();
+        final PageProperties pageProps = new PageProperties();
+        pageProps.setPageOperation(PageOperationType.UPDATE);
+        pageProps.getRange().setStartOffset(offset);
+        pageProps.getRange().setEndOffset(offset + length - 1);
+        String md5 = null;
+
         if (options.getUseTransactionalContentMD5()) {
-            try {
-                final MessageDigest digest = MessageDigest.getInstance("MD5");
-                digest.update(data, 0, data.length);
-                md5 = Base64.encode(digest.digest());
-            }
-            catch (final NoSuchAlgorithmException e) {
-                // This wont happen, throw fatal.
-                throw Utility.generateNewUnexpectedStorageException(e);
-            }
+            md5 = Utility.calculateMD5(data);
         }
 
         this.putPagesInternal(pageProps, data, length, md5, accessCondition, options, opContext);
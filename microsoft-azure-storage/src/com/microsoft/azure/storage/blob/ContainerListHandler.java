@@ -43,12 +43,13 @@ final class ContainerListHandler extends DefaultHandler {
 
     private final CloudBlobClient serviceClient;
 
-    private final ListResponse<CloudBlobContainer> response = new ListResponse<CloudBlobContainer>();
+    private final ListResponse<CloudBlobContainer> response;
     private BlobContainerAttributes attributes;
     private String containerName;
 
-    private ContainerListHandler(CloudBlobClient serviceClient) {
+    private ContainerListHandler(CloudBlobClient serviceClient, ListResponse<CloudBlobContainer> response) {
         this.serviceClient = serviceClient;
+        this.response = response;
     }
 
     /**
@@ -64,8 +65,28 @@ final class ContainerListHandler extends DefaultHandler {
      */
     protected static ListResponse<CloudBlobContainer> getContainerList(final InputStream stream,
             final CloudBlobClient serviceClient) throws ParserConfigurationException, SAXException, IOException {
+        return getContainerList(stream, serviceClient, new ListResponse<CloudBlobContainer>());
+    }
+
+    /**
+     * Parses a {@link ContainerListResponse} form the given XML stream into the specified response object, which may
+     * deliver the containers to a consumer as they are read.
+     * 
+     * @param serviceClient
+     *            a reference to the client object associated with this object.
+     * @param stream
+     *            the stream from which to parse the container list
+     * @param response
+     *            the response object to parse into
+     * @throws SAXException
+     * @throws ParserConfigurationException
+     * @throws IOException
+     */
+    protected static ListResponse<CloudBlobContainer> getContainerList(final InputStream stream,
+            final CloudBlobClient serviceClient, final ListResponse<CloudBlobContainer> response)
+            throws ParserConfigurationException, SAXException, IOException {
         SAXParser saxParser = Utility.getSAXParser();
-        ContainerListHandler handler = new ContainerListHandler(serviceClient);
+        ContainerListHandler handler = new ContainerListHandler(serviceClient, response);
         saxParser.parse(stream, handler);
 
         return handler.response;
@@ -106,7 +127,7 @@ final class ContainerListHandler extends DefaultHandler {
                 retContainer.setMetadata(this.attributes.getMetadata());
                 retContainer.setProperties(this.attributes.getProperties());
 
-                this.response.getResults().add(retContainer);
+                this.response.addResult(retContainer);
             }
             catch (URISyntaxException e) {
                 throw new SAXException(e);
@@ -0,0 +1,150 @@
+/**
+ * Copyright Microsoft Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage.blob;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import com.microsoft.azure.storage.Constants;
+
+/**
+ * RESERVED FOR INTERNAL USE. Splits a stream into chunks whose boundaries depend on the content rather than on the
+ * offset, so that an insertion or deletion only changes the chunks around it.
+ * <p>
+ * Boundaries are found with a gear rolling hash over roughly the last 64 bytes: a chunk ends where the top bits of the
+ * hash are all zero, which yields chunks of about {@link #AVERAGE_CHUNK_SIZE} bytes on average, bounded by
+ * {@link #MIN_CHUNK_SIZE} and {@link #MAX_CHUNK_SIZE}. The gear table is generated from a fixed seed, so the same
+ * content is always split the same way.
+ */
+final class ContentDefinedChunker {
+    /**
+     * The smallest chunk, other than the last one.
+     */
+    static final int MIN_CHUNK_SIZE = 256 * Constants.KB;
+
+    /**
+     * The average chunk size, which must be a power of two.
+     */
+    static final int AVERAGE_CHUNK_SIZE = Constants.MB;
+
+    /**
+     * The largest chunk, the maximum block size.
+     */
+    static final int MAX_CHUNK_SIZE = BlobConstants.MAX_COMMIT_SIZE_4_MB;
+
+    /**
+     * The mask selecting the top bits of the hash which must be zero at a boundary.
+     */
+    private static final long BOUNDARY_MASK = -1L << (64 - Integer.numberOfTrailingZeros(AVERAGE_CHUNK_SIZE));
+
+    /**
+     * The gear table mapping each byte value to a random 64 bit value.
+     */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        final Random random = new Random(0x5EED5EEDL);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * Holds the stream being chunked.
+     */
+    private final InputStream sourceStream;
+
+    /**
+     * Holds the bytes read past the end of the previous chunk.
+     */
+    private final byte[] carry = new byte[MAX_CHUNK_SIZE];
+
+    /**
+     * Holds the number of bytes in the carry buffer.
+     */
+    private int carryLength;
+
+    /**
+     * Holds whether the end of the stream was reached.
+     */
+    private boolean endOfStream;
+
+    /**
+     * Creates an instance of the <code>ContentDefinedChunker</code> class.
+     *
+     * @param sourceStream
+     *            An <code>InputStream</code> object which represents the stream to split.
+     */
+    ContentDefinedChunker(final InputStream sourceStream) {
+        this.sourceStream = sourceStream;
+    }
+
+    /**
+     * Reads the next chunk.
+     *
+     * @param buffer
+     *            A <code>byte</code> array of at least {@link #MAX_CHUNK_SIZE} bytes to read the chunk into.
+     *
+     * @return An <code>int</code> which represents the length of the chunk, or -1 at the end of the stream.
+     *
+     * @throws IOException
+     *             If the stream could not be read.
+     */
+    int nextChunk(final byte[] buffer) throws IOException {
+        System.arraycopy(this.carry, 0, buffer, 0, this.carryLength);
+        int length = this.carryLength;
+        this.carryLength = 0;
+
+        while (length < MAX_CHUNK_SIZE && !this.endOfStream) {
+            final int count = this.sourceStream.read(buffer, length, MAX_CHUNK_SIZE - length);
+            if (count < 0) {
+                this.endOfStream = true;
+            }
+            else {
+                length += count;
+            }
+        }
+
+        if (length == 0) {
+            return -1;
+        }
+
+        final int cut = findBoundary(buffer, length);
+        this.carryLength = length - cut;
+        System.arraycopy(buffer, cut, this.carry, 0, this.carryLength);
+        return cut;
+    }
+
+    /**
+     * Finds the end of the chunk starting at the beginning of the buffer.
+     */
+    private static int findBoundary(final byte[] buffer, final int length) {
+        if (length <= MIN_CHUNK_SIZE) {
+            return length;
+        }
+
+        // The hash only depends on the last 64 bytes, so hashing can start just before the minimum chunk size.
+        long hash = 0;
+        for (int i = MIN_CHUNK_SIZE - 64; i < length; i++) {
+            hash = (hash << 1) + GEAR[buffer[i] & 0xFF];
+            if (i + 1 >= MIN_CHUNK_SIZE && (hash & BOUNDARY_MASK) == 0) {
+                return i + 1;
+            }
+        }
+
+        return length;
+    }
+}
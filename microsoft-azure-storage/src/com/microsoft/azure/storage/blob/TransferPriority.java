@@ -0,0 +1,30 @@
+/**
+ * Copyright Microsoft Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage.blob;
+
+/**
+ * Specifies the priority with which a {@link BlobTransferManager} schedules the requests of a transfer.
+ */
+public enum TransferPriority {
+    /**
+     * The transfer is latency-sensitive. Its requests are sent before any queued bulk request.
+     */
+    INTERACTIVE,
+
+    /**
+     * The transfer is a background transfer. Its requests are only sent when no interactive request is queued.
+     */
+    BULK
+}
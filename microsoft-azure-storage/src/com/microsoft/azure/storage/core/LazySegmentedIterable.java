@@ -57,19 +57,37 @@ public final class LazySegmentedIterable<CLIENT_TYPE, PARENT_TYPE, ENTITY_TYPE>
      */
     private final OperationContext opContext;
 
+    /**
+     * Holds the number of segments to retrieve ahead of the segment being consumed, or 0 to retrieve them lazily.
+     */
+    private final int prefetchDepth;
+
     public LazySegmentedIterable(
             final StorageRequest<CLIENT_TYPE, PARENT_TYPE, ResultSegment<ENTITY_TYPE>> segmentGenerator,
             final CLIENT_TYPE client, final PARENT_TYPE parent, final RetryPolicyFactory policyFactory,
             final OperationContext opContext) {
+        this(segmentGenerator, client, parent, policyFactory, opContext, 0 /* prefetchDepth */);
+    }
+
+    public LazySegmentedIterable(
+            final StorageRequest<CLIENT_TYPE, PARENT_TYPE, ResultSegment<ENTITY_TYPE>> segmentGenerator,
+            final CLIENT_TYPE client, final PARENT_TYPE parent, final RetryPolicyFactory policyFactory,
+            final OperationContext opContext, final Integer prefetchDepth) {
         this.segmentGenerator = segmentGenerator;
         this.parentObject = parent;
         this.opContext = opContext;
         this.policyFactory = policyFactory;
         this.client = client;
+        this.prefetchDepth = prefetchDepth == null ? 0 : prefetchDepth;
     }
 
     @Override
     public Iterator<ENTITY_TYPE> iterator() {
+        if (this.prefetchDepth > 0) {
+            return new PrefetchingSegmentedIterator<CLIENT_TYPE, PARENT_TYPE, ENTITY_TYPE>(this.segmentGenerator,
+                    this.client, this.parentObject, this.policyFactory, this.opContext, this.prefetchDepth);
+        }
+
         return new LazySegmentedIterator<CLIENT_TYPE, PARENT_TYPE, ENTITY_TYPE>(this.segmentGenerator, this.client,
                 this.parentObject, this.policyFactory, this.opContext);
     }
@@ -16,6 +16,9 @@ package com.microsoft.azure.storage.core;
 
 import java.util.ArrayList;
 
+import com.microsoft.azure.storage.ResultConsumer;
+import com.microsoft.azure.storage.StorageException;
+
 /**
  * RESERVED FOR INTERNAL USE. A class used to parse a list of objects.
  */
@@ -53,6 +56,69 @@ public class ListResponse<T> {
      */
     protected String prefix;
 
+    /**
+     * Holds the consumer the results are delivered to instead of being collected, if any.
+     */
+    private ResultConsumer<T> consumer;
+
+    /**
+     * Holds the number of results to read without delivering them to the consumer.
+     */
+    private int skipCount;
+
+    /**
+     * Holds the number of results read.
+     */
+    private int itemCount;
+
+    /**
+     * Adds a result, delivering it to the consumer if one is set or collecting it otherwise.
+     * 
+     * @param result
+     *            the result to add
+     * @throws StorageException
+     *             if the consumer failed to handle the result
+     */
+    public void addResult(T result) throws StorageException {
+        this.itemCount++;
+        if (this.consumer == null) {
+            this.results.add(result);
+        }
+        else if (this.itemCount > this.skipCount) {
+            try {
+                this.consumer.accept(result);
+            }
+            catch (StorageException e) {
+                throw e;
+            }
+            catch (Exception e) {
+                throw Utility.generateNewUnexpectedStorageException(e);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of results read, including those skipped.
+     * 
+     * @return the number of results read
+     */
+    public int getItemCount() {
+        return this.itemCount;
+    }
+
+    /**
+     * Sets the consumer to deliver the results to instead of collecting them.
+     * 
+     * @param consumer
+     *            the consumer to set
+     * @param skipCount
+     *            the number of results to read without delivering them, as they were delivered by a previous attempt
+     */
+    public void setConsumer(ResultConsumer<T> consumer, int skipCount) {
+        this.consumer = consumer;
+        this.skipCount = skipCount;
+    }
+
     /**
      * Gets the ArrayList<T> of the results.
      * 
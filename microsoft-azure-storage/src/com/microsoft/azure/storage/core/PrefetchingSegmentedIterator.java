@@ -0,0 +1,278 @@
+/**
+ * Copyright Microsoft Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microsoft.azure.storage.core;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.microsoft.azure.storage.DoesServiceRequest;
+import com.microsoft.azure.storage.OperationContext;
+import com.microsoft.azure.storage.ResultSegment;
+import com.microsoft.azure.storage.RetryPolicyFactory;
+import com.microsoft.azure.storage.StorageException;
+
+/**
+ * RESERVED FOR INTERNAL USE. Provides a lazy iterator which retrieves the following segments of a result on a
+ * background thread, up to a prefetch depth ahead of the segment being consumed.
+ * <p>
+ * Segments are still retrieved one after another, as each request needs the continuation token of the previous one,
+ * but the requests overlap with the processing of the results. No request is made while the prefetch depth is
+ * reached, so an iterator which is abandoned holds no thread. An error retrieving a segment is thrown once the
+ * segments retrieved before it have been consumed.
+ * 
+ * @param <CLIENT_TYPE>
+ *            The service client type
+ * @param <PARENT_TYPE>
+ *            The type of the parent object, i.e. CloudBlobClient for ListContainers etc.
+ * @param <ENTITY_TYPE>
+ *            The type of the objects the resulting iterable objects
+ */
+public final class PrefetchingSegmentedIterator<CLIENT_TYPE, PARENT_TYPE, ENTITY_TYPE> implements
+        Iterator<ENTITY_TYPE> {
+
+    /**
+     * Holds the daemon threads which retrieve the segments of all prefetching iterators.
+     */
+    private static final ExecutorService PREFETCH_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "azure-storage-segment-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Holds the segment being consumed.
+     */
+    private ResultSegment<ENTITY_TYPE> currentSegment;
+
+    /**
+     * Holds the iterator for the current Segment.
+     */
+    private Iterator<ENTITY_TYPE> currentSegmentIterator;
+
+    /**
+     * Holds the segments retrieved ahead of the current one.
+     */
+    private final LinkedList<ResultSegment<ENTITY_TYPE>> prefetchedSegments = new LinkedList<ResultSegment<ENTITY_TYPE>>();
+
+    /**
+     * Holds the error which stopped the retrieval of segments, if any.
+     */
+    private StorageException prefetchException;
+
+    /**
+     * Holds whether the last segment was retrieved.
+     */
+    private boolean lastSegmentRetrieved;
+
+    /**
+     * Holds whether a background thread is retrieving segments.
+     */
+    private boolean prefetching;
+
+    /**
+     * Holds the number of segments to retrieve ahead of the current one.
+     */
+    private final int prefetchDepth;
+
+    /**
+     * Holds the service client associated with the operations.
+     */
+    private final CLIENT_TYPE client;
+
+    /**
+     * Holds a reference to the parent object, i.e. CloudBlobContainer for list blobs.
+     */
+    private final PARENT_TYPE parentObject;
+
+    /**
+     * Holds the reference to the RetryPolicyFactory object.
+     */
+    private final RetryPolicyFactory policyFactory;
+
+    /**
+     * Holds the SegmentedStorageRequest which is used to retrieve the next segment of results.
+     */
+    private final StorageRequest<CLIENT_TYPE, PARENT_TYPE, ResultSegment<ENTITY_TYPE>> segmentGenerator;
+
+    /**
+     * Holds an object used to track the execution of the operation
+     */
+    private final OperationContext opContext;
+
+    /**
+     * Retrieves segments until the prefetch depth or the last segment is reached.
+     */
+    private final Runnable prefetchTask = new Runnable() {
+        @Override
+        public void run() {
+            PrefetchingSegmentedIterator.this.prefetch();
+        }
+    };
+
+    /**
+     * Initializes the PrefetchingSegmentedIterator.
+     * 
+     * @param segmentGenerator
+     *            a SegmentedStorageRequest to execute in order to retrieve the next segment of the result.
+     * @param client
+     *            the service client associated with the request
+     * @param parent
+     *            the parent object
+     * @param policyFactory
+     *            the factory used to generate a new retry policy instance
+     * @param opContext
+     *            an object used to track the execution of the operation
+     * @param prefetchDepth
+     *            the number of segments to retrieve ahead of the segment being consumed
+     */
+    public PrefetchingSegmentedIterator(
+            final StorageRequest<CLIENT_TYPE, PARENT_TYPE, ResultSegment<ENTITY_TYPE>> segmentGenerator,
+            final CLIENT_TYPE client, final PARENT_TYPE parent, final RetryPolicyFactory policyFactory,
+            final OperationContext opContext, final int prefetchDepth) {
+        Utility.assertGreaterThanOrEqual("prefetchDepth", prefetchDepth, 1);
+        this.segmentGenerator = segmentGenerator;
+        this.parentObject = parent;
+        this.opContext = opContext;
+        this.policyFactory = policyFactory;
+        this.client = client;
+        this.prefetchDepth = prefetchDepth;
+    }
+
+    /**
+     * Indicates if the iterator has another element.
+     */
+    @Override
+    @DoesServiceRequest
+    public boolean hasNext() {
+        while (this.currentSegmentIterator == null || !this.currentSegmentIterator.hasNext()) {
+            if (this.currentSegment != null && !this.currentSegment.getHasMoreResults()) {
+                return false;
+            }
+
+            this.currentSegment = this.takeSegment();
+            this.currentSegmentIterator = this.currentSegment.getResults().iterator();
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the next element.
+     */
+    @Override
+    public ENTITY_TYPE next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        return this.currentSegmentIterator.next();
+    }
+
+    /**
+     * Removes an element, not supported
+     */
+    @Override
+    public void remove() {
+        // read only, no-op
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Waits for the next segment, and has the one after it retrieved.
+     */
+    private synchronized ResultSegment<ENTITY_TYPE> takeSegment() {
+        this.startPrefetching();
+        while (this.prefetchedSegments.isEmpty() && this.prefetchException == null) {
+            try {
+                this.wait();
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                final NoSuchElementException ex = new NoSuchElementException(
+                        "The enumeration of the result was interrupted.");
+                ex.initCause(e);
+                throw ex;
+            }
+        }
+
+        if (this.prefetchedSegments.isEmpty()) {
+            final NoSuchElementException ex = new NoSuchElementException(
+                    "An error occurred while enumerating the result, check the original exception for details.");
+            ex.initCause(this.prefetchException);
+            throw ex;
+        }
+
+        final ResultSegment<ENTITY_TYPE> segment = this.prefetchedSegments.removeFirst();
+        this.startPrefetching();
+        return segment;
+    }
+
+    /**
+     * Starts retrieving segments on a background thread, unless one already is or there is nothing to retrieve.
+     */
+    private synchronized void startPrefetching() {
+        if (!this.prefetching && !this.lastSegmentRetrieved && this.prefetchException == null
+                && this.prefetchedSegments.size() < this.prefetchDepth) {
+            this.prefetching = true;
+            PREFETCH_EXECUTOR.execute(this.prefetchTask);
+        }
+    }
+
+    @DoesServiceRequest
+    private void prefetch() {
+        while (true) {
+            synchronized (this) {
+                if (this.lastSegmentRetrieved || this.prefetchedSegments.size() >= this.prefetchDepth) {
+                    this.prefetching = false;
+                    return;
+                }
+            }
+
+            // Only this thread executes the request, so the continuation token advances one segment at a time.
+            ResultSegment<ENTITY_TYPE> segment = null;
+            StorageException exception = null;
+            try {
+                segment = ExecutionEngine.executeWithRetry(this.client, this.parentObject, this.segmentGenerator,
+                        this.policyFactory, this.opContext);
+            }
+            catch (final StorageException e) {
+                exception = e;
+            }
+            catch (final RuntimeException e) {
+                exception = Utility.generateNewUnexpectedStorageException(e);
+            }
+
+            synchronized (this) {
+                if (exception != null) {
+                    this.prefetchException = exception;
+                    this.prefetching = false;
+                    this.notifyAll();
+                    return;
+                }
+
+                this.prefetchedSegments.addLast(segment);
+                this.lastSegmentRetrieved = !segment.getHasMoreResults();
+                this.notifyAll();
+            }
+        }
+    }
+}
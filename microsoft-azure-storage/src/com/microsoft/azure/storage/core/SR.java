@@ -27,11 +27,14 @@ public class SR {
     public static final String BLOB_ENDPOINT_NOT_CONFIGURED = "No blob endpoint configured.";
     public static final String BLOB_HASH_MISMATCH = "Blob hash mismatch (integrity check failed), Expected value is %s, retrieved %s.";
     public static final String BLOB_MD5_NOT_SUPPORTED_FOR_PAGE_BLOBS = "Blob level MD5 is not supported for page blobs.";
+    public static final String BLOB_NOT_FOUND_CACHED = "The specified blob does not exist. The blob was found not to exist by a recent request made through this client.";
+    public static final String BLOB_NOT_IN_CONTAINER = "The blob '%s' does not belong to the container '%s'.";
     public static final String BLOB_TYPE_NOT_DEFINED = "The blob type is not defined.  Allowed types are BlobType.BLOCK_BLOB and BlobType.Page_BLOB.";
     public static final String CANNOT_CREATE_SAS_FOR_GIVEN_CREDENTIALS = "Cannot create Shared Access Signature as the credentials does not have account name information. Please check that the credentials provided support creating Shared Access Signature.";
     public static final String CANNOT_CREATE_SAS_FOR_SNAPSHOTS = "Cannot create Shared Access Signature via references to blob snapshots. Please perform the given operation on the root blob instead.";
     public static final String CANNOT_CREATE_SAS_WITHOUT_ACCOUNT_KEY = "Cannot create Shared Access Signature unless the Account Key credentials are used by the ServiceClient.";
     public static final String CONTENT_LENGTH_MISMATCH = "An incorrect number of bytes was read from the connection. The connection may have been closed.";
+    public static final String COPY_NOT_FOUND = "The copy could not be tracked to completion as the destination blob was deleted or overwritten.";
     public static final String CREATING_NETWORK_STREAM = "Creating a NetworkInputStream and expecting to read %s bytes.";
     public static final String CREDENTIALS_CANNOT_SIGN_REQUEST = "CloudBlobClient, CloudQueueClient and CloudTableClient require credentials that can sign a request.";
     public static final String CUSTOM_RESOLVER_THREW = "The custom property resolver delegate threw an exception. Check the inner exception for more details.";
@@ -53,6 +56,7 @@ public class SR {
     public static final String EXPECTED_START_ELEMENT_TO_EQUAL_ERROR = "Expected START_ELEMENT to equal error.";
     public static final String EXPECTED_START_OBJECT = "Expected the start of a JSON Object.";
     public static final String FAILED_TO_PARSE_PROPERTY = "Failed to parse property '%s' with value '%s' as type '%s'";
+    public static final String FILE_CHANGED_DURING_UPLOAD = "The file was modified while it was being uploaded.";
     public static final String INCORRECT_STREAM_LENGTH = "An incorrect stream length was specified, resulting in an authentication failure. Please specify correct length, or -1.";
     public static final String INPUT_STREAM_SHOULD_BE_MARKABLE = "Input stream must be markable.";
     public static final String INVALID_ACCOUNT_NAME = "Invalid account name.";
@@ -68,6 +72,7 @@ public class SR {
     public static final String INVALID_DATE_STRING = "Invalid Date String: %s.";
     public static final String INVALID_EDMTYPE_VALUE = "Invalid value '%s' for EdmType.";
     public static final String INVALID_GEO_REPLICATION_STATUS = "Null or Invalid geo-replication status in response: %s.";
+    public static final String INVALID_INVENTORY_FILE = "The file is not a blob inventory file or is corrupted.";
     public static final String INVALID_KEY = "Storage Key is not a valid base64 encoded string.";
     public static final String INVALID_MAX_WRITE_SIZE = "Max write size is 4MB. Please specify a smaller range.";
     public static final String INVALID_MESSAGE_LENGTH = "The message size cannot be larger than %s bytes.";
@@ -80,8 +85,13 @@ public class SR {
     public static final String INVALID_RESPONSE_RECEIVED = "The response received is invalid or improperly formatted.";
     public static final String INVALID_STORAGE_PROTOCOL_VERSION = "Storage protocol version prior to 2009-09-19 do not support shared key authentication.";
     public static final String INVALID_STREAM_LENGTH = "Invalid stream length; stream must be between 0 and %s MB in length.";
+    public static final String INVENTORY_CONTAINER_MISMATCH = "The blob inventory was built for another container, %s.";
+    public static final String INVENTORY_FILE_NOT_REPLACED = "The blob inventory file %s could not be replaced.";
+    public static final String INVENTORY_PREFIX_MISMATCH = "The prefix %s does not begin with the prefix of the blob inventory, %s.";
     public static final String KEY_NULL = "Key invalid. Cannot be null.";
     public static final String LEASE_CONDITION_ON_SOURCE = "A lease condition cannot be specified on the source of a copy.";
+    public static final String LISTING_RECORD_IS_BLOB = "The listing record represents a blob, not a virtual directory.";
+    public static final String LISTING_RECORD_IS_DIRECTORY = "The listing record represents a virtual directory, not a blob.";
     public static final String MARK_EXPIRED = "Stream mark expired.";
     public static final String MAXIMUM_EXECUTION_TIMEOUT_EXCEPTION = "The client could not finish the operation within specified maximum execution timeout.";
     public static final String METADATA_KEY_INVALID = "The key for one of the metadata key-value pairs is null, empty, or whitespace.";
@@ -94,6 +104,7 @@ public class SR {
     public static final String OPS_IN_BATCH_MUST_HAVE_SAME_PARTITION_KEY = "All entities in a given batch must have the same partition key.";
     public static final String PARAMETER_NOT_IN_RANGE = "The value of the parameter '%s' should be between %s and %s.";
     public static final String PARAMETER_SHOULD_BE_GREATER = "The value of the parameter '%s' should be greater than %s.";
+    public static final String PARTITIONED_SNAPSHOT_LISTING_ERROR = "Listing snapshots in partitions requires the partition prefixes to be specified, as discovering partitions lists with a delimiter.";
     public static final String PARTITIONKEY_MISSING_FOR_DELETE = "Delete requires a partition key.";
     public static final String PARTITIONKEY_MISSING_FOR_MERGE = "Merge requires a partition key.";
     public static final String PARTITIONKEY_MISSING_FOR_UPDATE = "Replace requires a partition key.";
@@ -24,6 +24,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.text.DateFormat;
@@ -46,6 +47,7 @@ import org.xml.sax.SAXException;
 import com.microsoft.azure.storage.Constants;
 import com.microsoft.azure.storage.OperationContext;
 import com.microsoft.azure.storage.RequestOptions;
+import com.microsoft.azure.storage.ResultConsumer;
 import com.microsoft.azure.storage.ResultContinuation;
 import com.microsoft.azure.storage.ResultContinuationType;
 import com.microsoft.azure.storage.StorageCredentials;
@@ -201,6 +203,30 @@ public final class Utility {
         return retVal;
     }
 
+    /**
+     * Calculates the MD5 hash of the remaining bytes of a buffer without changing its position. The buffer is hashed
+     * where it is, so a direct buffer is never copied to the heap as a whole.
+     * 
+     * @param buffer
+     *            A <code>java.nio.ByteBuffer</code> object that represents the data to hash.
+     * 
+     * @return A <code>String</code> which represents the Base64-encoded MD5 hash of the data.
+     * 
+     * @throws StorageException
+     *             If the MD5 algorithm is not available.
+     */
+    public static String calculateMD5(final ByteBuffer buffer) throws StorageException {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("MD5");
+            digest.update(buffer.duplicate());
+            return Base64.encode(digest.digest());
+        }
+        catch (final NoSuchAlgorithmException e) {
+            // This wont happen, throw fatal.
+            throw Utility.generateNewUnexpectedStorageException(e);
+        }
+    }
+
     /**
      * Returns a value that indicates whether the specified credentials are equal.
      * 
@@ -456,11 +482,29 @@ public final class Utility {
      * @return A {@link StorageException} object that represents the unexpected storage exception being thrown.
      */
     public static StorageException generateNewUnexpectedStorageException(final Exception cause) {
-        final StorageException exceptionRef = new StorageException(StorageErrorCode.NONE.toString(),
-                "Unexpected internal storage client error.", 306, // unused
-                null, null);
-        exceptionRef.initCause(cause);
-        return exceptionRef;
+        return new StorageException(StorageErrorCode.NONE.toString(), "Unexpected internal storage client error.",
+                306, // unused
+                null, cause);
+    }
+
+    /**
+     * Returns the exception to throw for a listing response which failed to parse. A failure of the consumer the
+     * results are delivered to is unwrapped, so that it is thrown as is and the request is not retried.
+     * 
+     * @param consumer
+     *            The {@link ResultConsumer} object the results are delivered to, or <code>null</code> if the results
+     *            are collected.
+     * @param ex
+     *            The <code>SAXException</code> object thrown by the parser.
+     * 
+     * @return An <code>Exception</code> object that represents the exception to throw.
+     */
+    public static Exception unwrapConsumerException(final ResultConsumer<?> consumer, final SAXException ex) {
+        if (consumer != null && ex.getException() instanceof StorageException) {
+            return ex.getException();
+        }
+
+        return ex;
     }
 
     /**
@@ -19,9 +19,12 @@ import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
 
+import org.xml.sax.SAXException;
+
 import com.microsoft.azure.storage.DoesServiceRequest;
 import com.microsoft.azure.storage.LocationMode;
 import com.microsoft.azure.storage.OperationContext;
+import com.microsoft.azure.storage.ResultConsumer;
 import com.microsoft.azure.storage.ResultContinuation;
 import com.microsoft.azure.storage.ResultContinuationType;
 import com.microsoft.azure.storage.ResultSegment;
@@ -170,7 +173,8 @@ public final class CloudQueueClient extends ServiceClient {
 
         SegmentedStorageRequest segmentedRequest = new SegmentedStorageRequest();
         return new LazySegmentedIterable<CloudQueueClient, Void, CloudQueue>(this.listQueuesSegmentedImpl(prefix,
-                detailsIncluded, -1, options, segmentedRequest), this, null, options.getRetryPolicyFactory(), opContext);
+                detailsIncluded, -1, null, options, segmentedRequest), this, null, options.getRetryPolicyFactory(),
+                opContext, options.getSegmentPrefetchDepth());
     }
 
     /**
@@ -258,19 +262,80 @@ public final class CloudQueueClient extends ServiceClient {
         SegmentedStorageRequest segmentedRequest = new SegmentedStorageRequest();
         segmentedRequest.setToken(continuationToken);
         return ExecutionEngine.executeWithRetry(this, null,
-                this.listQueuesSegmentedImpl(prefix, detailsIncluded, maxResults, options, segmentedRequest),
+                this.listQueuesSegmentedImpl(prefix, detailsIncluded, maxResults, null, options, segmentedRequest),
                 options.getRetryPolicyFactory(), opContext);
     }
 
+    /**
+     * Lists a segment of the queues whose names begin with the specified prefix, delivering each queue to the
+     * specified consumer as soon as it is read from the response, using the specified listing details options, request
+     * options, and operation context.
+     * <p>
+     * The queues are not collected, and the consumer is called on the calling thread. If a response is interrupted and
+     * the request is retried, the queues already delivered are not delivered again.
+     * 
+     * @param prefix
+     *            A <code>String</code> that represents the prefix of the queue name to match.
+     * @param detailsIncluded
+     *            A {@link QueueListingDetails} value that indicates whether queue metadata will be returned.
+     * @param maxResults
+     *            The maximum number of queue results to retrieve.
+     * @param continuationToken
+     *            A {@link ResultContinuation} object that represents a continuation token returned by a previous
+     *            listing operation.
+     * @param consumer
+     *            A {@link ResultConsumer} object that receives the {@link CloudQueue} objects listed. An exception
+     *            thrown by the consumer stops the listing.
+     * @param options
+     *            A {@link QueueRequestOptions} object that specifies any additional options for the request. Specifying
+     *            <code>null</code> will use the default request options from the associated service client (
+     *            {@link CloudQueueClient}).
+     * @param opContext
+     *            An {@link OperationContext} object that represents the context for the current operation. This object
+     *            is used to track requests to the storage service, and to provide additional runtime information about
+     *            the operation.
+     * 
+     * @return A {@link ResultContinuation} object that represents the continuation token of the next segment, or
+     *         <code>null</code> if this was the last segment.
+     * 
+     * @throws StorageException
+     *             If a storage service error occurred during the operation, or if the consumer failed.
+     */
+    @DoesServiceRequest
+    public ResultContinuation streamQueuesSegmented(final String prefix, final QueueListingDetails detailsIncluded,
+            final int maxResults, final ResultContinuation continuationToken, final ResultConsumer<CloudQueue> consumer,
+            QueueRequestOptions options, OperationContext opContext) throws StorageException {
+        if (opContext == null) {
+            opContext = new OperationContext();
+        }
+
+        opContext.initialize();
+        options = QueueRequestOptions.applyDefaults(options, this);
+
+        Utility.assertNotNull("consumer", consumer);
+
+        SegmentedStorageRequest segmentedRequest = new SegmentedStorageRequest();
+        segmentedRequest.setToken(continuationToken);
+        return ExecutionEngine.executeWithRetry(this, null,
+                this.listQueuesSegmentedImpl(prefix, detailsIncluded, maxResults, consumer, options, segmentedRequest),
+                options.getRetryPolicyFactory(), opContext).getContinuationToken();
+    }
+
     private StorageRequest<CloudQueueClient, Void, ResultSegment<CloudQueue>> listQueuesSegmentedImpl(
             final String prefix, final QueueListingDetails detailsIncluded, final int maxResults,
-            final QueueRequestOptions options, final SegmentedStorageRequest segmentedRequest) {
+            final ResultConsumer<CloudQueue> consumer, final QueueRequestOptions options,
+            final SegmentedStorageRequest segmentedRequest) {
 
         Utility.assertContinuationType(segmentedRequest.getToken(), ResultContinuationType.QUEUE);
         final ListingContext listingContext = new ListingContext(prefix, maxResults);
         final StorageRequest<CloudQueueClient, Void, ResultSegment<CloudQueue>> getRequest = new StorageRequest<CloudQueueClient, Void, ResultSegment<CloudQueue>>(
                 options, this.getStorageUri()) {
 
+            /**
+             * The number of queues delivered to the consumer by previous attempts.
+             */
+            private int deliveredCount;
+
             @Override
             public void setRequestLocationMode() {
                 this.setRequestLocationMode(Utility.getListingLocationMode(segmentedRequest.getToken()));
@@ -305,8 +370,20 @@ public final class CloudQueueClient extends ServiceClient {
             public ResultSegment<CloudQueue> postProcessResponse(HttpURLConnection connection, Void queue,
                     CloudQueueClient client, OperationContext context, ResultSegment<CloudQueue> storageObject)
                     throws Exception {
-                final ListResponse<CloudQueue> response = QueueListHandler.getQueues(connection.getInputStream(),
-                        client);
+                final ListResponse<CloudQueue> response = new ListResponse<CloudQueue>();
+                if (consumer != null) {
+                    response.setConsumer(consumer, this.deliveredCount);
+                }
+
+                try {
+                    QueueListHandler.getQueues(connection.getInputStream(), client, response);
+                }
+                catch (SAXException e) {
+                    throw Utility.unwrapConsumerException(consumer, e);
+                }
+                finally {
+                    this.deliveredCount = Math.max(this.deliveredCount, response.getItemCount());
+                }
 
                 ResultContinuation newToken = null;
 
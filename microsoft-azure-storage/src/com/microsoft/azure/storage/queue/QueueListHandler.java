@@ -38,7 +38,7 @@ import com.microsoft.azure.storage.core.Utility;
  */
 final class QueueListHandler extends DefaultHandler {
 
-    private final ListResponse<CloudQueue> response = new ListResponse<CloudQueue>();
+    private final ListResponse<CloudQueue> response;
 
     private final Stack<String> elementStack = new Stack<String>();
     private StringBuilder bld = new StringBuilder();
@@ -48,8 +48,9 @@ final class QueueListHandler extends DefaultHandler {
     private String queueName;
     private HashMap<String, String> metadata;
 
-    private QueueListHandler(CloudQueueClient serviceClient) {
+    private QueueListHandler(CloudQueueClient serviceClient, ListResponse<CloudQueue> response) {
         this.serviceClient = serviceClient;
+        this.response = response;
     }
 
     /**
@@ -68,8 +69,29 @@ final class QueueListHandler extends DefaultHandler {
      */
     public static ListResponse<CloudQueue> getQueues(final InputStream stream, final CloudQueueClient serviceClient)
             throws SAXException, IOException, ParserConfigurationException {
+        return getQueues(stream, serviceClient, new ListResponse<CloudQueue>());
+    }
+
+    /**
+     * Parses the input stream containing the response body of the list queues request result into the specified
+     * response object, which may deliver the queues to a consumer as they are read.
+     * 
+     * @param stream
+     *            The <code>InputStream</code> object to deserialize from.
+     * @param serviceClient
+     *            A {@link CloudQueueClient} object associated with the storage
+     *            service.
+     * @param response
+     *            The {@link ListResponse} object to parse into.
+     * 
+     * @throws IOException
+     * @throws SAXException
+     * @throws ParserConfigurationException
+     */
+    public static ListResponse<CloudQueue> getQueues(final InputStream stream, final CloudQueueClient serviceClient,
+            final ListResponse<CloudQueue> response) throws SAXException, IOException, ParserConfigurationException {
         SAXParser saxParser = Utility.getSAXParser();
-        QueueListHandler handler = new QueueListHandler(serviceClient);
+        QueueListHandler handler = new QueueListHandler(serviceClient, response);
         saxParser.parse(stream, handler);
 
         return handler.response;
@@ -110,7 +132,7 @@ final class QueueListHandler extends DefaultHandler {
                 queue = this.serviceClient.getQueueReference(this.queueName);
                 queue.setMetadata(this.metadata);
 
-                this.response.getResults().add(queue);
+                this.response.addResult(queue);
             }
             catch (URISyntaxException e) {
                 throw new SAXException(e);
@@ -549,12 +549,12 @@ public final class CloudTableClient extends ServiceClient {
         if (resolver == null) {
             return new LazySegmentedIterable<CloudTableClient, TableQuery<T>, T>(this.executeQuerySegmentedCoreImpl(
                     queryRef, resolver, options, segmentedRequest), this, queryRef, options.getRetryPolicyFactory(),
-                    opContext);
+                    opContext, options.getSegmentPrefetchDepth());
         }
         else {
             return new LazySegmentedIterable<CloudTableClient, TableQuery<T>, R>(
                     this.executeQuerySegmentedWithResolverCoreImpl(queryRef, resolver, options, segmentedRequest),
-                    this, queryRef, options.getRetryPolicyFactory(), opContext);
+                    this, queryRef, options.getRetryPolicyFactory(), opContext, options.getSegmentPrefetchDepth());
         }
     }
 